@@ -0,0 +1,208 @@
+package com.medavox.util.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**Measures each BytesAsUInt operation at a range of widths,
+ * next to the same operation on BigInteger and on a native long.
+ * The long baselines only ever see the low 8 bytes, so above width 8 they are a floor, not a comparison.
+ * Run with "gradle jmh".*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BytesAsUIntBenchmark {
+    /**Operand width, in bytes.*/
+    @Param({"1", "2", "4", "8", "16", "32", "64", "128", "256"})
+    public int width;
+
+    private byte[] a;
+    private byte[] b;
+    /**a with everything above its low 8 bytes cleared, so it converts to a long at any width.*/
+    private byte[] narrowA;
+    /**A divisor about half as wide as a, so division has real work to do.*/
+    private byte[] divisor;
+    private BigInteger bigA;
+    private BigInteger bigB;
+    private BigInteger bigDivisor;
+    private long longA;
+    private long longB;
+    private long longDivisor;
+
+    @Setup
+    public void setup() {
+        //fixed seed, so every run measures the same values
+        Random r = new Random(width);
+        a = new byte[width];
+        b = new byte[width];
+        r.nextBytes(a);
+        r.nextBytes(b);
+        narrowA = a.clone();
+        Arrays.fill(narrowA, Math.min(8, width), width, (byte)0);
+        divisor = new byte[Math.max(1, width / 2)];
+        r.nextBytes(divisor);
+        divisor[divisor.length-1] |= 1;
+
+        bigA = BytesAsUInt.toBigInteger(a);
+        bigB = BytesAsUInt.toBigInteger(b);
+        bigDivisor = BytesAsUInt.toBigInteger(divisor);
+        //keep the long operands positive, so plain / and % mean the same thing as the unsigned versions
+        longA = bigA.longValue() & Long.MAX_VALUE;
+        longB = bigB.longValue() & Long.MAX_VALUE;
+        longDivisor = (bigDivisor.longValue() & Long.MAX_VALUE) | 1;
+    }
+
+    //-------------------------------BytesAsUInt-------------------------------
+
+    @Benchmark
+    public byte[] add() {
+        return BytesAsUInt.add(a, b);
+    }
+
+    @Benchmark
+    public byte[] add_newImpl() {
+        return BytesAsUInt.add_newImpl(a, b);
+    }
+
+    @Benchmark
+    public byte[] subtract() {
+        return BytesAsUInt.subtract(a, b);
+    }
+
+    @Benchmark
+    public byte[] multiply() {
+        return BytesAsUInt.multiply(a, b);
+    }
+
+    @Benchmark
+    public byte[] divide() {
+        return BytesAsUInt.divide(a, divisor);
+    }
+
+    @Benchmark
+    public BytesAsUInt.DivisionResult divRem() {
+        return BytesAsUInt.divRem(a, divisor);
+    }
+
+    @Benchmark
+    public int compare() {
+        return BytesAsUInt.compare(a, b);
+    }
+
+    @Benchmark
+    public BigInteger toBigInteger() {
+        return BytesAsUInt.toBigInteger(a);
+    }
+
+    @Benchmark
+    public byte[] fromBigInteger() {
+        return BytesAsUInt.fromBigInteger(bigA, width);
+    }
+
+    @Benchmark
+    public byte[] fromUnsignedLong() {
+        return BytesAsUInt.fromUnsignedLong(longA, Math.max(8, width));
+    }
+
+    @Benchmark
+    public long toUnsignedLong() {
+        return BytesAsUInt.toUnsignedLong(narrowA);
+    }
+
+    /**Always makes 8 bytes, so this only varies with width by noise.*/
+    @Benchmark
+    public byte[] fromLong() {
+        return BytesAsUInt.fromLong(longA);
+    }
+
+    //-------------------------------BigInteger-------------------------------
+
+    @Benchmark
+    public BigInteger bigIntegerAdd() {
+        return bigA.add(bigB);
+    }
+
+    @Benchmark
+    public BigInteger bigIntegerSubtract() {
+        return bigA.subtract(bigB);
+    }
+
+    @Benchmark
+    public BigInteger bigIntegerMultiply() {
+        return bigA.multiply(bigB);
+    }
+
+    @Benchmark
+    public BigInteger bigIntegerDivide() {
+        return bigA.divide(bigDivisor);
+    }
+
+    @Benchmark
+    public BigInteger[] bigIntegerDivRem() {
+        return bigA.divideAndRemainder(bigDivisor);
+    }
+
+    @Benchmark
+    public int bigIntegerCompare() {
+        return bigA.compareTo(bigB);
+    }
+
+    @Benchmark
+    public long bigIntegerLongValue() {
+        return bigA.longValue();
+    }
+
+    @Benchmark
+    public BigInteger bigIntegerValueOf() {
+        return BigInteger.valueOf(longA);
+    }
+
+    //-------------------------------long-------------------------------
+
+    @Benchmark
+    public long longAdd() {
+        return longA + longB;
+    }
+
+    @Benchmark
+    public long longSubtract() {
+        return longA - longB;
+    }
+
+    @Benchmark
+    public long longMultiply() {
+        return longA * longB;
+    }
+
+    @Benchmark
+    public long longDivide() {
+        return longA / longDivisor;
+    }
+
+    @Benchmark
+    public int longCompare() {
+        return longA < longB ? -1 : (longA == longB ? 0 : 1);
+    }
+
+    /**The floor for every conversion to or from a long: the long is already there.*/
+    @Benchmark
+    public long longIdentity() {
+        return longA;
+    }
+}
@@ -0,0 +1,364 @@
+package com.medavox.util.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**Encodes bytes into an arbitrary alphabet of N symbols, and decodes them back, one block at a time.
+ *
+ * Each full block packs {@link #bytesPerBlock()} bytes into exactly {@link #symbolsPerBlock()} symbols:
+ * the largest number of bytes that fits, as worked out by {@link Bytes#computeBytesStorable}.
+ * A shorter final block uses only as many symbols as its bytes need, so the length of the encoded text
+ * says how many bytes it holds. Within a block, the bytes are read as one big-endian number,
+ * and its base-N digits are written most significant first.
+ *
+ * Because the work is done per block, encoding and decoding take time linear in the payload,
+ * instead of converting the whole payload through one giant BigInteger.
+ * Everything about the block layout is worked out once, in the constructor.
+ *
+ * An instance holds only immutable tables, so it is thread-safe;
+ * each call allocates its own small per-block scratch space.*/
+public final class BaseNCodec {
+    /**Blocks up to this many bytes are converted with long arithmetic; bigger ones with 32-bit limbs.*/
+    private static final int LONG_BLOCK_BYTES = 7;
+    /**How many chars to read from a Reader at once.*/
+    private static final int READ_CHUNK = 4096;
+
+    private final char[] alphabet;
+    /**The digit value of each char, or -1 for chars outside the alphabet.*/
+    private final int[] digitOf;
+    private final int base;
+    private final int symbolsPerBlock;
+    private final int bytesPerBlock;
+    /**symbolsForBytes[r] is the number of symbols used by a final block of r bytes.*/
+    private final int[] symbolsForBytes;
+    /**bytesForSymbols[s] is the number of bytes in a final block of s symbols, or -1 if s is impossible.*/
+    private final int[] bytesForSymbols;
+
+    /**@param alphabet the symbols to encode into, in digit order; 2 to 256 distinct chars
+     * @param symbolsPerBlock how many symbols make up a full block.
+     * Longer blocks waste less space, but cost more per block to convert.
+     * @throws IllegalArgumentException if the alphabet has repeated chars or the wrong number of them,
+     * or if symbolsPerBlock symbols can't hold even one byte*/
+    public BaseNCodec(String alphabet, int symbolsPerBlock) {
+        this.alphabet = alphabet.toCharArray();
+        base = this.alphabet.length;
+        if(base < 2 || base > 256) {
+            throw new IllegalArgumentException("alphabet must have between 2 and 256 symbols; had "+base);
+        }
+        if(symbolsPerBlock < 1) {throw new IllegalArgumentException("symbolsPerBlock must be at least 1");}
+
+        char maxChar = 0;
+        for(char c : this.alphabet) {
+            maxChar = (char)Math.max(maxChar, c);
+        }
+        digitOf = new int[maxChar + 1];
+        for(int i = 0; i < digitOf.length; i++) {
+            digitOf[i] = -1;
+        }
+        for(int i = 0; i < base; i++) {
+            char c = this.alphabet[i];
+            if(digitOf[c] != -1) {
+                throw new IllegalArgumentException("alphabet contains '"+c+"' more than once");
+            }
+            digitOf[c] = i;
+        }
+
+        this.symbolsPerBlock = symbolsPerBlock;
+        bytesPerBlock = Bytes.computeBytesStorable(symbolsPerBlock, base);
+        if(bytesPerBlock < 1) {
+            throw new IllegalArgumentException(symbolsPerBlock+" symbols of a "+base
+                    +"-symbol alphabet can't hold a whole byte");
+        }
+        //with at most 256 symbols, every extra byte needs at least one more symbol,
+        //so a final block's length always tells us how many bytes it holds
+        symbolsForBytes = new int[bytesPerBlock];
+        bytesForSymbols = new int[symbolsPerBlock];
+        for(int s = 0; s < symbolsPerBlock; s++) {
+            bytesForSymbols[s] = -1;
+        }
+        for(int r = 0; r < bytesPerBlock; r++) {
+            symbolsForBytes[r] = Bytes.computeSymbolsNeeded(r, base);
+            bytesForSymbols[symbolsForBytes[r]] = r;
+        }
+    }
+
+    /**The number of bytes in a full block.*/
+    public int bytesPerBlock() {
+        return bytesPerBlock;
+    }
+
+    /**The number of symbols in a full block.*/
+    public int symbolsPerBlock() {
+        return symbolsPerBlock;
+    }
+
+    /**The number of symbols that {@code byteCount} bytes encode to.*/
+    public long encodedLength(long byteCount) {
+        return (byteCount / bytesPerBlock) * symbolsPerBlock + symbolsForBytes[(int)(byteCount % bytesPerBlock)];
+    }
+
+    //-----------------------------------arrays-----------------------------------
+
+    /**Encodes all of data.*/
+    public String encode(byte[] data) {
+        StringBuilder out = new StringBuilder((int)Math.min(Integer.MAX_VALUE, encodedLength(data.length)));
+        Scratch scratch = new Scratch();
+        int i = 0;
+        for(; i + bytesPerBlock <= data.length; i += bytesPerBlock) {
+            encodeBlock(data, i, bytesPerBlock, scratch);
+            out.append(scratch.symbols, 0, symbolsPerBlock);
+        }
+        if(i < data.length) {
+            int r = data.length - i;
+            encodeBlock(data, i, r, scratch);
+            out.append(scratch.symbols, 0, symbolsForBytes[r]);
+        }
+        return out.toString();
+    }
+
+    /**Decodes all of text.
+     * @throws IllegalArgumentException if text contains chars outside the alphabet,
+     * has an impossible length, or holds a block whose value is too big for its bytes*/
+    public byte[] decode(CharSequence text) {
+        int len = text.length();
+        int fullBlocks = len / symbolsPerBlock;
+        int r = finalBlockBytes(len % symbolsPerBlock);
+        byte[] out = new byte[fullBlocks * bytesPerBlock + r];
+        Scratch scratch = new Scratch();
+        int outPos = 0;
+        for(int i = 0; i < len; i += symbolsPerBlock) {
+            int symbols = Math.min(symbolsPerBlock, len - i);
+            for(int k = 0; k < symbols; k++) {
+                scratch.symbols[k] = text.charAt(i + k);
+            }
+            int bytes = symbols == symbolsPerBlock ? bytesPerBlock : r;
+            decodeBlock(scratch, symbols, out, outPos, bytes);
+            outPos += bytes;
+        }
+        return out;
+    }
+
+    //-----------------------------------streams-----------------------------------
+
+    /**Encodes everything left in {@code in}, a block at a time, appending the symbols to {@code out}.
+     * Neither stream is closed.*/
+    public void encode(InputStream in, Appendable out) throws IOException {
+        Scratch scratch = new Scratch();
+        CharBuffer symbols = CharBuffer.wrap(scratch.symbols);
+        byte[] block = new byte[bytesPerBlock];
+        int r;
+        while((r = readBlock(in, block)) > 0) {
+            encodeBlock(block, 0, r, scratch);
+            int count = r == bytesPerBlock ? symbolsPerBlock : symbolsForBytes[r];
+            out.append(symbols, 0, count);
+            if(r < bytesPerBlock) {
+                break;
+            }
+        }
+    }
+
+    /**Decodes everything left in {@code in}, a block at a time, writing the bytes to {@code out}.
+     * Whitespace which isn't part of the alphabet is skipped, so line-wrapped text decodes fine.
+     * Neither stream is closed.
+     * @throws IllegalArgumentException if the text contains chars outside the alphabet,
+     * has an impossible length, or holds a block whose value is too big for its bytes*/
+    public void decode(Reader in, OutputStream out) throws IOException {
+        Scratch scratch = new Scratch();
+        byte[] block = new byte[bytesPerBlock];
+        char[] chunk = new char[READ_CHUNK];
+        int symbols = 0;
+        int read;
+        while((read = in.read(chunk)) != -1) {
+            for(int i = 0; i < read; i++) {
+                char c = chunk[i];
+                if(isSkippable(c)) {
+                    continue;
+                }
+                scratch.symbols[symbols++] = c;
+                if(symbols == symbolsPerBlock) {
+                    decodeBlock(scratch, symbols, block, 0, bytesPerBlock);
+                    out.write(block, 0, bytesPerBlock);
+                    symbols = 0;
+                }
+            }
+        }
+        if(symbols > 0) {
+            int r = finalBlockBytes(symbols);
+            decodeBlock(scratch, symbols, block, 0, r);
+            out.write(block, 0, r);
+        }
+    }
+
+    //-----------------------------------buffers-----------------------------------
+
+    /**Encodes as many whole blocks from {@code in} as fit in {@code out}, advancing both buffers' positions.
+     * Like a CharsetEncoder, it stops when out is full or in has less than a block left;
+     * pass {@code endOfInput = true} with the last of the data, to also encode the final short block.
+     * @return true if all the input that can be encoded now has been, and false if out ran out of room*/
+    public boolean encode(ByteBuffer in, CharBuffer out, boolean endOfInput) {
+        Scratch scratch = new Scratch();
+        byte[] block = new byte[bytesPerBlock];
+        while(in.remaining() > 0) {
+            int r = Math.min(bytesPerBlock, in.remaining());
+            if(r < bytesPerBlock && !endOfInput) {
+                return true;
+            }
+            int count = r == bytesPerBlock ? symbolsPerBlock : symbolsForBytes[r];
+            if(out.remaining() < count) {
+                return false;
+            }
+            in.get(block, 0, r);
+            encodeBlock(block, 0, r, scratch);
+            out.put(scratch.symbols, 0, count);
+        }
+        return true;
+    }
+
+    /**Decodes as many whole blocks from {@code in} as fit in {@code out}, advancing both buffers' positions.
+     * Like a CharsetDecoder, it stops when out is full or in has less than a block left;
+     * pass {@code endOfInput = true} with the last of the text, to also decode the final short block.
+     * Unlike {@link #decode(Reader, OutputStream)}, no chars are skipped.
+     * @return true if all the input that can be decoded now has been, and false if out ran out of room
+     * @throws IllegalArgumentException if the text contains chars outside the alphabet,
+     * has an impossible length, or holds a block whose value is too big for its bytes*/
+    public boolean decode(CharBuffer in, ByteBuffer out, boolean endOfInput) {
+        Scratch scratch = new Scratch();
+        byte[] block = new byte[bytesPerBlock];
+        while(in.remaining() > 0) {
+            int symbols = Math.min(symbolsPerBlock, in.remaining());
+            if(symbols < symbolsPerBlock && !endOfInput) {
+                return true;
+            }
+            int r = symbols == symbolsPerBlock ? bytesPerBlock : finalBlockBytes(symbols);
+            if(out.remaining() < r) {
+                return false;
+            }
+            in.get(scratch.symbols, 0, symbols);
+            decodeBlock(scratch, symbols, block, 0, r);
+            out.put(block, 0, r);
+        }
+        return true;
+    }
+
+    //-----------------------------------blocks-----------------------------------
+
+    /**Per-call working space: the symbols of one block, and the block's value as limbs.*/
+    private final class Scratch {
+        final char[] symbols = new char[symbolsPerBlock];
+        final int[] limbs = new int[Limbs.limbCount(bytesPerBlock)];
+    }
+
+    /**Writes the symbols for data[off..off+len) into scratch.symbols, most significant first.*/
+    private void encodeBlock(byte[] data, int off, int len, Scratch scratch) {
+        int count = len == bytesPerBlock ? symbolsPerBlock : symbolsForBytes[len];
+        if(len <= LONG_BLOCK_BYTES) {
+            long v = 0;
+            for(int i = 0; i < len; i++) {
+                v = (v << 8) | (data[off+i] & 0xFF);
+            }
+            for(int k = count - 1; k >= 0; k--) {
+                scratch.symbols[k] = alphabet[(int)(v % base)];
+                v /= base;
+            }
+            return;
+        }
+        int[] limbs = scratch.limbs;
+        int n = Limbs.limbCount(len);
+        //the block is big-endian, the limbs little-endian: byte i is (len-1-i) bytes from the bottom
+        for(int i = 0; i < n; i++) {
+            limbs[i] = 0;
+        }
+        for(int i = 0; i < len; i++) {
+            int fromBottom = len - 1 - i;
+            limbs[fromBottom >>> 2] |= (data[off+i] & 0xFF) << ((fromBottom & 3) << 3);
+        }
+        for(int k = count - 1; k >= 0; k--) {
+            scratch.symbols[k] = alphabet[(int)Limbs.divideBySingleLimb(limbs, n, base, limbs)];
+            n = Limbs.significantLimbs(limbs, n);
+        }
+    }
+
+    /**Decodes the first {@code symbols} chars of scratch.symbols into exactly {@code len} bytes at out[off].*/
+    private void decodeBlock(Scratch scratch, int symbols, byte[] out, int off, int len) {
+        if(len <= LONG_BLOCK_BYTES) {
+            long v = 0;
+            for(int k = 0; k < symbols; k++) {
+                v = v * base + digit(scratch.symbols[k]);
+            }
+            if(len < 8 && (v >>> (len << 3)) != 0) {
+                throw new IllegalArgumentException("block value is too big for "+len+" bytes");
+            }
+            for(int i = len - 1; i >= 0; i--) {
+                out[off+i] = (byte)v;
+                v >>>= 8;
+            }
+            return;
+        }
+        int[] limbs = scratch.limbs;
+        for(int i = 0; i < limbs.length; i++) {
+            limbs[i] = 0;
+        }
+        for(int k = 0; k < symbols; k++) {
+            //limbs = limbs * base + digit
+            long carry = digit(scratch.symbols[k]);
+            for(int i = 0; i < limbs.length; i++) {
+                long t = (limbs[i] & Limbs.MASK) * base + carry;
+                limbs[i] = (int)t;
+                carry = t >>> 32;
+            }
+            if(carry != 0) {
+                throw new IllegalArgumentException("block value is too big for "+len+" bytes");
+            }
+        }
+        //nothing may be set above the bottom len bytes
+        for(int i = len >>> 2; i < limbs.length; i++) {
+            int spare = i == len >>> 2 ? ~((1 << ((len & 3) << 3)) - 1) : -1;
+            if((limbs[i] & spare) != 0) {
+                throw new IllegalArgumentException("block value is too big for "+len+" bytes");
+            }
+        }
+        for(int i = 0; i < len; i++) {
+            int fromBottom = len - 1 - i;
+            out[off+i] = (byte)(limbs[fromBottom >>> 2] >>> ((fromBottom & 3) << 3));
+        }
+    }
+
+    private int digit(char c) {
+        int d = c < digitOf.length ? digitOf[c] : -1;
+        if(d < 0) {
+            throw new IllegalArgumentException("'"+c+"' is not in the alphabet");
+        }
+        return d;
+    }
+
+    private boolean isSkippable(char c) {
+        return Character.isWhitespace(c) && (c >= digitOf.length || digitOf[c] < 0);
+    }
+
+    /**The number of bytes in a final block of {@code symbols} symbols.*/
+    private int finalBlockBytes(int symbols) {
+        int r = bytesForSymbols[symbols];
+        if(r < 0) {
+            throw new IllegalArgumentException("a final block can't be "+symbols+" symbols long");
+        }
+        return r;
+    }
+
+    /**Fills block from in, stopping early only at the end of the stream.
+     * @return the number of bytes read*/
+    private static int readBlock(InputStream in, byte[] block) throws IOException {
+        int total = 0;
+        while(total < block.length) {
+            int r = in.read(block, total, block.length - total);
+            if(r < 0) {
+                break;
+            }
+            total += r;
+        }
+        return total;
+    }
+}
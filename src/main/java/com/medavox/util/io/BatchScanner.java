@@ -0,0 +1,278 @@
+package com.medavox.util.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**Runs {@link StringUtils#findURLsInDoc}-style extraction over many documents at once, on a {@link ForkJoinPool}.
+ * Documents may be strings, files or channels; the list is split in half recursively until each task has
+ * a few documents, so the pool's threads stay busy even when documents vary a lot in size.
+ * Files and channels are streamed through a {@link StreamRegexScanner}, so no document needs to fit in memory.
+ *
+ * Every match goes through one {@link SeenSet}, shared by all the threads, so the merged result has no
+ * duplicates (within the SeenSet's accuracy), and nothing seen in an earlier batch comes up again.
+ * When the same match is in several documents, it is credited to whichever document was scanned first;
+ * with one thread, that's always the earliest one in the batch.
+ * The merged result lists each document's new matches together, in the order of the documents.
+ *
+ * The scanner itself is immutable, so it can be shared by several threads.*/
+public class BatchScanner
+{
+    /**Each task is split until it has about this many documents per thread, or fewer.*/
+    private static final int TASKS_PER_THREAD = 8;
+
+    private final Pattern pattern;
+    private final SeenSet seen;
+    private final boolean provenance;
+    /**The pool to use, or null to make one per batch.*/
+    private final ForkJoinPool pool;
+    private final int parallelism;
+
+    /**The merged matches from one batch.*/
+    public static final class Result
+    {
+        /**Every new match, without duplicates.*/
+        public final String[] matches;
+        /**The index in the batch of the document each match was credited to,
+         * or null if provenance wasn't asked for.*/
+        public final int[] documents;
+
+        private Result(String[] matches, int[] documents)
+        {
+            this.matches = matches;
+            this.documents = documents;
+        }
+    }
+
+    /**@param parallelism how many threads to scan with
+     * @param seen the matches found so far; it is updated with every new match
+     * @param provenance whether to record which document each match came from*/
+    public BatchScanner(Pattern pattern, int parallelism, SeenSet seen, boolean provenance)
+    {
+        if(parallelism < 1) {throw new IllegalArgumentException("parallelism must be at least 1");}
+        this.pattern = pattern;
+        this.parallelism = parallelism;
+        this.seen = seen;
+        this.provenance = provenance;
+        this.pool = null;
+    }
+
+    /**Scans on the given pool, which is left running afterwards.
+     * @param seen the matches found so far; it is updated with every new match
+     * @param provenance whether to record which document each match came from*/
+    public BatchScanner(Pattern pattern, ForkJoinPool pool, SeenSet seen, boolean provenance)
+    {
+        this.pattern = pattern;
+        this.parallelism = pool.getParallelism();
+        this.seen = seen;
+        this.provenance = provenance;
+        this.pool = pool;
+    }
+
+    /**Scans every string in the list.*/
+    public Result scanStrings(final List<? extends CharSequence> docs)
+    {
+        try
+        {
+            return run(docs.size(), new Source()
+            {
+                @Override public void scan(int doc, Sink sink)
+                {
+                    Matcher m = pattern.matcher(docs.get(doc));
+                    while(m.find())
+                    {
+                        sink.onMatch(m.group(), m.start());
+                    }
+                }
+            });
+        }
+        catch(IOException e)
+        {
+            throw new IllegalStateException("strings can't fail to read", e);
+        }
+    }
+
+    /**Scans every file in the list, decoding them with the given charset. Each file is memory-mapped.
+     * @throws IOException from the first file that couldn't be read; the rest of the batch is abandoned*/
+    public Result scanFiles(final List<File> files, final Charset charset) throws IOException
+    {
+        final StreamRegexScanner scanner = new StreamRegexScanner(pattern);
+        return run(files.size(), new Source()
+        {
+            @Override public void scan(int doc, Sink sink) throws IOException
+            {
+                FileInputStream in = new FileInputStream(files.get(doc));
+                try
+                {
+                    scanner.scan(in.getChannel(), charset, sink);
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+        });
+    }
+
+    /**Scans every channel in the list, decoding them with the given charset. The channels aren't closed.
+     * @throws IOException from the first channel that couldn't be read; the rest of the batch is abandoned*/
+    public Result scanChannels(final List<? extends ReadableByteChannel> channels, final Charset charset)
+            throws IOException
+    {
+        final StreamRegexScanner scanner = new StreamRegexScanner(pattern);
+        return run(channels.size(), new Source()
+        {
+            @Override public void scan(int doc, Sink sink) throws IOException
+            {
+                scanner.scan(channels.get(doc), charset, sink);
+            }
+        });
+    }
+
+    private Result run(int docs, Source source) throws IOException
+    {
+        int grain = Math.max(1, docs / (parallelism * TASKS_PER_THREAD));
+        Scan root = new Scan(source, 0, docs, grain);
+        ForkJoinPool p = pool != null ? pool : new ForkJoinPool(parallelism);
+        Found found;
+        try
+        {
+            found = p.invoke(root);
+        }
+        catch(ScanFailure e)
+        {
+            throw e.getCause();
+        }
+        finally
+        {
+            if(pool == null)
+            {
+                p.shutdown();
+            }
+        }
+        String[] matches = found.matches.toArray(new String[found.matches.size()]);
+        int[] documents = null;
+        if(provenance)
+        {
+            documents = new int[found.documents.size()];
+            for(int i = 0; i < documents.length; i++)
+            {
+                documents[i] = found.documents.get(i);
+            }
+        }
+        return new Result(matches, documents);
+    }
+
+    /**Reads one document of the batch.*/
+    private interface Source
+    {
+        void scan(int doc, Sink sink) throws IOException;
+    }
+
+    /**Collects one task's new matches.*/
+    private final class Sink implements MatchCallback
+    {
+        final Found found;
+        int doc;
+
+        Sink(Found found)
+        {
+            this.found = found;
+        }
+
+        @Override
+        public void onMatch(String match, long start)
+        {
+            if(seen.addIfAbsent(match))
+            {
+                found.matches.add(match);
+                if(provenance)
+                {
+                    found.documents.add(doc);
+                }
+            }
+        }
+    }
+
+    private static final class Found
+    {
+        final List<String> matches = new ArrayList<String>();
+        final List<Integer> documents = new ArrayList<Integer>();
+    }
+
+    /**Carries an IOException out of a task, to be rethrown on the calling thread.*/
+    private static final class ScanFailure extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        ScanFailure(IOException cause)
+        {
+            super(cause);
+        }
+
+        @Override
+        public IOException getCause()
+        {
+            return (IOException)super.getCause();
+        }
+    }
+
+    private final class Scan extends RecursiveTask<Found>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Source source;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        Scan(Source source, int from, int to, int grain)
+        {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Found compute()
+        {
+            if(to - from <= grain)
+            {
+                Found found = new Found();
+                Sink sink = new Sink(found);
+                for(int doc = from; doc < to; doc++)
+                {
+                    sink.doc = doc;
+                    try
+                    {
+                        source.scan(doc, sink);
+                    }
+                    catch(IOException e)
+                    {
+                        throw new ScanFailure(e);
+                    }
+                }
+                return found;
+            }
+            int mid = (from + to) >>> 1;
+            //the earlier half is scanned here and now, so that without other threads to steal the later half,
+            //documents are scanned in order
+            Scan right = new Scan(source, mid, to, grain);
+            right.fork();
+            Found merged = new Scan(source, from, mid, grain).compute();
+            Found later = right.join();
+            merged.matches.addAll(later.matches);
+            merged.documents.addAll(later.documents);
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.medavox.util.io;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**Formats a whole long[] of timestamps into one contiguous block of text, with an index of where each one starts.
+ *
+ * The array is cut into slices, each formatted by its own {@link CachingTimestampFormatter},
+ * so when the timestamps are sorted (or nearly), each one only costs the chars that differ from the last.
+ * Batches bigger than one slice are formatted in parallel on a {@link ForkJoinPool},
+ * then copied into place in parallel once the slices' lengths are known.
+ *
+ * The instance holds no per-batch state, so it can be shared by several threads.*/
+public final class BatchTimestampFormatter {
+    /**Timestamps per slice: enough to amortise a task, small enough to spread a batch over many cores.*/
+    private static final int SLICE = 1 << 14;
+
+    private final TimestampFormatter base;
+    private final DateTime.TimeFormat time;
+    private final DateTime.DateFormat date;
+    private final boolean timeFirst;
+    private final ForkJoinPool pool;
+
+    /**The output of one batch: value i is chars[offsets[i]..offsets[i+1]).*/
+    public static final class Result {
+        public final char[] chars;
+        /**One more than the number of timestamps, so that the last value's end is included.*/
+        public final int[] offsets;
+
+        private Result(char[] chars, int[] offsets) {
+            this.chars = chars;
+            this.offsets = offsets;
+        }
+
+        /**The number of formatted timestamps.*/
+        public int size() {
+            return offsets.length - 1;
+        }
+
+        /**Returns formatted timestamp i as a new String.*/
+        public String get(int i) {
+            return new String(chars, offsets[i], offsets[i+1] - offsets[i]);
+        }
+    }
+
+    /**Formats on the pool shared by all batch formatters and other bulk operations.
+     * @param timeFirst true for {@link DateTime#get2}'s "time on date" layout,
+     * false for {@link DateTime#get}'s "date time" layout*/
+    public BatchTimestampFormatter(TimestampFormatter base, DateTime.TimeFormat time, DateTime.DateFormat date,
+                                   boolean timeFirst) {
+        this(base, time, date, timeFirst, null);
+    }
+
+    /**Formats on the given pool.*/
+    public BatchTimestampFormatter(TimestampFormatter base, DateTime.TimeFormat time, DateTime.DateFormat date,
+                                   boolean timeFirst, ForkJoinPool pool) {
+        this.base = base;
+        this.time = time;
+        this.date = date;
+        this.timeFirst = timeFirst;
+        this.pool = pool;
+    }
+
+    /**Formats every timestamp into one new char[].*/
+    public Result format(long[] times) {
+        Slice[] slices = formatSlices(times);
+        int[] offsets = new int[times.length + 1];
+        int total = place(slices, offsets, 0);
+        char[] out = new char[total];
+        run(new Copy(slices, out, null, 0, slices.length), slices.length);
+        return new Result(out, offsets);
+    }
+
+    /**Formats every timestamp into dst as US-ASCII bytes, starting at its position, and advances the position
+     * past them. The buffer is left unchanged if they don't fit.
+     * @return the index in dst where each value starts, plus the index just past the last one
+     * @throws BufferOverflowException if dst hasn't enough room*/
+    public int[] format(long[] times, ByteBuffer dst) {
+        Slice[] slices = formatSlices(times);
+        int[] offsets = new int[times.length + 1];
+        int start = dst.position();
+        int total = place(slices, offsets, start);
+        if(total - start > dst.remaining()) {
+            throw new BufferOverflowException();
+        }
+        run(new Copy(slices, null, dst, 0, slices.length), slices.length);
+        dst.position(total);
+        return offsets;
+    }
+
+    //------------------------------------internals------------------------------------
+
+    /**One slice of the batch, formatted into its own buffer.*/
+    private static final class Slice {
+        final int from;
+        final int to;
+        char[] chars;
+        /**The end of each value within chars.*/
+        int[] ends;
+        /**Where this slice's chars go in the output.*/
+        int base;
+
+        Slice(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private Slice[] formatSlices(long[] times) {
+        Slice[] slices = new Slice[(times.length + SLICE - 1) / SLICE];
+        for(int i = 0; i < slices.length; i++) {
+            slices[i] = new Slice(i * SLICE, Math.min(times.length, (i+1) * SLICE));
+        }
+        run(new Format(times, slices, 0, slices.length), slices.length);
+        return slices;
+    }
+
+    /**Works out where each slice goes, fills in the offsets, and returns the end of the last one.*/
+    private static int place(Slice[] slices, int[] offsets, int start) {
+        long at = start;
+        for(Slice s : slices) {
+            if(at > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("the formatted batch would be over 2GB");
+            }
+            s.base = (int)at;
+            for(int i = s.from; i < s.to; i++) {
+                offsets[i] = (int)at + (i == s.from ? 0 : s.ends[i - s.from - 1]);
+            }
+            at += s.ends.length == 0 ? 0 : s.ends[s.ends.length - 1];
+        }
+        if(at > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("the formatted batch would be over 2GB");
+        }
+        offsets[offsets.length - 1] = (int)at;
+        return (int)at;
+    }
+
+    /**Runs a task over the given number of slices, on the pool unless there's only one.*/
+    private void run(RecursiveAction task, int slices) {
+        if(slices <= 1) {
+            task.invoke();
+        }
+        else {
+            pool().invoke(task);
+        }
+    }
+
+    private ForkJoinPool pool() {
+        if(pool != null) {
+            return pool;
+        }
+        return SharedPool.get();
+    }
+
+    private final class Format extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] times;
+        private final Slice[] slices;
+        private final int from;
+        private final int to;
+
+        Format(long[] times, Slice[] slices, int from, int to) {
+            this.times = times;
+            this.slices = slices;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Format(times, slices, from, mid), new Format(times, slices, mid, to));
+                return;
+            }
+            if(from == to) {
+                return;
+            }
+            Slice s = slices[from];
+            CachingTimestampFormatter formatter = new CachingTimestampFormatter(base, time, date, timeFirst);
+            char[] chars = new char[(s.to - s.from) * TimestampFormatter.MAX_LENGTH];
+            int[] ends = new int[s.to - s.from];
+            int at = 0;
+            for(int i = s.from; i < s.to; i++) {
+                at = formatter.format(times[i], chars, at);
+                ends[i - s.from] = at;
+            }
+            //trimmed, so the whole batch waiting to be copied takes about as much memory as the output
+            s.chars = Arrays.copyOf(chars, at);
+            s.ends = ends;
+        }
+    }
+
+    private static final class Copy extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Slice[] slices;
+        private final char[] chars;
+        private final ByteBuffer bytes;
+        private final int from;
+        private final int to;
+
+        Copy(Slice[] slices, char[] chars, ByteBuffer bytes, int from, int to) {
+            this.slices = slices;
+            this.chars = chars;
+            this.bytes = bytes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Copy(slices, chars, bytes, from, mid), new Copy(slices, chars, bytes, mid, to));
+                return;
+            }
+            if(from == to) {
+                return;
+            }
+            Slice s = slices[from];
+            int length = s.ends.length == 0 ? 0 : s.ends[s.ends.length - 1];
+            if(chars != null) {
+                System.arraycopy(s.chars, 0, chars, s.base, length);
+            }
+            else {
+                for(int i = 0; i < length; i++) {
+                    bytes.put(s.base + i, (byte)s.chars[i]);
+                }
+            }
+            //the slice's buffer is done with, so let it go before the rest of the batch finishes
+            s.chars = null;
+        }
+    }
+}
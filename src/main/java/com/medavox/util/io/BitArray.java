@@ -0,0 +1,321 @@
+package com.medavox.util.io;
+
+/**A fixed-size array of bits, stored 64 to a long, for bitmaps too big to handle a bit at a time.
+ * Bits are numbered the same way as in {@link Bytes}: bit 0 is the least significant bit of the first byte,
+ * so bit n lives in byte n/8, at position n%8 within it.
+ *
+ * Range operations take a half-open range [from, to), and work a whole word at a time,
+ * masking only the partial words at either end.
+ * Bulk logical operations and scans likewise touch each word once.
+ *
+ * An array can also be a read-only {@link #view view} over existing byte[] data, which is not copied:
+ * changes to the underlying bytes show through.
+ * Every mutating method on a view throws UnsupportedOperationException.
+ *
+ * Not thread-safe.*/
+public final class BitArray {
+    private static final long ALL = -1L;
+
+    private final long size;
+    /**The backing words, or null if this is a view.*/
+    private final long[] words;
+    private final byte[] bytes;
+    private final int bytesOff;
+    private final int bytesLen;
+
+    /**Creates an array of the given number of bits, all clear.*/
+    public BitArray(long size) {
+        if(size < 0) {throw new IllegalArgumentException("size must not be negative");}
+        if(size > (long)Integer.MAX_VALUE << 6) {
+            throw new IllegalArgumentException("size "+size+" is too large");
+        }
+        this.size = size;
+        this.words = new long[wordCount(size)];
+        this.bytes = null;
+        this.bytesOff = 0;
+        this.bytesLen = 0;
+    }
+
+    private BitArray(byte[] bytes, int off, int len) {
+        this.size = (long)len << 3;
+        this.words = null;
+        this.bytes = bytes;
+        this.bytesOff = off;
+        this.bytesLen = len;
+    }
+
+    /**Returns a read-only array over all of the given bytes, without copying them.*/
+    public static BitArray view(byte[] bytes) {
+        return new BitArray(bytes, 0, bytes.length);
+    }
+
+    /**Returns a read-only array over bytes[off..off+len), without copying them.
+     * Bit 0 of the view is the least significant bit of bytes[off].*/
+    public static BitArray view(byte[] bytes, int off, int len) {
+        if(off < 0 || len < 0 || off > bytes.length - len) {
+            throw new IndexOutOfBoundsException("range "+off+"+"+len+" is outside an array of "+bytes.length);
+        }
+        return new BitArray(bytes, off, len);
+    }
+
+    /**The number of bits in this array.*/
+    public long size() {
+        return size;
+    }
+
+    /**Whether this is a view over byte[] data, which cannot be modified through it.*/
+    public boolean isReadOnly() {
+        return words == null;
+    }
+
+    /**Returns a modifiable copy of this array, which works for views too.*/
+    public BitArray copy() {
+        BitArray out = new BitArray(size);
+        for(int i = 0; i < out.words.length; i++) {
+            out.words[i] = word(i);
+        }
+        return out;
+    }
+
+    /**Returns the bits as a new byte array of size()/8 bytes, rounded up, in {@link Bytes} bit order.*/
+    public byte[] toByteArray() {
+        byte[] out = new byte[(int)((size + 7) >>> 3)];
+        for(int i = 0; i < out.length; i++) {
+            out[i] = (byte)(word(i >>> 3) >>> ((i & 7) << 3));
+        }
+        return out;
+    }
+
+    //------------------------------------single bits------------------------------------
+
+    public boolean get(long bit) {
+        checkIndex(bit);
+        return (word((int)(bit >>> 6)) & (1L << bit)) != 0;
+    }
+
+    public void set(long bit) {
+        checkWritable();
+        checkIndex(bit);
+        words[(int)(bit >>> 6)] |= 1L << bit;
+    }
+
+    public void set(long bit, boolean value) {
+        if(value) {
+            set(bit);
+        }
+        else {
+            clear(bit);
+        }
+    }
+
+    public void clear(long bit) {
+        checkWritable();
+        checkIndex(bit);
+        words[(int)(bit >>> 6)] &= ~(1L << bit);
+    }
+
+    public void flip(long bit) {
+        checkWritable();
+        checkIndex(bit);
+        words[(int)(bit >>> 6)] ^= 1L << bit;
+    }
+
+    //------------------------------------ranges------------------------------------
+
+    /**Sets every bit in [from, to).*/
+    public void set(long from, long to) {
+        applyRange(from, to, SET);
+    }
+
+    /**Clears every bit in [from, to).*/
+    public void clear(long from, long to) {
+        applyRange(from, to, CLEAR);
+    }
+
+    /**Flips every bit in [from, to).*/
+    public void flip(long from, long to) {
+        applyRange(from, to, FLIP);
+    }
+
+    /**Clears every bit.*/
+    public void clear() {
+        checkWritable();
+        for(int i = 0; i < words.length; i++) {
+            words[i] = 0;
+        }
+    }
+
+    private static final int SET = 0;
+    private static final int CLEAR = 1;
+    private static final int FLIP = 2;
+
+    private void applyRange(long from, long to, int op) {
+        checkWritable();
+        checkRange(from, to);
+        if(from == to) {
+            return;
+        }
+        int first = (int)(from >>> 6);
+        int last = (int)((to - 1) >>> 6);
+        //shifts only use the bottom 6 bits, so these are the partial masks for the end words
+        long firstMask = ALL << from;
+        long lastMask = ALL >>> -to;
+        for(int i = first; i <= last; i++) {
+            long mask = ALL;
+            if(i == first) {
+                mask &= firstMask;
+            }
+            if(i == last) {
+                mask &= lastMask;
+            }
+            switch(op) {
+                case SET: words[i] |= mask; break;
+                case CLEAR: words[i] &= ~mask; break;
+                default: words[i] ^= mask; break;
+            }
+        }
+    }
+
+    //------------------------------------bulk logic------------------------------------
+
+    /**Clears every bit which is clear in other. Both arrays must be the same size.*/
+    public void and(BitArray other) {
+        checkSameSize(other);
+        for(int i = 0; i < words.length; i++) {
+            words[i] &= other.word(i);
+        }
+    }
+
+    /**Sets every bit which is set in other. Both arrays must be the same size.*/
+    public void or(BitArray other) {
+        checkSameSize(other);
+        for(int i = 0; i < words.length; i++) {
+            words[i] |= other.word(i);
+        }
+    }
+
+    /**Flips every bit which is set in other. Both arrays must be the same size.*/
+    public void xor(BitArray other) {
+        checkSameSize(other);
+        for(int i = 0; i < words.length; i++) {
+            words[i] ^= other.word(i);
+        }
+    }
+
+    /**Clears every bit which is set in other. Both arrays must be the same size.*/
+    public void andNot(BitArray other) {
+        checkSameSize(other);
+        for(int i = 0; i < words.length; i++) {
+            words[i] &= ~other.word(i);
+        }
+    }
+
+    //------------------------------------counting and scanning------------------------------------
+
+    /**The number of set bits.*/
+    public long cardinality() {
+        long count = 0;
+        int n = wordCount(size);
+        for(int i = 0; i < n; i++) {
+            count += Long.bitCount(word(i));
+        }
+        return count;
+    }
+
+    /**The number of set bits in [from, to).*/
+    public long cardinality(long from, long to) {
+        checkRange(from, to);
+        if(from == to) {
+            return 0;
+        }
+        int first = (int)(from >>> 6);
+        int last = (int)((to - 1) >>> 6);
+        if(first == last) {
+            return Long.bitCount(word(first) & (ALL << from) & (ALL >>> -to));
+        }
+        long count = Long.bitCount(word(first) & (ALL << from));
+        for(int i = first + 1; i < last; i++) {
+            count += Long.bitCount(word(i));
+        }
+        return count + Long.bitCount(word(last) & (ALL >>> -to));
+    }
+
+    /**Returns the index of the first set bit at or after from, or -1 if there is none.
+     * @param from any index from 0 to size() inclusive*/
+    public long nextSetBit(long from) {
+        checkRange(from, size);
+        int n = wordCount(size);
+        int i = (int)(from >>> 6);
+        if(i >= n) {
+            return -1;
+        }
+        long w = word(i) & (ALL << from);
+        while(w == 0) {
+            if(++i == n) {
+                return -1;
+            }
+            w = word(i);
+        }
+        return ((long)i << 6) + Long.numberOfTrailingZeros(w);
+    }
+
+    /**Returns the index of the first clear bit at or after from, or -1 if there is none.
+     * @param from any index from 0 to size() inclusive*/
+    public long nextClearBit(long from) {
+        checkRange(from, size);
+        int n = wordCount(size);
+        int i = (int)(from >>> 6);
+        if(i >= n) {
+            return -1;
+        }
+        long w = ~word(i) & (ALL << from);
+        while(w == 0) {
+            if(++i == n) {
+                return -1;
+            }
+            w = ~word(i);
+        }
+        long found = ((long)i << 6) + Long.numberOfTrailingZeros(w);
+        //the unused bits past the end of the last word are always clear, so don't report them
+        return found < size ? found : -1;
+    }
+
+    //------------------------------------internals------------------------------------
+
+    private static int wordCount(long bits) {
+        return (int)((bits + 63) >>> 6);
+    }
+
+    /**Word i of the array, wherever it is stored. Bits past size() are always 0.*/
+    private long word(int i) {
+        if(words != null) {
+            return words[i];
+        }
+        return Limbs.word(bytes, bytesOff, bytesLen, i << 3);
+    }
+
+    private void checkIndex(long bit) {
+        if(bit < 0 || bit >= size) {
+            throw new IndexOutOfBoundsException("bit "+bit+" is outside an array of "+size+" bits");
+        }
+    }
+
+    private void checkRange(long from, long to) {
+        if(from < 0 || from > to || to > size) {
+            throw new IndexOutOfBoundsException("range ["+from+", "+to+") is outside an array of "+size+" bits");
+        }
+    }
+
+    private void checkWritable() {
+        if(words == null) {
+            throw new UnsupportedOperationException("this BitArray is a read-only view");
+        }
+    }
+
+    private void checkSameSize(BitArray other) {
+        checkWritable();
+        if(other.size != size) {
+            throw new IllegalArgumentException("size mismatch: "+size+" bits and "+other.size+" bits");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.medavox.util.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**A fixed-size {@link SeenSet} which may wrongly report an unseen string as seen, but never the reverse.
+ * It is a Bloom filter: its memory use is set when it is created, and doesn't depend on how long the strings are,
+ * or on how many are added. The false-positive rate rises past the requested one once more strings than
+ * expected have been added.
+ *
+ * Bits are set with compare-and-swap, so it is lock-free.
+ * Two threads adding the same new string at the same moment may both be told it was new.*/
+public class BloomSeenSet implements SeenSet
+{
+    /**The bytes taken besides the bits themselves: this object, its counter and the array's header.*/
+    static final int OVERHEAD_BYTES = 64;
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashes;
+    private final AtomicLong added = new AtomicLong();
+
+    /**@param expectedInsertions how many distinct strings the filter should hold at the given rate
+     * @param falsePositiveRate the chance that an unseen string is reported as seen, once full; between 0 and 1*/
+    public BloomSeenSet(long expectedInsertions, double falsePositiveRate)
+    {
+        this(optimalBits(expectedInsertions, falsePositiveRate), expectedInsertions);
+    }
+
+    private BloomSeenSet(long bitCount, long expectedInsertions)
+    {
+        long words = Math.max(1, (bitCount + 63) >>> 6);
+        if(words > Integer.MAX_VALUE) {throw new IllegalArgumentException("filter would need "+bitCount+" bits");}
+        this.bits = new AtomicLongArray((int)words);
+        this.bitCount = words << 6;
+        this.hashes = Math.max(1, (int)Math.round((double)this.bitCount / Math.max(1, expectedInsertions) * LN2));
+    }
+
+    /**Returns the most accurate filter for expectedInsertions strings whose {@link #memoryFootprintBytes}
+     * is no more than the given number of bytes, fixed overhead included.
+     * @throws IllegalArgumentException if the budget has no room for a single 64-bit word past the overhead*/
+    public static BloomSeenSet withBudget(long budgetBytes, long expectedInsertions)
+    {
+        if(budgetBytes < OVERHEAD_BYTES + 8) {
+            throw new IllegalArgumentException("budgetBytes must be at least "+(OVERHEAD_BYTES + 8));
+        }
+        if(expectedInsertions < 1) {throw new IllegalArgumentException("expectedInsertions must be at least 1");}
+        //whole words only, as the constructor would round a part word up, past the budget
+        return new BloomSeenSet((budgetBytes - OVERHEAD_BYTES) / 8 * 64, expectedInsertions);
+    }
+
+    private static long optimalBits(long n, double p)
+    {
+        if(n < 1) {throw new IllegalArgumentException("expectedInsertions must be at least 1");}
+        if(!(p > 0 && p < 1)) {throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");}
+        return (long)Math.ceil(-n * Math.log(p) / (LN2 * LN2));
+    }
+
+    @Override
+    public boolean addIfAbsent(String s)
+    {
+        long h1 = hash(s, 0x9E3779B97F4A7C15L);
+        long h2 = hash(s, 0xC2B2AE3D27D4EB4FL) | 1;
+        boolean changed = false;
+        for(int i = 0; i < hashes; i++)
+        {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            int word = (int)(bit >>> 6);
+            long mask = 1L << bit;
+            while(true)
+            {
+                long old = bits.get(word);
+                if((old & mask) != 0)
+                {
+                    break;
+                }
+                if(bits.compareAndSet(word, old, old | mask))
+                {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        if(changed)
+        {
+            added.incrementAndGet();
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean mightContain(String s)
+    {
+        long h1 = hash(s, 0x9E3779B97F4A7C15L);
+        long h2 = hash(s, 0xC2B2AE3D27D4EB4FL) | 1;
+        for(int i = 0; i < hashes; i++)
+        {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            if((bits.get((int)(bit >>> 6)) & (1L << bit)) == 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**The number of strings which were reported as new when added.
+     * This undercounts by the number of false positives.*/
+    @Override
+    public long size()
+    {
+        return added.get();
+    }
+
+    @Override
+    public long memoryFootprintBytes()
+    {
+        return (bitCount >>> 3) + OVERHEAD_BYTES;
+    }
+
+    /**The number of hash functions, which is fixed by the size and the expected number of insertions.*/
+    public int hashCount()
+    {
+        return hashes;
+    }
+
+    /**The chance of a false positive now, estimated from how many bits are set.*/
+    public double currentFalsePositiveRate()
+    {
+        long set = 0;
+        for(int i = 0; i < bits.length(); i++)
+        {
+            set += Long.bitCount(bits.get(i));
+        }
+        return Math.pow((double)set / bitCount, hashes);
+    }
+
+    /**A 64-bit hash of s's chars, with the seed's bits mixed through every step.*/
+    private static long hash(String s, long seed)
+    {
+        long h = seed ^ s.length();
+        for(int i = 0; i < s.length(); i++)
+        {
+            h = (h ^ s.charAt(i)) * 0x100000001B3L;
+            h ^= h >>> 29;
+        }
+        //the finaliser from MurmurHash3, so nearby strings spread over the whole range
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
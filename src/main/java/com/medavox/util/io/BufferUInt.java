@@ -0,0 +1,299 @@
+package com.medavox.util.io;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**The {@link BytesAsUInt} layout, read and written in place inside a {@link ByteBuffer}.
+ * A uint here is {@code width} bytes starting at an absolute {@code offset} in the buffer,
+ * least significant byte first, whatever the buffer's own {@link ByteBuffer#order()} is.
+ *
+ * Every method uses absolute gets and puts,
+ * so the buffer's position, limit and mark are never touched, and nothing is copied onto the heap.
+ * Heap, direct and memory-mapped buffers all work,
+ * so fixed-width counters in a mapped file can be updated where they sit.
+ *
+ * Arithmetic works 8 bytes at a time and wraps around at {@code width} bytes, like
+ * {@link BytesAsUInt.Overflow#WRAP}; each method reports whether it wrapped.
+ * Operand bytes at or above {@code width} are ignored.
+ * A destination range may be the same as its source range, but must not partly overlap it.*/
+public abstract class BufferUInt {
+
+    /**Reads the uint at buf[offset..offset+width) as an unsigned 64-bit value.
+     * @throws NumberFormatException if the value is 2^64 or more*/
+    public static long getUnsignedLong(ByteBuffer buf, int offset, int width) throws NumberFormatException {
+        checkWidth(width);
+        if(width > 8 && anyNonZero(buf, offset + 8, width - 8)) {
+            throw new NumberFormatException("value at offset "+offset+" is too high to store in 64 bits");
+        }
+        return word(buf, offset, width, 0);
+    }
+
+    /**Reads the uint at buf[offset..offset+width) as a long.
+     * @throws NumberFormatException if the value is greater than Long.MAX_VALUE*/
+    public static long getLong(ByteBuffer buf, int offset, int width) throws NumberFormatException {
+        long v = getUnsignedLong(buf, offset, width);
+        if(v < 0) {
+            throw new NumberFormatException("value at offset "+offset+" is too high to store in a long");
+        }
+        return v;
+    }
+
+    /**Reads the uint at buf[offset..offset+width) as an int.
+     * @throws NumberFormatException if the value is greater than Integer.MAX_VALUE*/
+    public static int getInt(ByteBuffer buf, int offset, int width) throws NumberFormatException {
+        long v = getUnsignedLong(buf, offset, width);
+        if(v < 0 || v > Integer.MAX_VALUE) {
+            throw new NumberFormatException("value at offset "+offset+" is too high to store in an int");
+        }
+        return (int)v;
+    }
+
+    /**Writes the unsigned 64-bit value v as a uint at buf[offset..offset+width).
+     * Bytes above the 8th are zero-filled.
+     * @throws NumberFormatException if v doesn't fit in {@code width} bytes*/
+    public static void putUnsignedLong(ByteBuffer buf, int offset, int width, long v) throws NumberFormatException {
+        checkWidth(width);
+        if(width < 8 && (v >>> (width << 3)) != 0) {
+            throw new NumberFormatException("value "+Long.toHexString(v)+" doesn't fit in "+width+" bytes");
+        }
+        putWord(buf, offset, width, 0, v);
+        for(int i = 8; i < width; i++) {
+            buf.put(offset + i, (byte)0);
+        }
+    }
+
+    /**Reads the uint at buf[offset..offset+width) as a (non-negative) BigInteger.*/
+    public static BigInteger getBigInteger(ByteBuffer buf, int offset, int width) {
+        checkWidth(width);
+        byte[] bigEndian = new byte[width];
+        for(int i = 0; i < width; i++) {
+            bigEndian[width - 1 - i] = buf.get(offset + i);
+        }
+        return new BigInteger(1, bigEndian);
+    }
+
+    /**Writes v as a uint at buf[offset..offset+width).
+     * @throws NumberFormatException if v is negative, or doesn't fit in {@code width} bytes*/
+    public static void putBigInteger(ByteBuffer buf, int offset, int width, BigInteger v)
+            throws NumberFormatException {
+        checkWidth(width);
+        if(v.signum() < 0) {
+            throw new NumberFormatException("Argument cannot be < 0. This data type is unsigned!");
+        }
+        if(v.bitLength() > width * 8) {
+            throw new NumberFormatException("value doesn't fit in "+width+" bytes");
+        }
+        byte[] bigEndian = v.toByteArray();
+        for(int i = 0; i < width; i++) {
+            int k = bigEndian.length - 1 - i;
+            buf.put(offset + i, k >= 0 ? bigEndian[k] : 0);
+        }
+    }
+
+    /**buf[offset..offset+width) += v, where v is an unsigned 64-bit value.
+     * @return the carry out of the top byte: 1 if the sum wrapped around, 0 otherwise*/
+    public static int add(ByteBuffer buf, int offset, int width, long v) {
+        checkWidth(width);
+        int carry = addWord(buf, offset, width, 0, v, 0);
+        for(int i = 8; carry != 0 && i < width; i += 8) {
+            carry = addWord(buf, offset, width, i, 0, carry);
+        }
+        return carry;
+    }
+
+    /**buf[offset..offset+width) += the uint in operand.
+     * @return the carry out of the top byte: 1 if the sum wrapped around, 0 otherwise*/
+    public static int add(ByteBuffer buf, int offset, int width, byte[] operand) {
+        checkWidth(width);
+        int carry = 0;
+        for(int i = 0; i < width; i += 8) {
+            carry = addWord(buf, offset, width, i, Limbs.word(operand, 0, operand.length, i), carry);
+        }
+        return carry;
+    }
+
+    /**dst[dstOffset..dstOffset+width) += src[srcOffset..srcOffset+srcWidth).
+     * dst and src may be the same buffer.
+     * @return the carry out of the top byte: 1 if the sum wrapped around, 0 otherwise*/
+    public static int add(ByteBuffer dst, int dstOffset, int width, ByteBuffer src, int srcOffset, int srcWidth) {
+        checkWidth(width);
+        int carry = 0;
+        for(int i = 0; i < width; i += 8) {
+            carry = addWord(dst, dstOffset, width, i, word(src, srcOffset, srcWidth, i), carry);
+        }
+        return carry;
+    }
+
+    /**buf[offset..offset+width) -= v, where v is an unsigned 64-bit value.
+     * @return the borrow out of the top byte: 1 if the difference wrapped around below zero, 0 otherwise*/
+    public static int subtract(ByteBuffer buf, int offset, int width, long v) {
+        checkWidth(width);
+        int borrow = subtractWord(buf, offset, width, 0, v, 0);
+        for(int i = 8; borrow != 0 && i < width; i += 8) {
+            borrow = subtractWord(buf, offset, width, i, 0, borrow);
+        }
+        return borrow;
+    }
+
+    /**buf[offset..offset+width) -= the uint in operand.
+     * @return the borrow out of the top byte: 1 if the difference wrapped around below zero, 0 otherwise*/
+    public static int subtract(ByteBuffer buf, int offset, int width, byte[] operand) {
+        checkWidth(width);
+        int borrow = 0;
+        for(int i = 0; i < width; i += 8) {
+            borrow = subtractWord(buf, offset, width, i, Limbs.word(operand, 0, operand.length, i), borrow);
+        }
+        return borrow;
+    }
+
+    /**dst[dstOffset..dstOffset+width) -= src[srcOffset..srcOffset+srcWidth).
+     * dst and src may be the same buffer.
+     * @return the borrow out of the top byte: 1 if the difference wrapped around below zero, 0 otherwise*/
+    public static int subtract(ByteBuffer dst, int dstOffset, int width,
+                               ByteBuffer src, int srcOffset, int srcWidth) {
+        checkWidth(width);
+        int borrow = 0;
+        for(int i = 0; i < width; i += 8) {
+            borrow = subtractWord(dst, dstOffset, width, i, word(src, srcOffset, srcWidth, i), borrow);
+        }
+        return borrow;
+    }
+
+    /**Adds one to the uint at buf[offset..offset+width).
+     * @return true if it wrapped around from its maximum value to zero*/
+    public static boolean increment(ByteBuffer buf, int offset, int width) {
+        return add(buf, offset, width, 1L) != 0;
+    }
+
+    /**Takes one from the uint at buf[offset..offset+width).
+     * @return true if it wrapped around from zero to its maximum value*/
+    public static boolean decrement(ByteBuffer buf, int offset, int width) {
+        return subtract(buf, offset, width, 1L) != 0;
+    }
+
+    /**Compares the uints at a[aOffset..aOffset+aWidth) and b[bOffset..bOffset+bWidth), 8 bytes at a time.
+     * Missing high bytes of the narrower one count as zero.
+     * @return a negative number, zero or a positive number as a is less than, equal to or greater than b*/
+    public static int compare(ByteBuffer a, int aOffset, int aWidth, ByteBuffer b, int bOffset, int bWidth) {
+        checkWidth(aWidth);
+        checkWidth(bWidth);
+        for(int i = (Math.max(aWidth, bWidth) - 1) & ~7; i >= 0; i -= 8) {
+            long x = word(a, aOffset, aWidth, i);
+            long y = word(b, bOffset, bWidth, i);
+            if(x != y) {
+                return Limbs.unsignedLess(x, y) ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**Compares the uint at a[aOffset..aOffset+aWidth) with the uint in b, 8 bytes at a time.
+     * Missing high bytes of the narrower one count as zero.
+     * @return a negative number, zero or a positive number as a is less than, equal to or greater than b*/
+    public static int compare(ByteBuffer a, int aOffset, int aWidth, byte[] b) {
+        checkWidth(aWidth);
+        for(int i = (Math.max(aWidth, b.length) - 1) & ~7; i >= 0; i -= 8) {
+            long x = word(a, aOffset, aWidth, i);
+            long y = Limbs.word(b, 0, b.length, i);
+            if(x != y) {
+                return Limbs.unsignedLess(x, y) ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**Returns true if every byte of the uint at buf[offset..offset+width) is zero.*/
+    public static boolean isZero(ByteBuffer buf, int offset, int width) {
+        checkWidth(width);
+        return !anyNonZero(buf, offset, width);
+    }
+
+    /**Adds y and a carry to the word at byte i of the uint at buf[off..off+len).
+     * @return the carry out of that word, or out of the top of the uint if the word is the partial top one*/
+    private static int addWord(ByteBuffer buf, int off, int len, int i, long y, int carry) {
+        long x = word(buf, off, len, i);
+        int bytes = len - i;
+        if(bytes >= 8) {
+            long s = x + y + carry;
+            putLong(buf, off + i, s);
+            //with a carry in, s == x means we wrapped all the way round
+            return (carry == 0 ? Limbs.unsignedLess(s, x) : !Limbs.unsignedLess(x, s)) ? 1 : 0;
+        }
+        //a partial word: both sides fit in 56 bits, so the carry is just the bit above them
+        long s = x + (y & ((1L << (bytes << 3)) - 1)) + carry;
+        putWord(buf, off, len, i, s);
+        return (int)(s >>> (bytes << 3));
+    }
+
+    /**Subtracts y and a borrow from the word at byte i of the uint at buf[off..off+len).
+     * @return the borrow out of that word*/
+    private static int subtractWord(ByteBuffer buf, int off, int len, int i, long y, int borrow) {
+        long x = word(buf, off, len, i);
+        int bytes = len - i;
+        if(bytes < 8) {
+            y &= (1L << (bytes << 3)) - 1;
+        }
+        long d = x - y - borrow;
+        putWord(buf, off, len, i, d);
+        return (borrow == 0 ? Limbs.unsignedLess(x, y) : !Limbs.unsignedLess(y, x)) ? 1 : 0;
+    }
+
+    //-------------------------------word access-------------------------------
+
+    /**Reads 8 bytes at buf[off] as a little-endian long, whatever the buffer's byte order.*/
+    static long getLong(ByteBuffer buf, int off) {
+        long v = buf.getLong(off);
+        return buf.order() == ByteOrder.LITTLE_ENDIAN ? v : Long.reverseBytes(v);
+    }
+
+    /**Writes v as 8 little-endian bytes at buf[off], whatever the buffer's byte order.*/
+    static void putLong(ByteBuffer buf, int off, long v) {
+        buf.putLong(off, buf.order() == ByteOrder.LITTLE_ENDIAN ? v : Long.reverseBytes(v));
+    }
+
+    /**Reads the 8-byte word starting at byte {@code i} of the uint at buf[off..off+len),
+     * zero-extending past the end of the uint.*/
+    static long word(ByteBuffer buf, int off, int len, int i) {
+        if(i + 8 <= len) {
+            return getLong(buf, off + i);
+        }
+        long out = 0;
+        for(int k = len - 1; k >= i; k--) {
+            out = (out << 8) | (buf.get(off + k) & 0xFFL);
+        }
+        return out;
+    }
+
+    /**Writes the 8-byte word v at byte {@code i} of the uint at buf[off..off+len),
+     * dropping any bytes that would land past its end.*/
+    static void putWord(ByteBuffer buf, int off, int len, int i, long v) {
+        if(i + 8 <= len) {
+            putLong(buf, off + i, v);
+            return;
+        }
+        for(int k = i; k < len; k++) {
+            buf.put(off + k, (byte)v);
+            v >>>= 8;
+        }
+    }
+
+    static boolean anyNonZero(ByteBuffer buf, int off, int len) {
+        int i = 0;
+        for(; i + 8 <= len; i += 8) {
+            if(buf.getLong(off + i) != 0) {
+                return true;
+            }
+        }
+        for(; i < len; i++) {
+            if(buf.get(off + i) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static void checkWidth(int width) {
+        if(width < 1) {throw new IllegalArgumentException("width must be at least 1");}
+    }
+}
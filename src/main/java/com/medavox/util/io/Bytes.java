@@ -36,49 +36,86 @@ public class Bytes
         return (byte)(setter & settee);
     }
     
-    /**Based on code from https://stackoverflow.com/questions/9655181*/
+    /**Returns each byte as two uppercase hex digits followed by a space, "<null>" for null,
+     * or "<empty>" for an empty array.
+     * Use a {@link HexCodec} directly to choose the format, or to avoid allocating a String.*/
     public static String bytesToHex(byte[] bytes) {
-        char[] hexArray = "0123456789ABCDEF".toCharArray();
         if(bytes == null ) {
             return "<null>";
         }
         if(bytes.length == 0) {
             return "<empty>";
         }
-        char[] hexChars = new char[bytes.length * 3];
-        for ( int j = 0; j < bytes.length; j++ ) {
-            int v = bytes[j] & 0xFF;
-            hexChars[j * 3] = hexArray[v >>> 4];
-            hexChars[j * 3 + 1] = hexArray[v & 0x0F];
-            hexChars[j * 3 + 2] = ' ';
-        }
-        return new String(hexChars);
+        return HexCodec.SPACED_UPPER.encode(bytes);
     }
     
-    /**Calculates the number of full 8-bit bytes that can be stored in a sequence of symbols.
+    /**Calculates the number of full 8-bit bytes that can be stored in a sequence of symbols:
+     * the largest k with 256^k <= uniqueSymbols^sequenceLength.
+     * Exact for any arguments. When uniqueSymbols is a power of two the answer is worked out in integers;
+     * otherwise in closed form (sequenceLength * log256(uniqueSymbols)), only falling back to exact
+     * BigInteger powers when the answer lands too close to a whole number to trust.
      * @param sequenceLength the length of the sequence 
      * @param uniqueSymbols the number of possible symbols each symbol could be
      * @return the number of bytes which could be stored in the sequence*/
     public static int computeBytesStorable(int sequenceLength, int uniqueSymbols) {
-        //System.out.println("chars:"+CHARS);
+        if(sequenceLength < 0) {throw new IllegalArgumentException("sequenceLength must not be negative");}
+        if(uniqueSymbols < 1) {throw new IllegalArgumentException("uniqueSymbols must be at least 1");}
+        if(Integer.bitCount(uniqueSymbols) == 1) {
+            //2^(bits * sequenceLength) holds (bits * sequenceLength) / 8 whole bytes
+            return (int)((long)sequenceLength * Integer.numberOfTrailingZeros(uniqueSymbols) / 8);
+        }
+        double exact = sequenceLength * (Math.log(uniqueSymbols) / Math.log(256));
+        int bytesThatFit = (int)Math.floor(exact);
+        double tolerance = tolerance(exact);
+        if(exact - bytesThatFit > tolerance && Math.ceil(exact) - exact > tolerance) {
+            return bytesThatFit;
+        }
+        //too close to call in floating point: check the neighbours exactly
         BigInteger combosOfChars = BigInteger.valueOf(uniqueSymbols).pow(sequenceLength);
         BigInteger n256 = BigInteger.valueOf(256);
-        //combinationsOf140Bytes = combinationsOf140Bytes.pow(140);
-        int bytesThatFit = -1;
-        for(int i = 1; i < Integer.MAX_VALUE; i++) {
-            BigInteger combosOfNBytes = n256.pow(i);
-            if(combosOfNBytes.compareTo(combosOfChars) > 0) {
-                bytesThatFit = i-1;
-                //the previous power was the last & highest one to be less, therefore fit
-                System.out.println("number of full bytes that can be expressed by "+sequenceLength
-                        +" consecutive symbols that have "+uniqueSymbols+" possible values: "+bytesThatFit);
-                System.out.println("256^"+bytesThatFit+": "+combosOfNBytes);
-                System.out.println(uniqueSymbols+"^"+sequenceLength+": "+combosOfChars);
-
-                System.out.println("diff:    "+combosOfChars.subtract(combosOfNBytes));
-                break;
-            }
+        while(n256.pow(bytesThatFit + 1).compareTo(combosOfChars) <= 0) {
+            bytesThatFit++;
+        }
+        while(bytesThatFit > 0 && n256.pow(bytesThatFit).compareTo(combosOfChars) > 0) {
+            bytesThatFit--;
         }
         return bytesThatFit;
     }
+
+    /**The inverse of {@link #computeBytesStorable}:
+     * calculates the number of symbols needed to store a sequence of bytes:
+     * the smallest s with uniqueSymbols^s >= 256^byteCount. Exact for any arguments, in the same way.
+     * @param byteCount the number of bytes to store
+     * @param uniqueSymbols the number of possible symbols each symbol could be; at least 2
+     * @return the smallest sequence length which can hold any value of that many bytes*/
+    public static int computeSymbolsNeeded(int byteCount, int uniqueSymbols) {
+        if(byteCount < 0) {throw new IllegalArgumentException("byteCount must not be negative");}
+        if(uniqueSymbols < 2) {throw new IllegalArgumentException("uniqueSymbols must be at least 2");}
+        if(Integer.bitCount(uniqueSymbols) == 1) {
+            int bits = Integer.numberOfTrailingZeros(uniqueSymbols);
+            return (int)(((long)byteCount * 8 + bits - 1) / bits);
+        }
+        double exact = byteCount * (Math.log(256) / Math.log(uniqueSymbols));
+        int symbols = (int)Math.ceil(exact);
+        double tolerance = tolerance(exact);
+        if(exact - Math.floor(exact) > tolerance && symbols - exact > tolerance) {
+            return symbols;
+        }
+        BigInteger combosOfBytes = BigInteger.valueOf(256).pow(byteCount);
+        BigInteger n = BigInteger.valueOf(uniqueSymbols);
+        while(n.pow(symbols).compareTo(combosOfBytes) < 0) {
+            symbols++;
+        }
+        while(symbols > 0 && n.pow(symbols - 1).compareTo(combosOfBytes) >= 0) {
+            symbols--;
+        }
+        return symbols;
+    }
+
+    /**How far a product of a count and a ratio of logs may be from the true value.
+     * The logs are each within an ulp or so, and the multiplication scales that error up with the count,
+     * so the margin must grow with the magnitude rather than being a fixed amount.*/
+    private static double tolerance(double product) {
+        return 1e-9 + Math.abs(product) * 1e-12;
+    }
 }
@@ -1,6 +1,6 @@
 package com.medavox.util.io;
 
-import java.util.Arrays;
+import java.math.BigInteger;
 
 /**Allows you to perform basic arithmetic operations on arbitrary-length
  * byte arrays as if they were unsigned integers.
@@ -15,112 +15,160 @@ import java.util.Arrays;
  * ALSO, this class does nothing to guard against null bytes. So be careful.
  * todo: improve class performance*/
 /*
- * Todo:IT TURNS OUT that when we modify the byte arrays passed to us in each method,
- * the array we're modifying is the same as the underlying one: the exact same array in the method call.
- * so doing "increment(a)" is wrongly the same as "a = increment(a)". b is also affected when used.
+ * NOTE: increment(a) and decrement(a) modify the array they are passed, and return that same array:
+ * so doing "increment(a)" is the same as "a = increment(a)".
  * Also, doing "byte[] c = a" means c still points to the same backing data, and is also modified.
- * So all these methods are wrong: they need to copy the array contents before modifying them in-place*/
+ * add, subtract, multiply, divRem, divide and mod never modify their arguments: they return new arrays.
+ * To avoid allocating at all, use the overloads that write into a caller-supplied array,
+ * or keep a running total in a UIntAccumulator.*/
 public abstract class BytesAsUInt {
+    /**What to do when the result of an addition does not fit in the output width.*/
+    public enum Overflow {
+        /**Keep the width of the first operand, and silently wrap around past its maximum value.*/
+        WRAP,
+        /**Widen the result by as many bytes as it needs (at most one), the way {@link #add_newImpl} does.*/
+        WIDEN
+    }
+
     /**Adds a and b, and returns an array of the same size of a.
-     * Overflows 0 or more times.*/
+     * Overflows 0 or more times.
+     * Neither argument is modified.*/
     public static byte[] add(byte[] a, byte[] b) {
+        return add(a, b, Overflow.WRAP);
+    }
 
-        //byte[] result = new byte[Math.max(a.length, b.length)];
-        while(!equalsZero(b)) {
-            increment(a);
-            decrement(b);
+    /**Adds a and b, 8 bytes at a time, and returns the sum in a new array.
+     * Neither argument is modified.
+     * @param overflow {@link Overflow#WRAP} returns an array the size of a;
+     * {@link Overflow#WIDEN} returns an array at least as large as the larger of the two arrays,
+     * which is large enough to hold the result without overflow.*/
+    public static byte[] add(byte[] a, byte[] b, Overflow overflow) {
+        int width = overflow == Overflow.WRAP ? a.length : Math.max(a.length, b.length);
+        byte[] result = new byte[width];
+        int carry = Limbs.add(a, 0, a.length, b, 0, b.length, result, 0, width);
+        if(carry != 0 && overflow == Overflow.WIDEN) {
+            result = growArrayByOne(result);
+            result[width] = (byte)carry;
         }
-        return a;
+        return result;
+    }
+
+    /**Adds a and b, writing the sum into dst[dstOff..dstOff+width) without allocating anything.
+     * dst may be a or b itself, for an in-place add, but only with dstOff 0, so that the arrays line up;
+     * no other overlap is allowed.
+     * Operand bytes at or above {@code width} are ignored.
+     * @return the carry out of the top byte: 1 if the sum wrapped around, 0 otherwise
+     * @throws IllegalArgumentException if dst is a or b, and dstOff isn't 0*/
+    public static int add(byte[] a, byte[] b, byte[] dst, int dstOff, int width) {
+        checkInPlace(a, b, dst, dstOff);
+        return Limbs.add(a, 0, a.length, b, 0, b.length, dst, dstOff, width);
     }
 
     /**Adds a and b, and returns an array of the same size of a.
      * The returned array is at least as large as the larger of the two arrays,
-     * and is large enough to hold the result without overflow.*/
+     * and is large enough to hold the result without overflow.
+     * Equivalent to {@code add(a1, b1, Overflow.WIDEN)}.*/
     public static byte[] add_newImpl(byte[] a1, byte[] b1) {
-        byte[] a = Arrays.copyOf(a1, a1.length);
-        byte[] b = Arrays.copyOf(b1, b1.length);
-        //guarantee that b is a shorter-or-equal-length array
-        if(a.length < b.length) {
-            //if b is longer than a, swap them
-            byte[] tmp = a;
-            a = b;
-            b = tmp;
-        }
-        //per-byte outer loop
-        for(int i = 0; i < b.length; i++) {
-            int carry = b[i] & 0xFF;
-            int j = i;
-            while (carry != 0) {
-                //zip together the 2 bytes, and pass their carry to the next loop
-                if(j >= a.length) {
-                    //grow array
-                    a = growArrayByOne(a);
-                }
-                int aByte = a[j] & 0xFF;
-                int result = aByte+carry;
-                a[j] = (byte)(result % 256);
-                carry = result / 256;
-                j++;
-            }
-        }
-        return a;
+        return add(a1, b1, Overflow.WIDEN);
     }
 
     
-    /**Subtracts b from a, and returns an array the size of a.
-     * Underflows 0 or more times.*/
+    /**Subtracts b from a, 8 bytes at a time, and returns a new array the size of a.
+     * Underflows 0 or more times.
+     * Neither argument is modified.*/
     public static byte[] subtract(byte[] a, byte[] b) {
-        while(!equalsZero(b)) {
-            decrement(a);
-            decrement(b);
-        }
-        return a;
+        byte[] result = new byte[a.length];
+        Limbs.subtract(a, 0, a.length, b, 0, b.length, result, 0, a.length);
+        return result;
+    }
+
+    /**Subtracts b from a, writing the difference into dst[dstOff..dstOff+width) without allocating anything.
+     * dst may be a or b itself, for an in-place subtract, but only with dstOff 0, so that the arrays line up;
+     * no other overlap is allowed.
+     * Operand bytes at or above {@code width} are ignored.
+     * @return the borrow out of the top byte: 1 if the difference wrapped around below zero, 0 otherwise
+     * @throws IllegalArgumentException if dst is a or b, and dstOff isn't 0*/
+    public static int subtract(byte[] a, byte[] b, byte[] dst, int dstOff, int width) {
+        checkInPlace(a, b, dst, dstOff);
+        return Limbs.subtract(a, 0, a.length, b, 0, b.length, dst, dstOff, width);
     }
     
+    /**A dst which is also an operand must start where the operand does: shifted, each word written
+     * would overwrite operand bytes not yet read.*/
+    private static void checkInPlace(byte[] a, byte[] b, byte[] dst, int dstOff) {
+        if(dstOff != 0 && (dst == a || dst == b)) {
+            throw new IllegalArgumentException("dst is also an operand, so dstOff must be 0, not "+dstOff);
+        }
+    }
+
+    /**Multiplies a by b, and returns a new array of a.length+b.length bytes,
+     * which is always wide enough to hold the full product.
+     * Works on 32-bit limbs: schoolbook multiplication for narrow operands,
+     * switching to Karatsuba once both operands are 32 limbs (128 bytes) or wider.
+     * Neither argument is modified.*/
     public static byte[] multiply(byte[] a, byte[] b) {
-        while(!equalsZero(b)) {
-            a = add(a, a);
-            decrement(b);
+        int[] x = Limbs.toLimbs(a, 0, a.length);
+        int[] y = Limbs.toLimbs(b, 0, b.length);
+        int[] product = new int[x.length + y.length];
+        Limbs.multiply(x, 0, x.length, y, 0, y.length, product, 0);
+        byte[] result = new byte[a.length + b.length];
+        Limbs.fromLimbs(product, 0, product.length, result, 0, result.length);
+        return result;
+    }
+    /**The quotient and remainder of a division, as returned by {@link #divRem}.*/
+    public static final class DivisionResult {
+        /**a / b, the same width as a.*/
+        public final byte[] quotient;
+        /**a % b, the same width as b.*/
+        public final byte[] remainder;
+
+        private DivisionResult(byte[] quotient, byte[] remainder) {
+            this.quotient = quotient;
+            this.remainder = remainder;
         }
-        return a;
     }
-    /**return the result of a/b*/
+
+    /**Divides a by b, returning both the quotient and the remainder from a single pass of long division.
+     * Divisors that fit in 32 bits take a fast path; wider ones use Knuth's Algorithm D.
+     * Neither argument is modified.
+     * @return the quotient, as wide as a, and the remainder, as wide as b
+     * @throws ArithmeticException if b is zero*/
+    public static DivisionResult divRem(byte[] a, byte[] b) throws ArithmeticException {
+        int[] u = Limbs.toLimbs(a, 0, a.length);
+        int[] v = Limbs.toLimbs(b, 0, b.length);
+        int[] q = new int[u.length];
+        int[] r = new int[v.length];
+        Limbs.divide(u, u.length, v, v.length, q, r);
+
+        byte[] quotient = new byte[a.length];
+        byte[] remainder = new byte[b.length];
+        Limbs.fromLimbs(q, 0, q.length, quotient, 0, quotient.length);
+        Limbs.fromLimbs(r, 0, r.length, remainder, 0, remainder.length);
+        return new DivisionResult(quotient, remainder);
+    }
+
+    /**return the result of a/b, in a new array the same width as a.
+     * If you also need a % b, call {@link #divRem} instead, and get both for the price of one.
+     * @throws ArithmeticException if b is zero*/
     public static byte[] divide(byte[] a, byte[] b) {
-        byte[] result = newZeroedBytes(a.length);
-        while(greaterThan(a, b)) {
-            result = increment(result);
-            a = subtract(a, b);
-        }
-        return result;
+        return divRem(a, b).quotient;
     }
-    /**return the result of a % b*/
+    /**return the result of a % b, in a new array the same width as b.
+     * If you also need a / b, call {@link #divRem} instead, and get both for the price of one.
+     * @throws ArithmeticException if b is zero*/
     public static byte[] mod(byte[] a, byte[] b) {
-        byte[] result = newZeroedBytes(a.length);
-        while(greaterThan(a, b)) {
-            result = increment(result);
-            a = subtract(a, b);
-        }
-        return a;
+        return divRem(a, b).remainder;
     }
     /**Decrement the passed byte[]-uint. NOTE:
      * just like the rest of java, 
      * this method does nothing to guard against underflows!*/
     public static byte[] decrement(byte[] a) throws IllegalArgumentException {
-        //moving up from LSB, set all F bits to T until we find a T bit
-        //then we set that to F, then return the resulting array
-        for(int i = 0; i < a.length * 8; i++) {
-            if(Bytes.testBit(i % 8, a[i/8])) {
-                //we've discovered a bit which is 1
-                //set it to zero, then exit
-                byte newByte = Bytes.unsetBit(i % 8, a[i/8]);
-                a[i/8] = newByte;
+        //moving up from LSB, turn every 0x00 byte into 0xFF until we find a non-zero byte,
+        //then take one off that, and return the resulting array
+        for(int i = 0; i < a.length; i++) {
+            if(a[i]-- != 0) {
                 break;
             }
-            else {//the first (or another) zero bit
-                //set it to 1, then keep moving up
-                byte newByte = Bytes.setBit(i % 8, a[i/8]);
-                a[i/8] = newByte;
-            }
         }
         return a;
     }
@@ -128,75 +176,47 @@ public abstract class BytesAsUInt {
      * just like the rest of java, 
      * this method does nothing to guard against overflows!*/
     public static byte[] increment(byte[] a) {
-        //moving up from LSB, set all T bits to F until we find a F bit
-        //then we set that to T, then return the resulting array
-        for(int i = 0; i < a.length * 8; i++) {
-            if(Bytes.testBit(i % 8, a[i/8])) {
-                //we've discovered a bit which is 1
-                //set it to zero, then move up
-                byte newByte = Bytes.unsetBit(i % 8, a[i/8]);
-                a[i/8] = newByte;
-            }
-            else {//the first (or another) zero bit
-                //set it to 1, then exit
-                byte newByte = Bytes.setBit(i % 8, a[i/8]);
-                a[i/8] = newByte;
+        //moving up from LSB, turn every 0xFF byte into 0x00 until we find one that doesn't wrap,
+        //then return the resulting array
+        for(int i = 0; i < a.length; i++) {
+            if(++a[i] != 0) {
                 break;
             }
         }
         return a;
     }
     
-    /**Returns true if a < b.*/
+    /**Compares the values of a and b, 8 bytes at a time.
+     * The arrays may be different lengths: missing high bytes of the shorter one count as zero.
+     * @return a negative number, zero or a positive number as a is less than, equal to or greater than b*/
+    public static int compare(byte[] a, byte[] b) {
+        return Limbs.compare(a, 0, a.length, b, 0, b.length);
+    }
+
+    /**Returns true if a < b. The arrays may be different lengths.*/
     public static boolean lessThan(byte[] a, byte[] b) {
-        if(a.length != b.length) {
-            return a.length < b.length;
-        }
-        else {
-            for (int i = (a.length*8)-1; i > 0; i--) {
-                boolean bitA = Bytes.testBit(i % 8, a[i/8]);
-                boolean bitB = Bytes.testBit(i % 8, b[i/8]);
-                
-                if(bitA != bitB) {
-                    //if they're not equal, then one is true and the other false
-                    //if bitB is the true one, A is lesser, so return true
-                    //if bitB is the false one, A is greater, so return false
-                    return bitB;
-                }
-            }
-            //everything is equal
-            return false;
-        }
+        return compare(a, b) < 0;
     }
     
-    /**Returns true if a > b.*/
+    /**Returns true if a > b. The arrays may be different lengths.*/
     public static boolean greaterThan(byte[] a, byte[] b) {
-        for (int i = (a.length *8)-1; i > 0; i--) {
-            boolean bitA = Bytes.testBit(i % 8, a[i/8]);
-            boolean bitB = Bytes.testBit(i % 8, b[i/8]);
+        return compare(a, b) > 0;
+    }
 
-            if(bitA != bitB) {
-                //if they're not equal, then one is true and the other false
-                //if bitA is the false one, it's lesser, so return false
-                //if bitA is the true one, it is greater, so return true
-                return bitA;
-            }
-        }
-        //everything is equal
-        return false;
+    /**Returns true if a and b hold the same value, even if one has more (zero) high bytes than the other.*/
+    public static boolean equalsIgnoreArrayLength(byte[] a, byte[] b) {
+        return compare(a, b) == 0;
+    }
+
+    /**Checks whether every byte in the passed array is equal to 0x00, 8 bytes at a time.*/
+    public static boolean isZero(byte[] a) {
+        return !Limbs.anyNonZero(a, 0, a.length);
     }
     
-    /**Checks whether every byte in the passed array is equal to 0x00.*/
+    /**Checks whether every byte in the passed array is equal to 0x00.
+     * The same as {@link #isZero}.*/
     public static boolean equalsZero(byte[] a) {
-        for(byte b : a) {
-            if( (b ^ (byte)0xFF ) == (byte)0xFF) {
-                continue;
-            }
-            else {
-                return false;
-            }
-        }
-        return true;
+        return isZero(a);
     }
     
     public static byte[] newZeroedBytes(int length) {
@@ -207,54 +227,99 @@ public abstract class BytesAsUInt {
         return result;
     }
     
+    /**Returns the value of a as an int, in time proportional to its width.
+     * a may be any width, as long as its value fits.
+     * @throws NumberFormatException if the value is greater than Integer.MAX_VALUE*/
     public static int toInt (byte[] a) throws NumberFormatException {
-        if(a.length > 4) {
-            //the number is too large to store in a long
-            throw new NumberFormatException("byte[] is too large to store in an int");
+        long out = toUnsignedLong(a);
+        if(out < 0 || out > Integer.MAX_VALUE) {
+            throw new NumberFormatException("value of argument byte[] is too high to store in an int");
         }
-        int out = 0;
-        while(!equalsZero(a)) {
-            if(out == Integer.MAX_VALUE) {
-                throw new NumberFormatException("value of argument byte[] is too high to store in an int");
-            }
-            decrement(a);
-            out++;
-        }
-        return out;
+        return (int)out;
     }
-    
+
+    /**Returns the value of a as a long, in time proportional to its width.
+     * a may be any width, as long as its value fits.
+     * @throws NumberFormatException if the value is greater than Long.MAX_VALUE.
+     * Use {@link #toUnsignedLong} to get all 64 bits.*/
     public static long toLong (byte[] a) throws NumberFormatException {
-        if(a.length > 8) {
-            //the number is too large to store in a long
-            throw new NumberFormatException("byte[] is too long to store in a long");
-        }
-        long out = 0;
-        while(!equalsZero(a)) {
-            if(out == Long.MAX_VALUE) {
-                throw new NumberFormatException("value of argument byte[] is too high to store in a long");
-            }
-            decrement(a);
-            out++;
-            //todo:handle overflows, from our 64 bits being too large for long's 2^63-1
+        long out = toUnsignedLong(a);
+        if(out < 0) {
+            throw new NumberFormatException("value of argument byte[] is too high to store in a long");
         }
         return out;
     }
-    
+
+    /**Returns the low 64 bits of a, as a long to be treated as unsigned
+     * (for instance with {@link #fromUnsignedLong}).
+     * a may be any width, as long as its value fits in 64 bits.
+     * @throws NumberFormatException if the value is 2^64 or more*/
+    public static long toUnsignedLong(byte[] a) throws NumberFormatException {
+        if(a.length > 8 && Limbs.anyNonZero(a, 8, a.length - 8)) {
+            throw new NumberFormatException("value of argument byte[] is too high to store in 64 bits");
+        }
+        return Limbs.word(a, 0, a.length, 0);
+    }
+
+    /**Returns l as an 8-byte uint.
+     * @throws NumberFormatException if l is negative. Use {@link #fromUnsignedLong} for all 64 bits.*/
     public static byte[] fromLong(long l) throws NumberFormatException {
         if(l < 0) {
             throw new NumberFormatException("Argument cannot be < 0. This data type is unsigned!");
         }
-        byte[] out = newZeroedBytes(8);
-        while(l > 0) {
-            increment(out);
-            l--;
+        return fromUnsignedLong(l, 8);
+    }
+
+    /**Returns the unsigned 64-bit value v as a uint exactly {@code width} bytes wide.
+     * @throws NumberFormatException if v doesn't fit in that many bytes*/
+    public static byte[] fromUnsignedLong(long v, int width) throws NumberFormatException {
+        if(width < 1) {throw new IllegalArgumentException("width must be at least 1");}
+        if(width < 8 && (v >>> (width << 3)) != 0) {
+            throw new NumberFormatException("value "+Long.toHexString(v)+" doesn't fit in "+width+" bytes");
         }
-        return newZeroedBytes(1);
+        byte[] out = new byte[width];
+        if(width >= 8) {
+            Limbs.putLong(out, 0, v);
+        }
+        else {
+            for(int i = 0; i < width; i++) {
+                out[i] = (byte)(v >>> (i << 3));
+            }
+        }
+        return out;
     }
 
-    public boolean equalsIgnoreArrayLength(byte[] a, byte[] b) {
-        //todo!
-        return false;
+    /**Returns the value of a as a (non-negative) BigInteger.*/
+    public static BigInteger toBigInteger(byte[] a) {
+        //BigInteger wants big-endian, so reverse the bytes
+        byte[] bigEndian = new byte[a.length];
+        for(int i = 0; i < a.length; i++) {
+            bigEndian[a.length - 1 - i] = a[i];
+        }
+        return new BigInteger(1, bigEndian);
+    }
+
+    /**Returns v as a uint at least {@code minWidth} bytes wide,
+     * and exactly wide enough to hold it if that is wider.
+     * @throws NumberFormatException if v is negative*/
+    public static byte[] fromBigInteger(BigInteger v, int minWidth) throws NumberFormatException {
+        if(minWidth < 1) {throw new IllegalArgumentException("width must be at least 1");}
+        if(v.signum() < 0) {
+            throw new NumberFormatException("Argument cannot be < 0. This data type is unsigned!");
+        }
+        byte[] bigEndian = v.toByteArray();
+        //toByteArray() adds a leading zero byte whenever the top bit would otherwise look like a sign
+        int len = bigEndian.length;
+        int start = 0;
+        if(len > 1 && bigEndian[0] == 0) {
+            start = 1;
+            len--;
+        }
+        byte[] out = new byte[Math.max(len, minWidth)];
+        for(int i = 0; i < len; i++) {
+            out[i] = bigEndian[start + len - 1 - i];
+        }
+        return out;
     }
 
     /**Generate a byte array of at least the specified length, containing all of the passed number which fits
@@ -262,38 +327,17 @@ public abstract class BytesAsUInt {
     public static byte[] genByteArray(int value, int minWidth) {
         if(minWidth < 1) {throw new IllegalArgumentException("width must be at least 1");}
         if(value < 0) {throw new IllegalArgumentException("value must not be negative");}
-        if(value == 0) {
-            return newZeroedBytes(minWidth);
-        }
-        byte[] b = new byte[0];
-        int i = 0;
-        while(value != 0) {
-            b = BytesAsUInt.growArrayByOne(b);
-            b[i] = (byte)(value % 256);
-            i++;
-            value /= 256;
-        }
-        while(b.length < minWidth) {
-            b = growArrayByOne(b);
-        }
-        return b;
+        return fromUnsignedLong(value, Math.max(minWidth, bytesNeeded(value)));
     }
 
     /**Generate a byte array exactly long enough to contain the passed number*/
     private byte[] genByteArray(int value) {
-        if(value == 0) {
-            return new byte[] {(byte)0x00};
-        }
-        if(value < 0) {throw new IllegalArgumentException("value must not be negative");}
-        byte[] b = new byte[0];
-        int i = 0;
-        while(value != 0) {
-            b = BytesAsUInt.growArrayByOne(b);
-            b[i] = (byte)(value % 256);
-            i++;
-            value /= 256;
-        }
-        return b;
+        return genByteArray(value, 1);
+    }
+
+    /**The number of bytes needed to hold the unsigned value v: at least 1, at most 8.*/
+    private static int bytesNeeded(long v) {
+        return Math.max(1, (64 - Long.numberOfLeadingZeros(v) + 7) >>> 3);
     }
 
     public static byte[] growArrayByOne(byte[] a) {
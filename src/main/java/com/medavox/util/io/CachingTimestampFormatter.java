@@ -0,0 +1,122 @@
+package com.medavox.util.io;
+
+/**Formats a run of timestamps in one fixed {@link DateTime} layout, reusing work between nearby timestamps.
+ *
+ * The rendered date is kept for as long as timestamps stay on the same local day, and everything up to the
+ * seconds is kept for as long as they stay in the same second, so a timestamp in the same second as the last
+ * only costs a copy of that prefix, plus the milliseconds.
+ * This suits timestamps which arrive in (nearly) ascending order, such as those on log lines.
+ * A timestamp earlier than the cached second is formatted from scratch, and leaves the cache alone,
+ * so that a few stragglers don't throw away the work for the timestamps around them;
+ * only a sustained run of earlier timestamps moves the cache back.
+ *
+ * Not thread-safe: give each thread its own instance. They can all share one {@link TimestampFormatter}.*/
+public final class CachingTimestampFormatter {
+    /**After this many out-of-order timestamps in a row, the cache moves back to them.*/
+    static final int REANCHOR_AFTER = 8;
+
+    private final TimestampFormatter base;
+    private final DateTime.TimeFormat time;
+    private final DateTime.DateFormat date;
+    /**Whether this is the "time on date" layout, rather than "date time".*/
+    private final boolean timeFirst;
+    private final boolean withMillis;
+
+    /**The local day the cached date is for, or Long.MIN_VALUE before the first call.*/
+    private long cachedDay = Long.MIN_VALUE;
+    private final char[] dateChars = new char[TimestampFormatter.MAX_LENGTH];
+    private int dateLength;
+
+    /**The first instant of the cached second; nothing is cached while it is greater than cachedSecondEnd.*/
+    private long cachedSecond = 1;
+    private long cachedSecondEnd = 0;
+    /**Everything but the milliseconds, for the date-first layout;
+     * everything up to the seconds, for the time-first layout.*/
+    private final char[] prefix = new char[TimestampFormatter.MAX_LENGTH];
+    private int prefixLength;
+    /**How many timestamps in a row have been earlier than the cached second.*/
+    private int stragglers = 0;
+    private final char[] scratch = new char[TimestampFormatter.MAX_LENGTH];
+
+    /**@param timeFirst true for {@link DateTime#get2}'s "time on date" layout,
+     * false for {@link DateTime#get}'s "date time" layout*/
+    public CachingTimestampFormatter(TimestampFormatter base, DateTime.TimeFormat time, DateTime.DateFormat date,
+                                     boolean timeFirst) {
+        this.base = base;
+        this.time = time;
+        this.date = date;
+        this.timeFirst = timeFirst;
+        this.withMillis = time.precision() >= DateTime.TimeFormat.MILLISECONDS.precision();
+    }
+
+    /**Writes the timestamp into dst at off; dst needs room for {@link TimestampFormatter#MAX_LENGTH} chars.
+     * @return the index just past the last char written*/
+    public int format(long timeInMillis, char[] dst, int off) {
+        if(timeInMillis < cachedSecond) {
+            //out of order, or the very first call. A straggler is formatted from scratch, without disturbing
+            //the cache; but a long run of them means the input has really moved back, so follow it
+            if(cachedSecond <= cachedSecondEnd && ++stragglers < REANCHOR_AFTER) {
+                return timeFirst
+                        ? base.formatTimeOnDate(timeInMillis, time, date, dst, off)
+                        : base.format(timeInMillis, time, date, dst, off);
+            }
+            refill(timeInMillis);
+        }
+        else if(timeInMillis >= cachedSecondEnd) {
+            refill(timeInMillis);
+        }
+        stragglers = 0;
+
+        System.arraycopy(prefix, 0, dst, off, prefixLength);
+        off += prefixLength;
+        if(withMillis) {
+            int millis = (int)(timeInMillis - cachedSecond);
+            dst[off++] = '.';
+            dst[off++] = (char)('0' + millis / 100);
+            dst[off++] = (char)('0' + millis / 10 % 10);
+            dst[off++] = (char)('0' + millis % 10);
+        }
+        if(timeFirst) {
+            dst[off++] = ' ';
+            dst[off++] = 'o';
+            dst[off++] = 'n';
+            dst[off++] = ' ';
+            System.arraycopy(dateChars, 0, dst, off, dateLength);
+            off += dateLength;
+        }
+        return off;
+    }
+
+    /**Appends the timestamp to out.*/
+    public StringBuilder format(long timeInMillis, StringBuilder out) {
+        return out.append(scratch, 0, format(timeInMillis, scratch, 0));
+    }
+
+    /**Whether timeInMillis is in the cached second, so that formatting it would only copy the cached prefix.*/
+    boolean isCached(long timeInMillis) {
+        return timeInMillis >= cachedSecond && timeInMillis < cachedSecondEnd;
+    }
+
+    /**Caches the second containing timeInMillis, and its day if that has changed.*/
+    private void refill(long timeInMillis) {
+        long second = TimestampFormatter.floorDiv(timeInMillis, 1000) * 1000;
+        //offsets are whole seconds, so the local second starts at the same instant
+        long local = second + base.offsetAt(second);
+        long day = TimestampFormatter.floorDiv(local, TimestampFormatter.MILLIS_PER_DAY);
+        if(day != cachedDay) {
+            dateLength = TimestampFormatter.writeDate(day, date, dateChars, 0);
+            cachedDay = day;
+        }
+        int millisOfDay = (int)(local - day * TimestampFormatter.MILLIS_PER_DAY);
+        DateTime.TimeFormat upToSeconds = withMillis ? DateTime.TimeFormat.SECONDS : time;
+        int off = 0;
+        if(!timeFirst) {
+            System.arraycopy(dateChars, 0, prefix, 0, dateLength);
+            off = dateLength;
+            prefix[off++] = ' ';
+        }
+        prefixLength = TimestampFormatter.writeTime(millisOfDay, upToSeconds, prefix, off);
+        cachedSecond = second;
+        cachedSecondEnd = second + 1000;
+    }
+}
@@ -0,0 +1,60 @@
+package com.medavox.util.io;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**An exact {@link SeenSet}, backed by a ConcurrentHashMap. It never forgets anything, so it grows without bound.*/
+public class ConcurrentSeenSet implements SeenSet
+{
+    /**Roughly what a hash table entry and a String cost beyond their chars, on a 64-bit JVM.*/
+    static final int ENTRY_OVERHEAD_BYTES = 32 + 24 + 16 + 8;
+
+    private final ConcurrentHashMap<String, Boolean> seen;
+    private final AtomicLong chars = new AtomicLong();
+
+    public ConcurrentSeenSet()
+    {
+        this(16);
+    }
+
+    /**@param expectedSize how many strings to size the table for at first*/
+    public ConcurrentSeenSet(int expectedSize)
+    {
+        seen = new ConcurrentHashMap<String, Boolean>(expectedSize);
+    }
+
+    @Override
+    public boolean addIfAbsent(String s)
+    {
+        if(seen.putIfAbsent(s, Boolean.TRUE) == null)
+        {
+            chars.addAndGet(s.length());
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean mightContain(String s)
+    {
+        return seen.containsKey(s);
+    }
+
+    @Override
+    public long size()
+    {
+        return seen.size();
+    }
+
+    @Override
+    public long memoryFootprintBytes()
+    {
+        return seen.size() * (long)ENTRY_OVERHEAD_BYTES + chars.get() * 2;
+    }
+
+    /**The estimated cost of keeping s in a hash table.*/
+    static long entryBytes(String s)
+    {
+        return ENTRY_OVERHEAD_BYTES + s.length() * 2L;
+    }
+}
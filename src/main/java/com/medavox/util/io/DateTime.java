@@ -1,17 +1,20 @@
 package com.medavox.util.io;
 
-import java.util.Calendar;
-import java.util.Locale;
-
 /**@author Adam Howard
  * on 04/05/2016
  * Static methods for pretty-printing a unix-epoch time in various brief but human-readable formats.
  * Uses 24-hour UK date formats, where the units are listed in ascending order of size.
  * For instance: 23:59:59.999 on 31/12/2020.
+ * The formatting itself is done by a {@link TimestampFormatter} in the default time zone,
+ * so these methods are safe to call from any number of threads.
  */
 public abstract class DateTime {
 
-    private static Calendar cal = Calendar.getInstance();
+    private static final TimestampFormatter formatter = new TimestampFormatter();
+    private static final TimestampParser parser = new TimestampParser(formatter);
+
+    private static final long[] SUB_SECOND_UNITS = {1, 1000, 1000 * 1000, 1000 * 1000 * 1000};
+    private static final String[] SUB_SECOND_UNIT_NAMES = {"nanosecond", "microsecond", "millisecond", "second"};
 
     public enum TimeFormat {
         MINUTES(0),
@@ -29,22 +32,7 @@ public abstract class DateTime {
     }
 
     public static String getTime(long timeInMillis, TimeFormat timeFormat) {
-        cal.setTimeInMillis(timeInMillis);
-        String output = "";
-        //always include hour and minutes
-        output += String.format(Locale.UK, "%02d", cal.get(Calendar.HOUR_OF_DAY));
-        output += ":"+String.format(Locale.UK, "%02d", cal.get(Calendar.MINUTE));
-
-        if(timeFormat.precision() >= TimeFormat.SECONDS.precision()) {
-            //if we're more precise than simple, include seconds
-            output += ":"+String.format(Locale.UK, "%02d", cal.get(Calendar.SECOND));
-        }
-        if(timeFormat.precision() >= TimeFormat.MILLISECONDS.precision()) {
-            //if we're at least as precise as MILLISECONDS, include milliseconds
-            output += "."+String.format(Locale.UK, "%03d", cal.get(Calendar.MILLISECOND));
-        }
-
-        return output;
+        return formatter.formatTime(timeInMillis, timeFormat, new StringBuilder(12)).toString();
     }
 
     public enum DateFormat {
@@ -73,32 +61,9 @@ public abstract class DateTime {
         }
     }
 
+    /**Note that {@link DateFormat#NUMBERS} gives a 1-based month, so 31st December is "31/12".*/
     public static String getDate(long timeInMillis, DateFormat len) {
-        cal.setTimeInMillis(timeInMillis);
-        String output = "";
-
-        boolean withWeekday = (len == DateFormat.BRIEF_WITH_DAY || len == DateFormat.LONG_WITH_DAY);
-
-        String dayOfWeek = (withWeekday ? cal.getDisplayName(Calendar.DAY_OF_WEEK, Calendar.SHORT, Locale.UK)+" " : "");
-        String day = ""+cal.get(Calendar.DAY_OF_MONTH);
-        String month = "";
-
-        switch (len) {
-            case NUMBERS:
-                month = "/"+cal.get(Calendar.MONTH);
-                break;
-            case BRIEF:
-            case BRIEF_WITH_DAY:
-
-                month = " "+cal.getDisplayName(Calendar.MONTH, Calendar.SHORT, Locale.UK);
-                break;
-            case LONG:
-            case LONG_WITH_DAY:
-                month = " "+cal.getDisplayName(Calendar.MONTH, Calendar.LONG, Locale.UK);
-                break;
-        }
-        return dayOfWeek+day+month;
-
+        return formatter.formatDate(timeInMillis, len, new StringBuilder(24)).toString();
     }
 
     public static String get(long timeInMillis, TimeFormat precision) {
@@ -106,11 +71,33 @@ public abstract class DateTime {
     }
 
     public static String get(long timeInMillis, TimeFormat precision, DateFormat dateLen) {
-        return getDate(timeInMillis, dateLen) + " " + getTime(timeInMillis, precision);
+        return formatter.format(timeInMillis, precision, dateLen, new StringBuilder(36)).toString();
     }
 
     public static String get2(long timeInMillis, TimeFormat precision, DateFormat dateLen) {
-        return getTime(timeInMillis, precision)+" on "+getDate(timeInMillis, dateLen);
+        return formatter.formatTimeOnDate(timeInMillis, precision, dateLen, new StringBuilder(40)).toString();
+    }
+
+    /**Returns a formatter for {@link #get} (or, if timeFirst, {@link #get2}) layouts,
+     * which reuses the rendered date and time between timestamps in the same day and second.
+     * Use one per thread.*/
+    public static CachingTimestampFormatter newCachingFormatter(TimeFormat precision, DateFormat dateLen,
+                                                                boolean timeFirst) {
+        return new CachingTimestampFormatter(formatter, precision, dateLen, timeFirst);
+    }
+
+    /**Formats every timestamp in one go, into one char[] with an index of where each starts,
+     * in the layout of {@link #get}. Large batches are split across cores.*/
+    public static BatchTimestampFormatter.Result getAll(long[] timesInMillis, TimeFormat precision,
+                                                        DateFormat dateLen) {
+        return new BatchTimestampFormatter(formatter, precision, dateLen, false).format(timesInMillis);
+    }
+
+    /**The inverse of {@link #get}: reads text in that layout back into a unix-epoch time.
+     * The layout has no year, so the one which puts the time nearest to reference is used.
+     * @throws IllegalArgumentException if text isn't in that layout*/
+    public static long parse(CharSequence text, TimeFormat precision, DateFormat dateLen, long reference) {
+        return parser.parse(text, precision, dateLen, reference);
     }
 
     /**Print the duration of something in human-readable format,
@@ -144,6 +131,44 @@ public abstract class DateTime {
         return ret;
     }
 
+    /**Like {@link #getDuration}, but takes nanoseconds, so it can show durations under a second.
+     * Up to 2 minutes, this shows 3 significant figures of the largest unit that fits,
+     * from nanoseconds up to seconds: for instance "12.5 microseconds" or "1.04 seconds".
+     * Anything longer is shown as {@link #getDuration} would.*/
+    public static String getDurationNanos(long durationNanos) {
+        //Math.abs(Long.MIN_VALUE) is still negative, but it's far past 2 minutes either way
+        long dur = Math.abs(durationNanos);
+        if(dur < 0 || dur > 120L * 1000 * 1000 * 1000) {
+            return getDuration(durationNanos / (1000 * 1000));
+        }
+        int unit = 0;
+        while(unit + 1 < SUB_SECOND_UNITS.length && dur >= SUB_SECOND_UNITS[unit + 1]) {
+            unit++;
+        }
+        //in thousandths of the unit, rounded to 3 significant figures
+        long thousandths = dur * 1000 / SUB_SECOND_UNITS[unit];
+        long step = thousandths >= 100000 ? 1000 : thousandths >= 10000 ? 100 : 10;
+        thousandths = (thousandths + step / 2) / step * step;
+        if(thousandths == 1000 * 1000 && unit + 1 < SUB_SECOND_UNITS.length) {
+            //rounded up to 1000 of this unit, which reads better as 1 of the next
+            unit++;
+            thousandths = 1000;
+        }
+        StringBuilder ret = new StringBuilder().append(thousandths / 1000);
+        long fraction = thousandths % 1000;
+        if(fraction != 0) {
+            ret.append('.').append((char)('0' + fraction / 100));
+            if(fraction % 100 != 0) {
+                ret.append((char)('0' + fraction / 10 % 10));
+            }
+        }
+        ret.append(' ').append(SUB_SECOND_UNIT_NAMES[unit]);
+        if(thousandths != 1000) {
+            ret.append('s');
+        }
+        return ret.toString();
+    }
+
     private static String unitString(int amount, String unit) {
         String ret = (amount> 0 ? amount+" "+unit : "");
         ret += (amount > 1 ? "s" : "");
@@ -0,0 +1,132 @@
+package com.medavox.util.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+/**Loads whole text files through a FileChannel, decoding them with an explicit charset.
+ * Files smaller than a threshold are read into a heap buffer in bulk;
+ * bigger ones are memory-mapped and decoded straight from the mapping, so they're only copied once.
+ * Malformed or unmappable input is an error, not silently replaced.
+ * For scanning big files without decoding them at all, see {@link #map}.*/
+public abstract class FileLoader
+{
+    /**Files at least this big are memory-mapped, unless told otherwise.*/
+    public static final long DEFAULT_MAP_THRESHOLD = 1024 * 1024;
+
+    /**Reads the whole of f, and decodes it as the given charset.
+     * @throws java.nio.charset.CharacterCodingException if the file isn't valid in that charset
+     * @throws IOException if the file can't be read, or holds more than a CharBuffer can*/
+    public static CharBuffer loadChars(File f, Charset charset) throws IOException
+    {
+        return loadChars(f, charset, DEFAULT_MAP_THRESHOLD);
+    }
+
+    /**Reads the whole of f, and decodes it as the given charset.
+     * @param mapThreshold the file size in bytes from which to memory-map the file, rather than read it
+     * @throws java.nio.charset.CharacterCodingException if the file isn't valid in that charset
+     * @throws IOException if the file can't be read, or holds more than a CharBuffer can*/
+    public static CharBuffer loadChars(File f, Charset charset, long mapThreshold) throws IOException
+    {
+        return loadChars(f, charset, mapThreshold, CodingErrorAction.REPORT);
+    }
+
+    /**Reads the whole of f into a String, decoding it as the given charset,
+     * but replacing malformed or unmappable input rather than failing on it,
+     * as a Reader would. For {@link StringUtils#fileToString(File)}, which always has.
+     * @throws IOException if the file can't be read, or is too large for a String*/
+    static String loadReplacing(File f, Charset charset) throws IOException
+    {
+        return loadChars(f, charset, DEFAULT_MAP_THRESHOLD, CodingErrorAction.REPLACE).toString();
+    }
+
+    private static CharBuffer loadChars(File f, Charset charset, long mapThreshold, CodingErrorAction onError)
+            throws IOException
+    {
+        FileInputStream in = open(f);
+        try
+        {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE)
+            {
+                throw new IOException("\""+f+"\" is too large to load into memory: "+size+" bytes");
+            }
+            ByteBuffer bytes;
+            if(size >= mapThreshold)
+            {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            else
+            {
+                bytes = ByteBuffer.allocate((int)size);
+                while(bytes.hasRemaining())
+                {
+                    if(channel.read(bytes) < 0)
+                    {
+                        break;//the file shrank while we were reading it
+                    }
+                }
+                bytes.flip();
+            }
+            return charset.newDecoder()
+                    .onMalformedInput(onError)
+                    .onUnmappableCharacter(onError)
+                    .decode(bytes);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**Reads the whole of f into a String, decoding it as the given charset.
+     * @throws java.nio.charset.CharacterCodingException if the file isn't valid in that charset
+     * @throws IOException if the file can't be read, or is too large for a String*/
+    public static String load(File f, Charset charset) throws IOException
+    {
+        return loadChars(f, charset).toString();
+    }
+
+    /**Memory-maps f, and returns a CharSequence which decodes its chars on demand, without copying the file.
+     * Pass it to a Pattern's matcher to scan the file in place.
+     * Only works for single-byte charsets, where each char's position in the file is known without decoding
+     * what comes before it; bytes the charset can't map read as U+FFFD.
+     * @throws IllegalArgumentException if the charset uses more than one byte for any char
+     * @throws IOException if the file can't be mapped, or is over 2GB*/
+    public static MappedCharSequence map(File f, Charset charset) throws IOException
+    {
+        char[] table = MappedCharSequence.decodingTable(charset);
+        FileInputStream in = open(f);
+        try
+        {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE)
+            {
+                throw new IOException("\""+f+"\" is too large to map as a CharSequence: "+size+" bytes");
+            }
+            //the mapping stays valid after the channel is closed
+            return new MappedCharSequence(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), table);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static FileInputStream open(File f) throws IOException
+    {
+        if(!f.isFile())
+        {
+            throw new FileNotFoundException("\""+f+"\" is not a file");
+        }
+        return new FileInputStream(f);
+    }
+}
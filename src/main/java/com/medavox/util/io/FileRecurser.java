@@ -1,67 +1,152 @@
 package com.medavox.util.io;
 import java.io.*;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
+/**Calls an operation on every file under a directory, at any depth, optionally filtered.
+ * The walk is done by {@link Files#walkFileTree}, which keeps its own stack rather than recursing,
+ * so trees of any depth are fine, and reads each entry's attributes once.*/
 public abstract class FileRecurser
 {
     public static final int NO_FILTER = 0;
     public static final int STRING_FILTER = 1;
     public static final int METHOD_FILTER = 2;
-    
+
     public static void recurse(File root, RecurseOperation fo)
     {
         recurse(root, NO_FILTER, "", fo);
     }
-    
+
     public static void recurse(File root, String filter, RecurseOperation fo)
     {
         recurse(root, STRING_FILTER, filter, fo);
     }
-    
+
     public static void recurse(File root, RecurseOperation fo, boolean placeHolder)
     {
         recurse(root, METHOD_FILTER, "", fo);
     }
-    
-    private static void recurse(File root, int mode, String filter, RecurseOperation fo)
+
+    /**Follows symbolic links, as File.isDirectory() always did, but no longer loops forever on cycles.
+     * Entries which can't be read are skipped.*/
+    private static void recurse(File root, int mode, String filter, final RecurseOperation fo)
     {
         if(!root.isDirectory()
         || !root.exists())
         {
             throw new IllegalArgumentException("supplied argument must be a directory which exists");
         }
-        
-        for(File f : root.listFiles())
+
+        PathOperation po = new PathOperation()
         {
-            if(f.isDirectory())
+            @Override public void operate(Path file, BasicFileAttributes attrs)
             {
-                recurse(f, filter, fo);
+                fo.operate(file.toFile());
             }
-            else
+
+            @Override public boolean acceptFile(Path file, BasicFileAttributes attrs)
+            {
+                return fo.acceptFile(file.toFile());
+            }
+        };
+        try
+        {
+            walk(root.toPath(), mode, filter, po, true, true);
+        }
+        catch(IOException ioe)
+        {
+            //unreachable: failures are skipped
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    /**Calls op on every file under root which op accepts.
+     * @param followLinks whether to walk into linked directories;
+     * links back to a directory already being walked are skipped
+     * @throws IOException from the first entry which couldn't be read, which ends the walk*/
+    public static void walk(Path root, PathOperation op, boolean followLinks) throws IOException
+    {
+        walk(root, METHOD_FILTER, "", op, followLinks, false);
+    }
+
+    /**Calls op on every file under root, filtered the same way at every depth.
+     * @param mode {@link #NO_FILTER}, {@link #STRING_FILTER} (the file name must contain filter),
+     * or {@link #METHOD_FILTER} (op must accept the file)
+     * @param followLinks whether to walk into linked directories;
+     * links back to a directory already being walked are skipped
+     * @param skipFailures whether to skip entries which can't be read, rather than end the walk
+     * @throws IOException from the first entry which couldn't be read, unless skipFailures*/
+    public static void walk(Path root, final int mode, final String filter, final PathOperation op,
+                            boolean followLinks, final boolean skipFailures) throws IOException
+    {
+        if(mode != NO_FILTER && mode != STRING_FILTER && mode != METHOD_FILTER)
+        {
+            throw new IllegalArgumentException("unknown filter mode: "+mode);
+        }
+        if(!Files.isDirectory(root))
+        {
+            throw new IllegalArgumentException("supplied argument must be a directory which exists");
+        }
+        Set<FileVisitOption> options = followLinks
+                ? EnumSet.of(FileVisitOption.FOLLOW_LINKS)
+                : Collections.<FileVisitOption>emptySet();
+
+        Files.walkFileTree(root, options, Integer.MAX_VALUE, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
             {
                 switch(mode)
                 {
                     case NO_FILTER:
-                    fo.operate(f);
+                    op.operate(file, attrs);
                     break;
-                    
+
                     case STRING_FILTER:
-                        if(f.getName().contains(filter))
+                        if(file.getFileName().toString().contains(filter))
                         {
-                            fo.operate(f);  
+                            op.operate(file, attrs);
                         }
                     break;
-                    
+
                     case METHOD_FILTER:
-                        if(fo.acceptFile(f))
+                        if(op.acceptFile(file, attrs))
                         {
-                            fo.operate(f);
+                            op.operate(file, attrs);
                         }
                     break;
                 }
+                return FileVisitResult.CONTINUE;
             }
-            
-        }
-    }
-    
 
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException
+            {
+                //a link back to one of its own parent directories: already being walked
+                if(exc instanceof FileSystemLoopException || skipFailures)
+                {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw exc;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException
+            {
+                if(exc != null && !skipFailures)
+                {
+                    throw exc;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
 }
@@ -0,0 +1,315 @@
+package com.medavox.util.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**Encodes bytes as hex text, and decodes it back, through static lookup tables.
+ *
+ * Each instance fixes the digit case and an optional separator between bytes
+ * (and, if asked for, after the last one too). Decoding accepts digits of either case,
+ * but expects this codec's separator layout.
+ *
+ * Every method which writes into a caller's char[], ByteBuffer or byte[] allocates nothing,
+ * so hex dumps on a hot path needn't produce any garbage.
+ * Encoding into an Appendable allocates nothing either, unless the Appendable does.
+ *
+ * Instances are immutable, and thread-safe.*/
+public final class HexCodec {
+    /**Two chars per byte value: the high digit at [2b], the low one at [2b+1].*/
+    private static final char[] UPPER_PAIRS = pairs("0123456789ABCDEF");
+    private static final char[] LOWER_PAIRS = pairs("0123456789abcdef");
+    /**The value of each hex digit char, of either case, or -1 for anything else.*/
+    private static final byte[] DIGIT_VALUES = new byte[128];
+    static {
+        for(int i = 0; i < DIGIT_VALUES.length; i++) {
+            DIGIT_VALUES[i] = -1;
+        }
+        for(int i = 0; i < 16; i++) {
+            DIGIT_VALUES[UPPER_PAIRS[2*i + 1]] = (byte)i;
+            DIGIT_VALUES[LOWER_PAIRS[2*i + 1]] = (byte)i;
+        }
+    }
+
+    /**Uppercase digits, no separators.*/
+    public static final HexCodec UPPER = new HexCodec(true, "", false);
+    /**Lowercase digits, no separators.*/
+    public static final HexCodec LOWER = new HexCodec(false, "", false);
+    /**The format of {@link Bytes#bytesToHex}: uppercase, with a space after every byte, including the last.*/
+    public static final HexCodec SPACED_UPPER = new HexCodec(true, " ", true);
+
+    private final char[] pairs;
+    private final char[] separator;
+    private final boolean trailingSeparator;
+
+    /**@param upperCase whether to encode with A-F, rather than a-f
+     * @param separator the text to put between bytes; may be empty
+     * @param trailingSeparator whether to put the separator after the last byte as well*/
+    public HexCodec(boolean upperCase, String separator, boolean trailingSeparator) {
+        this.pairs = upperCase ? UPPER_PAIRS : LOWER_PAIRS;
+        this.separator = separator.toCharArray();
+        for(char c : this.separator) {
+            if(c < DIGIT_VALUES.length && DIGIT_VALUES[c] != -1) {
+                throw new IllegalArgumentException("separator can't contain the hex digit '"+c+"'");
+            }
+        }
+        this.trailingSeparator = trailingSeparator;
+    }
+
+    /**The number of chars (or ASCII bytes) that encoding byteCount bytes produces.*/
+    public int encodedLength(int byteCount) {
+        if(byteCount < 0) {throw new IllegalArgumentException("byteCount must not be negative");}
+        if(byteCount == 0) {
+            return 0;
+        }
+        int separators = trailingSeparator ? byteCount : byteCount - 1;
+        return byteCount * 2 + separators * separator.length;
+    }
+
+    /**The number of bytes in encoded text of the given length, with or without a trailing separator.
+     * @throws IllegalArgumentException if no number of bytes encodes to exactly that many chars*/
+    public int decodedLength(int charCount) {
+        if(charCount < 0) {throw new IllegalArgumentException("charCount must not be negative");}
+        int stride = 2 + separator.length;
+        //every byte but the last takes a stride; the last takes 2, or a whole stride if trailed
+        int count = (charCount + separator.length) / stride;
+        if(charCount == 0 || count * stride == charCount + separator.length
+                || (count * stride == charCount && count > 0)) {
+            return count;
+        }
+        throw new IllegalArgumentException(charCount+" chars can't be a whole number of hex bytes");
+    }
+
+    //------------------------------------encoding------------------------------------
+
+    /**Returns the hex text of all of data, as a new String.*/
+    public String encode(byte[] data) {
+        char[] out = new char[encodedLength(data.length)];
+        encode(data, 0, data.length, out, 0);
+        return new String(out);
+    }
+
+    /**Writes the hex text of src[off..off+len) into dst, starting at dstOff.
+     * @return the number of chars written: {@link #encodedLength encodedLength(len)}*/
+    public int encode(byte[] src, int off, int len, char[] dst, int dstOff) {
+        checkRange(src.length, off, len);
+        checkRange(dst.length, dstOff, encodedLength(len));
+        int d = dstOff;
+        for(int i = 0; i < len; i++) {
+            int p = (src[off+i] & 0xFF) << 1;
+            dst[d++] = pairs[p];
+            dst[d++] = pairs[p+1];
+            if(trailingSeparator || i < len - 1) {
+                for(char c : separator) {
+                    dst[d++] = c;
+                }
+            }
+        }
+        return d - dstOff;
+    }
+
+    /**Writes the hex text of src[off..off+len) into dst as ASCII bytes, starting at absolute index dstOff.
+     * The buffer's position and limit are not changed.
+     * @return the number of bytes written: {@link #encodedLength encodedLength(len)}
+     * @throws IllegalArgumentException if the separator isn't ASCII*/
+    public int encode(byte[] src, int off, int len, ByteBuffer dst, int dstOff) {
+        checkRange(src.length, off, len);
+        checkRange(dst.limit(), dstOff, encodedLength(len));
+        for(char c : separator) {
+            if(c > 0x7F) {throw new IllegalArgumentException("separator isn't ASCII");}
+        }
+        int d = dstOff;
+        for(int i = 0; i < len; i++) {
+            int p = (src[off+i] & 0xFF) << 1;
+            dst.put(d++, (byte)pairs[p]);
+            dst.put(d++, (byte)pairs[p+1]);
+            if(trailingSeparator || i < len - 1) {
+                for(char c : separator) {
+                    dst.put(d++, (byte)c);
+                }
+            }
+        }
+        return d - dstOff;
+    }
+
+    /**Appends the hex text of src[off..off+len) to out.*/
+    public void encode(byte[] src, int off, int len, Appendable out) throws IOException {
+        checkRange(src.length, off, len);
+        if(out instanceof StringBuilder) {
+            ((StringBuilder)out).ensureCapacity(((StringBuilder)out).length() + encodedLength(len));
+        }
+        for(int i = 0; i < len; i++) {
+            int p = (src[off+i] & 0xFF) << 1;
+            out.append(pairs[p]).append(pairs[p+1]);
+            if(trailingSeparator || i < len - 1) {
+                for(char c : separator) {
+                    out.append(c);
+                }
+            }
+        }
+    }
+
+    /**Appends the hex text of every byte between src's position and limit to out,
+     * without changing the buffer's position.*/
+    public void encode(ByteBuffer src, Appendable out) throws IOException {
+        int end = src.limit();
+        for(int i = src.position(); i < end; i++) {
+            int p = (src.get(i) & 0xFF) << 1;
+            out.append(pairs[p]).append(pairs[p+1]);
+            if(trailingSeparator || i < end - 1) {
+                for(char c : separator) {
+                    out.append(c);
+                }
+            }
+        }
+    }
+
+    //------------------------------------decoding------------------------------------
+
+    /**Decodes all of text into a new byte array.
+     * @throws IllegalArgumentException if text isn't hex in this codec's layout*/
+    public byte[] decode(CharSequence text) {
+        byte[] out = new byte[decodedLength(text.length())];
+        decode(text, 0, text.length(), out, 0);
+        return out;
+    }
+
+    /**Decodes text[off..off+len) into dst, starting at dstOff.
+     * @return the number of bytes written: {@link #decodedLength decodedLength(len)}
+     * @throws IllegalArgumentException if the text isn't hex in this codec's layout*/
+    public int decode(CharSequence text, int off, int len, byte[] dst, int dstOff) {
+        checkRange(text.length(), off, len);
+        int count = decodedLength(len);
+        checkRange(dst.length, dstOff, count);
+        int stride = 2 + separator.length;
+        for(int i = 0; i < count; i++) {
+            int at = off + i*stride;
+            dst[dstOff+i] = (byte)((digit(text.charAt(at), at) << 4) | digit(text.charAt(at+1), at+1));
+            if(at + 2 < off + len) {
+                for(int s = 0; s < separator.length; s++) {
+                    expectSeparator(text.charAt(at+2+s), s, at+2+s);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**Decodes src[off..off+len) into dst, starting at dstOff.
+     * @return the number of bytes written: {@link #decodedLength decodedLength(len)}
+     * @throws IllegalArgumentException if the text isn't hex in this codec's layout*/
+    public int decode(char[] src, int off, int len, byte[] dst, int dstOff) {
+        checkRange(src.length, off, len);
+        int count = decodedLength(len);
+        checkRange(dst.length, dstOff, count);
+        int stride = 2 + separator.length;
+        for(int i = 0; i < count; i++) {
+            int at = off + i*stride;
+            dst[dstOff+i] = (byte)((digit(src[at], at) << 4) | digit(src[at+1], at+1));
+            if(at + 2 < off + len) {
+                for(int s = 0; s < separator.length; s++) {
+                    expectSeparator(src[at+2+s], s, at+2+s);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**Decodes the ASCII hex text at absolute indices src[off..off+len) into dst, starting at dstOff.
+     * The buffer's position and limit are not changed.
+     * @return the number of bytes written: {@link #decodedLength decodedLength(len)}
+     * @throws IllegalArgumentException if the text isn't hex in this codec's layout*/
+    public int decode(ByteBuffer src, int off, int len, byte[] dst, int dstOff) {
+        checkRange(src.limit(), off, len);
+        int count = decodedLength(len);
+        checkRange(dst.length, dstOff, count);
+        int stride = 2 + separator.length;
+        for(int i = 0; i < count; i++) {
+            int at = off + i*stride;
+            dst[dstOff+i] = (byte)((digit((char)(src.get(at) & 0xFF), at) << 4)
+                    | digit((char)(src.get(at+1) & 0xFF), at+1));
+            if(at + 2 < off + len) {
+                for(int s = 0; s < separator.length; s++) {
+                    expectSeparator((char)(src.get(at+2+s) & 0xFF), s, at+2+s);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**Decodes text[off..off+len) into dst, starting at absolute index dstOff.
+     * The buffer's position and limit are not changed.
+     * @return the number of bytes written: {@link #decodedLength decodedLength(len)}
+     * @throws IllegalArgumentException if the text isn't hex in this codec's layout*/
+    public int decode(CharSequence text, int off, int len, ByteBuffer dst, int dstOff) {
+        checkRange(text.length(), off, len);
+        int count = decodedLength(len);
+        checkRange(dst.limit(), dstOff, count);
+        int stride = 2 + separator.length;
+        for(int i = 0; i < count; i++) {
+            int at = off + i*stride;
+            dst.put(dstOff+i, (byte)((digit(text.charAt(at), at) << 4) | digit(text.charAt(at+1), at+1)));
+            if(at + 2 < off + len) {
+                for(int s = 0; s < separator.length; s++) {
+                    expectSeparator(text.charAt(at+2+s), s, at+2+s);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**Decodes the ASCII hex text at absolute indices src[off..off+len) into dst, starting at absolute index dstOff.
+     * Neither buffer's position or limit is changed.
+     * src and dst may be the same buffer, and dstOff may equal off, to decode in place:
+     * each byte is written no later in the buffer than the text it came from.
+     * @return the number of bytes written: {@link #decodedLength decodedLength(len)}
+     * @throws IllegalArgumentException if the text isn't hex in this codec's layout*/
+    public int decode(ByteBuffer src, int off, int len, ByteBuffer dst, int dstOff) {
+        checkRange(src.limit(), off, len);
+        int count = decodedLength(len);
+        checkRange(dst.limit(), dstOff, count);
+        int stride = 2 + separator.length;
+        for(int i = 0; i < count; i++) {
+            int at = off + i*stride;
+            int hi = digit((char)(src.get(at) & 0xFF), at);
+            int lo = digit((char)(src.get(at+1) & 0xFF), at+1);
+            if(at + 2 < off + len) {
+                for(int s = 0; s < separator.length; s++) {
+                    expectSeparator((char)(src.get(at+2+s) & 0xFF), s, at+2+s);
+                }
+            }
+            dst.put(dstOff+i, (byte)((hi << 4) | lo));
+        }
+        return count;
+    }
+
+    //------------------------------------internals------------------------------------
+
+    private static char[] pairs(String digits) {
+        char[] out = new char[512];
+        for(int b = 0; b < 256; b++) {
+            out[2*b] = digits.charAt(b >>> 4);
+            out[2*b + 1] = digits.charAt(b & 0xF);
+        }
+        return out;
+    }
+
+    private static int digit(char c, int at) {
+        int v = c < DIGIT_VALUES.length ? DIGIT_VALUES[c] : -1;
+        if(v < 0) {
+            throw new IllegalArgumentException("'"+c+"' at index "+at+" is not a hex digit");
+        }
+        return v;
+    }
+
+    private void expectSeparator(char c, int s, int at) {
+        if(c != separator[s]) {
+            throw new IllegalArgumentException("expected separator '"+separator[s]+"' at index "+at
+                    +", but found '"+c+"'");
+        }
+    }
+
+    private static void checkRange(int length, int off, int len) {
+        if(off < 0 || len < 0 || off > length - len) {
+            throw new IndexOutOfBoundsException("range "+off+"+"+len+" is outside a length of "+length);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.medavox.util.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**Counts how long things take, in nanoseconds, so their percentiles can be read off while the program runs.
+ *
+ * Durations are counted in log-linear buckets: each power of two is split into the same number of
+ * equal-width buckets, so every bucket is within a fixed fraction of the durations it holds,
+ * from a nanosecond up to the largest long. The buckets are one {@link AtomicLongArray}, allocated up front,
+ * so recording takes no locks and allocates nothing, and memory doesn't grow with the number of durations.
+ *
+ * Any number of threads can record at once. {@link #snapshot} copies the counts as they are;
+ * {@link #intervalSnapshot} also empties them, to measure one interval at a time.
+ * Durations recorded while a snapshot is being taken may land in it or in the next, but never both.*/
+public final class LatencyRecorder {
+    /**Buckets per power of two are 2 to this power: 128 buckets, so values are within 1/128 (0.8%).*/
+    public static final int DEFAULT_PRECISION_BITS = 7;
+
+    private final int subBits;
+    private final int halfBuckets;
+    private final AtomicLongArray counts;
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong intervalStart = new AtomicLong(System.nanoTime());
+
+    /**Buckets durations to within 1 part in 128.*/
+    public LatencyRecorder() {
+        this(DEFAULT_PRECISION_BITS);
+    }
+
+    /**@param precisionBits each power of two is split into 2^precisionBits buckets,
+     * so recorded durations are accurate to 1 part in 2^precisionBits.
+     * The recorder takes 8 * (64 - precisionBits) * 2^precisionBits bytes: 57KB by default.*/
+    public LatencyRecorder(int precisionBits) {
+        if(precisionBits < 1 || precisionBits > 16) {
+            throw new IllegalArgumentException("precisionBits must be between 1 and 16, not "+precisionBits);
+        }
+        this.subBits = precisionBits + 1;
+        this.halfBuckets = 1 << precisionBits;
+        this.counts = new AtomicLongArray((65 - subBits) * halfBuckets);
+    }
+
+    /**Counts one duration.
+     * @throws IllegalArgumentException if it's negative*/
+    public void record(long nanos) {
+        if(nanos < 0) {
+            throw new IllegalArgumentException("a duration can't be negative: "+nanos);
+        }
+        counts.incrementAndGet(bucketOf(nanos));
+        total.addAndGet(nanos);
+        long m;
+        while(nanos < (m = min.get()) && !min.compareAndSet(m, nanos)) {
+            //another thread changed it first; look again
+        }
+        while(nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+            //another thread changed it first; look again
+        }
+    }
+
+    /**Counts the time since startNanos, a value earlier returned by {@link System#nanoTime}.
+     * @return the duration counted*/
+    public long recordSince(long startNanos) {
+        long nanos = Math.max(0, System.nanoTime() - startNanos);
+        record(nanos);
+        return nanos;
+    }
+
+    /**Returns a new stopwatch which records into this. Keep one per thread and reuse it.*/
+    public Stopwatch newStopwatch() {
+        return new Stopwatch();
+    }
+
+    /**Copies the counts so far, leaving them to carry on growing.*/
+    public Snapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        for(int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, min.get(), max.get(), total.get(), System.nanoTime() - intervalStart.get());
+    }
+
+    /**Takes the counts since the last interval snapshot (or since this was made), and starts a new interval.*/
+    public Snapshot intervalSnapshot() {
+        long now = System.nanoTime();
+        long started = intervalStart.getAndSet(now);
+        long[] copy = new long[counts.length()];
+        for(int i = 0; i < copy.length; i++) {
+            copy[i] = counts.getAndSet(i, 0);
+        }
+        return new Snapshot(copy, min.getAndSet(Long.MAX_VALUE), max.getAndSet(Long.MIN_VALUE),
+                total.getAndSet(0), now - started);
+    }
+
+    //------------------------------------buckets------------------------------------
+
+    /**Values below 2^subBits get a bucket each. Above that, each power of two gets halfBuckets buckets,
+     * keyed by its top subBits bits.*/
+    private int bucketOf(long value) {
+        int shift = (64 - subBits) - Long.numberOfLeadingZeros(value);
+        if(shift <= 0) {
+            return (int)value;
+        }
+        int top = (int)(value >>> shift);//between halfBuckets and 2 * halfBuckets
+        return (shift + 1) * halfBuckets + (top - halfBuckets);
+    }
+
+    private long lowestIn(int bucket) {
+        int shift = bucket / halfBuckets - 1;
+        if(shift <= 0) {
+            return bucket;
+        }
+        return (long)(bucket % halfBuckets + halfBuckets) << shift;
+    }
+
+    private long highestIn(int bucket) {
+        int shift = bucket / halfBuckets - 1;
+        if(shift <= 0) {
+            return bucket;
+        }
+        long top = bucket % halfBuckets + halfBuckets;
+        //for the very last bucket this is 2^63 - 1, by way of overflowing to Long.MIN_VALUE
+        return ((top + 1) << shift) - 1;
+    }
+
+    //------------------------------------nested types------------------------------------
+
+    /**Times one thing after another into its recorder. Not thread-safe; keep one per thread.*/
+    public final class Stopwatch {
+        private long started;
+
+        private Stopwatch() {
+        }
+
+        /**Starts (or restarts) timing.
+         * @return this*/
+        public Stopwatch start() {
+            started = System.nanoTime();
+            return this;
+        }
+
+        /**Records the time since {@link #start}, without changing the start.
+         * @return the duration recorded*/
+        public long split() {
+            return recordSince(started);
+        }
+
+        /**Records the time since {@link #start}, and starts timing again from now.
+         * @return the duration recorded*/
+        public long lap() {
+            long now = System.nanoTime();
+            long nanos = Math.max(0, now - started);
+            record(nanos);
+            started = now;
+            return nanos;
+        }
+    }
+
+    /**The counts at one moment, or over one interval. Immutable.*/
+    public final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long min;
+        private final long max;
+        private final long total;
+        private final long intervalNanos;
+
+        private Snapshot(long[] counts, long min, long max, long total, long intervalNanos) {
+            this.counts = counts;
+            long c = 0;
+            int first = -1;
+            int last = -1;
+            for(int i = 0; i < counts.length; i++) {
+                if(counts[i] != 0) {
+                    c += counts[i];
+                    first = first < 0 ? i : first;
+                    last = i;
+                }
+            }
+            this.count = c;
+            //a duration being recorded during the snapshot may be counted before its min or max is set,
+            //or be counted in one interval and reach min or max in the other;
+            //so keep them to the buckets actually counted, where they're exact whenever neither happened
+            if(c == 0) {
+                this.min = 0;
+                this.max = 0;
+            }
+            else {
+                this.min = min == Long.MAX_VALUE ? lowestIn(first)
+                        : Math.max(lowestIn(first), Math.min(highestIn(first), min));
+                this.max = Math.max(this.min, max == Long.MIN_VALUE ? highestIn(last)
+                        : Math.max(lowestIn(last), Math.min(highestIn(last), max)));
+            }
+            this.total = total;
+            this.intervalNanos = intervalNanos;
+        }
+
+        /**The number of durations recorded.*/
+        public long count() {
+            return count;
+        }
+
+        /**The shortest duration recorded, exactly, or 0 if there were none.*/
+        public long min() {
+            return min;
+        }
+
+        /**The longest duration recorded, exactly, or 0 if there were none.*/
+        public long max() {
+            return max;
+        }
+
+        /**The mean duration, or 0 if there were none.*/
+        public long mean() {
+            return count == 0 ? 0 : total / count;
+        }
+
+        /**How long the snapshot covers: since the last interval snapshot, or since the recorder was made.*/
+        public long intervalNanos() {
+            return intervalNanos;
+        }
+
+        /**The duration which the given percentage of recorded durations are no longer than,
+         * to within the recorder's precision (rounded up, but never past {@link #max}).
+         * @param percent from 0 to 100; 50 gives the median
+         * @return 0 if no durations were recorded*/
+        public long percentile(double percent) {
+            if(percent < 0 || percent > 100 || percent != percent) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100, not "+percent);
+            }
+            if(count == 0) {
+                return 0;
+            }
+            //the rank is often a whole number which rounding has nudged just past (99.9% of 1000 is 999.0000000000001),
+            //so allow a few ulps before rounding up to the next one
+            double exactRank = percent * count / 100;
+            long rank = Math.max(1, (long)Math.ceil(exactRank - 4 * Math.ulp(exactRank)));
+            long seen = 0;
+            for(int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if(seen >= rank) {
+                    return Math.max(min, Math.min(max, highestIn(i)));
+                }
+            }
+            return max;
+        }
+
+        /**The number of recorded durations between from and to nanoseconds, inclusive,
+         * counting any bucket which overlaps the range.*/
+        public long countBetween(long from, long to) {
+            long n = 0;
+            for(int i = 0; i < counts.length; i++) {
+                if(counts[i] != 0 && highestIn(i) >= from && lowestIn(i) <= to) {
+                    n += counts[i];
+                }
+            }
+            return n;
+        }
+
+        /**A one-line summary, such as
+         * "1204 calls, min 310 nanoseconds, median 1.2 microseconds, 99% 35.1 microseconds, max 2.05 milliseconds",
+         * using {@link DateTime#getDurationNanos}.*/
+        @Override
+        public String toString() {
+            return count+" calls, min "+DateTime.getDurationNanos(min)
+                    +", median "+DateTime.getDurationNanos(percentile(50))
+                    +", 90% "+DateTime.getDurationNanos(percentile(90))
+                    +", 99% "+DateTime.getDurationNanos(percentile(99))
+                    +", 99.9% "+DateTime.getDurationNanos(percentile(99.9))
+                    +", max "+DateTime.getDurationNanos(max)
+                    +", mean "+DateTime.getDurationNanos(mean());
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package com.medavox.util.io;
+
+/**Word-at-a-time kernels behind {@link BytesAsUInt}.
+ * Every byte range here is a little-endian unsigned integer, the same layout BytesAsUInt uses:
+ * byte 0 of the range is the least significant.
+ * Bytes past the end of a range read as zero, so operands of different widths can be mixed freely.
+ * Nothing here validates its arguments; callers are expected to have checked them.
+ * Only Karatsuba multiplication allocates, for its intermediate sums and products.*/
+final class Limbs {
+    private static final long SIGN = Long.MIN_VALUE;
+    /**Mask for reading an int limb as an unsigned 32-bit value.*/
+    static final long MASK = 0xFFFFFFFFL;
+    /**Below this many 32-bit limbs in the shorter operand, schoolbook multiplication beats Karatsuba.*/
+    static final int KARATSUBA_THRESHOLD = 32;
+
+    private Limbs() {}
+
+    /**Returns true if x < y, treating both as unsigned 64-bit values.*/
+    static boolean unsignedLess(long x, long y) {
+        return (x ^ SIGN) < (y ^ SIGN);
+    }
+
+    /**Reads 8 bytes starting at a[off] as a little-endian long. The caller guarantees they exist.*/
+    static long getLong(byte[] a, int off) {
+        return (a[off] & 0xFFL)
+                | (a[off+1] & 0xFFL) << 8
+                | (a[off+2] & 0xFFL) << 16
+                | (a[off+3] & 0xFFL) << 24
+                | (a[off+4] & 0xFFL) << 32
+                | (a[off+5] & 0xFFL) << 40
+                | (a[off+6] & 0xFFL) << 48
+                | (a[off+7] & 0xFFL) << 56;
+    }
+
+    /**Writes v as 8 little-endian bytes starting at a[off].*/
+    static void putLong(byte[] a, int off, long v) {
+        a[off]   = (byte)v;
+        a[off+1] = (byte)(v >>> 8);
+        a[off+2] = (byte)(v >>> 16);
+        a[off+3] = (byte)(v >>> 24);
+        a[off+4] = (byte)(v >>> 32);
+        a[off+5] = (byte)(v >>> 40);
+        a[off+6] = (byte)(v >>> 48);
+        a[off+7] = (byte)(v >>> 56);
+    }
+
+    /**Reads the 8-byte word starting at byte {@code i} of the range a[off..off+len),
+     * zero-extending past the end of the range.*/
+    static long word(byte[] a, int off, int len, int i) {
+        if(i + 8 <= len) {
+            return getLong(a, off+i);
+        }
+        long out = 0;
+        for(int k = len - 1; k >= i; k--) {
+            out = (out << 8) | (a[off+k] & 0xFFL);
+        }
+        return out;
+    }
+
+    /**Reads byte {@code i} of the range a[off..off+len) as 0-255, or 0 past the end of the range.*/
+    static int byteAt(byte[] a, int off, int len, int i) {
+        return i < len ? a[off+i] & 0xFF : 0;
+    }
+
+    /**dst = a + b, truncated to dstLen bytes.
+     * dst may be the same range as a or b; each word is read before it is written.
+     * @return the carry out of the top byte of dst (0 or 1).
+     * Operand bytes at or above dstLen are ignored.*/
+    static int add(byte[] a, int aOff, int aLen,
+                   byte[] b, int bOff, int bLen,
+                   byte[] dst, int dstOff, int dstLen) {
+        int carry = 0;
+        int i = 0;
+        for(; i + 8 <= dstLen; i += 8) {
+            long x = word(a, aOff, aLen, i);
+            long y = word(b, bOff, bLen, i);
+            long s = x + y + carry;
+            //with a carry in, s == x means we wrapped all the way round
+            carry = (carry == 0 ? unsignedLess(s, x) : !unsignedLess(x, s)) ? 1 : 0;
+            putLong(dst, dstOff+i, s);
+        }
+        for(; i < dstLen; i++) {
+            int s = byteAt(a, aOff, aLen, i) + byteAt(b, bOff, bLen, i) + carry;
+            dst[dstOff+i] = (byte)s;
+            carry = s >>> 8;
+        }
+        return carry;
+    }
+
+    /**dst = a - b, truncated to dstLen bytes.
+     * dst may be the same range as a or b; each word is read before it is written.
+     * @return the borrow out of the top byte of dst (0 or 1).
+     * Operand bytes at or above dstLen are ignored.*/
+    static int subtract(byte[] a, int aOff, int aLen,
+                        byte[] b, int bOff, int bLen,
+                        byte[] dst, int dstOff, int dstLen) {
+        int borrow = 0;
+        int i = 0;
+        for(; i + 8 <= dstLen; i += 8) {
+            long x = word(a, aOff, aLen, i);
+            long y = word(b, bOff, bLen, i);
+            long d = x - y - borrow;
+            borrow = (borrow == 0 ? unsignedLess(x, y) : !unsignedLess(y, x)) ? 1 : 0;
+            putLong(dst, dstOff+i, d);
+        }
+        for(; i < dstLen; i++) {
+            int d = byteAt(a, aOff, aLen, i) - byteAt(b, bOff, bLen, i) - borrow;
+            dst[dstOff+i] = (byte)d;
+            borrow = (d >> 8) & 1;
+        }
+        return borrow;
+    }
+
+    //---------------------------int[] limbs----------------------------
+    //the multiply and divide kernels work on little-endian arrays of 32-bit limbs,
+    //so that a limb product (plus carries) always fits in 64 bits.
+
+    /**The number of 32-bit limbs needed to hold {@code byteLen} bytes.*/
+    static int limbCount(int byteLen) {
+        return (byteLen + 3) >>> 2;
+    }
+
+    /**Reads limb {@code i} of the byte range a[off..off+len), zero-extending past the end of the range.*/
+    static int limbAt(byte[] a, int off, int len, int i) {
+        int k = i << 2;
+        if(k + 4 <= len) {
+            return (a[off+k] & 0xFF)
+                    | (a[off+k+1] & 0xFF) << 8
+                    | (a[off+k+2] & 0xFF) << 16
+                    | (a[off+k+3] & 0xFF) << 24;
+        }
+        return byteAt(a, off, len, k)
+                | byteAt(a, off, len, k+1) << 8
+                | byteAt(a, off, len, k+2) << 16
+                | byteAt(a, off, len, k+3) << 24;
+    }
+
+    /**Packs the byte range a[off..off+len) into dst[dstOff..dstOff+limbCount(len)).*/
+    static void toLimbs(byte[] a, int off, int len, int[] dst, int dstOff) {
+        int n = limbCount(len);
+        for(int i = 0; i < n; i++) {
+            dst[dstOff+i] = limbAt(a, off, len, i);
+        }
+    }
+
+    /**Returns true if any byte of a[off..off+len) is non-zero, checking 8 bytes at a time.*/
+    static boolean anyNonZero(byte[] a, int off, int len) {
+        int i = 0;
+        for(; i + 8 <= len; i += 8) {
+            if(getLong(a, off+i) != 0) {
+                return true;
+            }
+        }
+        for(; i < len; i++) {
+            if(a[off+i] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**Compares the uints a[aOff..aOff+aLen) and b[bOff..bOff+bLen), 8 bytes at a time from the top.
+     * Missing high bytes of the narrower one count as zero.
+     * @return a negative number, zero or a positive number as a is less than, equal to or greater than b*/
+    static int compare(byte[] a, int aOff, int aLen, byte[] b, int bOff, int bLen) {
+        if(aLen > bLen && anyNonZero(a, aOff+bLen, aLen-bLen)) {
+            return 1;
+        }
+        if(bLen > aLen && anyNonZero(b, bOff+aLen, bLen-aLen)) {
+            return -1;
+        }
+        int i = Math.min(aLen, bLen);
+        //the odd bytes at the top first, then whole words on the way down
+        for(int stop = i & ~7; i > stop; ) {
+            i--;
+            int x = a[aOff+i] & 0xFF;
+            int y = b[bOff+i] & 0xFF;
+            if(x != y) {
+                return x < y ? -1 : 1;
+            }
+        }
+        while(i > 0) {
+            i -= 8;
+            long x = getLong(a, aOff+i);
+            long y = getLong(b, bOff+i);
+            if(x != y) {
+                return unsignedLess(x, y) ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**Returns the byte range a[off..off+len) as a new array of limbs.*/
+    static int[] toLimbs(byte[] a, int off, int len) {
+        int[] out = new int[limbCount(len)];
+        toLimbs(a, off, len, out, 0);
+        return out;
+    }
+
+    /**Unpacks x[xOff..xOff+xLen) into exactly dstLen bytes at dst[dstOff],
+     * truncating or zero-filling as needed.*/
+    static void fromLimbs(int[] x, int xOff, int xLen, byte[] dst, int dstOff, int dstLen) {
+        for(int i = 0; i < dstLen; i++) {
+            int limb = i >>> 2;
+            dst[dstOff+i] = limb < xLen ? (byte)(x[xOff+limb] >>> ((i & 3) << 3)) : 0;
+        }
+    }
+
+    /**r[rOff..rOff+rLen) += x[xOff..xOff+xLen), where xLen <= rLen.
+     * @return the carry out of the top of r.*/
+    static int addInto(int[] r, int rOff, int rLen, int[] x, int xOff, int xLen) {
+        long carry = 0;
+        int i = 0;
+        for(; i < xLen; i++) {
+            long s = (r[rOff+i] & MASK) + (x[xOff+i] & MASK) + carry;
+            r[rOff+i] = (int)s;
+            carry = s >>> 32;
+        }
+        for(; carry != 0 && i < rLen; i++) {
+            carry = ++r[rOff+i] == 0 ? 1 : 0;
+        }
+        return (int)carry;
+    }
+
+    /**r[rOff..rOff+rLen) -= x[xOff..xOff+xLen), where xLen <= rLen.
+     * @return the borrow out of the top of r.*/
+    static int subtractFrom(int[] r, int rOff, int rLen, int[] x, int xOff, int xLen) {
+        long borrow = 0;
+        int i = 0;
+        for(; i < xLen; i++) {
+            long d = (r[rOff+i] & MASK) - (x[xOff+i] & MASK) - borrow;
+            r[rOff+i] = (int)d;
+            borrow = d >>> 63;
+        }
+        for(; borrow != 0 && i < rLen; i++) {
+            borrow = r[rOff+i]-- == 0 ? 1 : 0;
+        }
+        return (int)borrow;
+    }
+
+    /**r[rOff..rOff+aLen+bLen) = a * b.
+     * Uses schoolbook multiplication for short operands, and Karatsuba once both reach
+     * {@link #KARATSUBA_THRESHOLD} limbs. r must not overlap either operand.*/
+    static void multiply(int[] a, int aOff, int aLen, int[] b, int bOff, int bLen, int[] r, int rOff) {
+        if(aLen < bLen) {
+            //make a the longer operand
+            int[] t = a; a = b; b = t;
+            int tOff = aOff; aOff = bOff; bOff = tOff;
+            int tLen = aLen; aLen = bLen; bLen = tLen;
+        }
+        if(bLen < KARATSUBA_THRESHOLD) {
+            multiplySchoolbook(a, aOff, aLen, b, bOff, bLen, r, rOff);
+        }
+        else if(2 * bLen <= aLen) {
+            //too lopsided to split evenly: multiply b by one b-sized chunk of a at a time
+            int rLen = aLen + bLen;
+            for(int i = 0; i < rLen; i++) {
+                r[rOff+i] = 0;
+            }
+            int[] chunk = new int[2 * bLen];
+            for(int i = 0; i < aLen; i += bLen) {
+                int n = Math.min(bLen, aLen - i);
+                multiply(a, aOff+i, n, b, bOff, bLen, chunk, 0);
+                addInto(r, rOff+i, rLen-i, chunk, 0, n + bLen);
+            }
+        }
+        else {
+            multiplyKaratsuba(a, aOff, aLen, b, bOff, bLen, r, rOff);
+        }
+    }
+
+    private static void multiplySchoolbook(int[] a, int aOff, int aLen, int[] b, int bOff, int bLen,
+                                           int[] r, int rOff) {
+        for(int i = 0; i < aLen + bLen; i++) {
+            r[rOff+i] = 0;
+        }
+        for(int i = 0; i < aLen; i++) {
+            long ai = a[aOff+i] & MASK;
+            if(ai == 0) {
+                continue;
+            }
+            long carry = 0;
+            for(int j = 0; j < bLen; j++) {
+                //(2^32-1)^2 + 2(2^32-1) == 2^64-1, so this never overflows an unsigned long
+                long t = ai * (b[bOff+j] & MASK) + (r[rOff+i+j] & MASK) + carry;
+                r[rOff+i+j] = (int)t;
+                carry = t >>> 32;
+            }
+            r[rOff+i+bLen] = (int)carry;
+        }
+    }
+
+    /**Requires aLen >= bLen > aLen/2.*/
+    private static void multiplyKaratsuba(int[] a, int aOff, int aLen, int[] b, int bOff, int bLen,
+                                          int[] r, int rOff) {
+        //a = a1*B^h + a0, b = b1*B^h + b0
+        //a*b = z2*B^2h + (z1 - z2 - z0)*B^h + z0,
+        //where z0 = a0*b0, z2 = a1*b1, z1 = (a0+a1)(b0+b1)
+        int h = (aLen + 1) >>> 1;
+        int rLen = aLen + bLen;
+        multiply(a, aOff, h, b, bOff, h, r, rOff);
+        multiply(a, aOff+h, aLen-h, b, bOff+h, bLen-h, r, rOff + 2*h);
+
+        int[] sa = new int[h+1];
+        int[] sb = new int[h+1];
+        System.arraycopy(a, aOff, sa, 0, h);
+        System.arraycopy(b, bOff, sb, 0, h);
+        sa[h] = addInto(sa, 0, h, a, aOff+h, aLen-h);
+        sb[h] = addInto(sb, 0, h, b, bOff+h, bLen-h);
+
+        int[] z1 = new int[2*h + 2];
+        multiply(sa, 0, h+1, sb, 0, h+1, z1, 0);
+        subtractFrom(z1, 0, z1.length, r, rOff, 2*h);
+        subtractFrom(z1, 0, z1.length, r, rOff + 2*h, rLen - 2*h);
+        //the middle term is at most a*b / B^h, so anything above rLen-h limbs is zero
+        addInto(r, rOff+h, rLen-h, z1, 0, Math.min(z1.length, rLen-h));
+    }
+
+    /**Returns the number of limbs in x[0..len) once leading (most-significant) zero limbs are dropped.*/
+    static int significantLimbs(int[] x, int len) {
+        while(len > 0 && x[len-1] == 0) {
+            len--;
+        }
+        return len;
+    }
+
+    /**Divides the unsigned 64-bit value n by d, where 0 < d < 2^32.*/
+    static long divideUnsigned(long n, long d) {
+        if(n >= 0) {
+            return n / d;
+        }
+        //halve n so the signed division is safe, then fix up the one bit we lost
+        long q = ((n >>> 1) / d) << 1;
+        long r = n - q * d;
+        return unsignedLess(r, d) ? q : q + 1;
+    }
+
+    /**q[0..uLen) = u / d, where 0 < d < 2^32.
+     * q may be the same array as u.
+     * @return the remainder.*/
+    static long divideBySingleLimb(int[] u, int uLen, long d, int[] q) {
+        long rem = 0;
+        for(int i = uLen - 1; i >= 0; i--) {
+            long n = (rem << 32) | (u[i] & MASK);
+            long qi = divideUnsigned(n, d);
+            q[i] = (int)qi;
+            rem = n - qi * d;
+        }
+        return rem;
+    }
+
+    /**Long division of u[0..uLen) by v[0..vLen), producing both results in one pass:
+     * q[0..uLen) receives the quotient, and r[0..vLen) the remainder.
+     * Single-limb divisors take a fast path; anything wider uses Knuth's Algorithm D
+     * (The Art of Computer Programming vol. 2, 4.3.1), following the layout in Hacker's Delight.
+     * Neither u nor v is modified, and q and r must not overlap them or each other.
+     * @throws ArithmeticException if v is zero*/
+    static void divide(int[] u, int uLen, int[] v, int vLen, int[] q, int[] r) {
+        for(int i = 0; i < uLen; i++) {
+            q[i] = 0;
+        }
+        for(int i = 0; i < vLen; i++) {
+            r[i] = 0;
+        }
+        int n = significantLimbs(v, vLen);
+        int m = significantLimbs(u, uLen);
+        if(n == 0) {
+            throw new ArithmeticException("division by zero");
+        }
+        if(m < n) {
+            //the divisor is bigger: nothing goes into it, and all of u is left over
+            System.arraycopy(u, 0, r, 0, m);
+            return;
+        }
+        if(n == 1) {
+            r[0] = (int)divideBySingleLimb(u, m, v[0] & MASK, q);
+            return;
+        }
+
+        //D1: normalise, so the divisor's top limb has its top bit set.
+        //long shifts, because (x >>> 32) on an int is a no-op rather than 0
+        int s = Integer.numberOfLeadingZeros(v[n-1]);
+        int[] vn = new int[n];
+        for(int i = n - 1; i > 0; i--) {
+            vn[i] = (int)(((v[i] & MASK) << s) | ((v[i-1] & MASK) >>> (32 - s)));
+        }
+        vn[0] = v[0] << s;
+        int[] un = new int[m + 1];
+        un[m] = (int)((u[m-1] & MASK) >>> (32 - s));
+        for(int i = m - 1; i > 0; i--) {
+            un[i] = (int)(((u[i] & MASK) << s) | ((u[i-1] & MASK) >>> (32 - s)));
+        }
+        un[0] = u[0] << s;
+
+        long vTop = vn[n-1] & MASK;
+        long vNext = vn[n-2] & MASK;
+        for(int j = m - n; j >= 0; j--) {
+            //D3: estimate this quotient limb from the top two limbs of the running remainder;
+            //the estimate is at most 2 too big
+            long num = ((un[j+n] & MASK) << 32) | (un[j+n-1] & MASK);
+            long qhat = divideUnsigned(num, vTop);
+            long rhat = num - qhat * vTop;
+            while(qhat > MASK
+                    || unsignedLess((rhat << 32) | (un[j+n-2] & MASK), qhat * vNext)) {
+                qhat--;
+                rhat += vTop;
+                if(rhat > MASK) {
+                    break;
+                }
+            }
+
+            //D4: multiply and subtract
+            long borrow = 0;
+            long t;
+            for(int i = 0; i < n; i++) {
+                long p = qhat * (vn[i] & MASK);
+                t = (un[i+j] & MASK) - borrow - (p & MASK);
+                un[i+j] = (int)t;
+                borrow = (p >>> 32) - (t >> 32);
+            }
+            t = (un[j+n] & MASK) - borrow;
+            un[j+n] = (int)t;
+
+            q[j] = (int)qhat;
+            if(t < 0) {
+                //D6: the estimate was one too big; add the divisor back
+                q[j]--;
+                long carry = 0;
+                for(int i = 0; i < n; i++) {
+                    long sum = (un[i+j] & MASK) + (vn[i] & MASK) + carry;
+                    un[i+j] = (int)sum;
+                    carry = sum >>> 32;
+                }
+                un[j+n] += (int)carry;
+            }
+        }
+
+        //D8: unnormalise the remainder
+        for(int i = 0; i < n; i++) {
+            r[i] = (int)(((un[i] & MASK) >>> s) | ((un[i+1] & MASK) << (32 - s)));
+        }
+    }
+}
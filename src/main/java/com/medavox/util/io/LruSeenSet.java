@@ -0,0 +1,113 @@
+package com.medavox.util.io;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**An exact {@link SeenSet} with a memory budget, which forgets the least recently seen strings to stay within it.
+ * A forgotten string will be reported as new if it turns up again.
+ *
+ * The strings are spread over several independently locked stripes, each an access-ordered LinkedHashMap
+ * with an equal share of the budget, so threads working on different strings rarely wait for each other.
+ * Eviction is least-recently-used within each stripe, which approximates it across the whole set.*/
+public class LruSeenSet implements SeenSet
+{
+    private final Stripe[] stripes;
+    private final long stripeBudget;
+
+    /**@param budgetBytes the most memory the set should use, by {@link #memoryFootprintBytes()}'s estimate*/
+    public LruSeenSet(long budgetBytes)
+    {
+        this(budgetBytes, 16);
+    }
+
+    /**@param budgetBytes the most memory the set should use, by {@link #memoryFootprintBytes()}'s estimate
+     * @param stripeCount how many independently locked parts to split the set into*/
+    public LruSeenSet(long budgetBytes, int stripeCount)
+    {
+        if(stripeCount < 1) {throw new IllegalArgumentException("stripeCount must be at least 1");}
+        if(budgetBytes < stripeCount) {throw new IllegalArgumentException("budgetBytes is too small");}
+        stripes = new Stripe[stripeCount];
+        for(int i = 0; i < stripes.length; i++)
+        {
+            stripes[i] = new Stripe();
+        }
+        stripeBudget = budgetBytes / stripeCount;
+    }
+
+    @Override
+    public boolean addIfAbsent(String s)
+    {
+        Stripe stripe = stripeFor(s);
+        synchronized(stripe)
+        {
+            //get() moves an existing entry to the most recently used end
+            if(stripe.map.get(s) != null)
+            {
+                return false;
+            }
+            stripe.map.put(s, Boolean.TRUE);
+            stripe.bytes += ConcurrentSeenSet.entryBytes(s);
+            //always keep the newest entry, even if it alone is over budget
+            Iterator<String> eldest = stripe.map.keySet().iterator();
+            while(stripe.bytes > stripeBudget && stripe.map.size() > 1)
+            {
+                stripe.bytes -= ConcurrentSeenSet.entryBytes(eldest.next());
+                eldest.remove();
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public boolean mightContain(String s)
+    {
+        Stripe stripe = stripeFor(s);
+        synchronized(stripe)
+        {
+            return stripe.map.containsKey(s);
+        }
+    }
+
+    @Override
+    public long size()
+    {
+        long size = 0;
+        for(Stripe stripe : stripes)
+        {
+            synchronized(stripe)
+            {
+                size += stripe.map.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public long memoryFootprintBytes()
+    {
+        long bytes = 0;
+        for(Stripe stripe : stripes)
+        {
+            synchronized(stripe)
+            {
+                bytes += stripe.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    private Stripe stripeFor(String s)
+    {
+        int h = s.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return stripes[(h & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    private static class Stripe
+    {
+        final LinkedHashMap<String, Boolean> map = new LinkedHashMap<String, Boolean>(16, 0.75f, true);
+        long bytes = 0;
+    }
+}
@@ -0,0 +1,98 @@
+package com.medavox.util.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**A CharSequence over bytes in a single-byte charset, usually a memory-mapped file,
+ * which decodes each char through a 256-entry table as it is asked for.
+ * Sub-sequences share the same bytes, so nothing is copied until {@link #toString()}.
+ * Created by {@link FileLoader#map}.
+ *
+ * Reads are absolute, so it is thread-safe as long as nothing writes to the bytes.*/
+public final class MappedCharSequence implements CharSequence
+{
+    private final ByteBuffer bytes;
+    private final int offset;
+    private final int length;
+    private final char[] table;
+
+    MappedCharSequence(ByteBuffer bytes, char[] table)
+    {
+        this(bytes, 0, bytes.limit(), table);
+    }
+
+    private MappedCharSequence(ByteBuffer bytes, int offset, int length, char[] table)
+    {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.table = table;
+    }
+
+    /**Decodes each of the 256 byte values in a single-byte charset.
+     * @throws IllegalArgumentException if the charset uses more than one byte for any char*/
+    static char[] decodingTable(Charset charset)
+    {
+        if(!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1)
+        {
+            throw new IllegalArgumentException(charset+" is not a single-byte charset");
+        }
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        char[] table = new char[256];
+        ByteBuffer in = ByteBuffer.allocate(1);
+        CharBuffer out = CharBuffer.allocate(2);
+        for(int b = 0; b < 256; b++)
+        {
+            in.clear();
+            in.put(0, (byte)b);
+            out.clear();
+            decoder.reset();
+            decoder.decode(in, out, true);
+            decoder.flush(out);
+            table[b] = out.position() == 1 ? out.get(0) : '\uFFFD';
+        }
+        return table;
+    }
+
+    @Override
+    public int length()
+    {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        if(index < 0 || index >= length)
+        {
+            throw new IndexOutOfBoundsException("index "+index+" is outside a sequence of "+length);
+        }
+        return table[bytes.get(offset + index) & 0xFF];
+    }
+
+    @Override
+    public MappedCharSequence subSequence(int start, int end)
+    {
+        if(start < 0 || start > end || end > length)
+        {
+            throw new IndexOutOfBoundsException("range ["+start+", "+end+") is outside a sequence of "+length);
+        }
+        return new MappedCharSequence(bytes, offset + start, end - start, table);
+    }
+
+    @Override
+    public String toString()
+    {
+        char[] out = new char[length];
+        for(int i = 0; i < length; i++)
+        {
+            out[i] = table[bytes.get(offset + i) & 0xFF];
+        }
+        return new String(out);
+    }
+}
@@ -0,0 +1,9 @@
+package com.medavox.util.io;
+
+public interface MatchCallback
+{
+    /**Called with each match, in order, as soon as it is found by a {@link StreamRegexScanner}.
+     * @param match the matched text
+     * @param start the offset of the match's first char from the start of the input, in chars*/
+    public abstract void onMatch(String match, long start);
+}
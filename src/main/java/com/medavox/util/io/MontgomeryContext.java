@@ -0,0 +1,231 @@
+package com.medavox.util.io;
+
+/**Modular arithmetic on {@link BytesAsUInt}-layout uints, for one fixed odd modulus.
+ * Multiplication uses Montgomery reduction (coarsely integrated operand scanning, over 32-bit limbs),
+ * so no division happens after construction.
+ * Exponentiation uses a fixed 4-bit window.
+ *
+ * Everything depending only on the modulus (R^2 mod m, and the modulus' inverse mod 2^32)
+ * is computed once, in the constructor.
+ * All the scratch space is allocated there too, so repeated operations through the
+ * methods which write into a caller's array produce no garbage.
+ *
+ * Operands must already be reduced: less than the modulus.
+ * They may be any width, as long as that holds.
+ * Results are always exactly as wide as the modulus array.
+ *
+ * Not thread-safe, because of the shared scratch space: give each thread its own context.*/
+public final class MontgomeryContext {
+    private static final int WINDOW_BITS = 4;
+
+    private final byte[] modulus;
+    private final int width;
+    /**The number of limbs in the modulus, so R = 2^(32n).*/
+    private final int n;
+    private final int[] m;
+    /**-m^-1 mod 2^32*/
+    private final int mInv;
+    /**R^2 mod m: Montgomery-multiplying by this converts into Montgomery form.*/
+    private final int[] r2;
+    /**R mod m: 1 in Montgomery form.*/
+    private final int[] rModM;
+    /**Plain 1: Montgomery-multiplying by this converts back out of Montgomery form.*/
+    private final int[] plainOne;
+
+    //scratch
+    private final int[] t;
+    private final int[] x;
+    private final int[] y;
+    private final int[] acc;
+    /**base^0 .. base^15, in Montgomery form, n limbs each.*/
+    private final int[] window;
+
+    /**@param modulus an odd uint greater than 1, in BytesAsUInt layout.
+     * Results will be as wide as this array.
+     * @throws IllegalArgumentException if the modulus is even, or 1*/
+    public MontgomeryContext(byte[] modulus) {
+        if(modulus.length == 0 || (modulus[0] & 1) == 0) {
+            throw new IllegalArgumentException("modulus must be odd");
+        }
+        if(Limbs.compare(modulus, 0, modulus.length, new byte[] {1}, 0, 1) <= 0) {
+            throw new IllegalArgumentException("modulus must be greater than 1");
+        }
+        this.modulus = modulus.clone();
+        width = modulus.length;
+        int[] limbs = Limbs.toLimbs(modulus, 0, modulus.length);
+        n = Math.max(1, Limbs.significantLimbs(limbs, limbs.length));
+        m = new int[n];
+        System.arraycopy(limbs, 0, m, 0, n);
+
+        //Newton's iteration for the inverse mod 2^32: each step doubles the number of correct bits,
+        //and m is its own inverse mod 8, which gives the first 3
+        int inv = m[0];
+        for(int i = 0; i < 4; i++) {
+            inv *= 2 - m[0] * inv;
+        }
+        mInv = -inv;
+
+        //R^2 mod m, by long division of 2^(64n): the one division this class ever does
+        int[] rSquared = new int[2*n + 1];
+        rSquared[2*n] = 1;
+        int[] quotient = new int[rSquared.length];
+        r2 = new int[n];
+        Limbs.divide(rSquared, rSquared.length, m, n, quotient, r2);
+
+        t = new int[n + 2];
+        x = new int[n];
+        y = new int[n];
+        acc = new int[n];
+        window = new int[n << WINDOW_BITS];
+        plainOne = new int[n];
+        plainOne[0] = 1;
+        rModM = new int[n];
+        montgomeryMultiply(r2, 0, plainOne, 0, rModM, 0);
+    }
+
+    /**The width of every result, in bytes: the same as the modulus array.*/
+    public int width() {
+        return width;
+    }
+
+    /**Returns a copy of the modulus.*/
+    public byte[] modulus() {
+        return modulus.clone();
+    }
+
+    /**Writes (a * b) mod m into dst[dstOff..dstOff+width()), without allocating anything.
+     * @throws IllegalArgumentException if a or b is not less than the modulus*/
+    public void modMul(byte[] a, byte[] b, byte[] dst, int dstOff) {
+        load(a, x);
+        load(b, y);
+        //(a*R^2*R^-1) = aR, then (aR*b*R^-1) = ab: two reductions, no conversions back
+        montgomeryMultiply(x, 0, r2, 0, x, 0);
+        montgomeryMultiply(x, 0, y, 0, x, 0);
+        Limbs.fromLimbs(x, 0, n, dst, dstOff, width);
+    }
+
+    /**Returns (a * b) mod m, in a new array.
+     * @throws IllegalArgumentException if a or b is not less than the modulus*/
+    public byte[] modMul(byte[] a, byte[] b) {
+        byte[] out = new byte[width];
+        modMul(a, b, out, 0);
+        return out;
+    }
+
+    /**Writes (a + b) mod m into dst[dstOff..dstOff+width()), without allocating anything.
+     * @throws IllegalArgumentException if a or b is not less than the modulus*/
+    public void modAdd(byte[] a, byte[] b, byte[] dst, int dstOff) {
+        load(a, x);
+        load(b, y);
+        int carry = Limbs.addInto(x, 0, n, y, 0, n);
+        if(carry != 0 || compareToModulus(x) >= 0) {
+            Limbs.subtractFrom(x, 0, n, m, 0, n);
+        }
+        Limbs.fromLimbs(x, 0, n, dst, dstOff, width);
+    }
+
+    /**Returns (a + b) mod m, in a new array.
+     * @throws IllegalArgumentException if a or b is not less than the modulus*/
+    public byte[] modAdd(byte[] a, byte[] b) {
+        byte[] out = new byte[width];
+        modAdd(a, b, out, 0);
+        return out;
+    }
+
+    /**Writes (base ^ exponent) mod m into dst[dstOff..dstOff+width()), without allocating anything.
+     * @param exponent any uint, of any width
+     * @throws IllegalArgumentException if base is not less than the modulus*/
+    public void modPow(byte[] base, byte[] exponent, byte[] dst, int dstOff) {
+        load(base, x);
+        //window[k] = base^k, in Montgomery form
+        System.arraycopy(rModM, 0, window, 0, n);
+        montgomeryMultiply(x, 0, r2, 0, window, n);
+        for(int k = 2; k < 1 << WINDOW_BITS; k++) {
+            montgomeryMultiply(window, (k-1) * n, window, n, window, k * n);
+        }
+
+        System.arraycopy(rModM, 0, acc, 0, n);
+        boolean started = false;
+        for(int i = exponent.length * 2 - 1; i >= 0; i--) {
+            int nibble = (exponent[i >>> 1] >>> ((i & 1) << 2)) & 0xF;
+            if(started) {
+                for(int s = 0; s < WINDOW_BITS; s++) {
+                    montgomeryMultiply(acc, 0, acc, 0, acc, 0);
+                }
+            }
+            if(nibble != 0) {
+                montgomeryMultiply(acc, 0, window, nibble * n, acc, 0);
+                started = true;
+            }
+        }
+        montgomeryMultiply(acc, 0, plainOne, 0, acc, 0);
+        Limbs.fromLimbs(acc, 0, n, dst, dstOff, width);
+    }
+
+    /**Returns (base ^ exponent) mod m, in a new array.
+     * @param exponent any uint, of any width
+     * @throws IllegalArgumentException if base is not less than the modulus*/
+    public byte[] modPow(byte[] base, byte[] exponent) {
+        byte[] out = new byte[width];
+        modPow(base, exponent, out, 0);
+        return out;
+    }
+
+    /**out = a * b * R^-1 mod m, for a, b < m. out may be the same as a or b.*/
+    private void montgomeryMultiply(int[] a, int aOff, int[] b, int bOff, int[] out, int outOff) {
+        final long mask = Limbs.MASK;
+        for(int i = 0; i < t.length; i++) {
+            t[i] = 0;
+        }
+        for(int i = 0; i < n; i++) {
+            //t += a * b[i]
+            long bi = b[bOff+i] & mask;
+            long c = 0;
+            for(int j = 0; j < n; j++) {
+                long s = (t[j] & mask) + (a[aOff+j] & mask) * bi + c;
+                t[j] = (int)s;
+                c = s >>> 32;
+            }
+            long s = (t[n] & mask) + c;
+            t[n] = (int)s;
+            t[n+1] = (int)(s >>> 32);
+
+            //t = (t + q*m) / 2^32, where q is chosen to make the bottom limb vanish
+            long q = (t[0] * mInv) & mask;
+            c = ((t[0] & mask) + q * (m[0] & mask)) >>> 32;
+            for(int j = 1; j < n; j++) {
+                s = (t[j] & mask) + q * (m[j] & mask) + c;
+                t[j-1] = (int)s;
+                c = s >>> 32;
+            }
+            s = (t[n] & mask) + c;
+            t[n-1] = (int)s;
+            t[n] = t[n+1] + (int)(s >>> 32);
+        }
+        //the result is now less than 2m: one conditional subtraction finishes it
+        if(t[n] != 0 || compareToModulus(t) >= 0) {
+            Limbs.subtractFrom(t, 0, n, m, 0, n);
+        }
+        System.arraycopy(t, 0, out, outOff, n);
+    }
+
+    /**Compares the low n limbs of v with the modulus.*/
+    private int compareToModulus(int[] v) {
+        for(int i = n - 1; i >= 0; i--) {
+            if(v[i] != m[i]) {
+                return (v[i] & Limbs.MASK) < (m[i] & Limbs.MASK) ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**Checks that a is reduced, then unpacks it into n limbs.*/
+    private void load(byte[] a, int[] dst) {
+        if(Limbs.compare(a, 0, a.length, modulus, 0, modulus.length) >= 0) {
+            throw new IllegalArgumentException("operand must be less than the modulus");
+        }
+        for(int i = 0; i < n; i++) {
+            dst[i] = Limbs.limbAt(a, 0, a.length, i);
+        }
+    }
+}
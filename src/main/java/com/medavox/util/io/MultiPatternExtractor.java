@@ -0,0 +1,398 @@
+package com.medavox.util.io;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**Finds matches of many patterns in a document in a single pass, and says which pattern each came from.
+ *
+ * Rules with a literal prefix (such as a domain or the start of a path) are found with an Aho-Corasick automaton
+ * built over all the prefixes at once, which looks at each char of the document once no matter how many rules
+ * there are. A prefix rule may also have a regex, which is only run (with {@link Matcher#lookingAt()})
+ * where its prefix occurs, to confirm the hit and find where it ends.
+ *
+ * Rules with no usable prefix are joined into one alternation of groups, and found together
+ * with a single Matcher. So they behave as one regex alternation would: at any one position only the first
+ * such rule that matches is reported, and none of their matches overlap. A regex which uses numbered
+ * back-references can't be renumbered into the alternation, so it gets a pass of its own,
+ * as does one whose named groups clash with another's.
+ *
+ * Each prefix rule behaves as if it had its own Matcher run over the document:
+ * its matches never overlap each other, but may overlap other rules' matches.
+ *
+ * An instance holds only immutable tables, so it is thread-safe.*/
+public final class MultiPatternExtractor {
+    private static final Pattern BACK_REFERENCE = Pattern.compile("(?<!\\\\)(?:\\\\\\\\)*\\\\[1-9]");
+    private static final Pattern NAMED_GROUP = Pattern.compile("\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>");
+
+    /**One of the patterns to look for.*/
+    public static final class Rule {
+        /**A name for reporting, which needn't be unique.*/
+        public final String name;
+        /**The literal text every match starts with, or null for a regex-only rule.*/
+        public final String prefix;
+        /**The regex matches must satisfy, or null for a literal-only rule.*/
+        public final Pattern pattern;
+
+        private Rule(String name, String prefix, Pattern pattern) {
+            this.name = name;
+            this.prefix = prefix;
+            this.pattern = pattern;
+        }
+
+        /**A rule matching exactly the given text.*/
+        public static Rule literal(String name, String text) {
+            return prefixed(name, text, null);
+        }
+
+        /**A rule whose matches start with the given literal prefix, and match the given regex from there.
+         * The regex is matched from the start of the prefix, so it must match the prefix too;
+         * it can still look behind it.
+         * @param confirm the regex to confirm each hit with, or null to match just the prefix*/
+        public static Rule prefixed(String name, String prefix, Pattern confirm) {
+            if(prefix.isEmpty()) {throw new IllegalArgumentException("prefix must not be empty");}
+            return new Rule(name, prefix, confirm);
+        }
+
+        /**A rule with no literal prefix, found by the combined regex pass.*/
+        public static Rule regex(String name, Pattern pattern) {
+            return new Rule(name, null, pattern);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**One match, and the rule it came from.*/
+    public static final class Match {
+        public final Rule rule;
+        /**The position of the rule in the list the extractor was made with.*/
+        public final int ruleIndex;
+        public final int start;
+        public final int end;
+        public final String text;
+
+        private Match(Rule rule, int ruleIndex, int start, int end, String text) {
+            this.rule = rule;
+            this.ruleIndex = ruleIndex;
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return rule.name+"@"+start+":"+text;
+        }
+    }
+
+    public interface Handler {
+        /**Called with each match as it is found.*/
+        void onMatch(Match match);
+    }
+
+    private static final Comparator<Match> BY_POSITION = new Comparator<Match>() {
+        @Override public int compare(Match a, Match b) {
+            return a.start != b.start ? (a.start < b.start ? -1 : 1) : (a.ruleIndex - b.ruleIndex);
+        }
+    };
+
+    private final Rule[] rules;
+
+    //the automaton over the literal prefixes
+    /**The char class of each char up to the highest char in any prefix; every other char is class 0.*/
+    private final int[] classOf;
+    private final int classes;
+    /**next state = delta[state * classes + class]*/
+    private final int[] delta;
+    /**The rules whose prefix ends at each state, including via suffix links; null where there are none.*/
+    private final int[][] outputs;
+
+    //the regex-only rules
+    /**All the regex rules that could be combined, or null if there are none.*/
+    private final Pattern combined;
+    /**The rule index behind each alternative in combined.*/
+    private final int[] combinedRules;
+    /**The number of the group wrapping each alternative in combined.*/
+    private final int[] combinedGroups;
+    /**Regex rules with their own pass.*/
+    private final int[] separateRules;
+
+    public MultiPatternExtractor(Rule... rules) {
+        this(Arrays.asList(rules));
+    }
+
+    public MultiPatternExtractor(List<Rule> rules) {
+        this.rules = rules.toArray(new Rule[rules.size()]);
+
+        //sort the rules out
+        List<Integer> literal = new ArrayList<Integer>();
+        List<Integer> combinable = new ArrayList<Integer>();
+        List<Integer> separate = new ArrayList<Integer>();
+        Set<String> groupNames = new HashSet<String>();
+        for(int i = 0; i < this.rules.length; i++) {
+            Rule r = this.rules[i];
+            if(r.prefix != null) {
+                literal.add(i);
+            }
+            else if(canCombine(r.pattern, groupNames)) {
+                combinable.add(i);
+            }
+            else {
+                separate.add(i);
+            }
+        }
+        separateRules = toArray(separate);
+
+        combinedRules = toArray(combinable);
+        combinedGroups = new int[combinedRules.length];
+        if(combinedRules.length == 0) {
+            combined = null;
+        }
+        else {
+            StringBuilder alternation = new StringBuilder();
+            int group = 1;
+            for(int k = 0; k < combinedRules.length; k++) {
+                if(k > 0) {
+                    alternation.append('|');
+                }
+                Pattern p = this.rules[combinedRules[k]].pattern;
+                //the wrapping group comes first, then the rule's own groups
+                combinedGroups[k] = group;
+                group += 1 + p.matcher("").groupCount();
+                alternation.append('(').append(inlineFlags(p.flags())).append(p.pattern());
+                if(endsQuoted(p.pattern())) {
+                    //a \Q quote may run to the end of the pattern, and would quote the closing parentheses
+                    alternation.append("\\E");
+                }
+                if((p.flags() & Pattern.COMMENTS) != 0) {
+                    //end any trailing comment, so it doesn't swallow the closing parentheses
+                    alternation.append('\n');
+                }
+                alternation.append("))");
+            }
+            combined = Pattern.compile(alternation.toString());
+        }
+
+        //build the trie: trie.get(s) maps a char to the next state
+        List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+        List<List<Integer>> ends = new ArrayList<List<Integer>>();
+        trie.add(new HashMap<Character, Integer>());
+        ends.add(new ArrayList<Integer>());
+        int maxChar = 0;
+        for(int i : literal) {
+            int s = 0;
+            for(char c : this.rules[i].prefix.toCharArray()) {
+                maxChar = Math.max(maxChar, c);
+                Integer next = trie.get(s).get(c);
+                if(next == null) {
+                    next = trie.size();
+                    trie.add(new HashMap<Character, Integer>());
+                    ends.add(new ArrayList<Integer>());
+                    trie.get(s).put(c, next);
+                }
+                s = next;
+            }
+            ends.get(s).add(i);
+        }
+
+        //number the chars that appear in any prefix; the rest all behave alike
+        classOf = new int[literal.isEmpty() ? 0 : maxChar + 1];
+        int nextClass = 1;
+        for(Map<Character, Integer> edges : trie) {
+            for(char c : edges.keySet()) {
+                if(classOf[c] == 0) {
+                    classOf[c] = nextClass++;
+                }
+            }
+        }
+        classes = nextClass;
+
+        //breadth-first, so each state's suffix link is finished before its children need it
+        int states = trie.size();
+        delta = new int[states * classes];
+        int[] fail = new int[states];
+        outputs = new int[states][];
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        queue.add(0);
+        while(!queue.isEmpty()) {
+            int s = queue.poll();
+            List<Integer> out = new ArrayList<Integer>(ends.get(s));
+            if(s != 0 && outputs[fail[s]] != null) {
+                for(int r : outputs[fail[s]]) {
+                    out.add(r);
+                }
+            }
+            outputs[s] = out.isEmpty() ? null : toArray(out);
+            for(int c = 0; c < classes; c++) {
+                delta[s * classes + c] = s == 0 ? 0 : delta[fail[s] * classes + c];
+            }
+            for(Map.Entry<Character, Integer> edge : trie.get(s).entrySet()) {
+                int child = edge.getValue();
+                int c = classOf[edge.getKey()];
+                fail[child] = s == 0 ? 0 : delta[fail[s] * classes + c];
+                delta[s * classes + c] = child;
+                queue.add(child);
+            }
+        }
+    }
+
+    /**The rules, in the order given.*/
+    public List<Rule> rules() {
+        return Collections.unmodifiableList(Arrays.asList(rules));
+    }
+
+    /**Returns every match in text, ordered by start position, then by rule.*/
+    public List<Match> findAll(CharSequence text) {
+        final List<Match> out = new ArrayList<Match>();
+        scan(text, new Handler() {
+            @Override public void onMatch(Match match) {
+                out.add(match);
+            }
+        });
+        Collections.sort(out, BY_POSITION);
+        return out;
+    }
+
+    /**Passes every match in text to handler as it is found.
+     * Matches of each rule arrive in order, but the rules' matches are interleaved
+     * in whatever order the passes find them.*/
+    public void scan(CharSequence text, Handler handler) {
+        int length = text.length();
+        if(outputs.length > 1) {
+            //where each literal rule may next match, so its matches don't overlap
+            int[] nextAllowed = new int[rules.length];
+            Matcher[] confirmers = new Matcher[rules.length];
+            int s = 0;
+            for(int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                s = delta[s * classes + (c < classOf.length ? classOf[c] : 0)];
+                if(outputs[s] == null) {
+                    continue;
+                }
+                for(int r : outputs[s]) {
+                    Rule rule = rules[r];
+                    int start = i + 1 - rule.prefix.length();
+                    if(start < nextAllowed[r]) {
+                        continue;
+                    }
+                    int end = i + 1;
+                    if(rule.pattern != null) {
+                        Matcher m = confirmers[r];
+                        if(m == null) {
+                            m = rule.pattern.matcher(text);
+                            m.useTransparentBounds(true);
+                            m.useAnchoringBounds(false);
+                            confirmers[r] = m;
+                        }
+                        m.region(start, length);
+                        if(!m.lookingAt()) {
+                            continue;
+                        }
+                        end = m.end();
+                    }
+                    nextAllowed[r] = Math.max(end, start + 1);
+                    handler.onMatch(new Match(rule, r, start, end, text.subSequence(start, end).toString()));
+                }
+            }
+        }
+
+        if(combined != null) {
+            Matcher m = combined.matcher(text);
+            while(m.find()) {
+                for(int k = 0; k < combinedRules.length; k++) {
+                    if(m.start(combinedGroups[k]) >= 0) {
+                        emit(combinedRules[k], m, handler);
+                        break;
+                    }
+                }
+            }
+        }
+
+        for(int r : separateRules) {
+            Matcher m = rules[r].pattern.matcher(text);
+            while(m.find()) {
+                emit(r, m, handler);
+            }
+        }
+    }
+
+    private void emit(int r, Matcher m, Handler handler) {
+        handler.onMatch(new Match(rules[r], r, m.start(), m.end(), m.group()));
+    }
+
+    /**Whether a pattern keeps its meaning when wrapped in a group and put in an alternation
+     * with the patterns already accepted, whose group names are in usedNames.
+     * If it does, its group names are added to usedNames.*/
+    private static boolean canCombine(Pattern p, Set<String> usedNames) {
+        int unsupported = Pattern.LITERAL | Pattern.CANON_EQ;
+        if((p.flags() & unsupported) != 0 || BACK_REFERENCE.matcher(p.pattern()).find()) {
+            return false;
+        }
+        Set<String> names = new HashSet<String>();
+        Matcher m = NAMED_GROUP.matcher(p.pattern());
+        while(m.find()) {
+            if(usedNames.contains(m.group(1))) {
+                return false;
+            }
+            names.add(m.group(1));
+        }
+        usedNames.addAll(names);
+        return true;
+    }
+
+    /**Whether a regex ends inside a \Q quote which it never closes with \E.*/
+    private static boolean endsQuoted(String regex) {
+        boolean quoted = false;
+        for(int i = 0; i < regex.length() - 1; i++) {
+            if(regex.charAt(i) != '\\') {
+                continue;
+            }
+            char next = regex.charAt(i + 1);
+            if(quoted) {
+                //inside a quote, only \E means anything
+                if(next == 'E') {
+                    quoted = false;
+                    i++;
+                }
+            }
+            else {
+                quoted = next == 'Q';
+                i++;
+            }
+        }
+        return quoted;
+    }
+
+    /**Turns a Pattern's compile flags into an inline flag group opening, such as "(?i:".*/
+    private static String inlineFlags(int flags) {
+        StringBuilder out = new StringBuilder("(?");
+        if((flags & Pattern.CASE_INSENSITIVE) != 0) {out.append('i');}
+        if((flags & Pattern.MULTILINE) != 0) {out.append('m');}
+        if((flags & Pattern.DOTALL) != 0) {out.append('s');}
+        if((flags & Pattern.UNICODE_CASE) != 0) {out.append('u');}
+        if((flags & Pattern.COMMENTS) != 0) {out.append('x');}
+        if((flags & Pattern.UNIX_LINES) != 0) {out.append('d');}
+        if((flags & Pattern.UNICODE_CHARACTER_CLASS) != 0) {out.append('U');}
+        return out.append(':').toString();
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] out = new int[list.size()];
+        for(int i = 0; i < out.length; i++) {
+            out[i] = list.get(i);
+        }
+        return out;
+    }
+}
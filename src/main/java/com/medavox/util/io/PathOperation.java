@@ -0,0 +1,15 @@
+package com.medavox.util.io;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**Like {@link RecurseOperation}, but for {@link FileRecurser#walk}, which hands over each file's attributes
+ * as read during the walk, so they needn't be read again.*/
+public interface PathOperation
+{
+    /**Whatever goes in here is called on every file recursively,
+     *  by FileRecurser*/
+    public abstract void operate(Path file, BasicFileAttributes attrs);
+    /**For complex filtering of recursed-over files*/
+    public abstract boolean acceptFile(Path file, BasicFileAttributes attrs);
+}
@@ -0,0 +1,23 @@
+package com.medavox.util.io;
+
+/**Remembers which strings (such as URLs) have been seen before, for deduplicating across documents.
+ * Implementations are safe to share between threads, and differ in how exact they are
+ * and how much memory they use:
+ * {@link ConcurrentSeenSet} is exact and unbounded, {@link BloomSeenSet} is fixed-size but has false positives,
+ * and {@link LruSeenSet} is exact about recent strings, but forgets old ones to stay within a memory budget.*/
+public interface SeenSet
+{
+    /**Records s as seen.
+     * @return true if s had not been seen before; false if it had, or (depending on the implementation)
+     * might have been*/
+    public abstract boolean addIfAbsent(String s);
+
+    /**Whether s might have been seen before, without recording it.*/
+    public abstract boolean mightContain(String s);
+
+    /**The number of distinct strings recorded, or an estimate of it.*/
+    public abstract long size();
+
+    /**An estimate of the heap memory this set uses, in bytes.*/
+    public abstract long memoryFootprintBytes();
+}
@@ -0,0 +1,20 @@
+package com.medavox.util.io;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**The one ForkJoinPool used by every bulk operation in this package that isn't given a pool of its own,
+ * so they share the machine's cores rather than each making threads for all of them.
+ * It is made the first time it's asked for.*/
+final class SharedPool {
+    private SharedPool() {
+    }
+
+    /**Loaded, and so the pool made, only when {@link #get} is first called; class loading makes it thread-safe.*/
+    private static final class Holder {
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+    static ForkJoinPool get() {
+        return Holder.POOL;
+    }
+}
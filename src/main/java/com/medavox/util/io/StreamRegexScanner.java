@@ -0,0 +1,249 @@
+package com.medavox.util.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**Finds every match of a regex in a stream of text of any length, using a fixed-size buffer.
+ *
+ * The text is read a chunk at a time into a buffer which also keeps the tail of the previous chunk,
+ * so that matches spanning a chunk boundary are still found. A match which runs into the end of the buffer
+ * (so that more text might change it) is put off until the next chunk has been read.
+ * Only the last {@code maxMatchLength} chars are carried over like this,
+ * so matches longer than that may be cut short or missed when they span a boundary;
+ * shorter matches are found exactly as {@link Matcher#find()} would find them in the whole text.
+ * A further {@code lookbehind} chars before each chunk are kept as context,
+ * for lookbehinds and word boundaries at its start.
+ *
+ * Memory use depends only on those sizes, never on the length of the input.
+ * The buffer is allocated per call, so one scanner can be used by several threads at once.*/
+public class StreamRegexScanner
+{
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_MATCH_LENGTH = 4096;
+    public static final int DEFAULT_LOOKBEHIND = 16;
+    /**How many bytes of a file to memory-map at once.*/
+    private static final long MAP_WINDOW = 32L * 1024 * 1024;
+
+    private final Pattern pattern;
+    private final int chunkSize;
+    private final int maxMatchLength;
+    private final int lookbehind;
+
+    public StreamRegexScanner(Pattern pattern)
+    {
+        this(pattern, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_MATCH_LENGTH, DEFAULT_LOOKBEHIND);
+    }
+
+    /**@param chunkSize how many chars to read from the input at once
+     * @param maxMatchLength the longest match guaranteed to be found whole when it spans chunks
+     * @param lookbehind how many chars before the scan position to keep visible to lookbehinds*/
+    public StreamRegexScanner(Pattern pattern, int chunkSize, int maxMatchLength, int lookbehind)
+    {
+        if(chunkSize < 1) {throw new IllegalArgumentException("chunkSize must be at least 1");}
+        if(maxMatchLength < 1) {throw new IllegalArgumentException("maxMatchLength must be at least 1");}
+        if(lookbehind < 0) {throw new IllegalArgumentException("lookbehind must not be negative");}
+        this.pattern = pattern;
+        this.chunkSize = chunkSize;
+        this.maxMatchLength = maxMatchLength;
+        this.lookbehind = lookbehind;
+    }
+
+    /**Scans everything from in, passing each match to callback. Doesn't close in.
+     * @return the number of matches found*/
+    public long scan(Reader in, MatchCallback callback) throws IOException
+    {
+        //one spare char, for the first half of a surrogate pair held back to the next chunk
+        char[] buf = new char[lookbehind + maxMatchLength + chunkSize + 1];
+        CharBuffer text = CharBuffer.wrap(buf);
+        Matcher m = pattern.matcher(text);
+        long matches = 0;
+        long base = 0;//the stream offset of buf[0]
+        int len = 0;
+        int scanFrom = 0;
+        boolean eof = false;
+        while(true)
+        {
+            while(len < buf.length)
+            {
+                int read = in.read(buf, len, buf.length - len);
+                if(read < 0)
+                {
+                    eof = true;
+                    break;
+                }
+                len += read;
+            }
+
+            //a full buffer might end between the halves of a surrogate pair,
+            //which Matcher would take for a lone char rather than running into the end for the rest
+            int end = !eof && Character.isHighSurrogate(buf[len - 1]) ? len - 1 : len;
+            text.limit(end);
+            m.reset(text);
+            m.useTransparentBounds(true);
+            m.useAnchoringBounds(false);
+            m.region(scanFrom, end);
+            int resume = scanFrom;
+            boolean found;
+            while(found = m.find())
+            {
+                int start = m.start();
+                //a match touching the end of the buffer might come out differently with more text,
+                //unless there's no room left to read any
+                boolean roomToGrow = start - lookbehind > 0 || len < buf.length;
+                if(!eof && m.hitEnd() && roomToGrow)
+                {
+                    resume = start;
+                    break;
+                }
+                callback.onMatch(new String(buf, start, m.end() - start), base + start);
+                matches++;
+                //like Matcher, step past an empty match so it isn't found again
+                resume = m.end() == start ? Math.min(start + 1, end) : m.end();
+            }
+            if(eof)
+            {
+                return matches;
+            }
+            if(!found)
+            {
+                //if the last search ran into the end, a match might start anywhere in the final stretch
+                resume = m.hitEnd() ? Math.max(resume, end - maxMatchLength) : end;
+            }
+
+            int keepFrom = Math.max(0, resume - lookbehind);
+            System.arraycopy(buf, keepFrom, buf, 0, len - keepFrom);
+            len -= keepFrom;
+            base += keepFrom;
+            scanFrom = resume - keepFrom;
+        }
+    }
+
+    /**Scans everything from in, decoding it with the given charset, and passing each match to callback.
+     * A FileChannel is memory-mapped a window at a time, from its current position;
+     * any other channel is read through a buffer. Doesn't close in.
+     * Malformed input is replaced with the charset's replacement character, rather than stopping the scan.
+     * @return the number of matches found*/
+    public long scan(ReadableByteChannel in, Charset charset, MatchCallback callback) throws IOException
+    {
+        if(in instanceof FileChannel)
+        {
+            return scan(new MappedReader((FileChannel)in, decoder(charset)), callback);
+        }
+        return scan(Channels.newReader(in, decoder(charset), -1), callback);
+    }
+
+    private static CharsetDecoder decoder(Charset charset)
+    {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**Decodes a file through a sliding memory-mapped window, so the file is never read onto the heap.*/
+    private static class MappedReader extends Reader
+    {
+        /**Fewer undecoded bytes than this left in a window might be a split char, so map the next window.*/
+        private static final int REMAP_MARGIN = 16;
+        private final FileChannel channel;
+        private final CharsetDecoder decoder;
+        private final long size;
+        /**The file position of window's first byte.*/
+        private long windowStart;
+        private ByteBuffer window = ByteBuffer.allocate(0);
+        private boolean flushed = false;
+        /**Room for a surrogate pair, for reads of a single char.*/
+        private final CharBuffer pair = CharBuffer.allocate(2);
+        /**The second half of a pair that didn't fit in the last read, or -1.*/
+        private int pending = -1;
+
+        MappedReader(FileChannel channel, CharsetDecoder decoder) throws IOException
+        {
+            this.channel = channel;
+            this.decoder = decoder;
+            this.size = channel.size();
+            this.windowStart = channel.position();
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException
+        {
+            if(len == 0)
+            {
+                return 0;
+            }
+            int n = 0;
+            if(pending >= 0)
+            {
+                cbuf[off] = (char)pending;
+                pending = -1;
+                n = 1;
+            }
+            if(len - n == 1)
+            {
+                pair.clear();
+                if(decodeInto(pair) > 0)
+                {
+                    cbuf[off + n++] = pair.get(0);
+                    if(pair.position() == 2)
+                    {
+                        pending = pair.get(1);
+                    }
+                }
+            }
+            else if(len > n)
+            {
+                int got = decodeInto(CharBuffer.wrap(cbuf, off + n, len - n));
+                n += Math.max(got, 0);
+            }
+            return n == 0 ? -1 : n;
+        }
+
+        /**Decodes at least one char into out, which must have room for 2, or returns -1 at the end of the file.*/
+        private int decodeInto(CharBuffer out) throws IOException
+        {
+            int before = out.position();
+            while(out.position() == before)
+            {
+                if(flushed)
+                {
+                    return -1;
+                }
+                boolean last = windowStart + window.limit() >= size;
+                if(!last && window.remaining() < REMAP_MARGIN)
+                {
+                    //move the window up to the first undecoded byte, keeping any partial char
+                    long next = windowStart + window.position();
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, next, Math.min(MAP_WINDOW, size - next));
+                    windowStart = next;
+                    continue;
+                }
+                CoderResult result = decoder.decode(window, out, last);
+                if(last && !window.hasRemaining() && !result.isOverflow())
+                {
+                    flushed = !decoder.flush(out).isOverflow();
+                }
+                if(result.isOverflow())
+                {
+                    break;
+                }
+            }
+            return out.position() - before;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package com.medavox.util.io;
 
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -94,12 +99,76 @@ public class StringUtils
      * @return a list of matching substrings*/
     public static String[] findURLsInDoc(String page, Pattern reg)
     {
-        return findURLsInDoc(page, reg, null);
+        return findURLsInDoc(page, reg, (Set<String>)null);
     }
     
-    /**Reads the supplied (plaintext) file as a string and returns it.
+    /**Find all substrings matching the supplied regex Pattern, in the supplied string,
+     * which the supplied SeenSet hasn't seen before. Each one returned is recorded in it.
+     * The SeenSet can be shared between threads scanning different documents.
+     * @param page the string to search in
+     * @param reg the regular expression to search for
+     * @param seen the matches already found, in this or earlier documents
+     * @return the new matching substrings, without duplicates*/
+    public static String[] findURLsInDoc(String page, Pattern reg, SeenSet seen)
+    {
+        Set<String> matches = new LinkedHashSet<String>();
+        Matcher cherche = reg.matcher(page);
+        while(cherche.find())
+        {
+            String match = cherche.group();
+            if(seen.addIfAbsent(match))
+            {
+                matches.add(match);
+            }
+        }
+        return matches.toArray(new String[matches.size()]);
+    }
+    
+    /**Finds all substrings matching the supplied regex Pattern in a document of any size,
+     * reading it in fixed-size chunks instead of loading it all at once.
+     * Matches are passed to the callback as they are found, duplicates included.
+     * See {@link StreamRegexScanner} for how matches spanning chunks are handled.
+     * @param doc the document to search in. It isn't closed.
+     * @param reg the regular expression to search for
+     * @param callback receives each match
+     * @return the number of matches found*/
+    public static long findURLsInDoc(Reader doc, Pattern reg, MatchCallback callback) throws IOException
+    {
+        return new StreamRegexScanner(reg).scan(doc, callback);
+    }
+    
+    /**Finds all substrings matching the supplied regex Pattern in a document read from a channel,
+     * decoded with the given charset. A FileChannel is memory-mapped a window at a time.
+     * @param doc the document to search in. It isn't closed.
+     * @return the number of matches found*/
+    public static long findURLsInDoc(ReadableByteChannel doc, Charset charset, Pattern reg,
+                                     MatchCallback callback) throws IOException
+    {
+        return new StreamRegexScanner(reg).scan(doc, charset, callback);
+    }
+    
+    /**Finds all substrings matching the supplied regex Pattern in a file,
+     * memory-mapping it a window at a time, so that it never has to fit in the heap.
+     * @return the number of matches found*/
+    public static long findURLsInDoc(File doc, Charset charset, Pattern reg, MatchCallback callback)
+            throws IOException
+    {
+        FileInputStream in = new FileInputStream(doc);
+        try
+        {
+            return findURLsInDoc(in.getChannel(), charset, reg, callback);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+    
+    /**Reads the supplied (plaintext) file as a string and returns it, in the platform's default charset.
+     * Bytes which aren't valid in that charset are replaced with U+FFFD, as FileReader did.
      * @File f the supplied file. This MUST be a plaintext file. 
-     * @return the contents of the file, as a String.*/
+     * @return the contents of the file, as a String, or "" if it couldn't be read.
+     * @see #fileToString(File, Charset) to choose the charset, and to find out why reading failed*/
     public static String fileToString(File f)
     {
         if(!f.isFile())
@@ -108,19 +177,7 @@ public class StringUtils
         }
         try
         {
-            FileReader fr = new FileReader(f);
-            char[] tmp = new char[(int)f.length()];
-            char c;
-            int j = 0;
-            for(int i = fr.read(); i != -1; i = fr.read())
-            {
-                c = (char)i;
-                tmp[j] = c;
-                j++;
-            }
-            fr.close();
-            String ret = new String(tmp);
-            return ret;
+            return FileLoader.loadReplacing(f, Charset.defaultCharset());
         }
         catch(Exception e)
         {
@@ -130,6 +187,15 @@ public class StringUtils
         }
     }
     
+    /**Reads the supplied (plaintext) file as a string, decoding it with the given charset.
+     * Large files are memory-mapped; see {@link FileLoader}.
+     * @throws java.nio.charset.CharacterCodingException if the file isn't valid in that charset
+     * @throws IOException if the file can't be read*/
+    public static String fileToString(File f, Charset charset) throws IOException
+    {
+        return FileLoader.load(f, charset);
+    }
+    
     /**get a boolean response from a yes-or-no question. True for yes, false for no.
      * @param questionText the text to display as the question.*/
     public static boolean askQuestion(String questionText)
@@ -0,0 +1,266 @@
+package com.medavox.util.io;
+
+import java.text.DateFormatSymbols;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**Writes unix-epoch times in {@link DateTime}'s layouts straight into a caller's StringBuilder or char[].
+ *
+ * The calendar maths is done on plain numbers (the civil date is worked out from the day number),
+ * and weekday and month names come from tables built once from {@link Locale#UK}'s DateFormatSymbols,
+ * so nothing is allocated per call. The zone's offset is looked up once per local day and cached
+ * (except on days when it changes), rather than asked of the TimeZone every time.
+ *
+ * Instances share nothing mutable but that cache, which is swapped atomically,
+ * so one instance can be used by any number of threads without locking.*/
+public final class TimestampFormatter {
+    static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**Indexed by day of the week, Sunday = 0.*/
+    static final char[][] SHORT_WEEKDAYS;
+    static final char[][] LONG_WEEKDAYS;
+    /**Indexed by month, January = 0.*/
+    static final char[][] SHORT_MONTHS;
+    static final char[][] LONG_MONTHS;
+    /**The longest any layout can be, including the " on " of {@link #formatTimeOnDate}.*/
+    public static final int MAX_LENGTH;
+    static {
+        DateFormatSymbols symbols = DateFormatSymbols.getInstance(Locale.UK);
+        SHORT_WEEKDAYS = names(symbols.getShortWeekdays(), 1, 7);
+        LONG_WEEKDAYS = names(symbols.getWeekdays(), 1, 7);
+        SHORT_MONTHS = names(symbols.getShortMonths(), 0, 12);
+        LONG_MONTHS = names(symbols.getMonths(), 0, 12);
+        int longestNames = longest(LONG_WEEKDAYS) + longest(LONG_MONTHS)
+                + longest(SHORT_WEEKDAYS) + longest(SHORT_MONTHS);
+        //"Weekday dd Month" + " on " + "hh:mm:ss.mmm", with room for any of the shorter names as well
+        MAX_LENGTH = longestNames + 2 + 2 + " on ".length() + "hh:mm:ss.mmm".length();
+    }
+
+    /**Scratch space for the StringBuilder methods: one per thread, reused, so appending allocates nothing.*/
+    private static final ThreadLocal<char[]> SCRATCH = new ThreadLocal<char[]>() {
+        @Override protected char[] initialValue() {
+            return new char[MAX_LENGTH];
+        }
+    };
+
+    /**A span of UTC time over which the zone's offset doesn't change. Immutable, so it can be swapped atomically.*/
+    private static final class Window {
+        final long start;
+        final long end;
+        final int offset;
+
+        Window(long start, long end, int offset) {
+            this.start = start;
+            this.end = end;
+            this.offset = offset;
+        }
+    }
+
+    private final TimeZone zone;
+    private volatile Window window = new Window(0, 0, 0);
+
+    /**Formats times in the given zone.*/
+    public TimestampFormatter(TimeZone zone) {
+        this.zone = (TimeZone)zone.clone();
+    }
+
+    /**Formats times in the JVM's default zone, as it is now.*/
+    public TimestampFormatter() {
+        this(TimeZone.getDefault());
+    }
+
+    public TimeZone getZone() {
+        return (TimeZone)zone.clone();
+    }
+
+    //------------------------------------char[]------------------------------------
+
+    /**Writes the time of day, such as "23:59:59.999", into dst at off.
+     * @return the index just past the last char written*/
+    public int formatTime(long timeInMillis, DateTime.TimeFormat format, char[] dst, int off) {
+        long local = timeInMillis + offsetAt(timeInMillis);
+        int millisOfDay = (int)(local - floorDiv(local, MILLIS_PER_DAY) * MILLIS_PER_DAY);
+        return writeTime(millisOfDay, format, dst, off);
+    }
+
+    /**Writes the date, such as "Tue 31 Dec", into dst at off.
+     * @return the index just past the last char written*/
+    public int formatDate(long timeInMillis, DateTime.DateFormat format, char[] dst, int off) {
+        long local = timeInMillis + offsetAt(timeInMillis);
+        return writeDate(floorDiv(local, MILLIS_PER_DAY), format, dst, off);
+    }
+
+    /**Writes the date then the time, such as "31 Dec 23:59", into dst at off, as {@link DateTime#get} does.
+     * @return the index just past the last char written*/
+    public int format(long timeInMillis, DateTime.TimeFormat time, DateTime.DateFormat date, char[] dst, int off) {
+        long local = timeInMillis + offsetAt(timeInMillis);
+        long day = floorDiv(local, MILLIS_PER_DAY);
+        off = writeDate(day, date, dst, off);
+        dst[off++] = ' ';
+        return writeTime((int)(local - day * MILLIS_PER_DAY), time, dst, off);
+    }
+
+    /**Writes the time then the date, such as "23:59 on 31 Dec", into dst at off, as {@link DateTime#get2} does.
+     * @return the index just past the last char written*/
+    public int formatTimeOnDate(long timeInMillis, DateTime.TimeFormat time, DateTime.DateFormat date,
+                                char[] dst, int off) {
+        long local = timeInMillis + offsetAt(timeInMillis);
+        long day = floorDiv(local, MILLIS_PER_DAY);
+        off = writeTime((int)(local - day * MILLIS_PER_DAY), time, dst, off);
+        dst[off++] = ' ';
+        dst[off++] = 'o';
+        dst[off++] = 'n';
+        dst[off++] = ' ';
+        return writeDate(day, date, dst, off);
+    }
+
+    //------------------------------------StringBuilder------------------------------------
+
+    /**Appends the time of day, such as "23:59:59.999", to out.*/
+    public StringBuilder formatTime(long timeInMillis, DateTime.TimeFormat format, StringBuilder out) {
+        char[] scratch = SCRATCH.get();
+        return out.append(scratch, 0, formatTime(timeInMillis, format, scratch, 0));
+    }
+
+    /**Appends the date, such as "Tue 31 Dec", to out.*/
+    public StringBuilder formatDate(long timeInMillis, DateTime.DateFormat format, StringBuilder out) {
+        char[] scratch = SCRATCH.get();
+        return out.append(scratch, 0, formatDate(timeInMillis, format, scratch, 0));
+    }
+
+    /**Appends the date then the time, such as "31 Dec 23:59", to out.*/
+    public StringBuilder format(long timeInMillis, DateTime.TimeFormat time, DateTime.DateFormat date,
+                                StringBuilder out) {
+        char[] scratch = SCRATCH.get();
+        return out.append(scratch, 0, format(timeInMillis, time, date, scratch, 0));
+    }
+
+    /**Appends the time then the date, such as "23:59 on 31 Dec", to out.*/
+    public StringBuilder formatTimeOnDate(long timeInMillis, DateTime.TimeFormat time, DateTime.DateFormat date,
+                                          StringBuilder out) {
+        char[] scratch = SCRATCH.get();
+        return out.append(scratch, 0, formatTimeOnDate(timeInMillis, time, date, scratch, 0));
+    }
+
+    //------------------------------------internals------------------------------------
+
+    /**The zone's offset from UTC at the given instant, in milliseconds.*/
+    int offsetAt(long timeInMillis) {
+        Window w = window;
+        if(timeInMillis >= w.start && timeInMillis < w.end) {
+            return w.offset;
+        }
+        int offset = zone.getOffset(timeInMillis);
+        //cache the local day around this instant, as long as the offset holds for all of it
+        long dayStart = floorDiv(timeInMillis + offset, MILLIS_PER_DAY) * MILLIS_PER_DAY - offset;
+        long dayEnd = dayStart + MILLIS_PER_DAY;
+        if(zone.getOffset(dayStart) == offset && zone.getOffset(dayEnd - 1) == offset) {
+            window = new Window(dayStart, dayEnd, offset);
+        }
+        return offset;
+    }
+
+    static int writeTime(int millisOfDay, DateTime.TimeFormat format, char[] dst, int off) {
+        int seconds = millisOfDay / 1000;
+        off = twoDigits(seconds / 3600, dst, off);
+        dst[off++] = ':';
+        off = twoDigits(seconds / 60 % 60, dst, off);
+        if(format.precision() >= DateTime.TimeFormat.SECONDS.precision()) {
+            dst[off++] = ':';
+            off = twoDigits(seconds % 60, dst, off);
+        }
+        if(format.precision() >= DateTime.TimeFormat.MILLISECONDS.precision()) {
+            int millis = millisOfDay % 1000;
+            dst[off++] = '.';
+            dst[off++] = (char)('0' + millis / 100);
+            off = twoDigits(millis % 100, dst, off);
+        }
+        return off;
+    }
+
+    static int writeDate(long epochDay, DateTime.DateFormat format, char[] dst, int off) {
+        //civil-from-days, from Howard Hinnant's date algorithms: work in 400-year eras starting on 1st March,
+        //so that the leap day falls at the end of each year
+        long z = epochDay + 719468;
+        long era = floorDiv(z, 146097);
+        int dayOfEra = (int)(z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra/1460 + dayOfEra/36524 - dayOfEra/146096) / 365;
+        int dayOfYear = dayOfEra - (365*yearOfEra + yearOfEra/4 - yearOfEra/100);
+        int shiftedMonth = (5*dayOfYear + 2) / 153;//March = 0
+        int dayOfMonth = dayOfYear - (153*shiftedMonth + 2)/5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 2 : shiftedMonth - 10;//January = 0
+
+        switch(format) {
+            case BRIEF_WITH_DAY:
+                off = append(SHORT_WEEKDAYS[weekday(epochDay)], dst, off);
+                dst[off++] = ' ';
+                break;
+            case LONG_WITH_DAY:
+                off = append(LONG_WEEKDAYS[weekday(epochDay)], dst, off);
+                dst[off++] = ' ';
+                break;
+            default:
+                break;
+        }
+        off = number(dayOfMonth, dst, off);
+        switch(format) {
+            case NUMBERS:
+                dst[off++] = '/';
+                return number(month + 1, dst, off);
+            case BRIEF:
+            case BRIEF_WITH_DAY:
+                dst[off++] = ' ';
+                return append(SHORT_MONTHS[month], dst, off);
+            default:
+                dst[off++] = ' ';
+                return append(LONG_MONTHS[month], dst, off);
+        }
+    }
+
+    /**Sunday = 0. The epoch was a Thursday.*/
+    private static int weekday(long epochDay) {
+        return (int)(epochDay + 4 - floorDiv(epochDay + 4, 7) * 7);
+    }
+
+    private static int twoDigits(int n, char[] dst, int off) {
+        dst[off] = (char)('0' + n / 10);
+        dst[off+1] = (char)('0' + n % 10);
+        return off + 2;
+    }
+
+    /**Writes a 1- or 2-digit number without padding.*/
+    private static int number(int n, char[] dst, int off) {
+        return n < 10 ? writeChar((char)('0' + n), dst, off) : twoDigits(n, dst, off);
+    }
+
+    private static int writeChar(char c, char[] dst, int off) {
+        dst[off] = c;
+        return off + 1;
+    }
+
+    private static int append(char[] name, char[] dst, int off) {
+        System.arraycopy(name, 0, dst, off, name.length);
+        return off + name.length;
+    }
+
+    static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
+    }
+
+    private static char[][] names(String[] from, int start, int count) {
+        char[][] out = new char[count][];
+        for(int i = 0; i < count; i++) {
+            out[i] = from[start + i].toCharArray();
+        }
+        return out;
+    }
+
+    private static int longest(char[][] names) {
+        int max = 0;
+        for(char[] name : names) {
+            max = Math.max(max, name.length);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,362 @@
+package com.medavox.util.io;
+
+import java.util.TimeZone;
+
+/**Reads {@link DateTime}'s own layouts back into unix-epoch millis, from a CharSequence or a byte[] range,
+ * without allocating anything (unless the text is malformed, when an exception is thrown).
+ *
+ * The layouts have no year, so each timestamp is put in whichever year brings it closest to a reference time,
+ * usually the time the text was written or read. A time without a date is put on the reference time's day.
+ * Weekday names are checked to be real names, but not that they agree with the date.
+ *
+ * Month and weekday names are found through a table of their first three chars packed into ints,
+ * then the rest of the name is checked, so no Strings are made or compared.
+ * The text is read in the same zone as the {@link TimestampFormatter} the parser is made with,
+ * and shares its cache of the zone's offsets.
+ *
+ * Thread-safe, for the same reasons as TimestampFormatter.*/
+public final class TimestampParser {
+    private static final long MILLIS_PER_DAY = TimestampFormatter.MILLIS_PER_DAY;
+
+    /**Each name's first three chars, packed into an int; compared against a packed prefix of the text.*/
+    private static final int[] SHORT_MONTH_KEYS = keys(TimestampFormatter.SHORT_MONTHS);
+    private static final int[] LONG_MONTH_KEYS = keys(TimestampFormatter.LONG_MONTHS);
+    private static final int[] SHORT_WEEKDAY_KEYS = keys(TimestampFormatter.SHORT_WEEKDAYS);
+    private static final int[] LONG_WEEKDAY_KEYS = keys(TimestampFormatter.LONG_WEEKDAYS);
+
+    private static final int DATE_THEN_TIME = 0;
+    private static final int TIME_ON_DATE = 1;
+    private static final int TIME_ONLY = 2;
+    private static final int DATE_ONLY = 3;
+
+    private final TimestampFormatter zone;
+
+    /**Reads times in the same zone as the given formatter writes them.*/
+    public TimestampParser(TimestampFormatter zone) {
+        this.zone = zone;
+    }
+
+    public TimestampParser(TimeZone zone) {
+        this(new TimestampFormatter(zone));
+    }
+
+    //------------------------------------CharSequence------------------------------------
+
+    /**Parses the whole of text in {@link DateTime#get}'s "date time" layout, such as "31 Dec 23:59:59".
+     * @throws IllegalArgumentException if text isn't in that layout*/
+    public long parse(CharSequence text, DateTime.TimeFormat time, DateTime.DateFormat date, long reference) {
+        return parse(text, null, 0, text.length(), time, date, DATE_THEN_TIME, reference);
+    }
+
+    /**Parses the whole of text in {@link DateTime#get2}'s "time on date" layout, such as "23:59 on 31/12".
+     * @throws IllegalArgumentException if text isn't in that layout*/
+    public long parseTimeOnDate(CharSequence text, DateTime.TimeFormat time, DateTime.DateFormat date,
+                                long reference) {
+        return parse(text, null, 0, text.length(), time, date, TIME_ON_DATE, reference);
+    }
+
+    /**Parses a time of day, such as "23:59:59.999", on the same local day as the reference time.
+     * @throws IllegalArgumentException if text isn't in that layout*/
+    public long parseTime(CharSequence text, DateTime.TimeFormat time, long reference) {
+        return parse(text, null, 0, text.length(), time, null, TIME_ONLY, reference);
+    }
+
+    /**Parses a date, such as "Tue 31 Dec", returning the local midnight at its start.
+     * @throws IllegalArgumentException if text isn't in that layout*/
+    public long parseDate(CharSequence text, DateTime.DateFormat date, long reference) {
+        return parse(text, null, 0, text.length(), null, date, DATE_ONLY, reference);
+    }
+
+    //------------------------------------byte[]------------------------------------
+
+    /**Parses text[off..off+len), in an ASCII-compatible encoding, in the "date time" layout.
+     * @throws IllegalArgumentException if the text isn't in that layout*/
+    public long parse(byte[] text, int off, int len, DateTime.TimeFormat time, DateTime.DateFormat date,
+                      long reference) {
+        checkRange(text, off, len);
+        return parse(null, text, off, off + len, time, date, DATE_THEN_TIME, reference);
+    }
+
+    /**Parses text[off..off+len), in an ASCII-compatible encoding, in the "time on date" layout.
+     * @throws IllegalArgumentException if the text isn't in that layout*/
+    public long parseTimeOnDate(byte[] text, int off, int len, DateTime.TimeFormat time, DateTime.DateFormat date,
+                                long reference) {
+        checkRange(text, off, len);
+        return parse(null, text, off, off + len, time, date, TIME_ON_DATE, reference);
+    }
+
+    /**Parses a time of day from text[off..off+len), on the same local day as the reference time.
+     * @throws IllegalArgumentException if the text isn't in that layout*/
+    public long parseTime(byte[] text, int off, int len, DateTime.TimeFormat time, long reference) {
+        checkRange(text, off, len);
+        return parse(null, text, off, off + len, time, null, TIME_ONLY, reference);
+    }
+
+    /**Parses a date from text[off..off+len), returning the local midnight at its start.
+     * @throws IllegalArgumentException if the text isn't in that layout*/
+    public long parseDate(byte[] text, int off, int len, DateTime.DateFormat date, long reference) {
+        checkRange(text, off, len);
+        return parse(null, text, off, off + len, null, date, DATE_ONLY, reference);
+    }
+
+    //------------------------------------internals------------------------------------
+
+    /**Reads from whichever of chars or bytes isn't null, between pos and end.*/
+    private long parse(CharSequence chars, byte[] bytes, int pos, int end, DateTime.TimeFormat time,
+                       DateTime.DateFormat date, int layout, long reference) {
+        int millisOfDay = 0;
+        int monthDay = 0;//month * 32 + day, January = 0
+        if(layout == TIME_ON_DATE || layout == TIME_ONLY) {
+            long read = readTime(chars, bytes, pos, end, time);
+            millisOfDay = (int)(read >>> 32);
+            pos = (int)read;
+            if(layout == TIME_ON_DATE) {
+                pos = expect(chars, bytes, pos, end, ' ');
+                pos = expect(chars, bytes, pos, end, 'o');
+                pos = expect(chars, bytes, pos, end, 'n');
+                pos = expect(chars, bytes, pos, end, ' ');
+            }
+        }
+        if(layout != TIME_ONLY) {
+            long read = readDate(chars, bytes, pos, end, date);
+            monthDay = (int)(read >>> 32);
+            pos = (int)read;
+        }
+        if(layout == DATE_THEN_TIME) {
+            pos = expect(chars, bytes, pos, end, ' ');
+            long read = readTime(chars, bytes, pos, end, time);
+            millisOfDay = (int)(read >>> 32);
+            pos = (int)read;
+        }
+        if(pos != end) {
+            throw new IllegalArgumentException("unexpected text after the timestamp, at index "+pos);
+        }
+
+        long referenceLocal = reference + zone.offsetAt(reference);
+        long referenceDay = TimestampFormatter.floorDiv(referenceLocal, MILLIS_PER_DAY);
+        long day;
+        if(layout == TIME_ONLY) {
+            day = referenceDay;
+        }
+        else {
+            day = nearestDay(monthDay >>> 5, monthDay & 31, millisOfDay, referenceDay, referenceLocal);
+        }
+        long local = day * MILLIS_PER_DAY + millisOfDay;
+        return toUtc(local);
+    }
+
+    /**The offset depends on the UTC instant, which depends on the offset: two rounds settle it,
+     * except for local times skipped when the clocks go forward, which are moved forward by the gap.*/
+    private long toUtc(long local) {
+        int offset = zone.offsetAt(local - zone.offsetAt(local));
+        long utc = local - offset;
+        int check = zone.offsetAt(utc);
+        if(check != offset) {
+            utc = local - Math.min(offset, check);
+        }
+        return utc;
+    }
+
+    /**Finds the day with the given month and day of month, in the year which puts it nearest the reference.*/
+    private static long nearestDay(int month, int dayOfMonth, int millisOfDay, long referenceDay,
+                                   long referenceLocal) {
+        int referenceYear = yearOf(referenceDay);
+        long best = Long.MIN_VALUE;
+        long bestDistance = Long.MAX_VALUE;
+        //29th February might be up to 4 years away (8, across a century that isn't a leap year)
+        for(int k = 0; k <= 8; k++) {
+            for(int sign = -1; sign <= 1; sign += 2) {
+                int year = referenceYear + sign * k;
+                if(dayOfMonth > monthLength(year, month)) {
+                    continue;
+                }
+                long day = daysFromCivil(year, month, dayOfMonth);
+                long distance = Math.abs(day * MILLIS_PER_DAY + millisOfDay - referenceLocal);
+                if(distance < bestDistance) {
+                    best = day;
+                    bestDistance = distance;
+                }
+            }
+            if(best != Long.MIN_VALUE && k >= 1) {
+                return best;
+            }
+        }
+        if(best == Long.MIN_VALUE) {
+            throw new IllegalArgumentException("no year has day "+dayOfMonth+" in month "+(month+1));
+        }
+        return best;
+    }
+
+    /**Reads a time of day. Returns the millis of the day in the high int, and the index after it in the low.*/
+    private static long readTime(CharSequence chars, byte[] bytes, int pos, int end, DateTime.TimeFormat time) {
+        int hours = twoDigits(chars, bytes, pos, end);
+        pos = expect(chars, bytes, pos + 2, end, ':');
+        int minutes = twoDigits(chars, bytes, pos, end);
+        pos += 2;
+        int seconds = 0;
+        int millis = 0;
+        if(time.precision() >= DateTime.TimeFormat.SECONDS.precision()) {
+            pos = expect(chars, bytes, pos, end, ':');
+            seconds = twoDigits(chars, bytes, pos, end);
+            pos += 2;
+        }
+        if(time.precision() >= DateTime.TimeFormat.MILLISECONDS.precision()) {
+            pos = expect(chars, bytes, pos, end, '.');
+            millis = digit(chars, bytes, pos, end) * 100 + twoDigits(chars, bytes, pos + 1, end);
+            pos += 3;
+        }
+        if(hours > 23 || minutes > 59 || seconds > 59) {
+            throw new IllegalArgumentException("time out of range, before index "+pos);
+        }
+        long millisOfDay = ((hours * 60L + minutes) * 60 + seconds) * 1000 + millis;
+        return millisOfDay << 32 | pos;
+    }
+
+    /**Reads a date. Returns month * 32 + day in the high int, and the index after it in the low.*/
+    private static long readDate(CharSequence chars, byte[] bytes, int pos, int end, DateTime.DateFormat date) {
+        if(date == DateTime.DateFormat.BRIEF_WITH_DAY || date == DateTime.DateFormat.LONG_WITH_DAY) {
+            boolean isLong = date == DateTime.DateFormat.LONG_WITH_DAY;
+            int weekday = name(chars, bytes, pos, end,
+                    isLong ? LONG_WEEKDAY_KEYS : SHORT_WEEKDAY_KEYS,
+                    isLong ? TimestampFormatter.LONG_WEEKDAYS : TimestampFormatter.SHORT_WEEKDAYS);
+            pos += (isLong ? TimestampFormatter.LONG_WEEKDAYS : TimestampFormatter.SHORT_WEEKDAYS)[weekday].length;
+            pos = expect(chars, bytes, pos, end, ' ');
+        }
+        long read = oneOrTwoDigits(chars, bytes, pos, end);
+        int dayOfMonth = (int)(read >>> 32);
+        pos = (int)read;
+        int month;
+        if(date == DateTime.DateFormat.NUMBERS) {
+            pos = expect(chars, bytes, pos, end, '/');
+            read = oneOrTwoDigits(chars, bytes, pos, end);
+            month = (int)(read >>> 32) - 1;
+            pos = (int)read;
+            if(month < 0 || month > 11) {
+                throw new IllegalArgumentException("month out of range, before index "+pos);
+            }
+        }
+        else {
+            pos = expect(chars, bytes, pos, end, ' ');
+            boolean isLong = date == DateTime.DateFormat.LONG || date == DateTime.DateFormat.LONG_WITH_DAY;
+            char[][] names = isLong ? TimestampFormatter.LONG_MONTHS : TimestampFormatter.SHORT_MONTHS;
+            month = name(chars, bytes, pos, end, isLong ? LONG_MONTH_KEYS : SHORT_MONTH_KEYS, names);
+            pos += names[month].length;
+        }
+        if(dayOfMonth < 1 || dayOfMonth > 31) {
+            throw new IllegalArgumentException("day of month out of range, before index "+pos);
+        }
+        return (long)(month * 32 + dayOfMonth) << 32 | pos;
+    }
+
+    /**Finds which of the names starts at pos: first by its packed first three chars, then by the rest.*/
+    private static int name(CharSequence chars, byte[] bytes, int pos, int end, int[] keys, char[][] names) {
+        int key = 0;
+        for(int i = 0; i < 3 && pos + i < end; i++) {
+            char c = at(chars, bytes, pos + i);
+            if(c > 0xFF) {
+                throw new IllegalArgumentException("no known name at index "+pos);
+            }
+            key = key << 8 | c;
+        }
+        for(int n = 0; n < keys.length; n++) {
+            if(keys[n] != key || pos + names[n].length > end) {
+                continue;
+            }
+            char[] name = names[n];
+            boolean matches = true;
+            for(int i = 3; i < name.length && matches; i++) {
+                matches = at(chars, bytes, pos + i) == name[i];
+            }
+            //a name mustn't just be the start of a longer word
+            if(matches && (pos + name.length == end || !Character.isLetter(at(chars, bytes, pos + name.length)))) {
+                return n;
+            }
+        }
+        throw new IllegalArgumentException("no known name at index "+pos);
+    }
+
+    private static int[] keys(char[][] names) {
+        int[] keys = new int[names.length];
+        for(int n = 0; n < names.length; n++) {
+            int key = 0;
+            for(int i = 0; i < 3 && i < names[n].length; i++) {
+                key = key << 8 | (names[n][i] & 0xFF);
+            }
+            keys[n] = key;
+        }
+        return keys;
+    }
+
+    private static char at(CharSequence chars, byte[] bytes, int i) {
+        return chars != null ? chars.charAt(i) : (char)(bytes[i] & 0xFF);
+    }
+
+    private static int expect(CharSequence chars, byte[] bytes, int pos, int end, char c) {
+        if(pos >= end || at(chars, bytes, pos) != c) {
+            throw new IllegalArgumentException("expected '"+c+"' at index "+pos);
+        }
+        return pos + 1;
+    }
+
+    private static int digit(CharSequence chars, byte[] bytes, int pos, int end) {
+        int d = pos < end ? at(chars, bytes, pos) - '0' : -1;
+        if(d < 0 || d > 9) {
+            throw new IllegalArgumentException("expected a digit at index "+pos);
+        }
+        return d;
+    }
+
+    private static int twoDigits(CharSequence chars, byte[] bytes, int pos, int end) {
+        return digit(chars, bytes, pos, end) * 10 + digit(chars, bytes, pos + 1, end);
+    }
+
+    /**Reads an unpadded number of 1 or 2 digits. Returns it in the high int, and the index after it in the low.*/
+    private static long oneOrTwoDigits(CharSequence chars, byte[] bytes, int pos, int end) {
+        int n = digit(chars, bytes, pos, end);
+        pos++;
+        if(pos < end) {
+            int d = at(chars, bytes, pos) - '0';
+            if(d >= 0 && d <= 9) {
+                n = n * 10 + d;
+                pos++;
+            }
+        }
+        return (long)n << 32 | pos;
+    }
+
+    /**days-from-civil, the inverse of the algorithm in TimestampFormatter. January = 0.*/
+    private static long daysFromCivil(int year, int month, int dayOfMonth) {
+        int y = month < 2 ? year - 1 : year;
+        long era = TimestampFormatter.floorDiv(y, 400);
+        int yearOfEra = (int)(y - era * 400);
+        int shiftedMonth = month < 2 ? month + 10 : month - 2;//March = 0
+        int dayOfYear = (153 * shiftedMonth + 2) / 5 + dayOfMonth - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra/4 - yearOfEra/100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int yearOf(long epochDay) {
+        long z = epochDay + 719468;
+        long era = TimestampFormatter.floorDiv(z, 146097);
+        int dayOfEra = (int)(z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra/1460 + dayOfEra/36524 - dayOfEra/146096) / 365;
+        int dayOfYear = dayOfEra - (365*yearOfEra + yearOfEra/4 - yearOfEra/100);
+        int shiftedMonth = (5*dayOfYear + 2) / 153;
+        //January and February belong to the next year, since eras start in March
+        return (int)(era * 400 + yearOfEra + (shiftedMonth >= 10 ? 1 : 0));
+    }
+
+    private static int monthLength(int year, int month) {
+        if(month == 1) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 3 || month == 5 || month == 8 || month == 10 ? 30 : 31;
+    }
+
+    private static void checkRange(byte[] text, int off, int len) {
+        if(off < 0 || len < 0 || off > text.length - len) {
+            throw new IndexOutOfBoundsException("range "+off+"+"+len+" is outside an array of "+text.length);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.medavox.util.io;
+
+/**A mutable, fixed-width unsigned integer, for keeping running totals without producing garbage.
+ * Uses the same little-endian byte layout as {@link BytesAsUInt}, and wraps around modulo 2^(8*width)
+ * exactly like BytesAsUInt does with {@link BytesAsUInt.Overflow#WRAP}.
+ *
+ * All the working space is allocated once, in the constructor.
+ * After that, every operation works in place and allocates nothing,
+ * except the convenience {@link #toByteArray()}.
+ * Operands are read straight out of the caller's arrays (with an optional offset and length),
+ * and results can be written straight into a caller's array with {@link #get(byte[], int)}.
+ *
+ * Not thread-safe: give each thread its own accumulator, and combine them at the end.*/
+public final class UIntAccumulator {
+    private final int width;
+    /**The value, as little-endian 32-bit limbs.*/
+    private final int[] limbs;
+    /**Working space for multiplication: the operand, then the product.*/
+    private final int[] operand;
+    private final int[] product;
+    /**The bits of the top limb which are inside our width.*/
+    private final int topMask;
+
+    /**@param width the width of the accumulator, in bytes*/
+    public UIntAccumulator(int width) {
+        if(width < 1) {throw new IllegalArgumentException("width must be at least 1");}
+        this.width = width;
+        int n = Limbs.limbCount(width);
+        limbs = new int[n];
+        operand = new int[n];
+        product = new int[n];
+        int topBytes = width - ((n - 1) << 2);
+        topMask = topBytes == 4 ? -1 : (1 << (topBytes << 3)) - 1;
+    }
+
+    /**The width of this accumulator, in bytes.*/
+    public int width() {
+        return width;
+    }
+
+    /**Sets the value to zero.*/
+    public UIntAccumulator clear() {
+        for(int i = 0; i < limbs.length; i++) {
+            limbs[i] = 0;
+        }
+        return this;
+    }
+
+    /**Sets the value to the uint in src. Bytes beyond our width are dropped.*/
+    public UIntAccumulator set(byte[] src) {
+        return set(src, 0, src.length);
+    }
+
+    /**Sets the value to the uint in src[off..off+len). Bytes beyond our width are dropped.*/
+    public UIntAccumulator set(byte[] src, int off, int len) {
+        checkRange(src, off, len);
+        for(int i = 0; i < limbs.length; i++) {
+            limbs[i] = Limbs.limbAt(src, off, len, i);
+        }
+        limbs[limbs.length-1] &= topMask;
+        return this;
+    }
+
+    /**Sets the value to the unsigned 64-bit value v, truncated to our width.*/
+    public UIntAccumulator set(long v) {
+        clear();
+        limbs[0] = (int)v;
+        if(limbs.length > 1) {
+            limbs[1] = (int)(v >>> 32);
+        }
+        limbs[limbs.length-1] &= topMask;
+        return this;
+    }
+
+    /**Copies the value of another accumulator, truncated to our width.*/
+    public UIntAccumulator set(UIntAccumulator other) {
+        int n = Math.min(limbs.length, other.limbs.length);
+        System.arraycopy(other.limbs, 0, limbs, 0, n);
+        for(int i = n; i < limbs.length; i++) {
+            limbs[i] = 0;
+        }
+        limbs[limbs.length-1] &= topMask;
+        return this;
+    }
+
+    /**Adds the uint in src to this value.
+     * @return true if the sum wrapped around past our maximum value*/
+    public boolean add(byte[] src) {
+        return add(src, 0, src.length);
+    }
+
+    /**Adds the uint in src[off..off+len) to this value.
+     * @return true if the sum wrapped around past our maximum value*/
+    public boolean add(byte[] src, int off, int len) {
+        checkRange(src, off, len);
+        long carry = 0;
+        for(int i = 0; i < limbs.length; i++) {
+            long s = (limbs[i] & Limbs.MASK) + (Limbs.limbAt(src, off, len, i) & Limbs.MASK) + carry;
+            limbs[i] = (int)s;
+            carry = s >>> 32;
+        }
+        return wrapped(carry) | (len > width && Limbs.anyNonZero(src, off+width, len-width));
+    }
+
+    /**Adds the unsigned 64-bit value v to this value.
+     * @return true if the sum wrapped around past our maximum value*/
+    public boolean add(long v) {
+        long carry = 0;
+        for(int i = 0; i < limbs.length; i++) {
+            long s = (limbs[i] & Limbs.MASK) + (v & Limbs.MASK) + carry;
+            limbs[i] = (int)s;
+            carry = s >>> 32;
+            v >>>= 32;
+        }
+        return wrapped(carry) | v != 0;
+    }
+
+    /**Adds the value of another accumulator to this value. other may be this accumulator.
+     * @return true if the sum wrapped around past our maximum value*/
+    public boolean add(UIntAccumulator other) {
+        long carry = 0;
+        for(int i = 0; i < limbs.length; i++) {
+            long o = i < other.limbs.length ? other.limbs[i] & Limbs.MASK : 0;
+            long s = (limbs[i] & Limbs.MASK) + o + carry;
+            limbs[i] = (int)s;
+            carry = s >>> 32;
+        }
+        return wrapped(carry) | other.anyNonZeroLimbsFrom(limbs.length);
+    }
+
+    /**Subtracts the uint in src from this value.
+     * @return true if the difference wrapped around below zero*/
+    public boolean subtract(byte[] src) {
+        return subtract(src, 0, src.length);
+    }
+
+    /**Subtracts the uint in src[off..off+len) from this value.
+     * @return true if the difference wrapped around below zero*/
+    public boolean subtract(byte[] src, int off, int len) {
+        checkRange(src, off, len);
+        long borrow = 0;
+        for(int i = 0; i < limbs.length; i++) {
+            long d = (limbs[i] & Limbs.MASK) - (Limbs.limbAt(src, off, len, i) & Limbs.MASK) - borrow;
+            limbs[i] = (int)d;
+            borrow = d >>> 63;
+        }
+        return wrapped(borrow) | (len > width && Limbs.anyNonZero(src, off+width, len-width));
+    }
+
+    /**Subtracts the unsigned 64-bit value v from this value.
+     * @return true if the difference wrapped around below zero*/
+    public boolean subtract(long v) {
+        long borrow = 0;
+        for(int i = 0; i < limbs.length; i++) {
+            long d = (limbs[i] & Limbs.MASK) - (v & Limbs.MASK) - borrow;
+            limbs[i] = (int)d;
+            borrow = d >>> 63;
+            v >>>= 32;
+        }
+        return wrapped(borrow) | v != 0;
+    }
+
+    /**Subtracts the value of another accumulator from this value. other may be this accumulator.
+     * @return true if the difference wrapped around below zero*/
+    public boolean subtract(UIntAccumulator other) {
+        long borrow = 0;
+        for(int i = 0; i < limbs.length; i++) {
+            long o = i < other.limbs.length ? other.limbs[i] & Limbs.MASK : 0;
+            long d = (limbs[i] & Limbs.MASK) - o - borrow;
+            limbs[i] = (int)d;
+            borrow = d >>> 63;
+        }
+        return wrapped(borrow) | other.anyNonZeroLimbsFrom(limbs.length);
+    }
+
+    /**Multiplies this value by the uint in src, keeping only the low {@link #width()} bytes of the product.*/
+    public UIntAccumulator multiply(byte[] src) {
+        return multiply(src, 0, src.length);
+    }
+
+    /**Multiplies this value by the uint in src[off..off+len),
+     * keeping only the low {@link #width()} bytes of the product.*/
+    public UIntAccumulator multiply(byte[] src, int off, int len) {
+        checkRange(src, off, len);
+        for(int i = 0; i < operand.length; i++) {
+            operand[i] = Limbs.limbAt(src, off, len, i);
+        }
+        return multiplyByOperand();
+    }
+
+    /**Multiplies this value by the unsigned 64-bit value v, keeping only the low {@link #width()} bytes.*/
+    public UIntAccumulator multiply(long v) {
+        for(int i = 0; i < operand.length; i++) {
+            operand[i] = 0;
+        }
+        operand[0] = (int)v;
+        if(operand.length > 1) {
+            operand[1] = (int)(v >>> 32);
+        }
+        return multiplyByOperand();
+    }
+
+    /**Multiplies this value by the value of another accumulator, keeping only the low {@link #width()} bytes.
+     * other may be this accumulator, to square it.*/
+    public UIntAccumulator multiply(UIntAccumulator other) {
+        for(int i = 0; i < operand.length; i++) {
+            operand[i] = i < other.limbs.length ? other.limbs[i] : 0;
+        }
+        return multiplyByOperand();
+    }
+
+    /**Truncated schoolbook multiply: only the limb products that land inside our width are computed.*/
+    private UIntAccumulator multiplyByOperand() {
+        int n = limbs.length;
+        for(int i = 0; i < n; i++) {
+            product[i] = 0;
+        }
+        for(int i = 0; i < n; i++) {
+            long ai = limbs[i] & Limbs.MASK;
+            if(ai == 0) {
+                continue;
+            }
+            long carry = 0;
+            for(int j = 0; i + j < n; j++) {
+                long t = ai * (operand[j] & Limbs.MASK) + (product[i+j] & Limbs.MASK) + carry;
+                product[i+j] = (int)t;
+                carry = t >>> 32;
+            }
+        }
+        System.arraycopy(product, 0, limbs, 0, n);
+        limbs[n-1] &= topMask;
+        return this;
+    }
+
+    /**Shifts this value left (towards the most significant end) by the given number of bits,
+     * dropping bits which move past our width.*/
+    public UIntAccumulator shiftLeft(int bits) {
+        if(bits < 0) {throw new IllegalArgumentException("bits must not be negative");}
+        int n = limbs.length;
+        int limbShift = bits >>> 5;
+        int bitShift = bits & 31;
+        if(limbShift >= n) {
+            return clear();
+        }
+        for(int i = n - 1; i >= limbShift; i--) {
+            long hi = limbs[i-limbShift] & Limbs.MASK;
+            long lo = i - limbShift - 1 >= 0 ? limbs[i-limbShift-1] & Limbs.MASK : 0;
+            limbs[i] = (int)((hi << bitShift) | (lo >>> (32 - bitShift)));
+        }
+        for(int i = 0; i < limbShift; i++) {
+            limbs[i] = 0;
+        }
+        limbs[n-1] &= topMask;
+        return this;
+    }
+
+    /**Shifts this value right (towards the least significant end) by the given number of bits,
+     * dropping bits which move past the bottom.*/
+    public UIntAccumulator shiftRight(int bits) {
+        if(bits < 0) {throw new IllegalArgumentException("bits must not be negative");}
+        int n = limbs.length;
+        int limbShift = bits >>> 5;
+        int bitShift = bits & 31;
+        if(limbShift >= n) {
+            return clear();
+        }
+        for(int i = 0; i < n - limbShift; i++) {
+            long lo = limbs[i+limbShift] & Limbs.MASK;
+            long hi = i + limbShift + 1 < n ? limbs[i+limbShift+1] & Limbs.MASK : 0;
+            limbs[i] = (int)((lo >>> bitShift) | (hi << (32 - bitShift)));
+        }
+        for(int i = n - limbShift; i < n; i++) {
+            limbs[i] = 0;
+        }
+        return this;
+    }
+
+    /**Returns true if the value is zero.*/
+    public boolean isZero() {
+        for(int limb : limbs) {
+            if(limb != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**Writes the value as exactly {@link #width()} little-endian bytes into dst, starting at dstOff.*/
+    public void get(byte[] dst, int dstOff) {
+        checkRange(dst, dstOff, width);
+        Limbs.fromLimbs(limbs, 0, limbs.length, dst, dstOff, width);
+    }
+
+    /**Returns the value in a new array of {@link #width()} bytes.*/
+    public byte[] toByteArray() {
+        byte[] out = new byte[width];
+        get(out, 0);
+        return out;
+    }
+
+    /**Masks the top limb back down to our width, and reports whether anything was lost doing so.*/
+    private boolean wrapped(long carry) {
+        int top = limbs[limbs.length-1];
+        limbs[limbs.length-1] = top & topMask;
+        return carry != 0 || (top & ~topMask) != 0;
+    }
+
+    private boolean anyNonZeroLimbsFrom(int from) {
+        for(int i = from; i < limbs.length; i++) {
+            if(limbs[i] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void checkRange(byte[] a, int off, int len) {
+        if(off < 0 || len < 0 || off > a.length - len) {
+            throw new IndexOutOfBoundsException("offset "+off+" and length "+len
+                    +" don't fit in an array of length "+a.length);
+        }
+    }
+}
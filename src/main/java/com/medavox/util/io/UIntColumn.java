@@ -0,0 +1,437 @@
+package com.medavox.util.io;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**N fixed-width unsigned integers, packed end to end in one flat byte[].
+ * Element i occupies bytes [i*width, (i+1)*width), in the same little-endian layout as {@link BytesAsUInt}.
+ * Replaces N separate little arrays with one contiguous, cache-friendly block.
+ *
+ * The bulk operations work on every element at once. Element-wise arithmetic is in place,
+ * and wraps around at {@code width} bytes like {@link BytesAsUInt.Overflow#WRAP}.
+ * Columns bigger than about 64KB are split into slices and processed in parallel on a {@link ForkJoinPool}.
+ * Smaller ones are processed on the calling thread.
+ *
+ * Not thread-safe: don't modify a column while a bulk operation is running on it.*/
+public final class UIntColumn {
+    /**Work is split until each slice covers roughly this many bytes.*/
+    private static final int SLICE_BYTES = 1 << 16;
+
+    private static final int ADD_COLUMN = 0;
+    private static final int ADD_SCALAR = 1;
+    private static final int SUBTRACT_COLUMN = 2;
+    private static final int SUBTRACT_SCALAR = 3;
+    private static final int COMPARE_COLUMN = 4;
+    private static final int COMPARE_SCALAR = 5;
+
+    private final int width;
+    private final int size;
+    private final byte[] data;
+    private final ForkJoinPool pool;
+    /**The number of elements in one parallel slice.*/
+    private final int grain;
+
+    /**Creates a column of {@code size} zeroes, each {@code width} bytes wide,
+     * which runs its parallel operations on the pool shared by all columns and other bulk operations.*/
+    public UIntColumn(int size, int width) {
+        this(new byte[checkedLength(size, width)], width, null);
+    }
+
+    /**Creates a column of {@code size} zeroes, each {@code width} bytes wide,
+     * which runs its parallel operations on the given pool.*/
+    public UIntColumn(int size, int width, ForkJoinPool pool) {
+        this(new byte[checkedLength(size, width)], width, pool);
+    }
+
+    private UIntColumn(byte[] data, int width, ForkJoinPool pool) {
+        this.width = width;
+        this.size = data.length / width;
+        this.data = data;
+        this.pool = pool;
+        this.grain = Math.max(1, SLICE_BYTES / width);
+    }
+
+    /**Wraps an existing array of packed uints as a column, without copying it.
+     * @throws IllegalArgumentException if data.length isn't a multiple of width*/
+    public static UIntColumn wrap(byte[] data, int width) {
+        if(width < 1) {throw new IllegalArgumentException("width must be at least 1");}
+        if(data.length % width != 0) {
+            throw new IllegalArgumentException("array length "+data.length+" is not a multiple of width "+width);
+        }
+        return new UIntColumn(data, width, null);
+    }
+
+    private static int checkedLength(int size, int width) {
+        if(width < 1) {throw new IllegalArgumentException("width must be at least 1");}
+        if(size < 0) {throw new IllegalArgumentException("size must not be negative");}
+        if((long)size * width > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(size+" values of "+width+" bytes won't fit in one array");
+        }
+        return size * width;
+    }
+
+    /**The number of elements in this column.*/
+    public int size() {
+        return size;
+    }
+
+    /**The width of each element, in bytes.*/
+    public int width() {
+        return width;
+    }
+
+    /**The backing array itself: changes to it change the column, and vice versa.*/
+    public byte[] array() {
+        return data;
+    }
+
+    /**Returns element {@code index} in a new array.*/
+    public byte[] get(int index) {
+        byte[] out = new byte[width];
+        get(index, out, 0);
+        return out;
+    }
+
+    /**Copies element {@code index} into dst[dstOff..dstOff+width).*/
+    public void get(int index, byte[] dst, int dstOff) {
+        System.arraycopy(data, offsetOf(index), dst, dstOff, width);
+    }
+
+    /**Sets element {@code index} to the uint in value, dropping any bytes beyond our width.*/
+    public void set(int index, byte[] value) {
+        int off = offsetOf(index);
+        int n = Math.min(width, value.length);
+        System.arraycopy(value, 0, data, off, n);
+        for(int i = n; i < width; i++) {
+            data[off+i] = 0;
+        }
+    }
+
+    //---------------------------------element-wise---------------------------------
+
+    /**Adds each element of other to the corresponding element of this column.
+     * @return how many elements wrapped around*/
+    public int add(UIntColumn other) {
+        checkSameShape(other);
+        return (int)run(new ElementWise(ADD_COLUMN, other, null, null, 0, size));
+    }
+
+    /**Adds the uint in scalar to every element of this column.
+     * @return how many elements wrapped around*/
+    public int add(byte[] scalar) {
+        return (int)run(new ElementWise(ADD_SCALAR, null, scalar, null, 0, size));
+    }
+
+    /**Subtracts each element of other from the corresponding element of this column.
+     * @return how many elements wrapped around below zero*/
+    public int subtract(UIntColumn other) {
+        checkSameShape(other);
+        return (int)run(new ElementWise(SUBTRACT_COLUMN, other, null, null, 0, size));
+    }
+
+    /**Subtracts the uint in scalar from every element of this column.
+     * @return how many elements wrapped around below zero*/
+    public int subtract(byte[] scalar) {
+        return (int)run(new ElementWise(SUBTRACT_SCALAR, null, scalar, null, 0, size));
+    }
+
+    /**Compares each element of this column with the corresponding element of other.
+     * @param result receives -1, 0 or 1 for each element, as ours is less than, equal to or greater than theirs
+     * @return result*/
+    public int[] compare(UIntColumn other, int[] result) {
+        checkSameShape(other);
+        checkResultLength(result);
+        run(new ElementWise(COMPARE_COLUMN, other, null, result, 0, size));
+        return result;
+    }
+
+    /**Compares each element of this column with the uint in scalar.
+     * @param result receives -1, 0 or 1 for each element, as it is less than, equal to or greater than scalar
+     * @return result*/
+    public int[] compare(byte[] scalar, int[] result) {
+        checkResultLength(result);
+        run(new ElementWise(COMPARE_SCALAR, null, scalar, result, 0, size));
+        return result;
+    }
+
+    //---------------------------------reductions---------------------------------
+
+    /**Returns the sum of every element, in an array 4 bytes wider than our width,
+     * which is always wide enough to hold it without overflow.*/
+    public byte[] sum() {
+        UIntAccumulator total = size * width <= SLICE_BYTES
+                ? new Sum(0, size).compute()
+                : pool().invoke(new Sum(0, size));
+        return total.toByteArray();
+    }
+
+    /**Returns the index of the smallest element (the first one, if there's a tie), or -1 if the column is empty.*/
+    public int minIndex() {
+        return extreme(-1);
+    }
+
+    /**Returns the index of the largest element (the first one, if there's a tie), or -1 if the column is empty.*/
+    public int maxIndex() {
+        return extreme(1);
+    }
+
+    /**Returns a copy of the smallest element.
+     * @throws IllegalStateException if the column is empty*/
+    public byte[] min() {
+        return get(nonEmpty(minIndex()));
+    }
+
+    /**Returns a copy of the largest element.
+     * @throws IllegalStateException if the column is empty*/
+    public byte[] max() {
+        return get(nonEmpty(maxIndex()));
+    }
+
+    /**Replaces every element with the sum of itself and every element before it (an inclusive scan),
+     * wrapping around at our width.
+     * Big columns are scanned in three passes: each slice is scanned on its own in parallel,
+     * the slice totals are scanned in order, then each slice adds its running offset in parallel.*/
+    public void prefixSum() {
+        if(size * width <= SLICE_BYTES) {
+            scan(0, size);
+            return;
+        }
+        int slices = (size + grain - 1) / grain;
+        RecursiveAction[] scans = new RecursiveAction[slices];
+        for(int s = 0; s < slices; s++) {
+            final int from = s * grain;
+            final int to = Math.min(size, from + grain);
+            scans[s] = new RecursiveAction() {
+                @Override protected void compute() {
+                    scan(from, to);
+                }
+            };
+        }
+        pool().invoke(new Batch(scans));
+
+        //the running total before each slice is the sum of the slice totals (last elements) before it
+        final byte[] offsets = new byte[slices * width];
+        for(int s = 1; s < slices; s++) {
+            Limbs.add(offsets, (s-1) * width, width,
+                    data, (s * grain - 1) * width, width,
+                    offsets, s * width, width);
+        }
+
+        RecursiveAction[] shifts = new RecursiveAction[slices - 1];
+        for(int s = 1; s < slices; s++) {
+            final int offsetPos = s * width;
+            final int from = s * grain;
+            final int to = Math.min(size, from + grain);
+            shifts[s-1] = new RecursiveAction() {
+                @Override protected void compute() {
+                    for(int i = from; i < to; i++) {
+                        int off = i * width;
+                        Limbs.add(data, off, width, offsets, offsetPos, width, data, off, width);
+                    }
+                }
+            };
+        }
+        pool().invoke(new Batch(shifts));
+    }
+
+    //---------------------------------internals---------------------------------
+
+    private void scan(int from, int to) {
+        for(int i = from + 1; i < to; i++) {
+            int off = i * width;
+            Limbs.add(data, off, width, data, off - width, width, data, off, width);
+        }
+    }
+
+    private int extreme(int sign) {
+        if(size == 0) {
+            return -1;
+        }
+        return size * width <= SLICE_BYTES
+                ? new Extreme(sign, 0, size).compute()
+                : pool().invoke(new Extreme(sign, 0, size));
+    }
+
+    private long run(ElementWise task) {
+        return size * width <= SLICE_BYTES ? task.compute() : pool().invoke(task);
+    }
+
+    private ForkJoinPool pool() {
+        if(pool != null) {
+            return pool;
+        }
+        return SharedPool.get();
+    }
+
+    private int offsetOf(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index "+index+" is outside a column of size "+size);
+        }
+        return index * width;
+    }
+
+    private void checkSameShape(UIntColumn other) {
+        if(other.size != size || other.width != width) {
+            throw new IllegalArgumentException("columns differ in shape: "+size+"x"+width
+                    +" vs "+other.size+"x"+other.width);
+        }
+    }
+
+    private void checkResultLength(int[] result) {
+        if(result.length < size) {
+            throw new IllegalArgumentException("result array has length "+result.length+"; need "+size);
+        }
+    }
+
+    private static int nonEmpty(int index) {
+        if(index < 0) {
+            throw new IllegalStateException("column is empty");
+        }
+        return index;
+    }
+
+    /**Runs every task in a batch in parallel.*/
+    private static final class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RecursiveAction[] tasks;
+
+        Batch(RecursiveAction[] tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override protected void compute() {
+            invokeAll(tasks);
+        }
+    }
+
+    /**One element-wise operation over elements [from, to), splitting in half until the slices are small enough.
+     * Returns how many elements wrapped around.*/
+    private final class ElementWise extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final int op;
+        private final UIntColumn other;
+        private final byte[] scalar;
+        private final int[] result;
+        private final int from;
+        private final int to;
+
+        ElementWise(int op, UIntColumn other, byte[] scalar, int[] result, int from, int to) {
+            this.op = op;
+            this.other = other;
+            this.scalar = scalar;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override protected Long compute() {
+            if(to - from <= grain) {
+                return leaf();
+            }
+            int mid = (from + to) >>> 1;
+            ElementWise left = new ElementWise(op, other, scalar, result, from, mid);
+            left.fork();
+            long right = new ElementWise(op, other, scalar, result, mid, to).compute();
+            return right + left.join();
+        }
+
+        private long leaf() {
+            long wrapped = 0;
+            for(int i = from; i < to; i++) {
+                int off = i * width;
+                switch(op) {
+                    case ADD_COLUMN:
+                        wrapped += Limbs.add(data, off, width, other.data, off, width, data, off, width);
+                        break;
+                    case ADD_SCALAR:
+                        wrapped += Limbs.add(data, off, width, scalar, 0, scalar.length, data, off, width);
+                        break;
+                    case SUBTRACT_COLUMN:
+                        wrapped += Limbs.subtract(data, off, width, other.data, off, width, data, off, width);
+                        break;
+                    case SUBTRACT_SCALAR:
+                        wrapped += Limbs.subtract(data, off, width, scalar, 0, scalar.length, data, off, width);
+                        break;
+                    case COMPARE_COLUMN:
+                        result[i] = Integer.signum(Limbs.compare(data, off, width, other.data, off, width));
+                        break;
+                    case COMPARE_SCALAR:
+                        result[i] = Integer.signum(Limbs.compare(data, off, width, scalar, 0, scalar.length));
+                        break;
+                }
+            }
+            return wrapped;
+        }
+    }
+
+    /**Sums elements [from, to) into an accumulator 4 bytes wider than the elements.*/
+    private final class Sum extends RecursiveTask<UIntAccumulator> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        Sum(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override protected UIntAccumulator compute() {
+            if(to - from <= grain) {
+                UIntAccumulator total = new UIntAccumulator(width + 4);
+                for(int i = from; i < to; i++) {
+                    total.add(data, i * width, width);
+                }
+                return total;
+            }
+            int mid = (from + to) >>> 1;
+            Sum left = new Sum(from, mid);
+            left.fork();
+            UIntAccumulator right = new Sum(mid, to).compute();
+            UIntAccumulator total = left.join();
+            total.add(right);
+            return total;
+        }
+    }
+
+    /**Finds the index of the smallest (sign -1) or largest (sign 1) element in [from, to).*/
+    private final class Extreme extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final int sign;
+        private final int from;
+        private final int to;
+
+        Extreme(int sign, int from, int to) {
+            this.sign = sign;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override protected Integer compute() {
+            if(to - from <= grain) {
+                int best = from;
+                for(int i = from + 1; i < to; i++) {
+                    if(better(i, best)) {
+                        best = i;
+                    }
+                }
+                return best;
+            }
+            int mid = (from + to) >>> 1;
+            Extreme left = new Extreme(sign, from, mid);
+            left.fork();
+            int right = new Extreme(sign, mid, to).compute();
+            int leftBest = left.join();
+            //on a tie, the left (lower) index wins
+            return better(right, leftBest) ? right : leftBest;
+        }
+
+        private boolean better(int i, int than) {
+            return Integer.signum(Limbs.compare(data, i * width, width, data, than * width, width)) == sign;
+        }
+    }
+}
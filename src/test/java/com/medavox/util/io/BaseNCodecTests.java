@@ -0,0 +1,186 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**Checks the block sizing in {@link Bytes} against exact powers, and round-trips data through
+ * every {@link BaseNCodec} entry point at every radix from 2 to 256.*/
+public class BaseNCodecTests {
+    private static final long SEED = 0x5EEDL;
+
+    /**base distinct chars, none of them whitespace.*/
+    private static String alphabet(int base) {
+        char[] out = new char[base];
+        for(int i = 0; i < base; i++) {
+            out[i] = (char)('0' + i);
+        }
+        return new String(out);
+    }
+
+    //------------------------------------sizing------------------------------------
+
+    /**The largest k with 256^k <= n, found from n's bit length: exact, and cheap even for huge n.*/
+    private static int wholeBytesIn(BigInteger n) {
+        return (n.bitLength() - 1) / 8;
+    }
+
+    @Test
+    public void computeBytesStorableIsExact() {
+        for(int base = 1; base <= 300; base++) {
+            BigInteger b = BigInteger.valueOf(base);
+            for(int length = 0; length <= 200; length++) {
+                Assert.assertEquals("bytes storable in "+length+" symbols of base "+base,
+                        wholeBytesIn(b.pow(length)), Bytes.computeBytesStorable(length, base));
+            }
+        }
+    }
+
+    @Test
+    public void computeSymbolsNeededIsExact() {
+        for(int base = 2; base <= 300; base++) {
+            BigInteger b = BigInteger.valueOf(base);
+            for(int bytes = 0; bytes <= 150; bytes++) {
+                int symbols = Bytes.computeSymbolsNeeded(bytes, base);
+                String what = "symbols of base "+base+" needed for "+bytes+" bytes";
+                Assert.assertTrue(what+": "+symbols+" is too few", b.pow(symbols).bitLength() > 8 * bytes);
+                Assert.assertTrue(what+": "+symbols+" is more than needed",
+                        symbols == 0 || b.pow(symbols - 1).bitLength() <= 8 * bytes);
+            }
+        }
+    }
+
+    @Test
+    public void sizingStaysExactForLongSequences() {
+        //powers of two land exactly on whole numbers at any length
+        Assert.assertEquals(Integer.MAX_VALUE, Bytes.computeBytesStorable(Integer.MAX_VALUE, 256));
+        Assert.assertEquals(Integer.MAX_VALUE / 2, Bytes.computeBytesStorable(Integer.MAX_VALUE, 16));
+        Assert.assertEquals((int)(7L * Integer.MAX_VALUE / 8), Bytes.computeBytesStorable(Integer.MAX_VALUE, 128));
+        Assert.assertEquals(2 * 1000000000, Bytes.computeSymbolsNeeded(1000000000, 16));
+        Assert.assertEquals(8 * 100000000, Bytes.computeSymbolsNeeded(100000000, 2));
+        //other bases, long enough that an absolute tolerance would be below the floating-point error
+        Random r = new Random(SEED);
+        for(int trial = 0; trial < 40; trial++) {
+            int base = 3 + r.nextInt(250);
+            if(Integer.bitCount(base) == 1) {
+                continue;
+            }
+            int length = 20000 + r.nextInt(20000);
+            BigInteger power = BigInteger.valueOf(base).pow(length);
+            Assert.assertEquals("bytes storable in "+length+" symbols of base "+base,
+                    wholeBytesIn(power), Bytes.computeBytesStorable(length, base));
+            int symbols = Bytes.computeSymbolsNeeded(length, base);
+            BigInteger b = BigInteger.valueOf(base);
+            Assert.assertTrue(b.pow(symbols).bitLength() > 8 * length);
+            Assert.assertTrue(b.pow(symbols - 1).bitLength() <= 8 * length);
+        }
+    }
+
+    //------------------------------------round trips------------------------------------
+
+    @Test
+    public void roundTripsAtEveryRadix() throws IOException {
+        Random r = new Random(SEED);
+        for(int base = 2; base <= 256; base++) {
+            String alphabet = alphabet(base);
+            //the smallest block that holds a byte, a long-arithmetic block, and a limb-arithmetic one
+            for(int symbolsPerBlock : new int[] {Bytes.computeSymbolsNeeded(1, base),
+                    Bytes.computeSymbolsNeeded(5, base), Bytes.computeSymbolsNeeded(13, base)}) {
+                BaseNCodec codec = new BaseNCodec(alphabet, symbolsPerBlock);
+                int block = codec.bytesPerBlock();
+                for(int length : new int[] {0, 1, block - 1, block, block + 1, 3 * block + block / 2, 50}) {
+                    if(length < 0) {
+                        continue;
+                    }
+                    byte[] data = new byte[length];
+                    r.nextBytes(data);
+                    if(length > 0 && r.nextBoolean()) {
+                        //all-zero and all-ones blocks are the edges of each block's value
+                        Arrays.fill(data, r.nextBoolean() ? (byte)0 : (byte)0xFF);
+                    }
+                    checkRoundTrip(codec, data, "base "+base+", "+symbolsPerBlock+" symbols per block, "
+                            +length+" bytes");
+                }
+            }
+        }
+    }
+
+    private static void checkRoundTrip(BaseNCodec codec, byte[] data, String what) throws IOException {
+        String text = codec.encode(data);
+        Assert.assertEquals(what+": encodedLength", codec.encodedLength(data.length), text.length());
+        Assert.assertArrayEquals(what+": decode(CharSequence)", data, codec.decode(text));
+
+        StringBuilder streamed = new StringBuilder();
+        codec.encode(new ByteArrayInputStream(data), streamed);
+        Assert.assertEquals(what+": encode(InputStream)", text, streamed.toString());
+        //line-wrapped, as the Reader form skips whitespace
+        StringBuilder wrapped = new StringBuilder();
+        for(int i = 0; i < text.length(); i += 7) {
+            wrapped.append(text, i, Math.min(text.length(), i + 7)).append("\r\n");
+        }
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        codec.decode(new StringReader(wrapped.toString()), decoded);
+        Assert.assertArrayEquals(what+": decode(Reader)", data, decoded.toByteArray());
+
+        //buffers, in pieces that don't line up with the blocks, into an output that fills up
+        ByteBuffer in = ByteBuffer.wrap(data);
+        CharBuffer chars = CharBuffer.allocate(text.length());
+        CharBuffer small = CharBuffer.allocate(codec.symbolsPerBlock() + 1);
+        while(true) {
+            boolean done = codec.encode(in, small, true);
+            small.flip();
+            chars.put(small);
+            small.clear();
+            if(done && !in.hasRemaining()) {
+                break;
+            }
+        }
+        chars.flip();
+        Assert.assertEquals(what+": encode(ByteBuffer)", text, chars.toString());
+        ByteBuffer bytes = ByteBuffer.allocate(data.length);
+        CharBuffer piece = CharBuffer.wrap(text);
+        for(int end = 0; end < text.length(); ) {
+            end = Math.min(text.length(), end + codec.symbolsPerBlock() * 2 - 1);
+            piece.limit(end);
+            Assert.assertTrue(codec.decode(piece, bytes, end == text.length()));
+        }
+        Assert.assertArrayEquals(what+": decode(CharBuffer)", data, bytes.array());
+    }
+
+    //------------------------------------bad input------------------------------------
+
+    @Test
+    public void rejectsMalformedText() {
+        BaseNCodec decimal = new BaseNCodec("0123456789", 3);
+        Assert.assertEquals(1, decimal.bytesPerBlock());
+        Assert.assertArrayEquals(new byte[] {(byte)255, 0}, decimal.decode("255000"));
+        for(String bad : new String[] {"256", "999", "25a", "2550"}) {
+            try {
+                decimal.decode(bad);
+                Assert.fail("decoded \""+bad+"\"");
+            }
+            catch(IllegalArgumentException expected) {}
+        }
+        for(String alphabet : new String[] {"a", "abca"}) {
+            try {
+                new BaseNCodec(alphabet, 8);
+                Assert.fail("accepted the alphabet \""+alphabet+"\"");
+            }
+            catch(IllegalArgumentException expected) {}
+        }
+        try {
+            new BaseNCodec("01", 7);
+            Assert.fail("accepted a block too short to hold a byte");
+        }
+        catch(IllegalArgumentException expected) {}
+    }
+}
@@ -0,0 +1,230 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**Checks that {@link BatchScanner} finds each distinct match exactly once across a batch,
+ * credits it to a document which contains it, keeps the documents in order, and remembers matches between batches;
+ * and that strings, files and channels all give the same result.*/
+public class BatchScannerTests {
+    private static final long SEED = 0x5EEDL;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Pattern URL = Pattern.compile("https?://[a-z0-9./]+");
+
+    /**Documents which share many of their URLs, so that most of them are found in several places.*/
+    private static List<String> documents(int count, Random r) {
+        List<String> out = new ArrayList<String>();
+        for(int d = 0; d < count; d++) {
+            StringBuilder doc = new StringBuilder();
+            int urls = r.nextInt(30);
+            for(int u = 0; u < urls; u++) {
+                doc.append(r.nextBoolean() ? "see " : "and, ")
+                        .append(r.nextBoolean() ? "http" : "https").append("://example.com/")
+                        .append(r.nextInt(r.nextBoolean() ? 40 : 4000)).append(u % 7 == 0 ? "\n" : " ");
+            }
+            out.add(doc.toString());
+        }
+        return out;
+    }
+
+    /**Each document's matches, in the order they're found.*/
+    private static List<List<String>> matchesOf(List<String> docs) {
+        List<List<String>> out = new ArrayList<List<String>>();
+        for(String doc : docs) {
+            List<String> found = new ArrayList<String>();
+            Matcher m = URL.matcher(doc);
+            while(m.find()) {
+                found.add(m.group());
+            }
+            out.add(found);
+        }
+        return out;
+    }
+
+    /**What any correct batch must give: every distinct match once, each credited to a document it's in,
+     * grouped by document in order, and in the order it first appears within its document.*/
+    private static void checkResult(List<String> docs, Set<String> alreadySeen, BatchScanner.Result result) {
+        List<List<String>> perDoc = matchesOf(docs);
+        Set<String> expected = new HashSet<String>();
+        for(List<String> found : perDoc) {
+            expected.addAll(found);
+        }
+        expected.removeAll(alreadySeen);
+
+        Assert.assertEquals(result.matches.length, result.documents.length);
+        Assert.assertEquals("no duplicates", result.matches.length, new HashSet<String>(Arrays.asList(result.matches)).size());
+        Assert.assertEquals(expected, new HashSet<String>(Arrays.asList(result.matches)));
+        int lastDoc = 0;
+        int lastPosition = -1;
+        for(int i = 0; i < result.matches.length; i++) {
+            int doc = result.documents[i];
+            Assert.assertTrue("documents in order", doc >= lastDoc);
+            int position = perDoc.get(doc).indexOf(result.matches[i]);
+            Assert.assertTrue(result.matches[i]+" isn't in document "+doc, position >= 0);
+            if(doc == lastDoc) {
+                Assert.assertTrue("matches in the order found", position > lastPosition);
+            }
+            lastDoc = doc;
+            lastPosition = position;
+        }
+    }
+
+    @Test
+    public void eachMatchIsFoundOnceAndCreditedToADocumentWithIt() {
+        Random r = new Random(SEED);
+        for(int parallelism : new int[] {1, 2, 4}) {
+            for(int count : new int[] {0, 1, 3, 50, 400}) {
+                List<String> docs = documents(count, r);
+                SeenSet seen = new ConcurrentSeenSet();
+                BatchScanner scanner = new BatchScanner(URL, parallelism, seen, true);
+                checkResult(docs, new HashSet<String>(), scanner.scanStrings(docs));
+
+                //a second batch only reports what the first didn't find
+                List<String> more = documents(count, r);
+                Set<String> before = new HashSet<String>();
+                for(List<String> found : matchesOf(docs)) {
+                    before.addAll(found);
+                }
+                checkResult(more, before, scanner.scanStrings(more));
+                Assert.assertEquals(0, scanner.scanStrings(docs).matches.length);
+            }
+        }
+    }
+
+    @Test
+    public void oneThreadCreditsEachMatchToItsFirstDocument() {
+        List<String> docs = documents(60, new Random(SEED + 1));
+        BatchScanner.Result result = new BatchScanner(URL, 1, new ConcurrentSeenSet(), true).scanStrings(docs);
+        List<String> expectedMatches = new ArrayList<String>();
+        List<Integer> expectedDocs = new ArrayList<Integer>();
+        Set<String> seen = new LinkedHashSet<String>();
+        List<List<String>> perDoc = matchesOf(docs);
+        for(int d = 0; d < perDoc.size(); d++) {
+            for(String match : perDoc.get(d)) {
+                if(seen.add(match)) {
+                    expectedMatches.add(match);
+                    expectedDocs.add(d);
+                }
+            }
+        }
+        Assert.assertEquals(expectedMatches, Arrays.asList(result.matches));
+        for(int i = 0; i < result.documents.length; i++) {
+            Assert.assertEquals((int)expectedDocs.get(i), result.documents[i]);
+        }
+    }
+
+    @Test
+    public void filesChannelsAndStringsAgree() throws IOException {
+        List<String> docs = documents(40, new Random(SEED + 2));
+        //a URL with a non-ASCII neighbour, so the decoding matters
+        docs.set(3, docs.get(3) + "\u00E9http://example.com/\u00E9t\u00E9 ok");
+        List<File> files = new ArrayList<File>();
+        List<ReadableByteChannel> channels = new ArrayList<ReadableByteChannel>();
+        try {
+            for(String doc : docs) {
+                File f = File.createTempFile("BatchScannerTests", ".txt");
+                f.deleteOnExit();
+                files.add(f);
+                FileOutputStream out = new FileOutputStream(f);
+                try {
+                    out.write(doc.getBytes(UTF_8));
+                }
+                finally {
+                    out.close();
+                }
+                channels.add(Channels.newChannel(new ByteArrayInputStream(doc.getBytes(UTF_8))));
+            }
+            ForkJoinPool pool = new ForkJoinPool(3);
+            try {
+                BatchScanner.Result fromStrings = new BatchScanner(URL, pool, new ConcurrentSeenSet(), true)
+                        .scanStrings(docs);
+                BatchScanner.Result fromFiles = new BatchScanner(URL, pool, new ConcurrentSeenSet(), true)
+                        .scanFiles(files, UTF_8);
+                BatchScanner.Result fromChannels = new BatchScanner(URL, pool, new ConcurrentSeenSet(), false)
+                        .scanChannels(channels, UTF_8);
+                checkResult(docs, new HashSet<String>(), fromFiles);
+                Set<String> expected = new HashSet<String>(Arrays.asList(fromStrings.matches));
+                Assert.assertTrue(expected.contains("http://example.com/"));
+                Assert.assertEquals(expected, new HashSet<String>(Arrays.asList(fromFiles.matches)));
+                Assert.assertEquals(expected, new HashSet<String>(Arrays.asList(fromChannels.matches)));
+                Assert.assertNull(fromChannels.documents);
+                //the given pool is left running
+                Assert.assertFalse(pool.isShutdown());
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+        finally {
+            for(File f : files) {
+                f.delete();
+            }
+        }
+    }
+
+    @Test
+    public void aFailedReadEndsTheBatchWithItsIOException() {
+        List<File> files = new ArrayList<File>();
+        for(int i = 0; i < 20; i++) {
+            files.add(new File("no such file "+i));
+        }
+        try {
+            new BatchScanner(URL, 2, new ConcurrentSeenSet(), false).scanFiles(files, UTF_8);
+            Assert.fail("scanned files which don't exist");
+        }
+        catch(FileNotFoundException expected) {}
+        catch(IOException e) {
+            Assert.fail("expected the FileNotFoundException itself, got "+e);
+        }
+
+        final IOException failure = new IOException("disk on fire");
+        ReadableByteChannel broken = new ReadableByteChannel() {
+            @Override public int read(ByteBuffer dst) throws IOException {
+                throw failure;
+            }
+            @Override public boolean isOpen() {
+                return true;
+            }
+            @Override public void close() {}
+        };
+        List<ReadableByteChannel> channels = new ArrayList<ReadableByteChannel>();
+        channels.add(Channels.newChannel(new ByteArrayInputStream("http://a.b".getBytes(UTF_8))));
+        channels.add(broken);
+        try {
+            new BatchScanner(URL, 1, new ConcurrentSeenSet(), false).scanChannels(channels, UTF_8);
+            Assert.fail("a channel which throws didn't fail the batch");
+        }
+        catch(IOException e) {
+            Assert.assertSame(failure, e);
+        }
+    }
+
+    @Test
+    public void rejectsNoThreads() {
+        try {
+            new BatchScanner(URL, 0, new ConcurrentSeenSet(), false);
+            Assert.fail("accepted a parallelism of 0");
+        }
+        catch(IllegalArgumentException expected) {}
+    }
+}
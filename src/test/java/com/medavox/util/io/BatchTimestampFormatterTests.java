@@ -0,0 +1,133 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+
+import com.medavox.util.io.DateTime.DateFormat;
+import com.medavox.util.io.DateTime.TimeFormat;
+
+/**Checks that {@link BatchTimestampFormatter} writes exactly what a loop over {@link TimestampFormatter} would,
+ * for batches of one slice (16384 timestamps) and of several, into both a char[] and a ByteBuffer.*/
+public class BatchTimestampFormatterTests {
+    private static final long SEED = 0x5EEDL;
+    private static final int SLICE = 1 << 14;
+    private static final TimestampFormatter LONDON = new TimestampFormatter(TimeZone.getTimeZone("Europe/London"));
+
+    /**Mostly ascending, as logs are, with a few jumps back and forth; starting just before a DST change.*/
+    private static long[] times(int n, Random r) {
+        long[] out = new long[n];
+        long t = 1616889600000L - 2000L * n / 3;
+        for(int i = 0; i < n; i++) {
+            t += r.nextInt(100) == 0 ? (r.nextInt(2001) - 1000) * 1000L * 60 * 60 : r.nextInt(3000);
+            out[i] = t;
+        }
+        return out;
+    }
+
+    private static String expected(long t, TimeFormat time, DateFormat date, boolean timeFirst) {
+        StringBuilder out = new StringBuilder();
+        return (timeFirst ? LONDON.formatTimeOnDate(t, time, date, out) : LONDON.format(t, time, date, out)).toString();
+    }
+
+    private static void check(long[] times, TimeFormat time, DateFormat date, boolean timeFirst, ForkJoinPool pool) {
+        BatchTimestampFormatter batch = new BatchTimestampFormatter(LONDON, time, date, timeFirst, pool);
+        String what = times.length+" times, "+time+", "+date+(timeFirst ? ", time first" : "");
+
+        BatchTimestampFormatter.Result result = batch.format(times);
+        Assert.assertEquals(what, times.length, result.size());
+        Assert.assertEquals(what, 0, result.offsets[0]);
+        Assert.assertEquals(what, result.chars.length, result.offsets[times.length]);
+        int total = 0;
+        for(int i = 0; i < times.length; i++) {
+            String e = expected(times[i], time, date, timeFirst);
+            Assert.assertEquals(what+" at "+i, e, result.get(i));
+            total += e.length();
+        }
+        Assert.assertEquals(what, total, result.chars.length);
+
+        //into a buffer at a non-zero position, heap and direct
+        for(ByteBuffer dst : new ByteBuffer[] {ByteBuffer.allocate(total + 10), ByteBuffer.allocateDirect(total + 10)}) {
+            dst.position(3);
+            int[] offsets = batch.format(times, dst);
+            Assert.assertEquals(what, 3 + total, dst.position());
+            Assert.assertEquals(what, times.length + 1, offsets.length);
+            Assert.assertEquals(what, 3, offsets[0]);
+            for(int i = 0; i < times.length; i++) {
+                Assert.assertEquals(what+" at "+i, result.offsets[i] + 3, offsets[i]);
+            }
+            Assert.assertEquals(what, 3 + total, offsets[times.length]);
+            byte[] written = new byte[total];
+            dst.position(3);
+            dst.get(written);
+            Assert.assertEquals(what, new String(result.chars), new String(written, Charset.forName("US-ASCII")));
+            Assert.assertEquals(what, 0, dst.get(0));
+            Assert.assertEquals(what, 0, dst.get(3 + total));
+        }
+    }
+
+    @Test
+    public void matchesAPerElementLoopWithinAndAcrossSlices() {
+        Random r = new Random(SEED);
+        for(int n : new int[] {0, 1, 2, SLICE - 1, SLICE, SLICE + 1, 2 * SLICE + SLICE / 2}) {
+            long[] times = times(n, r);
+            check(times, TimeFormat.MILLISECONDS, DateFormat.BRIEF, false, null);
+            check(times, TimeFormat.SECONDS, DateFormat.LONG_WITH_DAY, true, null);
+        }
+    }
+
+    @Test
+    public void everyLayoutOnAGivenPool() {
+        Random r = new Random(SEED + 1);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            long[] times = times(SLICE + 100, r);
+            for(TimeFormat time : TimeFormat.values()) {
+                for(DateFormat date : DateFormat.values()) {
+                    check(times, time, date, r.nextBoolean(), pool);
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void unsortedTimesAreStillRight() {
+        Random r = new Random(SEED + 2);
+        long[] times = new long[SLICE * 2 + 7];
+        for(int i = 0; i < times.length; i++) {
+            times[i] = -2208988800000L + (long)(r.nextDouble() * 6311433600000L);
+        }
+        check(times, TimeFormat.MILLISECONDS, DateFormat.BRIEF_WITH_DAY, false, null);
+    }
+
+    @Test
+    public void aBufferTooSmallIsLeftAlone() {
+        long[] times = times(SLICE + 1, new Random(SEED + 3));
+        BatchTimestampFormatter batch = new BatchTimestampFormatter(LONDON, TimeFormat.MINUTES, DateFormat.NUMBERS, false);
+        int total = batch.format(times).chars.length;
+        ByteBuffer dst = ByteBuffer.allocate(total + 1);
+        dst.position(2);
+        try {
+            batch.format(times, dst);
+            Assert.fail("wrote "+total+" bytes into "+dst.remaining());
+        }
+        catch(BufferOverflowException expected) {}
+        Assert.assertEquals(2, dst.position());
+        for(int i = 0; i < dst.capacity(); i++) {
+            Assert.assertEquals(0, dst.get(i));
+        }
+        //exactly enough room is fine
+        dst.position(1);
+        batch.format(times, dst);
+        Assert.assertFalse(dst.hasRemaining());
+    }
+}
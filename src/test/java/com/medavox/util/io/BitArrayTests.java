@@ -0,0 +1,244 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+/**Checks {@link BitArray} against java.util.BitSet, at sizes which don't fill their last word
+ * and with ranges starting and ending on either side of every word boundary,
+ * so that the partial-word masks at each end are exercised as well as the whole words between.*/
+public class BitArrayTests {
+    private static final long SEED = 0x5EEDL;
+    private static final int[] SIZES = {0, 1, 7, 63, 64, 65, 100, 127, 128, 129, 191, 200, 1000};
+
+    /**Range ends worth trying for an array of the given size: each word boundary, either side of it, and the ends.*/
+    private static int[] edges(int size) {
+        BitSet out = new BitSet();
+        out.set(0);
+        out.set(size);
+        for(int b = 0; b <= size + 64; b += 64) {
+            for(int d = -1; d <= 1; d++) {
+                if(b + d >= 0 && b + d <= size) {
+                    out.set(b + d);
+                }
+            }
+        }
+        int[] edges = new int[out.cardinality()];
+        for(int i = 0, e = out.nextSetBit(0); e >= 0; e = out.nextSetBit(e + 1)) {
+            edges[i++] = e;
+        }
+        return edges;
+    }
+
+    private static void checkSame(String what, BitSet expected, BitArray actual) {
+        int size = (int)actual.size();
+        for(int i = 0; i < size; i++) {
+            Assert.assertEquals(what+" at "+i, expected.get(i), actual.get(i));
+        }
+        //nothing leaked past the end, which would show up in the counts and the scans
+        Assert.assertEquals(what, expected.cardinality(), actual.cardinality());
+        byte[] bytes = actual.toByteArray();
+        Assert.assertEquals(what, (size + 7) / 8, bytes.length);
+        Assert.assertEquals(what, expected, BitSet.valueOf(bytes));
+    }
+
+    private static BitSet random(int size, Random r) {
+        BitSet out = new BitSet();
+        //sparse, dense or half full, so that whole words of ones and of zeroes turn up
+        int density = r.nextInt(3);
+        for(int i = 0; i < size; i++) {
+            boolean set = density == 0 ? r.nextInt(20) == 0 : density == 1 ? r.nextInt(20) != 0 : r.nextBoolean();
+            out.set(i, set);
+        }
+        return out;
+    }
+
+    private static BitArray of(BitSet bits, int size) {
+        BitArray out = new BitArray(size);
+        for(int i = bits.nextSetBit(0); i >= 0 && i < size; i = bits.nextSetBit(i + 1)) {
+            out.set(i);
+        }
+        return out;
+    }
+
+    @Test
+    public void rangeOperationsMaskTheirEndWords() {
+        Random r = new Random(SEED);
+        for(int size : SIZES) {
+            int[] edges = edges(size);
+            for(int from : edges) {
+                for(int to : edges) {
+                    if(to < from) {
+                        continue;
+                    }
+                    BitSet expected = random(size, r);
+                    BitArray actual = of(expected, size);
+                    String what = size+" bits, ["+from+", "+to+")";
+
+                    Assert.assertEquals(what, expected.get(from, to).cardinality(), actual.cardinality(from, to));
+
+                    int op = r.nextInt(3);
+                    if(op == 0) {
+                        expected.set(from, to);
+                        actual.set(from, to);
+                    }
+                    else if(op == 1) {
+                        expected.clear(from, to);
+                        actual.clear(from, to);
+                    }
+                    else {
+                        expected.flip(from, to);
+                        actual.flip(from, to);
+                    }
+                    checkSame(what+" op "+op, expected, actual);
+                    Assert.assertEquals(what, expected.get(from, to).cardinality(), actual.cardinality(from, to));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void scansStopAtTheEndOfAPartWord() {
+        Random r = new Random(SEED + 1);
+        for(int size : SIZES) {
+            for(int trial = 0; trial < 20; trial++) {
+                BitSet expected = random(size, r);
+                //all set, or all clear, past a point: the cases where a scan would run into the unused bits
+                if(trial % 4 == 1) {
+                    expected.set(r.nextInt(size + 1), size);
+                }
+                else if(trial % 4 == 2) {
+                    expected.clear(r.nextInt(size + 1), size);
+                }
+                else if(trial % 4 == 3) {
+                    expected.set(0, size);
+                }
+                BitArray actual = of(expected, size);
+                for(int from = 0; from <= size; from++) {
+                    String what = size+" bits from "+from;
+                    int set = expected.nextSetBit(from);
+                    Assert.assertEquals(what, set < 0 ? -1 : set, actual.nextSetBit(from));
+                    //BitSet has no end, so it reports size as clear; a BitArray has nothing clear there
+                    int clear = expected.nextClearBit(from);
+                    Assert.assertEquals(what, clear >= size ? -1 : clear, actual.nextClearBit(from));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bulkLogicAgreesWithBitSet() {
+        Random r = new Random(SEED + 2);
+        for(int size : SIZES) {
+            BitSet a = random(size, r);
+            BitSet b = random(size, r);
+            BitArray x = of(a, size);
+            BitArray y = of(b, size);
+            BitSet expected = (BitSet)a.clone();
+            BitArray actual = x.copy();
+            expected.and(b);
+            actual.and(y);
+            checkSame(size+" and", expected, actual);
+            expected.or(a);
+            actual.or(x);
+            checkSame(size+" or", expected, actual);
+            expected.xor(b);
+            actual.xor(y);
+            checkSame(size+" xor", expected, actual);
+            expected.andNot(a);
+            actual.andNot(x);
+            checkSame(size+" andNot", expected, actual);
+            //the operands are untouched
+            checkSame(size+" operand", b, y);
+        }
+    }
+
+    @Test
+    public void viewsReadTheBytesInPlace() {
+        Random r = new Random(SEED + 3);
+        for(int len : new int[] {0, 1, 3, 7, 8, 9, 15, 17, 100}) {
+            byte[] bytes = new byte[len + 5];
+            r.nextBytes(bytes);
+            BitArray view = BitArray.view(bytes, 2, len);
+            Assert.assertTrue(view.isReadOnly());
+            Assert.assertEquals(8L * len, view.size());
+            byte[] inView = new byte[len];
+            System.arraycopy(bytes, 2, inView, 0, len);
+            checkSame("view of "+len, BitSet.valueOf(inView), view);
+            for(int from : edges(8 * len)) {
+                for(int to : edges(8 * len)) {
+                    if(to >= from) {
+                        Assert.assertEquals(BitSet.valueOf(inView).get(from, to).cardinality(), view.cardinality(from, to));
+                    }
+                }
+            }
+
+            //changes to the bytes show through, and copies are cut loose from them
+            BitArray copy = view.copy();
+            Assert.assertFalse(copy.isReadOnly());
+            if(len > 0) {
+                bytes[2 + len - 1] ^= (byte)0x80;
+                Assert.assertEquals(!copy.get(8L * len - 1), view.get(8L * len - 1));
+                copy.flip(8L * len - 1);
+                Assert.assertArrayEquals(view.toByteArray(), copy.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void badArgumentsAreRejected() {
+        BitArray a = new BitArray(100);
+        for(long[] range : new long[][] {{-1, 5}, {5, 4}, {0, 101}, {101, 101}}) {
+            try {
+                a.set(range[0], range[1]);
+                Assert.fail("set ["+range[0]+", "+range[1]+") of 100 bits");
+            }
+            catch(IndexOutOfBoundsException expected) {}
+            try {
+                a.cardinality(range[0], range[1]);
+                Assert.fail("counted ["+range[0]+", "+range[1]+") of 100 bits");
+            }
+            catch(IndexOutOfBoundsException expected) {}
+        }
+        for(long bit : new long[] {-1, 100}) {
+            try {
+                a.get(bit);
+                Assert.fail("read bit "+bit+" of 100");
+            }
+            catch(IndexOutOfBoundsException expected) {}
+        }
+        try {
+            a.nextClearBit(101);
+            Assert.fail("scanned from past the end");
+        }
+        catch(IndexOutOfBoundsException expected) {}
+        try {
+            a.or(new BitArray(101));
+            Assert.fail("or'd arrays of different sizes");
+        }
+        catch(IllegalArgumentException expected) {}
+        try {
+            new BitArray(-1);
+            Assert.fail("made an array of -1 bits");
+        }
+        catch(IllegalArgumentException expected) {}
+        try {
+            BitArray.view(new byte[4], 3, 2);
+            Assert.fail("viewed past the end of the bytes");
+        }
+        catch(IndexOutOfBoundsException expected) {}
+        BitArray view = BitArray.view(new byte[4]);
+        try {
+            view.set(0, 3);
+            Assert.fail("wrote to a view");
+        }
+        catch(UnsupportedOperationException expected) {}
+        try {
+            view.and(new BitArray(32));
+            Assert.fail("wrote to a view");
+        }
+        catch(UnsupportedOperationException expected) {}
+    }
+}
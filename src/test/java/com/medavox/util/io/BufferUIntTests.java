@@ -0,0 +1,265 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**Checks {@link BufferUInt} against BigInteger, at every width from 1 to 20 bytes and at unaligned offsets,
+ * in heap and direct buffers of either byte order and in a slice, with guard bytes either side of each uint
+ * and the buffer's position and limit checked to be left alone.*/
+public class BufferUIntTests {
+    private static final long SEED = 0x5EEDL;
+    private static final int MAX_WIDTH = 20;
+    private static final byte GUARD = (byte)0xA5;
+    private static final BigInteger TWO_TO_64 = BigInteger.ONE.shiftLeft(64);
+
+    private static BigInteger random(int width, Random r) {
+        switch(r.nextInt(4)) {
+            case 0: return BigInteger.ZERO;
+            //all ones, so that carries and borrows run the whole width
+            case 1: return BigInteger.ONE.shiftLeft(8 * width).subtract(BigInteger.ONE);
+            default: return new BigInteger(8 * width, r);
+        }
+    }
+
+    /**A buffer of each kind, filled with guard bytes, with its position and limit set to odd values.*/
+    private static ByteBuffer[] buffers(int capacity) {
+        ByteBuffer sliced = ByteBuffer.allocate(capacity + 3);
+        sliced.position(3);
+        ByteBuffer[] out = {
+                ByteBuffer.allocate(capacity),
+                ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN),
+                ByteBuffer.allocateDirect(capacity),
+                ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN),
+                sliced.slice()};
+        for(ByteBuffer b : out) {
+            for(int i = 0; i < b.capacity(); i++) {
+                b.put(i, GUARD);
+            }
+            b.position(1).limit(capacity - 1);
+        }
+        return out;
+    }
+
+    /**Checks nothing but the uint at off was written, then puts the guard bytes back over it for the next trial.*/
+    private static void checkUntouched(ByteBuffer buf, int off, int width, String what) {
+        Assert.assertEquals(what+": position", 1, buf.position());
+        Assert.assertEquals(what+": limit", buf.capacity() - 1, buf.limit());
+        //absolute gets stop at the limit, as BufferUInt's own do
+        for(int i = 0; i < buf.limit(); i++) {
+            if(i < off || i >= off + width) {
+                Assert.assertEquals(what+": wrote outside the uint at "+i, GUARD, buf.get(i));
+            }
+        }
+        for(int i = 0; i < width; i++) {
+            buf.put(off + i, GUARD);
+        }
+    }
+
+    @Test
+    public void arithmeticAgreesWithBigInteger() {
+        Random r = new Random(SEED);
+        for(int width = 1; width <= MAX_WIDTH; width++) {
+            BigInteger modulus = BigInteger.ONE.shiftLeft(8 * width);
+            for(ByteBuffer buf : buffers(2 * MAX_WIDTH + 16)) {
+                for(int trial = 0; trial < 60; trial++) {
+                    int off = 2 + r.nextInt(6);
+                    int srcOff = off + width + r.nextInt(4);
+                    BigInteger x = random(width, r);
+                    int srcWidth = 1 + r.nextInt(width + 3);
+                    BigInteger y = random(srcWidth, r);
+                    String what = width+" bytes at "+off+" of "+buf+" "+buf.order()+": "+x.toString(16)+", "
+                            +y.toString(16);
+
+                    BufferUInt.putBigInteger(buf, srcOff, srcWidth, y);
+                    BufferUInt.putBigInteger(buf, off, width, x);
+                    Assert.assertEquals(what, x, BufferUInt.getBigInteger(buf, off, width));
+                    //only the low width bytes of an operand count
+                    BigInteger yLow = y.mod(modulus);
+                    int cmp;
+                    switch(trial % 6) {
+                        case 0:
+                            Assert.assertEquals(what, x.add(yLow).compareTo(modulus) >= 0 ? 1 : 0,
+                                    BufferUInt.add(buf, off, width, buf, srcOff, srcWidth));
+                            x = x.add(yLow).mod(modulus);
+                            break;
+                        case 1:
+                            Assert.assertEquals(what, x.compareTo(yLow) < 0 ? 1 : 0,
+                                    BufferUInt.subtract(buf, off, width, buf, srcOff, srcWidth));
+                            x = x.subtract(yLow).mod(modulus);
+                            break;
+                        case 2:
+                            byte[] operand = BytesAsUInt.fromBigInteger(y, srcWidth);
+                            Assert.assertEquals(what, x.add(yLow).compareTo(modulus) >= 0 ? 1 : 0,
+                                    BufferUInt.add(buf, off, width, operand));
+                            x = x.add(yLow).mod(modulus);
+                            Assert.assertEquals(what, x.compareTo(yLow) < 0 ? 1 : 0,
+                                    BufferUInt.subtract(buf, off, width, operand));
+                            x = x.subtract(yLow).mod(modulus);
+                            break;
+                        case 3:
+                            long v = r.nextLong();
+                            BigInteger vLow = BigInteger.valueOf(v).mod(TWO_TO_64).mod(modulus);
+                            Assert.assertEquals(what, x.add(vLow).compareTo(modulus) >= 0 ? 1 : 0,
+                                    BufferUInt.add(buf, off, width, v));
+                            x = x.add(vLow).mod(modulus);
+                            Assert.assertEquals(what, x.compareTo(vLow) < 0 ? 1 : 0,
+                                    BufferUInt.subtract(buf, off, width, v));
+                            x = x.subtract(vLow).mod(modulus);
+                            break;
+                        case 4:
+                            boolean wrapsUp = x.equals(modulus.subtract(BigInteger.ONE));
+                            Assert.assertEquals(what, wrapsUp, BufferUInt.increment(buf, off, width));
+                            Assert.assertEquals(what, wrapsUp, BufferUInt.decrement(buf, off, width));
+                            //in place, on the same range: doubles it
+                            Assert.assertEquals(what, x.shiftLeft(1).compareTo(modulus) >= 0 ? 1 : 0,
+                                    BufferUInt.add(buf, off, width, buf, off, width));
+                            x = x.shiftLeft(1).mod(modulus);
+                            break;
+                        default:
+                            cmp = BufferUInt.compare(buf, off, width, buf, srcOff, srcWidth);
+                            Assert.assertEquals(what, x.compareTo(y), Integer.signum(cmp));
+                            cmp = BufferUInt.compare(buf, off, width, BytesAsUInt.fromBigInteger(y, srcWidth));
+                            Assert.assertEquals(what, x.compareTo(y), Integer.signum(cmp));
+                            Assert.assertEquals(what, x.signum() == 0, BufferUInt.isZero(buf, off, width));
+                            break;
+                    }
+                    Assert.assertEquals(what, x, BufferUInt.getBigInteger(buf, off, width));
+                    Assert.assertEquals(what+": the operand changed", y, BufferUInt.getBigInteger(buf, srcOff, srcWidth));
+                    //wipe the operand, so the guard bytes are whole again
+                    for(int i = 0; i < srcWidth; i++) {
+                        buf.put(srcOff + i, GUARD);
+                    }
+                    checkUntouched(buf, off, width, what);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void conversionsAgreeWithBigInteger() {
+        Random r = new Random(SEED + 1);
+        for(int width = 1; width <= MAX_WIDTH; width++) {
+            for(ByteBuffer buf : buffers(MAX_WIDTH + 16)) {
+                for(int trial = 0; trial < 40; trial++) {
+                    int off = 2 + r.nextInt(6);
+                    //values that mostly fit in 64 bits, or in 63 or 31
+                    BigInteger x = random(width, r);
+                    if(r.nextBoolean()) {
+                        x = x.shiftRight(Math.max(0, 8 * width - (r.nextBoolean() ? 63 : 31)));
+                    }
+                    String what = width+" bytes at "+off+": "+x.toString(16);
+                    BufferUInt.putBigInteger(buf, off, width, x);
+                    if(x.compareTo(TWO_TO_64) < 0) {
+                        Assert.assertEquals(what, x.longValue(), BufferUInt.getUnsignedLong(buf, off, width));
+                        BufferUInt.putUnsignedLong(buf, off, width, x.longValue());
+                        Assert.assertEquals(what, x, BufferUInt.getBigInteger(buf, off, width));
+                    }
+                    else {
+                        try {
+                            BufferUInt.getUnsignedLong(buf, off, width);
+                            Assert.fail(what+": read 2^64 or more as a long");
+                        }
+                        catch(NumberFormatException expected) {}
+                    }
+                    if(x.bitLength() <= 63) {
+                        Assert.assertEquals(what, x.longValue(), BufferUInt.getLong(buf, off, width));
+                    }
+                    else {
+                        try {
+                            BufferUInt.getLong(buf, off, width);
+                            Assert.fail(what+": read over Long.MAX_VALUE as a long");
+                        }
+                        catch(NumberFormatException expected) {}
+                    }
+                    if(x.bitLength() <= 31) {
+                        Assert.assertEquals(what, x.intValue(), BufferUInt.getInt(buf, off, width));
+                    }
+                    else {
+                        try {
+                            BufferUInt.getInt(buf, off, width);
+                            Assert.fail(what+": read over Integer.MAX_VALUE as an int");
+                        }
+                        catch(NumberFormatException expected) {}
+                    }
+                    checkUntouched(buf, off, width, what);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void valuesThatDontFitAreRejected() {
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        try {
+            BufferUInt.putUnsignedLong(buf, 0, 3, 1L << 24);
+            Assert.fail("put 2^24 in 3 bytes");
+        }
+        catch(NumberFormatException expected) {}
+        try {
+            BufferUInt.putBigInteger(buf, 0, 3, BigInteger.ONE.shiftLeft(24));
+            Assert.fail("put 2^24 in 3 bytes");
+        }
+        catch(NumberFormatException expected) {}
+        try {
+            BufferUInt.putBigInteger(buf, 0, 3, BigInteger.ONE.negate());
+            Assert.fail("put a negative number");
+        }
+        catch(NumberFormatException expected) {}
+        try {
+            BufferUInt.isZero(buf, 0, 0);
+            Assert.fail("accepted a width of 0");
+        }
+        catch(IllegalArgumentException expected) {}
+        try {
+            BufferUInt.add(buf, 12, 8, 1L);
+            Assert.fail("wrote past the end of the buffer");
+        }
+        catch(IndexOutOfBoundsException expected) {}
+        //-1 is all 64 bits, which fits in 8 bytes or more
+        BufferUInt.putUnsignedLong(buf, 0, 9, -1L);
+        Assert.assertEquals(TWO_TO_64.subtract(BigInteger.ONE), BufferUInt.getBigInteger(buf, 0, 9));
+    }
+
+    @Test
+    public void countersInAMappedFileAreUpdatedInPlace() throws IOException {
+        File f = File.createTempFile("BufferUIntTests", ".bin");
+        f.deleteOnExit();
+        try {
+            RandomAccessFile file = new RandomAccessFile(f, "rw");
+            try {
+                MappedByteBuffer map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 64);
+                for(int i = 0; i < 1000; i++) {
+                    BufferUInt.increment(map, 5, 3);
+                    BufferUInt.add(map, 20, 12, 0xFFFFFFFFFFL);
+                }
+                map.force();
+            }
+            finally {
+                file.close();
+            }
+            file = new RandomAccessFile(f, "r");
+            try {
+                ByteBuffer reread = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, 64);
+                Assert.assertEquals(1000, BufferUInt.getInt(reread, 5, 3));
+                Assert.assertEquals(BigInteger.valueOf(0xFFFFFFFFFFL).multiply(BigInteger.valueOf(1000)),
+                        BufferUInt.getBigInteger(reread, 20, 12));
+            }
+            finally {
+                file.close();
+            }
+        }
+        finally {
+            f.delete();
+        }
+    }
+}
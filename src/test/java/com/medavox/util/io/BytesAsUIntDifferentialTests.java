@@ -0,0 +1,354 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.medavox.util.io.Bytes.bytesToHex;
+
+/**Checks every BytesAsUInt operation against BigInteger.
+ * Widths of 1 byte are covered exhaustively, every pair of values;
+ * wider operands, up to 512 bytes, get a fixed set of edge cases plus seeded random samples,
+ * including pairs of different widths.
+ * The work is split into independent tasks across all cores, so the whole run takes seconds.
+ * A failure message names the operands, so it can be replayed by hand.*/
+public class BytesAsUIntDifferentialTests {
+    /**Change this to explore different random samples; failures are reproducible for a given seed.*/
+    private static final long SEED = 0x5EEDL;
+    private static final int[] WIDTHS = {1, 2, 3, 4, 5, 7, 8, 9, 12, 15, 16, 17, 31, 32, 33,
+            63, 64, 65, 127, 128, 129, 255, 256, 257, 511, 512};
+    private static final int RANDOM_PAIRS_PER_WIDTH = 3000;
+
+    //------------------------------------harness------------------------------------
+
+    private interface Work {
+        void run() throws Exception;
+    }
+
+    /**Runs every job on a pool of one thread per core, and rethrows the first failure.*/
+    private static void inParallel(List<Work> jobs) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for(final Work job : jobs) {
+                results.add(pool.submit(new Callable<Void>() {
+                    @Override public Void call() throws Exception {
+                        job.run();
+                        return null;
+                    }
+                }));
+            }
+            for(Future<Void> result : results) {
+                try {
+                    result.get();
+                }
+                catch(ExecutionException e) {
+                    if(e.getCause() instanceof Error) {
+                        throw (Error)e.getCause();
+                    }
+                    throw (Exception)e.getCause();
+                }
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static BigInteger big(byte[] a) {
+        byte[] bigEndian = new byte[a.length];
+        for(int i = 0; i < a.length; i++) {
+            bigEndian[a.length - 1 - i] = a[i];
+        }
+        return new BigInteger(1, bigEndian);
+    }
+
+    private static BigInteger modulus(int width) {
+        return BigInteger.ONE.shiftLeft(width * 8);
+    }
+
+    private static void assertValue(String op, byte[] a, byte[] b, BigInteger expected, int expectedWidth,
+                                    byte[] actual) {
+        if(actual.length != expectedWidth || !big(actual).equals(expected)) {
+            Assert.fail(op+" of a="+bytesToHex(a)+" b="+bytesToHex(b)
+                    +"\nexpected "+expected.toString(16)+" in "+expectedWidth+" bytes"
+                    +"\nactual   "+big(actual).toString(16)+" in "+actual.length+" bytes");
+        }
+    }
+
+    private static void assertUnchanged(String op, byte[] before, byte[] after) {
+        Assert.assertTrue(op+" modified its argument "+bytesToHex(before), Arrays.equals(before, after));
+    }
+
+    //------------------------------------the checks------------------------------------
+
+    /**Checks every two-operand operation on one pair of values.*/
+    private static void checkPair(byte[] a, byte[] b) {
+        byte[] aCopy = a.clone();
+        byte[] bCopy = b.clone();
+        BigInteger x = big(a);
+        BigInteger y = big(b);
+        BigInteger wrap = modulus(a.length);
+
+        assertValue("add", a, b, x.add(y).mod(wrap), a.length, BytesAsUInt.add(a, b));
+        BigInteger sum = x.add(y);
+        int widened = Math.max(Math.max(a.length, b.length), (sum.bitLength() + 7) / 8);
+        assertValue("add(WIDEN)", a, b, sum, widened, BytesAsUInt.add(a, b, BytesAsUInt.Overflow.WIDEN));
+        assertValue("add_newImpl", a, b, sum, widened, BytesAsUInt.add_newImpl(a, b));
+        assertValue("subtract", a, b, x.subtract(y).mod(wrap), a.length, BytesAsUInt.subtract(a, b));
+        assertValue("multiply", a, b, x.multiply(y), a.length + b.length, BytesAsUInt.multiply(a, b));
+
+        //the writing forms ignore operand bytes above the width, so b is truncated to a's width here
+        BigInteger yLow = y.mod(wrap);
+        byte[] dst = new byte[a.length + 2];
+        int carry = BytesAsUInt.add(a, b, dst, 1, a.length);
+        assertValue("add into", a, b, x.add(y).mod(wrap), a.length, Arrays.copyOfRange(dst, 1, 1 + a.length));
+        Assert.assertEquals("add into carry", x.add(yLow).compareTo(wrap) >= 0 ? 1 : 0, carry);
+        int borrow = BytesAsUInt.subtract(a, b, dst, 1, a.length);
+        assertValue("subtract into", a, b, x.subtract(y).mod(wrap), a.length, Arrays.copyOfRange(dst, 1, 1 + a.length));
+        Assert.assertEquals("subtract into borrow", x.compareTo(yLow) < 0 ? 1 : 0, borrow);
+        Assert.assertTrue("add/subtract into wrote outside its range", dst[0] == 0 && dst[dst.length-1] == 0);
+
+        //in place, over either operand
+        BigInteger wrapB = modulus(b.length);
+        byte[] inA = a.clone();
+        BytesAsUInt.add(inA, b, inA, 0, inA.length);
+        assertValue("add in place over a", a, b, x.add(y).mod(wrap), a.length, inA);
+        byte[] inB = b.clone();
+        BytesAsUInt.add(a, inB, inB, 0, inB.length);
+        assertValue("add in place over b", a, b, x.add(y).mod(wrapB), b.length, inB);
+        inA = a.clone();
+        BytesAsUInt.subtract(inA, b, inA, 0, inA.length);
+        assertValue("subtract in place over a", a, b, x.subtract(y).mod(wrap), a.length, inA);
+        inB = b.clone();
+        BytesAsUInt.subtract(a, inB, inB, 0, inB.length);
+        assertValue("subtract in place over b", a, b, x.subtract(y).mod(wrapB), b.length, inB);
+
+        if(y.signum() != 0) {
+            BigInteger[] qr = x.divideAndRemainder(y);
+            BytesAsUInt.DivisionResult result = BytesAsUInt.divRem(a, b);
+            assertValue("divRem quotient", a, b, qr[0], a.length, result.quotient);
+            assertValue("divRem remainder", a, b, qr[1], b.length, result.remainder);
+            assertValue("divide", a, b, qr[0], a.length, BytesAsUInt.divide(a, b));
+            assertValue("mod", a, b, qr[1], b.length, BytesAsUInt.mod(a, b));
+        }
+        else {
+            try {
+                BytesAsUInt.divRem(a, b);
+                Assert.fail("divRem by zero didn't throw, for a="+bytesToHex(a));
+            }
+            catch(ArithmeticException expected) {}
+        }
+
+        int cmp = x.compareTo(y);
+        String pair = " of a="+bytesToHex(a)+" b="+bytesToHex(b);
+        Assert.assertEquals("compare"+pair, cmp, Integer.signum(BytesAsUInt.compare(a, b)));
+        Assert.assertEquals("lessThan"+pair, cmp < 0, BytesAsUInt.lessThan(a, b));
+        Assert.assertEquals("greaterThan"+pair, cmp > 0, BytesAsUInt.greaterThan(a, b));
+        Assert.assertEquals("equalsIgnoreArrayLength"+pair, cmp == 0, BytesAsUInt.equalsIgnoreArrayLength(a, b));
+
+        assertUnchanged("a binary operation", aCopy, a);
+        assertUnchanged("a binary operation", bCopy, b);
+    }
+
+    /**Checks every one-operand operation on one value.*/
+    private static void checkSingle(byte[] a) {
+        BigInteger x = big(a);
+        BigInteger wrap = modulus(a.length);
+
+        Assert.assertEquals("isZero of "+bytesToHex(a), x.signum() == 0, BytesAsUInt.isZero(a));
+        assertValue("increment", a, a, x.add(BigInteger.ONE).mod(wrap), a.length, BytesAsUInt.increment(a.clone()));
+        assertValue("decrement", a, a, x.subtract(BigInteger.ONE).mod(wrap), a.length,
+                BytesAsUInt.decrement(a.clone()));
+        Assert.assertEquals("toBigInteger of "+bytesToHex(a), x, BytesAsUInt.toBigInteger(a));
+        assertValue("fromBigInteger", a, a, x, a.length, BytesAsUInt.fromBigInteger(x, a.length));
+
+        if(x.bitLength() <= 64) {
+            Assert.assertEquals("toUnsignedLong of "+bytesToHex(a), x.longValue(), BytesAsUInt.toUnsignedLong(a));
+            assertValue("fromUnsignedLong", a, a, x, Math.max(1, a.length),
+                    BytesAsUInt.fromUnsignedLong(x.longValue(), Math.max(1, a.length)));
+        }
+        else {
+            try {
+                BytesAsUInt.toUnsignedLong(a);
+                Assert.fail("toUnsignedLong didn't throw for "+bytesToHex(a));
+            }
+            catch(NumberFormatException expected) {}
+        }
+        if(x.bitLength() <= 63) {
+            Assert.assertEquals("toLong of "+bytesToHex(a), x.longValue(), BytesAsUInt.toLong(a));
+        }
+        if(x.bitLength() <= 31) {
+            Assert.assertEquals("toInt of "+bytesToHex(a), x.intValue(), BytesAsUInt.toInt(a));
+        }
+    }
+
+    //------------------------------------operands------------------------------------
+
+    /**Values which tend to find carry, borrow and normalisation bugs.*/
+    private static List<byte[]> edgeCases(int width) {
+        List<byte[]> out = new ArrayList<byte[]>();
+        byte[] zero = new byte[width];
+        out.add(zero);
+        byte[] one = new byte[width];
+        one[0] = 1;
+        out.add(one);
+        byte[] max = new byte[width];
+        Arrays.fill(max, (byte)0xFF);
+        out.add(max);
+        byte[] maxMinusOne = max.clone();
+        maxMinusOne[0] = (byte)0xFE;
+        out.add(maxMinusOne);
+        byte[] topBit = new byte[width];
+        topBit[width-1] = (byte)0x80;
+        out.add(topBit);
+        byte[] belowTopBit = max.clone();
+        belowTopBit[width-1] = 0x7F;
+        out.add(belowTopBit);
+        byte[] topAndBottom = topBit.clone();
+        topAndBottom[0] |= 1;
+        out.add(topAndBottom);
+        //a value with a set bit only at the bottom of each 32-bit limb
+        byte[] limbBottoms = new byte[width];
+        for(int i = 0; i < width; i += 4) {
+            limbBottoms[i] = 1;
+        }
+        out.add(limbBottoms);
+        //just above a 64-bit word boundary
+        if(width > 8) {
+            byte[] word = new byte[width];
+            word[8] = 1;
+            out.add(word);
+        }
+        //narrow values in a wide array, to exercise short divisors and normalisation
+        byte[] lowHalf = new byte[width];
+        Arrays.fill(lowHalf, 0, (width + 1) / 2, (byte)0xFF);
+        out.add(lowHalf);
+        return out;
+    }
+
+    private static byte[] random(Random r, int width) {
+        byte[] out = new byte[width];
+        r.nextBytes(out);
+        //skew some values short, so division and comparison see uneven magnitudes
+        if(r.nextInt(4) == 0) {
+            Arrays.fill(out, r.nextInt(width + 1), width, (byte)0);
+        }
+        return out;
+    }
+
+    /**A width near w, so mixed-width operands get checked too.*/
+    private static int nearbyWidth(Random r, int w) {
+        return Math.max(1, w + r.nextInt(9) - 4);
+    }
+
+    //------------------------------------tests------------------------------------
+
+    @Test
+    public void exhaustiveOneByte() throws Exception {
+        List<Work> jobs = new ArrayList<Work>();
+        for(int i = 0; i < 256; i++) {
+            final int first = i;
+            jobs.add(new Work() {
+                @Override public void run() {
+                    byte[] a = {(byte)first};
+                    checkSingle(a);
+                    for(int j = 0; j < 256; j++) {
+                        checkPair(a, new byte[] {(byte)j});
+                    }
+                }
+            });
+        }
+        inParallel(jobs);
+    }
+
+    @Test
+    public void exhaustiveTwoByteSingleOperand() throws Exception {
+        List<Work> jobs = new ArrayList<Work>();
+        for(int i = 0; i < 256; i++) {
+            final int high = i;
+            jobs.add(new Work() {
+                @Override public void run() {
+                    for(int low = 0; low < 256; low++) {
+                        checkSingle(new byte[] {(byte)low, (byte)high});
+                    }
+                }
+            });
+        }
+        inParallel(jobs);
+    }
+
+    @Test
+    public void edgeCasePairs() throws Exception {
+        List<Work> jobs = new ArrayList<Work>();
+        for(final int w : WIDTHS) {
+            jobs.add(new Work() {
+                @Override public void run() {
+                    Random r = new Random(SEED + w);
+                    List<byte[]> edges = edgeCases(w);
+                    List<byte[]> others = edgeCases(nearbyWidth(r, w));
+                    for(byte[] a : edges) {
+                        checkSingle(a);
+                        for(byte[] b : edges) {
+                            checkPair(a, b);
+                        }
+                        for(byte[] b : others) {
+                            checkPair(a, b);
+                            checkPair(b, a);
+                        }
+                    }
+                }
+            });
+        }
+        inParallel(jobs);
+    }
+
+    @Test
+    public void inPlaceNeedsTheArraysToLineUp() {
+        byte[] a = new byte[8];
+        byte[] b = new byte[8];
+        try {
+            BytesAsUInt.add(a, b, a, 1, 4);
+            Assert.fail("add into a at an offset didn't throw");
+        }
+        catch(IllegalArgumentException expected) {}
+        try {
+            BytesAsUInt.subtract(a, b, b, 2, 4);
+            Assert.fail("subtract into b at an offset didn't throw");
+        }
+        catch(IllegalArgumentException expected) {}
+    }
+
+    @Test
+    public void randomPairs() throws Exception {
+        List<Work> jobs = new ArrayList<Work>();
+        final int slices = 4;
+        for(final int w : WIDTHS) {
+            for(int s = 0; s < slices; s++) {
+                final long seed = SEED * 31 + w * slices + s;
+                jobs.add(new Work() {
+                    @Override public void run() {
+                        Random r = new Random(seed);
+                        for(int i = 0; i < RANDOM_PAIRS_PER_WIDTH / slices; i++) {
+                            byte[] a = random(r, w);
+                            byte[] b = random(r, r.nextBoolean() ? w : nearbyWidth(r, w));
+                            checkSingle(a);
+                            checkPair(a, b);
+                        }
+                    }
+                });
+            }
+        }
+        inParallel(jobs);
+    }
+}
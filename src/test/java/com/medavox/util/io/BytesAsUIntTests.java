@@ -8,6 +8,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.TreeSet;
 
 import static com.medavox.util.io.Bytes.bytesToHex;
 
@@ -20,12 +21,30 @@ public class BytesAsUIntTests {
     /**The number of bytes input variables should have. Vastly affects testing time.*/
     private static final int bytesWidth = 2;
     private static int leng = 256;
+    /**The second operands tried against every first operand: the edges of each byte, plus a spread in between.
+     * Every pair at 2 bytes would be 2^32 of them, which takes hours;
+     * BytesAsUIntDifferentialTests covers all pairs at 1 byte, and wider widths by sampling.*/
+    private static int[] samples;
 
     @BeforeClass
     public static void setup() {
         for(int i = 1; i < bytesWidth; i++) {
             leng *= 256;
         }
+        TreeSet<Integer> picked = new TreeSet<Integer>();
+        for(int edge : new int[]{0, 1, 2, 0x7F, 0x80, 0xFE, 0xFF, 0x100, 0x101, 0x7FFF, 0x8000, 0xFFFE, 0xFFFF}) {
+            if(edge < leng) {
+                picked.add(edge);
+            }
+        }
+        for(int v = 3; v < leng; v += 251) {
+            picked.add(v);
+        }
+        samples = new int[picked.size()];
+        int k = 0;
+        for(int v : picked) {
+            samples[k++] = v;
+        }
     }
 
     public byte[] byteArrayOf(int... literals) {
@@ -50,18 +69,22 @@ public class BytesAsUIntTests {
         }
     }
 
-    public void allCombinations(DoubleArgumentTest turst) {
+    /**Every value against every sample.*/
+    public void againstSamples(DoubleArgumentTest turst) {
         for(int i = 0; i < leng; i++) {
-            for(int j = 0; j < leng; j++) {
+            for(int j : samples) {
                 turst.test(i, j);
             }
         }
     }
 
-    public void uniquePairs(DoubleArgumentTest pairs) {
-        for(int i = 0; i < leng-2; i++) {
-            for(int j = i+1; j < leng-1; j++) {
-                pairs.test(i, j);
+    /**Every value against every larger sample.*/
+    public void againstLargerSamples(DoubleArgumentTest pairs) {
+        for(int i = 0; i < leng; i++) {
+            for(int j : samples) {
+                if(j > i) {
+                    pairs.test(i, j);
+                }
             }
         }
     }
@@ -76,7 +99,8 @@ public class BytesAsUIntTests {
                 //byte[] manualZeroes = new byte[]{(byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00};
                 //byte[] manualZeroOne = new byte[]{(byte) 0x01, (byte) 0x00, (byte) 0x00, (byte) 0x00};
                 byte[] result = BytesAsUInt.increment(test);
-                byte[] exp = BytesAsUInt.genByteArray(i+1, bytesWidth);
+                //wraps around at the array's width, like a Java int
+                byte[] exp = BytesAsUInt.genByteArray((i+1) % leng, bytesWidth);
                 Assert.assertTrue("expected:"+bytesToHex(exp)+"; result:"+bytesToHex(result),
                         Arrays.equals(exp, result));
             }
@@ -91,7 +115,8 @@ public class BytesAsUIntTests {
                 //byte[] manualZeroes = new byte[]{(byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00};
                 //byte[] manualZeroOne = new byte[]{(byte) 0x01, (byte) 0x00, (byte) 0x00, (byte) 0x00};
                 byte[] result = BytesAsUInt.decrement(test);
-                byte[] exp = BytesAsUInt.genByteArray(i-1, bytesWidth);
+                //wraps around at the array's width, like a Java int
+                byte[] exp = BytesAsUInt.genByteArray((i-1+leng) % leng, bytesWidth);
                 Assert.assertTrue("expected:"+bytesToHex(exp)+"; actual:"+bytesToHex(result),
                         Arrays.equals(exp, result));
             }
@@ -120,16 +145,12 @@ public class BytesAsUIntTests {
 
     @Test
     public void test_add_newImpl() {
-        uniquePairs(new DoubleArgumentTest() {
-            private int lastI = -1;
+        againstLargerSamples(new DoubleArgumentTest() {
             @Override public void test(int i, int j) {
                 byte[] a = BytesAsUInt.genByteArray(i, bytesWidth);
                 byte[] b = BytesAsUInt.genByteArray(j, bytesWidth);
+                //widens by a byte when the sum needs it
                 byte[] exp = BytesAsUInt.genByteArray(i+j, bytesWidth);
-                if(i != lastI) {
-                    lastI = i;
-                    System.out.println("i:" + i + "; j:" + j);
-                }
                 byte[] result = BytesAsUInt.add_newImpl(a, b);
                 Assert.assertTrue("expected: \""+bytesToHex(a).trim()+"\"+\""+bytesToHex(b).trim()+
                         "\"=\""+bytesToHex(exp).trim()+"\""
@@ -141,14 +162,12 @@ public class BytesAsUIntTests {
 
     @Test
     public void test_add() {
-        uniquePairs(new DoubleArgumentTest() {
+        againstLargerSamples(new DoubleArgumentTest() {
             @Override public void test(int i, int j) {
                 byte[] a = BytesAsUInt.genByteArray(i, bytesWidth);
                 byte[] b = BytesAsUInt.genByteArray(j, bytesWidth);
-                byte[] exp = BytesAsUInt.genByteArray(i+j, bytesWidth);
-                if((j % 1024) == 0) {
-                    System.out.println("i:" + i + "; j:" + j);
-                }
+                //wraps around at a's width
+                byte[] exp = BytesAsUInt.genByteArray((i+j) % leng, bytesWidth);
                 byte[] result = BytesAsUInt.add(a, b);
                 Assert.assertTrue("expected: \""+bytesToHex(a).trim()+"\"+\""+bytesToHex(b).trim()+
                         "\"=\""+bytesToHex(exp).trim()+"\""
@@ -160,11 +179,12 @@ public class BytesAsUIntTests {
 
     @Test
     public void test_subtract() {
-        allCombinations(new DoubleArgumentTest() {
+        againstSamples(new DoubleArgumentTest() {
             @Override public void test(int i, int j) {
                 byte[] a = BytesAsUInt.genByteArray(i, bytesWidth);
                 byte[] b = BytesAsUInt.genByteArray(j, bytesWidth);
-                byte[] expected = BytesAsUInt.genByteArray(Math.max(0, i-j), bytesWidth);
+                //wraps around below zero at a's width
+                byte[] expected = BytesAsUInt.genByteArray((i-j+leng) % leng, bytesWidth);
 
                 byte[] result = BytesAsUInt.subtract(a, b);
                 Assert.assertTrue("expected:"+bytesToHex(expected)+"; result:"+bytesToHex(result),
@@ -175,11 +195,16 @@ public class BytesAsUIntTests {
 
     @Test
     public void test_multiply() {
-        uniquePairs(new DoubleArgumentTest() {
+        againstLargerSamples(new DoubleArgumentTest() {
             @Override public void test(int i, int j) {
                 byte[] a = BytesAsUInt.genByteArray(i, bytesWidth);
                 byte[] b = BytesAsUInt.genByteArray(j, bytesWidth);
-                byte[] exp = BytesAsUInt.genByteArray(i*j, bytesWidth);
+                //the product is always a.length + b.length bytes wide, so it never overflows
+                long product = (long)i * j;
+                byte[] exp = new byte[a.length + b.length];
+                for(int k = 0; k < exp.length && k < 8; k++) {
+                    exp[k] = (byte)(product >>> (8 * k));
+                }
 
                 byte[] result = BytesAsUInt.multiply(a, b);
                 Assert.assertTrue("expected:"+bytesToHex(exp)+"; result:"+bytesToHex(result),
@@ -190,10 +215,20 @@ public class BytesAsUIntTests {
 
     @Test
     public void test_divide() {
-        allCombinations(new DoubleArgumentTest() {
+        againstSamples(new DoubleArgumentTest() {
             @Override public void test(int i, int j) {
                 byte[] a = BytesAsUInt.genByteArray(i, bytesWidth);
                 byte[] b = BytesAsUInt.genByteArray(j, bytesWidth);
+                if(j == 0) {
+                    try {
+                        BytesAsUInt.divide(a, b);
+                        Assert.fail("dividing "+i+" by zero didn't throw");
+                    }
+                    catch(ArithmeticException expected) {
+                        //as it should
+                    }
+                    return;
+                }
                 byte[] exp = BytesAsUInt.genByteArray(i / j, bytesWidth);
 
                 byte[] result = BytesAsUInt.divide(a, b);
@@ -205,8 +240,11 @@ public class BytesAsUIntTests {
 
     @Test
     public void test_mod() {
-        uniquePairs(new DoubleArgumentTest() {
+        againstSamples(new DoubleArgumentTest() {
             @Override public void test(int i, int j) {
+                if(j == 0) {
+                    return;//test_divide checks division by zero
+                }
                 byte[] a = BytesAsUInt.genByteArray(i, bytesWidth);
                 byte[] b = BytesAsUInt.genByteArray(j, bytesWidth);
                 byte[] exp = BytesAsUInt.genByteArray(i % j, bytesWidth);
@@ -220,13 +258,14 @@ public class BytesAsUIntTests {
 
     @Test
     public void test_greaterThan() {
-        allCombinations(new DoubleArgumentTest() {
+        againstSamples(new DoubleArgumentTest() {
             @Override public void test(int i, int j) {
                 byte[] a = BytesAsUInt.genByteArray(i, bytesWidth);
                 byte[] b = BytesAsUInt.genByteArray(j, bytesWidth);
                 boolean expected = i > j;
 
                 boolean result = BytesAsUInt.greaterThan(a, b);
+                Assert.assertEquals(i+" > "+j, expected, result);
 
             }
         });
@@ -234,15 +273,50 @@ public class BytesAsUIntTests {
 
     @Test
     public void test_lessThan() {
-        allCombinations(new DoubleArgumentTest() {
+        againstSamples(new DoubleArgumentTest() {
             @Override public void test(int i, int j) {
                 byte[] a = BytesAsUInt.genByteArray(i, bytesWidth);
                 byte[] b = BytesAsUInt.genByteArray(j, bytesWidth);
                 boolean expected = i < j;
 
                 boolean result = BytesAsUInt.lessThan(a, b);
+                Assert.assertEquals(i+" < "+j, expected, result);
 
             }
         });
     }
+
+    @Test
+    public void test_addAndSubtractInPlace() {
+        for(int i = 0; i < leng; i += 257) {
+            for(int j = 0; j < leng; j += 263) {
+                byte[] a = BytesAsUInt.genByteArray(i, bytesWidth);
+                byte[] b = BytesAsUInt.genByteArray(j, bytesWidth);
+
+                byte[] sum = a.clone();
+                Assert.assertEquals((i+j) / leng, BytesAsUInt.add(sum, b, sum, 0, bytesWidth));
+                byte[] exp = BytesAsUInt.genByteArray((i+j) % leng, bytesWidth);
+                Assert.assertTrue("expected:"+bytesToHex(exp)+"; result:"+bytesToHex(sum), Arrays.equals(exp, sum));
+
+                byte[] difference = b.clone();
+                Assert.assertEquals(i < j ? 1 : 0, BytesAsUInt.subtract(a, difference, difference, 0, bytesWidth));
+                exp = BytesAsUInt.genByteArray((i-j+leng) % leng, bytesWidth);
+                Assert.assertTrue("expected:"+bytesToHex(exp)+"; result:"+bytesToHex(difference),
+                        Arrays.equals(exp, difference));
+            }
+        }
+        //shifted, the dst would overwrite operand bytes before they were read
+        byte[] a = new byte[8];
+        byte[] b = new byte[8];
+        try {
+            BytesAsUInt.add(a, b, a, 1, 4);
+            Assert.fail("add into a at an offset didn't throw");
+        }
+        catch(IllegalArgumentException expected) {}
+        try {
+            BytesAsUInt.subtract(a, b, b, 2, 4);
+            Assert.fail("subtract into b at an offset didn't throw");
+        }
+        catch(IllegalArgumentException expected) {}
+    }
 }
@@ -0,0 +1,199 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import com.medavox.util.io.DateTime.DateFormat;
+import com.medavox.util.io.DateTime.TimeFormat;
+
+/**Checks that {@link CachingTimestampFormatter} always writes what {@link TimestampFormatter} would,
+ * with the input built to hit each edge of its cache: the last and first millisecond of a second,
+ * local midnight, DST changes (which move the local day without a new UTC one), instants before 1970,
+ * and runs of out-of-order timestamps just shorter and just longer than it takes to move the cache back.*/
+public class CachingTimestampFormatterTests {
+    private static final long SEED = 0x5EEDL;
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final String[] ZONES = {"UTC", "Europe/London", "America/New_York", "Australia/Lord_Howe",
+            "Asia/Kathmandu", "Pacific/Chatham"};
+
+    /**Checks every timestamp in order through one caching formatter per layout, against the base formatter.*/
+    private static void check(TimestampFormatter base, long[] times, String what) {
+        for(TimeFormat time : TimeFormat.values()) {
+            for(DateFormat date : DateFormat.values()) {
+                for(boolean timeFirst : new boolean[] {false, true}) {
+                    CachingTimestampFormatter caching = new CachingTimestampFormatter(base, time, date, timeFirst);
+                    char[] dst = new char[TimestampFormatter.MAX_LENGTH + 3];
+                    StringBuilder out = new StringBuilder();
+                    for(int i = 0; i < times.length; i++) {
+                        long t = times[i];
+                        out.setLength(0);
+                        String expected = (timeFirst
+                                ? base.formatTimeOnDate(t, time, date, out)
+                                : base.format(t, time, date, out)).toString();
+                        String at = what+", "+time+" "+date+(timeFirst ? " time first" : "")+", #"+i+" = "+t;
+                        //alternate the two entry points, which share the cache
+                        if(i % 2 == 0) {
+                            int end = caching.format(t, dst, 3);
+                            Assert.assertEquals(at, expected, new String(dst, 3, end - 3));
+                        }
+                        else {
+                            Assert.assertEquals(at, "x" + expected, caching.format(t, new StringBuilder("x")).toString());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static long[] toArray(List<Long> times) {
+        long[] out = new long[times.size()];
+        for(int i = 0; i < out.length; i++) {
+            out[i] = times.get(i);
+        }
+        return out;
+    }
+
+    /**The instants in [from, to) at which the zone's offset changes, found by bisection from hourly samples.*/
+    private static List<Long> transitions(TimeZone zone, long from, long to) {
+        List<Long> out = new ArrayList<Long>();
+        long hour = 60L * 60 * 1000;
+        for(long t = from; t < to; t += hour) {
+            if(zone.getOffset(t) != zone.getOffset(t + hour)) {
+                long lo = t;
+                long hi = t + hour;
+                while(hi - lo > 1) {
+                    long mid = lo + (hi - lo) / 2;
+                    if(zone.getOffset(mid) == zone.getOffset(t)) {
+                        lo = mid;
+                    }
+                    else {
+                        hi = mid;
+                    }
+                }
+                out.add(hi);
+            }
+        }
+        return out;
+    }
+
+    /**The first instant of the local day containing t.*/
+    private static long localMidnight(TimeZone zone, long t) {
+        long local = t + zone.getOffset(t);
+        long midnight = TimestampFormatter.floorDiv(local, DAY) * DAY;
+        return midnight - zone.getOffset(midnight - zone.getOffset(t));
+    }
+
+    @Test
+    public void secondAndDayBoundaries() {
+        for(String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            TimestampFormatter base = new TimestampFormatter(zone);
+            List<Long> edges = new ArrayList<Long>();
+            for(long t : new long[] {0, -1, 1616889600000L, -2208988800000L + 123456789L, 4102444800000L - 5000}) {
+                edges.add(t);
+                edges.add(localMidnight(zone, t));
+                edges.add(localMidnight(zone, t) + DAY);
+            }
+            edges.addAll(transitions(zone, 1609459200000L, 1640995200000L));
+            edges.addAll(transitions(zone, -1262304000000L, -1230768000000L));
+            for(long edge : edges) {
+                //every millisecond either side of the edge: the same second, the next, and the day or offset change
+                List<Long> times = new ArrayList<Long>();
+                for(long t = edge - 1003; t <= edge + 1003; t++) {
+                    times.add(t);
+                }
+                //and the same again a second at a time, so each call lands in a different cached second
+                for(long t = edge - 5000; t <= edge + 5000; t += 999) {
+                    times.add(t);
+                }
+                check(base, toArray(times), id+" around "+edge);
+            }
+        }
+    }
+
+    @Test
+    public void stragglersAndReanchoring() {
+        Random r = new Random(SEED);
+        TimestampFormatter base = new TimestampFormatter(TimeZone.getTimeZone("Europe/London"));
+        for(int run = 1; run <= CachingTimestampFormatter.REANCHOR_AFTER + 2; run++) {
+            List<Long> times = new ArrayList<Long>();
+            long t = 1616893200000L - 3000;
+            for(int i = 0; i < 5; i++) {
+                times.add(t += r.nextInt(700));
+            }
+            //a run of earlier timestamps: the first few shouldn't disturb the cache, a longer run should move it
+            long back = t - (run % 2 == 0 ? 400 : DAY + 400);
+            for(int i = 0; i < run; i++) {
+                times.add(back + i * (long)r.nextInt(50));
+            }
+            //then on from where the ascending run left off, within the cached second and past it
+            for(int i = 0; i < 10; i++) {
+                times.add(t += r.nextInt(400));
+            }
+            //a straggler which interrupts a run of stragglers is counted afresh
+            times.add(back - 1);
+            times.add(t + 1);
+            times.add(back - 2);
+            check(base, toArray(times), run+" stragglers");
+        }
+    }
+
+    @Test
+    public void onlyASustainedRunMovesTheCacheBack() {
+        TimestampFormatter base = new TimestampFormatter(TimeZone.getTimeZone("America/New_York"));
+        char[] dst = new char[TimestampFormatter.MAX_LENGTH];
+        for(long back : new long[] {1, 999, 1000, DAY}) {
+            CachingTimestampFormatter caching
+                    = new CachingTimestampFormatter(base, TimeFormat.MILLISECONDS, DateFormat.BRIEF, false);
+            long t = 1615705200000L + 500;
+            Assert.assertFalse(caching.isCached(t));
+            caching.format(t, dst, 0);
+            Assert.assertTrue(caching.isCached(t));
+            Assert.assertTrue(caching.isCached(t - 500));
+            Assert.assertFalse(caching.isCached(t + 500));
+            Assert.assertFalse(caching.isCached(t - 501));
+            for(int i = 1; i < CachingTimestampFormatter.REANCHOR_AFTER; i++) {
+                caching.format(t - 500 - back, dst, 0);
+                Assert.assertTrue(back+" back, "+i+" stragglers", caching.isCached(t));
+            }
+            //one in order resets the count
+            caching.format(t + 1, dst, 0);
+            for(int i = 1; i < CachingTimestampFormatter.REANCHOR_AFTER; i++) {
+                caching.format(t - 500 - back, dst, 0);
+            }
+            Assert.assertTrue(back+" back", caching.isCached(t));
+            caching.format(t - 500 - back, dst, 0);
+            Assert.assertFalse(back+" back, the cache stayed put", caching.isCached(t));
+            Assert.assertTrue(back+" back", caching.isCached(t - 500 - back));
+        }
+    }
+
+    @Test
+    public void matchesTheBaseOnARandomWalk() {
+        Random r = new Random(SEED + 1);
+        for(String id : ZONES) {
+            TimestampFormatter base = new TimestampFormatter(TimeZone.getTimeZone(id));
+            long[] times = new long[3000];
+            long t = -2208988800000L + (long)(r.nextDouble() * 6311433600000L);
+            for(int i = 0; i < times.length; i++) {
+                int kind = r.nextInt(20);
+                if(kind == 0) {
+                    t += (r.nextInt(2001) - 1000) * 60L * 60 * 1000;
+                }
+                else if(kind == 1) {
+                    t -= r.nextInt(3000);
+                }
+                else {
+                    t += r.nextInt(kind < 10 ? 10 : 1500);
+                }
+                times[i] = t;
+            }
+            check(base, times, id+" random walk");
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**Loads files through both the read and the mapped paths of {@link FileLoader},
+ * and scans them in place through {@link MappedCharSequence}.*/
+public class FileLoaderTests {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+    private static final String TEXT = "plain ascii, caf\u00E9, \u20AC5, \u65E5\u672C, \uD83D\uDE00\nsecond line";
+    /**Valid UTF-8 around a stray continuation byte and a truncated 3-byte sequence.*/
+    private static final byte[] MALFORMED = {'o', 'k', (byte)0x80, ' ', (byte)0xE2, (byte)0x82, '!'};
+
+    private static File write(byte[] content) throws IOException {
+        File f = File.createTempFile("FileLoaderTests", ".txt");
+        f.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(content);
+        }
+        finally {
+            out.close();
+        }
+        return f;
+    }
+
+    @Test
+    public void readAndMappedPathsDecodeTheSame() throws IOException {
+        File f = write(TEXT.getBytes(UTF_8));
+        try {
+            //a threshold above the size reads the file; 0 maps it
+            Assert.assertEquals(TEXT, FileLoader.loadChars(f, UTF_8, Long.MAX_VALUE).toString());
+            Assert.assertEquals(TEXT, FileLoader.loadChars(f, UTF_8, 0).toString());
+            Assert.assertEquals(TEXT, FileLoader.load(f, UTF_8));
+            Assert.assertEquals(TEXT, StringUtils.fileToString(f, UTF_8));
+        }
+        finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void emptyFilesLoadOnBothPaths() throws IOException {
+        File f = write(new byte[0]);
+        try {
+            Assert.assertEquals("", FileLoader.loadChars(f, UTF_8, Long.MAX_VALUE).toString());
+            Assert.assertEquals("", FileLoader.loadChars(f, UTF_8, 0).toString());
+            Assert.assertEquals(0, FileLoader.map(f, LATIN_1).length());
+        }
+        finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void malformedInputIsReportedByTheCharsetForms() throws IOException {
+        File f = write(MALFORMED);
+        try {
+            for(long threshold : new long[] {Long.MAX_VALUE, 0}) {
+                try {
+                    FileLoader.loadChars(f, UTF_8, threshold);
+                    Assert.fail("decoded malformed UTF-8 with a map threshold of "+threshold);
+                }
+                catch(CharacterCodingException expected) {}
+            }
+            try {
+                StringUtils.fileToString(f, UTF_8);
+                Assert.fail("fileToString(File, Charset) decoded malformed UTF-8");
+            }
+            catch(CharacterCodingException expected) {}
+        }
+        finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void legacyFileToStringReplacesMalformedInput() throws IOException {
+        File f = write(MALFORMED);
+        try {
+            //whatever the platform charset is, the bad bytes are replaced as String's constructor would
+            Assert.assertEquals(new String(MALFORMED, Charset.defaultCharset()), StringUtils.fileToString(f));
+            Assert.assertEquals("ok\uFFFD \uFFFD!", FileLoader.loadReplacing(f, UTF_8));
+        }
+        finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void missingFilesAreNotFound() throws IOException {
+        File dir = write(new byte[0]);
+        dir.delete();
+        try {
+            FileLoader.load(dir, UTF_8);
+            Assert.fail("loaded a file which doesn't exist");
+        }
+        catch(FileNotFoundException expected) {}
+        try {
+            FileLoader.map(dir.getParentFile(), LATIN_1);
+            Assert.fail("mapped a directory");
+        }
+        catch(FileNotFoundException expected) {}
+    }
+
+    //------------------------------------MappedCharSequence------------------------------------
+
+    @Test
+    public void mappedSequenceDecodesEveryByte() throws IOException {
+        byte[] all = new byte[256];
+        for(int i = 0; i < all.length; i++) {
+            all[i] = (byte)i;
+        }
+        File f = write(all);
+        try {
+            for(Charset charset : new Charset[] {LATIN_1, Charset.forName("windows-1252"), Charset.forName("US-ASCII")}) {
+                MappedCharSequence mapped = FileLoader.map(f, charset);
+                Assert.assertEquals(256, mapped.length());
+                String expected = new String(all, charset);
+                Assert.assertEquals(charset.name(), expected, mapped.toString());
+                for(int i = 0; i < all.length; i++) {
+                    Assert.assertEquals(charset+" byte "+i, expected.charAt(i), mapped.charAt(i));
+                }
+            }
+        }
+        finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void mappedSubSequencesShareTheirBytes() throws IOException {
+        String text = "0123456789abcdefghij";
+        File f = write(text.getBytes(LATIN_1));
+        try {
+            MappedCharSequence mapped = FileLoader.map(f, LATIN_1);
+            MappedCharSequence sub = mapped.subSequence(5, 15);
+            Assert.assertEquals("56789abcde", sub.toString());
+            Assert.assertEquals("89ab", sub.subSequence(3, 7).toString());
+            Assert.assertEquals('a', sub.charAt(5));
+            Assert.assertEquals("", sub.subSequence(10, 10).toString());
+            for(int bad : new int[] {-1, 10}) {
+                try {
+                    sub.charAt(bad);
+                    Assert.fail("read index "+bad+" of "+sub.length());
+                }
+                catch(IndexOutOfBoundsException expected) {}
+            }
+            for(int[] bad : new int[][] {{-1, 2}, {3, 2}, {0, 11}}) {
+                try {
+                    sub.subSequence(bad[0], bad[1]);
+                    Assert.fail("took ["+bad[0]+", "+bad[1]+") of "+sub.length());
+                }
+                catch(IndexOutOfBoundsException expected) {}
+            }
+        }
+        finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void aPatternScansTheMappedFileInPlace() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < 2000; i++) {
+            text.append("line ").append(i).append(i % 7 == 0 ? " see http://example.com/" + i : "").append('\n');
+        }
+        File f = write(text.toString().getBytes(LATIN_1));
+        try {
+            Pattern url = Pattern.compile("http://\\S+");
+            Matcher expected = url.matcher(text);
+            Matcher actual = url.matcher(FileLoader.map(f, LATIN_1));
+            int count = 0;
+            while(expected.find()) {
+                Assert.assertTrue(actual.find());
+                Assert.assertEquals(expected.start(), actual.start());
+                Assert.assertEquals(expected.group(), actual.group());
+                count++;
+            }
+            Assert.assertFalse(actual.find());
+            Assert.assertEquals(286, count);
+        }
+        finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void multiByteCharsetsCannotBeMapped() throws IOException {
+        File f = write(TEXT.getBytes(UTF_8));
+        try {
+            for(Charset charset : new Charset[] {UTF_8, Charset.forName("UTF-16")}) {
+                try {
+                    FileLoader.map(f, charset);
+                    Assert.fail("mapped a file as "+charset);
+                }
+                catch(IllegalArgumentException expected) {}
+            }
+        }
+        finally {
+            f.delete();
+        }
+    }
+}
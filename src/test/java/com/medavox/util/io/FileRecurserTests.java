@@ -0,0 +1,268 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**Walks a temporary tree several directories deep, with symbolic links back up it (which must be skipped),
+ * a link out of it (which is only walked when following links), and links to a file and to nowhere;
+ * and checks which files {@link FileRecurser} visits in each filter mode, with and without following links.*/
+public class FileRecurserTests {
+    /**Every file in the tree, by path from its root, when links are followed.*/
+    private static final Set<String> FOLLOWED = set("a.txt", "link.txt", "dangling", "sub1/b.txt", "sub1/c.log",
+            "sub1/sub2/d.txt", "sub1/sub2/sub3/e.txt", "sub1/sub2/sub3/f.log", "outside/g.txt");
+    /**Every file in the tree when links aren't followed, which visits each link as a file.*/
+    private static final Set<String> NOT_FOLLOWED = set("a.txt", "link.txt", "dangling", "sub1/b.txt", "sub1/c.log",
+            "sub1/sub2/d.txt", "sub1/sub2/sub3/e.txt", "sub1/sub2/sub3/f.log", "outside",
+            "sub1/sub2/toRoot", "sub1/sub2/sub3/toSub1");
+
+    private static Set<String> set(String... names) {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    /**Builds the tree in a new temporary directory, which is returned with the directory the outside link goes to.*/
+    private static Path[] makeTree() throws IOException {
+        Path root = Files.createTempDirectory("FileRecurserTests");
+        Path elsewhere = Files.createTempDirectory("FileRecurserTestsOutside");
+        Path sub3 = Files.createDirectories(root.resolve("sub1/sub2/sub3"));
+        for(String name : new String[] {"a.txt", "sub1/b.txt", "sub1/c.log", "sub1/sub2/d.txt",
+                "sub1/sub2/sub3/e.txt", "sub1/sub2/sub3/f.log"}) {
+            Files.write(root.resolve(name), name.getBytes("UTF-8"));
+        }
+        Files.write(elsewhere.resolve("g.txt"), new byte[] {'g'});
+        Files.createSymbolicLink(root.resolve("sub1/sub2/toRoot"), root);
+        Files.createSymbolicLink(sub3.resolve("toSub1"), root.resolve("sub1"));
+        Files.createSymbolicLink(root.resolve("outside"), elsewhere);
+        Files.createSymbolicLink(root.resolve("link.txt"), root.resolve("a.txt"));
+        Files.createSymbolicLink(root.resolve("dangling"), root.resolve("nothing here"));
+        return new Path[] {root, elsewhere};
+    }
+
+    /**Deletes the tree without following its links.*/
+    private static void delete(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+            @Override public FileVisitResult postVisitDirectory(Path d, IOException exc) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**Records what it's called on, by path from root, and accepts only what's at least two directories down.*/
+    private static final class Recorder implements PathOperation {
+        final Path root;
+        final List<String> operated = new ArrayList<String>();
+        final Set<String> offered = new HashSet<String>();
+
+        Recorder(Path root) {
+            this.root = root;
+        }
+
+        String name(Path file) {
+            //through the outside link, the walk names files by the link's path, not the target's
+            return root.relativize(file).toString().replace(File.separatorChar, '/');
+        }
+
+        @Override public void operate(Path file, BasicFileAttributes attrs) {
+            String name = name(file);
+            operated.add(name);
+            Assert.assertFalse(name+" is a directory", attrs.isDirectory());
+        }
+
+        @Override public boolean acceptFile(Path file, BasicFileAttributes attrs) {
+            String name = name(file);
+            Assert.assertTrue(name+" offered twice", offered.add(name));
+            return name.split("/").length > 2;
+        }
+
+        Set<String> operatedOnce() {
+            Set<String> out = new HashSet<String>(operated);
+            Assert.assertEquals("visited twice: "+operated, operated.size(), out.size());
+            return out;
+        }
+    }
+
+    private static Set<String> filter(Set<String> names, String mustContain, int minDepth) {
+        Set<String> out = new HashSet<String>();
+        for(String name : names) {
+            if(name.substring(name.lastIndexOf('/') + 1).contains(mustContain) && name.split("/").length >= minDepth) {
+                out.add(name);
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void everyModeAtEveryDepth() throws IOException {
+        Path[] tree = makeTree();
+        Path root = tree[0];
+        try {
+            for(boolean follow : new boolean[] {true, false}) {
+                Set<String> all = follow ? FOLLOWED : NOT_FOLLOWED;
+                String what = follow ? "following links" : "not following links";
+
+                Recorder r = new Recorder(root);
+                FileRecurser.walk(root, FileRecurser.NO_FILTER, "ignored", r, follow, false);
+                Assert.assertEquals(what, all, r.operatedOnce());
+                Assert.assertTrue(what, r.offered.isEmpty());
+
+                r = new Recorder(root);
+                FileRecurser.walk(root, FileRecurser.STRING_FILTER, ".txt", r, follow, false);
+                Assert.assertEquals(what, filter(all, ".txt", 0), r.operatedOnce());
+                Assert.assertTrue(what, r.offered.isEmpty());
+
+                //only files at least two directories down are accepted, so this filter is applied deep in the tree
+                r = new Recorder(root);
+                FileRecurser.walk(root, FileRecurser.METHOD_FILTER, "", r, follow, false);
+                Assert.assertEquals(what, all, r.offered);
+                Assert.assertEquals(what, filter(all, "", 3), r.operatedOnce());
+                Assert.assertTrue(what, r.operatedOnce().contains("sub1/sub2/sub3/f.log"));
+
+                r = new Recorder(root);
+                FileRecurser.walk(root, r, follow);
+                Assert.assertEquals(what, filter(all, "", 3), r.operatedOnce());
+            }
+        }
+        finally {
+            delete(tree[0]);
+            delete(tree[1]);
+        }
+        Assert.assertFalse(Files.exists(tree[0]));
+        Assert.assertFalse(Files.exists(tree[1]));
+    }
+
+    @Test
+    public void theFileApiFollowsLinksAndFiltersTheSame() throws IOException {
+        Path[] tree = makeTree();
+        final Path root = tree[0];
+        try {
+            final List<String> seen = new ArrayList<String>();
+            final List<String> offered = new ArrayList<String>();
+            RecurseOperation op = new RecurseOperation() {
+                @Override public void operate(File recursee) {
+                    seen.add(root.relativize(recursee.toPath()).toString().replace(File.separatorChar, '/'));
+                }
+                @Override public boolean acceptFile(File recursee) {
+                    offered.add(recursee.getName());
+                    return recursee.getName().endsWith(".log");
+                }
+            };
+            FileRecurser.recurse(root.toFile(), op);
+            Assert.assertEquals(FOLLOWED, new HashSet<String>(seen));
+            Assert.assertEquals(FOLLOWED.size(), seen.size());
+            seen.clear();
+            FileRecurser.recurse(root.toFile(), ".txt", op);
+            Assert.assertEquals(filter(FOLLOWED, ".txt", 0), new HashSet<String>(seen));
+            seen.clear();
+            FileRecurser.recurse(root.toFile(), op, true);
+            Assert.assertEquals(set("sub1/c.log", "sub1/sub2/sub3/f.log"), new HashSet<String>(seen));
+            Assert.assertEquals(FOLLOWED.size(), offered.size());
+        }
+        finally {
+            delete(tree[0]);
+            delete(tree[1]);
+        }
+    }
+
+    @Test
+    public void unreadableDirectoriesEndTheWalkOrAreSkipped() throws IOException {
+        Path[] tree = makeTree();
+        Path root = tree[0];
+        Path locked = root.resolve("sub1/sub2");
+        try {
+            Files.setPosixFilePermissions(locked, Collections.<PosixFilePermission>emptySet());
+            boolean readable;
+            try {
+                DirectoryStream<Path> stream = Files.newDirectoryStream(locked);
+                stream.close();
+                readable = true;
+            }
+            catch(IOException e) {
+                readable = false;
+            }
+            //a superuser can read it anyway, and then there's no failure to check
+            if(!readable) {
+                Recorder r = new Recorder(root);
+                try {
+                    FileRecurser.walk(root, FileRecurser.NO_FILTER, "", r, true, false);
+                    Assert.fail("walked an unreadable directory without failing");
+                }
+                catch(IOException expected) {}
+
+                r = new Recorder(root);
+                FileRecurser.walk(root, FileRecurser.NO_FILTER, "", r, true, true);
+                Assert.assertEquals(set("a.txt", "link.txt", "dangling", "sub1/b.txt", "sub1/c.log", "outside/g.txt"),
+                        r.operatedOnce());
+
+                //the File API has always skipped what it couldn't read
+                final List<File> seen = new ArrayList<File>();
+                FileRecurser.recurse(root.toFile(), new RecurseOperation() {
+                    @Override public void operate(File recursee) {
+                        seen.add(recursee);
+                    }
+                    @Override public boolean acceptFile(File recursee) {
+                        return true;
+                    }
+                });
+                Assert.assertEquals(6, seen.size());
+            }
+        }
+        finally {
+            Files.setPosixFilePermissions(locked, EnumSet.allOf(PosixFilePermission.class));
+            delete(tree[0]);
+            delete(tree[1]);
+        }
+    }
+
+    @Test
+    public void badArgumentsAreRejected() throws IOException {
+        Path[] tree = makeTree();
+        Path root = tree[0];
+        try {
+            try {
+                FileRecurser.walk(root, 3, "", new Recorder(root), true, false);
+                Assert.fail("accepted filter mode 3");
+            }
+            catch(IllegalArgumentException expected) {}
+            try {
+                FileRecurser.walk(root.resolve("a.txt"), new Recorder(root), true);
+                Assert.fail("walked a file");
+            }
+            catch(IllegalArgumentException expected) {}
+            try {
+                FileRecurser.walk(root.resolve("not there"), new Recorder(root), true);
+                Assert.fail("walked a directory which doesn't exist");
+            }
+            catch(IllegalArgumentException expected) {}
+            try {
+                FileRecurser.recurse(root.resolve("not there").toFile(), ".txt", null);
+                Assert.fail("recursed into a directory which doesn't exist");
+            }
+            catch(IllegalArgumentException expected) {}
+        }
+        finally {
+            delete(tree[0]);
+            delete(tree[1]);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+/**Checks that every {@link HexCodec} encoding and decoding path agrees with a String.format reference,
+ * for several separator layouts, and that each one writes only its own range
+ * and leaves buffers' positions and limits alone.*/
+public class HexCodecTests {
+    private static final long SEED = 0x5EEDL;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final HexCodec[] CODECS = {
+            HexCodec.UPPER, HexCodec.LOWER, HexCodec.SPACED_UPPER,
+            new HexCodec(false, ":", false), new HexCodec(true, ", ", true), new HexCodec(false, "--", false)};
+    /**The case, separator and trailing separator each of CODECS was made with.*/
+    private static final boolean[] UPPER_CASE = {true, false, true, false, true, false};
+    private static final String[] SEPARATORS = {"", "", " ", ":", ", ", "--"};
+    private static final boolean[] TRAILING = {false, false, true, false, true, false};
+
+    private static String reference(byte[] data, int codec) {
+        StringBuilder out = new StringBuilder();
+        for(int i = 0; i < data.length; i++) {
+            out.append(String.format(UPPER_CASE[codec] ? "%02X" : "%02x", data[i] & 0xFF));
+            if(TRAILING[codec] || i < data.length - 1) {
+                out.append(SEPARATORS[codec]);
+            }
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void everyPathRoundTrips() throws IOException {
+        Random r = new Random(SEED);
+        for(int c = 0; c < CODECS.length; c++) {
+            HexCodec codec = CODECS[c];
+            for(int len : new int[] {0, 1, 2, 3, 16, 255, 1000}) {
+                byte[] data = new byte[len];
+                r.nextBytes(data);
+                String text = reference(data, c);
+                String what = "'"+codec.encode(new byte[2])+"' layout, "+len+" bytes";
+                Assert.assertEquals(what, text.length(), codec.encodedLength(len));
+                Assert.assertEquals(what, len, codec.decodedLength(text.length()));
+
+                //encoding, from the middle of a bigger array into the middle of each kind of output
+                byte[] src = new byte[len + 7];
+                System.arraycopy(data, 0, src, 3, len);
+                Assert.assertEquals(what, text, codec.encode(data));
+                char[] chars = new char[text.length() + 5];
+                Assert.assertEquals(what, text.length(), codec.encode(src, 3, len, chars, 2));
+                Assert.assertEquals(what, text, new String(chars, 2, text.length()));
+                Assert.assertEquals(what, 0, chars[1]);
+                Assert.assertEquals(what, 0, chars[2 + text.length()]);
+                StringBuilder sb = new StringBuilder("x");
+                codec.encode(src, 3, len, sb);
+                Assert.assertEquals(what, "x" + text, sb.toString());
+                sb.setLength(0);
+                ByteBuffer wrapped = ByteBuffer.wrap(src, 3, len);
+                codec.encode(wrapped, sb);
+                Assert.assertEquals(what, text, sb.toString());
+                Assert.assertEquals(what, 3, wrapped.position());
+                for(ByteBuffer dst : new ByteBuffer[] {
+                        ByteBuffer.allocate(text.length() + 6), ByteBuffer.allocateDirect(text.length() + 6)}) {
+                    dst.position(1).limit(text.length() + 5);
+                    Assert.assertEquals(what, text.length(), codec.encode(src, 3, len, dst, 4));
+                    Assert.assertEquals(what, 1, dst.position());
+                    Assert.assertEquals(what, text.length() + 5, dst.limit());
+                    byte[] written = new byte[text.length()];
+                    for(int i = 0; i < written.length; i++) {
+                        written[i] = dst.get(4 + i);
+                    }
+                    Assert.assertEquals(what, text, new String(written, ASCII));
+                    Assert.assertEquals(what, 0, dst.get(3));
+                }
+
+                //decoding, from the middle of each kind of input, in either case, into the middle of each output
+                for(String in : new String[] {text, text.toUpperCase(), text.toLowerCase()}) {
+                    Assert.assertArrayEquals(what, data, codec.decode(in));
+                    String padded = "zz" + in + "z";
+                    byte[] ascii = padded.getBytes(ASCII);
+                    char[] inChars = padded.toCharArray();
+                    byte[] expected = new byte[len + 4];
+                    System.arraycopy(data, 0, expected, 1, len);
+
+                    byte[] out = new byte[len + 4];
+                    Assert.assertEquals(what, len, codec.decode(padded, 2, in.length(), out, 1));
+                    Assert.assertArrayEquals(what, expected, out);
+                    out = new byte[len + 4];
+                    Assert.assertEquals(what, len, codec.decode(inChars, 2, in.length(), out, 1));
+                    Assert.assertArrayEquals(what, expected, out);
+                    for(ByteBuffer srcBuf : new ByteBuffer[] {ByteBuffer.wrap(ascii), direct(ascii)}) {
+                        srcBuf.position(1);
+                        out = new byte[len + 4];
+                        Assert.assertEquals(what, len, codec.decode(srcBuf, 2, in.length(), out, 1));
+                        Assert.assertArrayEquals(what, expected, out);
+                        for(ByteBuffer dst : new ByteBuffer[] {ByteBuffer.allocate(len + 4), ByteBuffer.allocateDirect(len + 4)}) {
+                            dst.position(2).limit(len + 3);
+                            Assert.assertEquals(what, len, codec.decode(padded, 2, in.length(), dst, 1));
+                            checkBuffer(what, expected, dst);
+                            for(int i = 1; i <= len; i++) {
+                                dst.put(i, (byte)0x5A);
+                            }
+                            Assert.assertEquals(what, len, codec.decode(srcBuf, 2, in.length(), dst, 1));
+                            checkBuffer(what, expected, dst);
+                        }
+                        Assert.assertEquals(what, 1, srcBuf.position());
+                    }
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer direct(byte[] data) {
+        ByteBuffer out = ByteBuffer.allocateDirect(data.length);
+        out.put(data);
+        out.clear();
+        return out;
+    }
+
+    private static void checkBuffer(String what, byte[] expected, ByteBuffer dst) {
+        Assert.assertEquals(what, 2, dst.position());
+        Assert.assertEquals(what, expected.length - 1, dst.limit());
+        for(int i = 0; i < dst.limit(); i++) {
+            Assert.assertEquals(what+" at "+i, expected[i], dst.get(i));
+        }
+    }
+
+    @Test
+    public void decodesInPlace() {
+        Random r = new Random(SEED + 1);
+        for(HexCodec codec : CODECS) {
+            byte[] data = new byte[300];
+            r.nextBytes(data);
+            for(ByteBuffer buf : new ByteBuffer[] {ByteBuffer.wrap(codec.encode(data).getBytes(ASCII)),
+                    direct(codec.encode(data).getBytes(ASCII))}) {
+                int len = buf.limit();
+                Assert.assertEquals(data.length, codec.decode(buf, 0, len, buf, 0));
+                byte[] decoded = new byte[data.length];
+                buf.get(decoded);
+                Assert.assertArrayEquals(data, decoded);
+            }
+        }
+    }
+
+    @Test
+    public void malformedTextIsRejected() {
+        HexCodec colons = new HexCodec(false, ":", false);
+        String[] bad = {"0", "0g", "00:0", "00-11", "0:011", "\u00E9\u00E9", " 00"};
+        for(String text : bad) {
+            try {
+                colons.decode(text);
+                Assert.fail("decoded '"+text+"'");
+            }
+            catch(IllegalArgumentException expected) {}
+            byte[] ascii = text.getBytes(Charset.forName("ISO-8859-1"));
+            try {
+                colons.decode(ByteBuffer.wrap(ascii), 0, ascii.length, ByteBuffer.allocate(4), 0);
+                Assert.fail("decoded '"+text+"' from a buffer");
+            }
+            catch(IllegalArgumentException expected) {}
+        }
+        //a trailing separator is accepted whether or not the codec writes one
+        Assert.assertArrayEquals(new byte[] {0x0A, (byte)0xFF}, colons.decode("0a:ff:"));
+        Assert.assertArrayEquals(new byte[] {0x0A, (byte)0xFF}, HexCodec.SPACED_UPPER.decode("0A FF"));
+
+        try {
+            HexCodec.UPPER.decode("0011", 0, 4, ByteBuffer.allocate(3), 2);
+            Assert.fail("decoded past the limit");
+        }
+        catch(IndexOutOfBoundsException expected) {}
+        try {
+            HexCodec.UPPER.decode(ByteBuffer.wrap(new byte[4]), 2, 4, new byte[2], 0);
+            Assert.fail("decoded text from past the limit");
+        }
+        catch(IndexOutOfBoundsException expected) {}
+        try {
+            HexCodec.UPPER.encode(new byte[2], 0, 2, new char[3], 0);
+            Assert.fail("encoded past the end of the array");
+        }
+        catch(IndexOutOfBoundsException expected) {}
+        try {
+            new HexCodec(true, " a", false);
+            Assert.fail("accepted a hex digit as a separator");
+        }
+        catch(IllegalArgumentException expected) {}
+        try {
+            new HexCodec(true, "\u2022", false).encode(new byte[1], 0, 1, ByteBuffer.allocate(4), 0);
+            Assert.fail("wrote a non-ASCII separator as a byte");
+        }
+        catch(IllegalArgumentException expected) {}
+        Assert.assertEquals("AB\u2022CD", new HexCodec(true, "\u2022", false).encode(new byte[] {(byte)0xAB, (byte)0xCD}));
+        Assert.assertTrue(Arrays.equals(new byte[0], HexCodec.LOWER.decode("")));
+    }
+}
@@ -0,0 +1,254 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**Checks {@link LatencyRecorder}'s buckets and percentiles against the exact sorted durations:
+ * every percentile must be no less than the true one and within one bucket above it, which is exact
+ * for small durations, and within 1 part in 2^precisionBits above that.
+ * Durations are spread over every power of two, with the values either side of each, up to Long.MAX_VALUE.*/
+public class LatencyRecorderTests {
+    private static final long SEED = 0x5EEDL;
+    private static final double[] PERCENTS = {0, 0.1, 1, 10, 25, 33.3, 50, 66.6, 75, 90, 99, 99.9, 99.99, 100};
+
+    /**The lowest duration in v's bucket, worked out independently of the recorder.*/
+    private static long lowest(long v, int precisionBits) {
+        int low = 64 - Long.numberOfLeadingZeros(v) - (precisionBits + 1);
+        return low <= 0 ? v : v >>> low << low;
+    }
+
+    /**The highest duration in v's bucket.*/
+    private static long highest(long v, int precisionBits) {
+        int low = 64 - Long.numberOfLeadingZeros(v) - (precisionBits + 1);
+        return low <= 0 ? v : v | ((1L << low) - 1);
+    }
+
+    /**The nearest-rank percentile: the smallest value which at least percent% of the values are no greater than.*/
+    private static long exactPercentile(long[] sorted, double percent) {
+        long rank = BigDecimal.valueOf(percent).multiply(BigDecimal.valueOf(sorted.length))
+                .divide(BigDecimal.valueOf(100)).setScale(0, RoundingMode.CEILING).longValue();
+        return sorted[(int)Math.max(1, rank) - 1];
+    }
+
+    private static long[] durations(int n, Random r) {
+        long[] out = new long[n];
+        for(int i = 0; i < n; i++) {
+            switch(r.nextInt(4)) {
+                case 0: out[i] = r.nextInt(300); break;
+                //right at a power of two, or either side of one
+                case 1: out[i] = Math.max(0, (1L << r.nextInt(63)) + r.nextInt(3) - 1); break;
+                //log-uniform, as latencies tend to be
+                default: out[i] = (long)Math.pow(2, r.nextDouble() * 40); break;
+            }
+        }
+        return out;
+    }
+
+    private static void check(LatencyRecorder.Snapshot snapshot, long[] values, int precisionBits, String what) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        Assert.assertEquals(what, sorted.length, snapshot.count());
+        if(sorted.length == 0) {
+            Assert.assertEquals(what, 0, snapshot.min());
+            Assert.assertEquals(what, 0, snapshot.max());
+            Assert.assertEquals(what, 0, snapshot.percentile(50));
+            return;
+        }
+        Assert.assertEquals(what, sorted[0], snapshot.min());
+        Assert.assertEquals(what, sorted[sorted.length - 1], snapshot.max());
+        for(double percent : PERCENTS) {
+            long exact = exactPercentile(sorted, percent);
+            long reported = snapshot.percentile(percent);
+            String at = what+", "+percent+"%: exact "+exact+", reported "+reported;
+            Assert.assertTrue(at, reported >= exact);
+            Assert.assertTrue(at, reported <= Math.min(highest(exact, precisionBits), snapshot.max()));
+            //which is to say, within the promised precision
+            Assert.assertTrue(at, reported - exact <= exact >>> precisionBits);
+        }
+        //and countBetween counts whole buckets, so it's exact at bucket edges and never short in between
+        Random r = new Random(sorted.length);
+        for(int i = 0; i < 20; i++) {
+            long a = sorted[r.nextInt(sorted.length)];
+            long b = sorted[r.nextInt(sorted.length)];
+            long from = Math.min(a, b);
+            long to = Math.max(a, b);
+            long inRange = 0;
+            long inBuckets = 0;
+            for(long v : sorted) {
+                if(v >= from && v <= to) {
+                    inRange++;
+                }
+                if(v >= lowest(from, precisionBits) && v <= highest(to, precisionBits)) {
+                    inBuckets++;
+                }
+            }
+            Assert.assertEquals(what+" between "+lowest(from, precisionBits)+" and "+highest(to, precisionBits),
+                    inBuckets, snapshot.countBetween(lowest(from, precisionBits), highest(to, precisionBits)));
+            long counted = snapshot.countBetween(from, to);
+            Assert.assertTrue(what+" between "+from+" and "+to, counted >= inRange && counted <= inBuckets);
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinOneBucketOfTheTruth() {
+        Random r = new Random(SEED);
+        for(int precisionBits : new int[] {1, 3, LatencyRecorder.DEFAULT_PRECISION_BITS, 10, 16}) {
+            for(int n : new int[] {0, 1, 2, 10, 999, 1000, 20000}) {
+                LatencyRecorder recorder = new LatencyRecorder(precisionBits);
+                long[] values = durations(n, r);
+                long total = 0;
+                for(long v : values) {
+                    recorder.record(v);
+                    total += v;
+                }
+                String what = precisionBits+" bits, "+n+" durations";
+                LatencyRecorder.Snapshot snapshot = recorder.snapshot();
+                check(snapshot, values, precisionBits, what);
+                if(n > 0) {
+                    Assert.assertEquals(what, total / n, snapshot.mean());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void everyPowerOfTwoAndItsNeighbours() {
+        for(int precisionBits : new int[] {1, LatencyRecorder.DEFAULT_PRECISION_BITS, 10}) {
+            List<Long> values = new ArrayList<Long>();
+            for(int k = 0; k < 63; k++) {
+                for(long d = -1; d <= 1; d++) {
+                    values.add(Math.max(0, (1L << k) + d));
+                }
+            }
+            values.add(Long.MAX_VALUE);
+            long[] array = new long[values.size()];
+            for(int i = 0; i < array.length; i++) {
+                array[i] = values.get(i);
+            }
+            LatencyRecorder recorder = new LatencyRecorder(precisionBits);
+            for(long v : array) {
+                recorder.record(v);
+            }
+            check(recorder.snapshot(), array, precisionBits, precisionBits+" bits, powers of two");
+
+            //each value on its own, so the percentile is its bucket's top, clamped to the value itself
+            recorder.intervalSnapshot();
+            for(long v : array) {
+                recorder.record(v);
+                LatencyRecorder.Snapshot s = recorder.intervalSnapshot();
+                Assert.assertEquals(v, s.percentile(50));
+                Assert.assertEquals(1, s.countBetween(lowest(v, precisionBits), lowest(v, precisionBits)));
+                Assert.assertEquals(1, s.countBetween(highest(v, precisionBits), highest(v, precisionBits)));
+                if(lowest(v, precisionBits) > 0) {
+                    Assert.assertEquals(v+"", 0, s.countBetween(0, lowest(v, precisionBits) - 1));
+                }
+                if(highest(v, precisionBits) < Long.MAX_VALUE) {
+                    Assert.assertEquals(v+"", 0, s.countBetween(highest(v, precisionBits) + 1, Long.MAX_VALUE));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void ranksAreNotThrownOffByRounding() {
+        //99.9% of 1000 is the 999th, though 99.9 / 100 * 1000 comes to a little over 999 in doubles.
+        //With 10 bits, every duration here has a bucket to itself
+        LatencyRecorder recorder = new LatencyRecorder(10);
+        for(int i = 1; i <= 1000; i++) {
+            recorder.record(i);
+        }
+        LatencyRecorder.Snapshot s = recorder.snapshot();
+        Assert.assertEquals(999, s.percentile(99.9));
+        Assert.assertEquals(500, s.percentile(50));
+        Assert.assertEquals(1, s.percentile(0));
+        Assert.assertEquals(1, s.percentile(0.1));
+        Assert.assertEquals(2, s.percentile(0.100001));
+        Assert.assertEquals(1000, s.percentile(100));
+        Assert.assertEquals(1000, s.countBetween(0, Long.MAX_VALUE));
+        for(double bad : new double[] {-0.1, 100.1, Double.NaN}) {
+            try {
+                s.percentile(bad);
+                Assert.fail("accepted a percentile of "+bad);
+            }
+            catch(IllegalArgumentException expected) {}
+        }
+    }
+
+    @Test
+    public void intervalSnapshotsPartitionTheDurations() throws InterruptedException {
+        final LatencyRecorder recorder = new LatencyRecorder();
+        final int threads = 4;
+        final int perThread = 50000;
+        Thread[] workers = new Thread[threads];
+        for(int t = 0; t < threads; t++) {
+            final long base = t;
+            workers[t] = new Thread() {
+                @Override public void run() {
+                    for(int i = 0; i < perThread; i++) {
+                        recorder.record(base + (i & 1023));
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        //snapshots taken while the threads record must between them count every duration exactly once
+        long counted = 0;
+        long lastInterval = -1;
+        while(true) {
+            boolean done = true;
+            for(Thread w : workers) {
+                done &= !w.isAlive();
+            }
+            LatencyRecorder.Snapshot s = recorder.intervalSnapshot();
+            counted += s.count();
+            Assert.assertTrue(s.intervalNanos() >= 0);
+            if(s.count() > 0) {
+                //min and max may be a bucket's edge when a duration was counted here but reached them in another
+                long highestRecorded = highest(threads - 1 + 1023, LatencyRecorder.DEFAULT_PRECISION_BITS);
+                Assert.assertTrue(s.min()+" to "+s.max(), s.min() >= 0 && s.max() <= highestRecorded);
+                Assert.assertTrue(s.min()+" to "+s.max(), s.min() <= s.percentile(50) && s.percentile(50) <= s.max());
+            }
+            lastInterval = s.intervalNanos();
+            if(done) {
+                break;
+            }
+        }
+        Assert.assertTrue(lastInterval >= 0);
+        Assert.assertEquals((long)threads * perThread, counted);
+        Assert.assertEquals(0, recorder.snapshot().count());
+
+        LatencyRecorder.Stopwatch watch = recorder.newStopwatch().start();
+        long first = watch.lap();
+        long second = watch.split();
+        Assert.assertTrue(first >= 0 && second >= 0);
+        LatencyRecorder.Snapshot s = recorder.snapshot();
+        Assert.assertEquals(2, s.count());
+        Assert.assertEquals(Math.min(first, second), s.min());
+        Assert.assertEquals(Math.max(first, second), s.max());
+        //a plain snapshot leaves the counts where they were
+        Assert.assertEquals(2, recorder.snapshot().count());
+    }
+
+    @Test
+    public void badArgumentsAreRejected() {
+        for(int bits : new int[] {0, 17}) {
+            try {
+                new LatencyRecorder(bits);
+                Assert.fail("accepted "+bits+" precision bits");
+            }
+            catch(IllegalArgumentException expected) {}
+        }
+        try {
+            new LatencyRecorder().record(-1);
+            Assert.fail("recorded a negative duration");
+        }
+        catch(IllegalArgumentException expected) {}
+    }
+}
@@ -0,0 +1,221 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.medavox.util.io.Bytes.bytesToHex;
+
+/**Checks MontgomeryContext's modMul, modAdd and modPow against BigInteger,
+ * over one-limb, multi-limb and top-bit-set moduli, with operands at the edges (0, 1, m-1, m-2)
+ * as well as seeded random ones. Each context is reused for every operand, so stale scratch space shows up.*/
+public class MontgomeryContextDifferentialTests {
+    private static final long SEED = 0x5EEDL;
+    private static final int RANDOM_OPERANDS = 40;
+
+    //------------------------------------conversions------------------------------------
+
+    private static BigInteger big(byte[] a) {
+        byte[] bigEndian = new byte[a.length];
+        for(int i = 0; i < a.length; i++) {
+            bigEndian[a.length - 1 - i] = a[i];
+        }
+        return new BigInteger(1, bigEndian);
+    }
+
+    private static byte[] bytes(BigInteger v, int width) {
+        return BytesAsUInt.fromBigInteger(v, width);
+    }
+
+    //------------------------------------moduli------------------------------------
+
+    /**Moduli that tend to find carry and reduction bugs, plus random odd ones of many widths.*/
+    private static List<byte[]> moduli(Random r) {
+        List<BigInteger> values = new ArrayList<BigInteger>();
+        values.add(BigInteger.valueOf(3));
+        values.add(BigInteger.valueOf(0xFB));
+        //one limb, with its top bit set
+        values.add(BigInteger.valueOf(0xFFFFFFFBL));
+        values.add(BigInteger.valueOf(0x80000001L));
+        //just over one limb
+        values.add(BigInteger.ONE.shiftLeft(32).add(BigInteger.ONE));
+        values.add(BigInteger.ONE.shiftLeft(32).add(BigInteger.valueOf(0x1F)));
+        //all ones, over whole limbs and over part of one
+        for(int bits : new int[] {64, 96, 127, 128, 256, 521}) {
+            values.add(BigInteger.ONE.shiftLeft(bits).subtract(BigInteger.ONE));
+        }
+        //2^k + 1, a single high bit over a 1
+        for(int bits : new int[] {63, 64, 95, 255}) {
+            values.add(BigInteger.ONE.shiftLeft(bits).add(BigInteger.ONE));
+        }
+        //random, with and without the top bit of the top limb set
+        for(int bytes : new int[] {1, 3, 4, 5, 8, 9, 12, 16, 17, 33, 64, 65, 128, 256}) {
+            for(int topBit = 0; topBit < 2; topBit++) {
+                BigInteger v = new BigInteger(bytes * 8, r).setBit(0);
+                if(topBit == 1) {
+                    v = v.setBit(((bytes + 3) / 4) * 32 - 1);
+                }
+                if(v.compareTo(BigInteger.ONE) > 0) {
+                    values.add(v);
+                }
+            }
+        }
+        values.add(BigInteger.probablePrime(1024, r));
+
+        List<byte[]> out = new ArrayList<byte[]>();
+        for(BigInteger v : values) {
+            int width = (v.bitLength() + 7) / 8;
+            out.add(bytes(v, width));
+            //the same value in a wider array, so the modulus has zero limbs above its value
+            out.add(bytes(v, width + 5));
+        }
+        return out;
+    }
+
+    /**0, 1, 2, m-2, m-1, and random values below m, in arrays of assorted widths.*/
+    private static List<BigInteger> operands(BigInteger m, Random r) {
+        List<BigInteger> out = new ArrayList<BigInteger>();
+        for(BigInteger v : new BigInteger[] {BigInteger.ZERO, BigInteger.ONE, BigInteger.valueOf(2),
+                m.subtract(BigInteger.valueOf(2)), m.subtract(BigInteger.ONE)}) {
+            if(v.signum() >= 0 && v.compareTo(m) < 0) {
+                out.add(v);
+            }
+        }
+        for(int i = 0; i < RANDOM_OPERANDS; i++) {
+            out.add(new BigInteger(m.bitLength() + 8, r).mod(m));
+        }
+        return out;
+    }
+
+    private static byte[] inRandomWidth(BigInteger v, Random r) {
+        return bytes(v, Math.max(1, (v.bitLength() + 7) / 8) + r.nextInt(3));
+    }
+
+    private static void assertValue(String op, byte[] modulus, BigInteger a, BigInteger b,
+                                    BigInteger expected, byte[] actual) {
+        if(actual.length != modulus.length || !big(actual).equals(expected)) {
+            Assert.fail(op+" mod "+bytesToHex(modulus)+" of a="+a.toString(16)+" b="+b.toString(16)
+                    +"\nexpected "+expected.toString(16)+" in "+modulus.length+" bytes"
+                    +"\nactual   "+big(actual).toString(16)+" in "+actual.length+" bytes");
+        }
+    }
+
+    //------------------------------------tests------------------------------------
+
+    @Test
+    public void modMulAndModAddAgreeWithBigInteger() {
+        Random r = new Random(SEED);
+        for(byte[] modulus : moduli(r)) {
+            MontgomeryContext context = new MontgomeryContext(modulus);
+            BigInteger m = big(modulus);
+            Assert.assertEquals(modulus.length, context.width());
+            List<BigInteger> values = operands(m, r);
+            for(BigInteger a : values) {
+                for(int k = 0; k < 6; k++) {
+                    BigInteger b = values.get(r.nextInt(values.size()));
+                    byte[] x = inRandomWidth(a, r);
+                    byte[] y = inRandomWidth(b, r);
+                    assertValue("modMul", modulus, a, b, a.multiply(b).mod(m), context.modMul(x, y));
+                    assertValue("modAdd", modulus, a, b, a.add(b).mod(m), context.modAdd(x, y));
+                }
+                byte[] x = bytes(a, 1);
+                assertValue("modMul square", modulus, a, a, a.multiply(a).mod(m), context.modMul(x, x));
+            }
+        }
+    }
+
+    @Test
+    public void modPowAgreesWithBigInteger() {
+        Random r = new Random(SEED + 1);
+        for(byte[] modulus : moduli(r)) {
+            MontgomeryContext context = new MontgomeryContext(modulus);
+            BigInteger m = big(modulus);
+            List<BigInteger> exponents = new ArrayList<BigInteger>();
+            for(long e : new long[] {0, 1, 2, 3, 15, 16, 17, 255, 65537}) {
+                exponents.add(BigInteger.valueOf(e));
+            }
+            exponents.add(m.subtract(BigInteger.ONE));
+            exponents.add(new BigInteger(200, r));
+            exponents.add(BigInteger.ONE.shiftLeft(300).subtract(BigInteger.ONE));
+            List<BigInteger> bases = operands(m, r).subList(0, 10);
+            for(BigInteger base : bases) {
+                for(BigInteger e : exponents) {
+                    //an exponent with extra zero bytes on top must make no difference
+                    byte[] exponent = bytes(e, Math.max(1, (e.bitLength() + 7) / 8) + r.nextInt(3));
+                    assertValue("modPow", modulus, base, e, base.modPow(e, m),
+                            context.modPow(inRandomWidth(base, r), exponent));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void writingFormsStayInsideTheirRange() {
+        Random r = new Random(SEED + 2);
+        for(byte[] modulus : moduli(r)) {
+            MontgomeryContext context = new MontgomeryContext(modulus);
+            BigInteger m = big(modulus);
+            BigInteger a = m.subtract(BigInteger.ONE);
+            BigInteger b = new BigInteger(m.bitLength() + 8, r).mod(m);
+            byte[] dst = new byte[modulus.length + 6];
+            for(int i = 0; i < dst.length; i++) {
+                dst[i] = (byte)0xA5;
+            }
+            byte[] x = bytes(a, modulus.length);
+            byte[] y = bytes(b, modulus.length);
+
+            context.modMul(x, y, dst, 3);
+            assertValue("modMul into", modulus, a, b, a.multiply(b).mod(m), slice(dst, 3, modulus.length));
+            context.modAdd(x, y, dst, 3);
+            assertValue("modAdd into", modulus, a, b, a.add(b).mod(m), slice(dst, 3, modulus.length));
+            context.modPow(x, y, dst, 3);
+            assertValue("modPow into", modulus, a, b, a.modPow(b, m), slice(dst, 3, modulus.length));
+            for(int i : new int[] {0, 1, 2, dst.length - 3, dst.length - 2, dst.length - 1}) {
+                Assert.assertEquals("wrote outside its range at "+i, (byte)0xA5, dst[i]);
+            }
+            Assert.assertEquals("an operand was modified", a, big(x));
+        }
+    }
+
+    private static byte[] slice(byte[] a, int off, int len) {
+        byte[] out = new byte[len];
+        System.arraycopy(a, off, out, 0, len);
+        return out;
+    }
+
+    @Test
+    public void rejectsBadModuliAndUnreducedOperands() {
+        for(byte[] bad : new byte[][] {{}, {0}, {1}, {1, 0, 0}, {2}, {(byte)0xFE, 0x7F}}) {
+            try {
+                new MontgomeryContext(bad);
+                Assert.fail("accepted the modulus "+bytesToHex(bad));
+            }
+            catch(IllegalArgumentException expected) {}
+        }
+        MontgomeryContext context = new MontgomeryContext(new byte[] {(byte)0xFB, (byte)0xFF, (byte)0xFF, (byte)0xFF});
+        byte[] m = context.modulus();
+        byte[] mPlusOne = {(byte)0xFC, (byte)0xFF, (byte)0xFF, (byte)0xFF};
+        byte[] one = {1};
+        for(byte[] unreduced : new byte[][] {m, mPlusOne, {0, 0, 0, 0, 1}}) {
+            try {
+                context.modMul(unreduced, one);
+                Assert.fail("modMul accepted the unreduced "+bytesToHex(unreduced));
+            }
+            catch(IllegalArgumentException expected) {}
+            try {
+                context.modAdd(one, unreduced);
+                Assert.fail("modAdd accepted the unreduced "+bytesToHex(unreduced));
+            }
+            catch(IllegalArgumentException expected) {}
+            try {
+                context.modPow(unreduced, one);
+                Assert.fail("modPow accepted the unreduced "+bytesToHex(unreduced));
+            }
+            catch(IllegalArgumentException expected) {}
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.medavox.util.io.MultiPatternExtractor.Match;
+import com.medavox.util.io.MultiPatternExtractor.Rule;
+
+/**Checks which rule each match is credited to, where matches overlap or tie,
+ * and that prefix rules find what a Matcher of their own would.*/
+public class MultiPatternExtractorTests {
+
+    private static String describe(List<Match> matches) {
+        StringBuilder out = new StringBuilder();
+        for(Match m : matches) {
+            out.append(m.ruleIndex).append('@').append(m.start).append('-').append(m.end)
+                    .append(':').append(m.text).append(' ');
+        }
+        return out.toString().trim();
+    }
+
+    @Test
+    public void overlappingLiteralsAreAllReported() {
+        MultiPatternExtractor x = new MultiPatternExtractor(
+                Rule.literal("he", "he"),
+                Rule.literal("she", "she"),
+                Rule.literal("hers", "hers"),
+                Rule.literal("his", "his"));
+        Assert.assertEquals("1@1-4:she 0@2-4:he 2@2-6:hers", describe(x.findAll("ushers")));
+    }
+
+    @Test
+    public void aLiteralRuleDoesNotOverlapItself() {
+        MultiPatternExtractor x = new MultiPatternExtractor(Rule.literal("aa", "aa"));
+        Assert.assertEquals("0@0-2:aa 0@2-4:aa", describe(x.findAll("aaaaa")));
+    }
+
+    @Test
+    public void tiesAtTheSameOffsetAreOrderedByRule() {
+        MultiPatternExtractor x = new MultiPatternExtractor(
+                Rule.prefixed("long", "ab", Pattern.compile("ab+")),
+                Rule.literal("short", "a"),
+                Rule.prefixed("url", "http", Pattern.compile("https?://\\S+")));
+        List<Match> found = x.findAll("xabbb http://e.g");
+        Assert.assertEquals("0@1-5:abbb 1@1-2:a 2@6-16:http://e.g", describe(found));
+        Assert.assertSame(x.rules().get(0), found.get(0).rule);
+        Assert.assertSame(x.rules().get(1), found.get(1).rule);
+    }
+
+    @Test
+    public void theFirstCombinedRegexWinsAtAPosition() {
+        MultiPatternExtractor x = new MultiPatternExtractor(
+                Rule.regex("word", Pattern.compile("[a-z]+")),
+                Rule.regex("abc", Pattern.compile("abc")),
+                Rule.regex("digits", Pattern.compile("\\d+")));
+        //"abc" is never reported: "word" is tried first, as in a regex alternation
+        Assert.assertEquals("0@0-3:abc 2@4-6:12 0@6-8:de", describe(x.findAll("abc 12de")));
+    }
+
+    @Test
+    public void combinedRulesWithTheirOwnGroupsAreCreditedCorrectly() {
+        MultiPatternExtractor x = new MultiPatternExtractor(
+                Rule.regex("groups", Pattern.compile("(a)(b)?(?:c)(d)?")),
+                Rule.literal("q", "q"),
+                Rule.regex("named", Pattern.compile("x(?<inner>y+)")),
+                Rule.regex("last", Pattern.compile("(z)")),
+                Rule.regex("caseless", Pattern.compile("k", Pattern.CASE_INSENSITIVE)));
+        List<Match> found = x.findAll("abcd xyy z K ac q");
+        Assert.assertEquals("0@0-4:abcd 2@5-8:xyy 3@9-10:z 4@11-12:K 0@13-15:ac 1@16-17:q", describe(found));
+        for(Match m : found) {
+            Assert.assertEquals(m.text, "abcd xyy z K ac q".substring(m.start, m.end));
+        }
+    }
+
+    @Test
+    public void backReferencesGetTheirOwnPassAndMayOverlap() {
+        MultiPatternExtractor x = new MultiPatternExtractor(
+                Rule.regex("letters", Pattern.compile("[a-z]+")),
+                Rule.regex("doubled", Pattern.compile("([a-z])\\1")));
+        Assert.assertEquals("0@0-5:hello 1@2-4:ll", describe(x.findAll("hello")));
+    }
+
+    @Test
+    public void commentsFlagDoesNotSwallowTheAlternation() {
+        MultiPatternExtractor x = new MultiPatternExtractor(
+                Rule.regex("commented", Pattern.compile("a b # trailing comment", Pattern.COMMENTS)),
+                Rule.regex("c", Pattern.compile("c")));
+        Assert.assertEquals("0@0-2:ab 1@3-4:c", describe(x.findAll("ab c")));
+    }
+
+    @Test
+    public void anUnclosedQuoteDoesNotSwallowTheAlternation() {
+        MultiPatternExtractor x = new MultiPatternExtractor(
+                Rule.regex("q", Pattern.compile("\\Qa.b")),
+                Rule.regex("r", Pattern.compile("zz+")),
+                Rule.regex("closed", Pattern.compile("\\Q(\\E\\d+\\Q\\\\E")),
+                Rule.regex("commented", Pattern.compile("c \\Q#d", Pattern.COMMENTS)));
+        Assert.assertEquals("0@1-4:a.b 1@5-8:zzz 2@13-16:(1\\ 3@16-19:c#d",
+                describe(x.findAll("xa.b zzz axb (1\\c#d")));
+    }
+
+    @Test
+    public void prefixRulesAgreeWithTheirOwnMatcher() {
+        Random random = new Random(16);
+        Rule[] rules = {
+                Rule.prefixed("ab", "ab", Pattern.compile("ab[ab]*")),
+                Rule.prefixed("ba", "ba", Pattern.compile("ba(?=a)")),
+                Rule.prefixed("b", "b", Pattern.compile("(?<=a)b+")),
+                Rule.literal("aaa", "aaa")};
+        MultiPatternExtractor x = new MultiPatternExtractor(rules);
+        for(int trial = 0; trial < 2000; trial++) {
+            char[] text = new char[random.nextInt(40)];
+            for(int i = 0; i < text.length; i++) {
+                text[i] = "abc".charAt(random.nextInt(3));
+            }
+            String s = new String(text);
+            List<Match> found = x.findAll(s);
+            for(int r = 0; r < rules.length; r++) {
+                Pattern p = rules[r].pattern != null ? rules[r].pattern : Pattern.compile(Pattern.quote(rules[r].prefix));
+                List<String> expected = new ArrayList<String>();
+                Matcher m = p.matcher(s);
+                while(m.find()) {
+                    expected.add(m.start()+"-"+m.end());
+                }
+                List<String> actual = new ArrayList<String>();
+                for(Match match : found) {
+                    if(match.ruleIndex == r) {
+                        actual.add(match.start+"-"+match.end);
+                    }
+                }
+                Assert.assertEquals("rule "+r+" in \""+s+"\"", expected, actual);
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**Checks each {@link SeenSet}'s promise: ConcurrentSeenSet is exact, LruSeenSet is exact until it forgets
+ * its least recently seen strings to stay in budget, and BloomSeenSet never forgets but may have false positives
+ * at about the requested rate. Each is also hammered from several threads at once.*/
+public class SeenSetTests {
+    private static final long SEED = 0x5EEDL;
+    private static final int THREADS = 4;
+
+    private static List<String> urls(int count, Random r) {
+        List<String> out = new ArrayList<String>();
+        Set<String> distinct = new HashSet<String>();
+        while(out.size() < count) {
+            String url = "http://example.com/"+Long.toString(r.nextLong() & Long.MAX_VALUE, 36);
+            if(distinct.add(url)) {
+                out.add(url);
+            }
+        }
+        return out;
+    }
+
+    /**Has THREADS threads add every string at once, each in its own order,
+     * and returns how many times in all a string was reported new.*/
+    private static int addConcurrently(final SeenSet set, final List<String> strings) throws InterruptedException {
+        final AtomicInteger reportedNew = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        Thread[] threads = new Thread[THREADS];
+        for(int t = 0; t < THREADS; t++) {
+            final int offset = t * strings.size() / THREADS;
+            threads[t] = new Thread() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                        for(int i = 0; i < strings.size(); i++) {
+                            if(set.addIfAbsent(strings.get((offset + i) % strings.size()))) {
+                                reportedNew.incrementAndGet();
+                            }
+                        }
+                    }
+                    catch(Throwable e) {
+                        synchronized(failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for(Thread t : threads) {
+            t.join();
+        }
+        Assert.assertEquals("failures: "+failures, 0, failures.size());
+        return reportedNew.get();
+    }
+
+    @Test
+    public void concurrentSeenSetIsExact() throws InterruptedException {
+        List<String> strings = urls(20000, new Random(SEED));
+        ConcurrentSeenSet set = new ConcurrentSeenSet();
+        Assert.assertEquals("each string is new exactly once", strings.size(), addConcurrently(set, strings));
+        Assert.assertEquals(strings.size(), set.size());
+        long chars = 0;
+        for(String s : strings) {
+            Assert.assertTrue(set.mightContain(s));
+            Assert.assertFalse(set.addIfAbsent(s));
+            chars += s.length();
+        }
+        Assert.assertFalse(set.mightContain("http://example.com/never"));
+        Assert.assertEquals(strings.size() * (long)ConcurrentSeenSet.ENTRY_OVERHEAD_BYTES + 2 * chars,
+                set.memoryFootprintBytes());
+    }
+
+    @Test
+    public void lruSeenSetForgetsTheLeastRecentlySeen() {
+        //one stripe, with room for about ten of these; the model below is given the same budget
+        List<String> strings = urls(30, new Random(SEED + 1));
+        long budget = 10 * ConcurrentSeenSet.entryBytes(strings.get(0));
+        LruSeenSet set = new LruSeenSet(budget, 1);
+        List<String> expected = new ArrayList<String>();
+        Random r = new Random(SEED + 2);
+        for(int step = 0; step < 500; step++) {
+            String s = strings.get(r.nextInt(strings.size()));
+            boolean wasThere = expected.remove(s);
+            expected.add(s);
+            long bytes = 0;
+            for(String e : expected) {
+                bytes += ConcurrentSeenSet.entryBytes(e);
+            }
+            //evict from the least recently seen end, as the set should
+            while(bytes > budget && expected.size() > 1) {
+                bytes -= ConcurrentSeenSet.entryBytes(expected.remove(0));
+            }
+            Assert.assertEquals("step "+step+": "+s, !wasThere, set.addIfAbsent(s));
+            Assert.assertEquals(expected.size(), set.size());
+            Assert.assertEquals(bytes, set.memoryFootprintBytes());
+            for(String e : strings) {
+                Assert.assertEquals("step "+step+": "+e, expected.contains(e), set.mightContain(e));
+            }
+        }
+    }
+
+    @Test
+    public void lruSeenSetStaysInBudget() throws InterruptedException {
+        Random r = new Random(SEED + 3);
+        List<String> strings = urls(5000, r);
+        long budget = 64 * 1024;
+        LruSeenSet set = new LruSeenSet(budget, 8);
+        addConcurrently(set, strings);
+        Assert.assertTrue(set.memoryFootprintBytes()+" bytes", set.memoryFootprintBytes() <= budget);
+        Assert.assertTrue(set.size() > 0);
+        //the most recent strings are all still there
+        for(String s : strings.subList(strings.size() - 20, strings.size())) {
+            set.addIfAbsent(s);
+        }
+        for(String s : strings.subList(strings.size() - 20, strings.size())) {
+            Assert.assertTrue(s, set.mightContain(s));
+        }
+
+        //with room for everything, it's exact, however many threads add at once
+        set = new LruSeenSet(strings.size() * 200L, 8);
+        Assert.assertEquals(strings.size(), addConcurrently(set, strings));
+        Assert.assertEquals(strings.size(), set.size());
+
+        //a string bigger than the whole budget is still kept, alone
+        set = new LruSeenSet(100, 1);
+        set.addIfAbsent("a");
+        StringBuilder huge = new StringBuilder();
+        for(int i = 0; i < 100; i++) {
+            huge.append("xyz");
+        }
+        Assert.assertTrue(set.addIfAbsent(huge.toString()));
+        Assert.assertEquals(1, set.size());
+        Assert.assertTrue(set.mightContain(huge.toString()));
+        Assert.assertFalse(set.mightContain("a"));
+
+        try {
+            new LruSeenSet(100, 0);
+            Assert.fail("accepted no stripes");
+        }
+        catch(IllegalArgumentException expected) {}
+        try {
+            new LruSeenSet(3, 4);
+            Assert.fail("accepted a budget smaller than the stripe count");
+        }
+        catch(IllegalArgumentException expected) {}
+    }
+
+    @Test
+    public void bloomSeenSetHasNoFalseNegativesAndAboutTheRequestedRate() throws InterruptedException {
+        Random r = new Random(SEED + 4);
+        int n = 20000;
+        for(double p : new double[] {0.1, 0.01, 0.001}) {
+            List<String> strings = urls(n, r);
+            BloomSeenSet set = new BloomSeenSet(n, p);
+            int reportedNew = addConcurrently(set, strings);
+            //a string can be wrongly reported as seen, but two threads racing can also both be told it's new
+            Assert.assertTrue(reportedNew+" new", reportedNew <= n * THREADS);
+            Assert.assertTrue(reportedNew+" new", reportedNew >= n * (1 - 3 * p));
+            Assert.assertEquals(reportedNew, set.size());
+            for(String s : strings) {
+                Assert.assertTrue("forgot "+s, set.mightContain(s));
+                Assert.assertFalse(set.addIfAbsent(s));
+            }
+            int falsePositives = 0;
+            List<String> others = urls(n, new Random(SEED + 5));
+            for(String s : others) {
+                if(set.mightContain(s)) {
+                    falsePositives++;
+                }
+            }
+            double rate = (double)falsePositives / n;
+            Assert.assertTrue(p+": measured "+rate, rate < 2 * p);
+            double estimate = set.currentFalsePositiveRate();
+            Assert.assertTrue(p+": estimated "+estimate, estimate > p / 2 && estimate < 2 * p);
+            //the optimal count for the rate, give or take the rounding up to whole words
+            long optimal = Math.round(-Math.log(p) / Math.log(2));
+            Assert.assertTrue(p+": "+set.hashCount()+" hashes", Math.abs(set.hashCount() - optimal) <= 1);
+        }
+    }
+
+    @Test
+    public void bloomSeenSetWithBudgetUsesItsBudget() {
+        Random r = new Random(SEED + 6);
+        List<String> strings = urls(1000, r);
+        for(long budget : new long[] {BloomSeenSet.OVERHEAD_BYTES + 8, 100, 1024, 1 << 16}) {
+            BloomSeenSet set = BloomSeenSet.withBudget(budget, strings.size());
+            //as many whole words as fit once the fixed overhead is taken out, and never more than the budget
+            long words = (budget - BloomSeenSet.OVERHEAD_BYTES) / 8;
+            Assert.assertEquals(words * 8 + BloomSeenSet.OVERHEAD_BYTES, set.memoryFootprintBytes());
+            Assert.assertTrue(budget+" bytes", set.memoryFootprintBytes() <= budget);
+            Assert.assertTrue(set.hashCount() >= 1);
+            for(String s : strings) {
+                set.addIfAbsent(s);
+            }
+            for(String s : strings) {
+                Assert.assertTrue(set.mightContain(s));
+            }
+        }
+        //more room means fewer false positives
+        BloomSeenSet small = BloomSeenSet.withBudget(1024, strings.size());
+        BloomSeenSet large = BloomSeenSet.withBudget(4096, strings.size());
+        for(String s : strings) {
+            small.addIfAbsent(s);
+            large.addIfAbsent(s);
+        }
+        Assert.assertTrue(large.currentFalsePositiveRate() < small.currentFalsePositiveRate());
+
+        for(double p : new double[] {0, 1, -0.5, Double.NaN}) {
+            try {
+                new BloomSeenSet(100, p);
+                Assert.fail("accepted a false-positive rate of "+p);
+            }
+            catch(IllegalArgumentException expected) {}
+        }
+        try {
+            new BloomSeenSet(0, 0.01);
+            Assert.fail("accepted 0 expected insertions");
+        }
+        catch(IllegalArgumentException expected) {}
+        try {
+            BloomSeenSet.withBudget(BloomSeenSet.OVERHEAD_BYTES + 7, 10);
+            Assert.fail("accepted a budget with no room for a word past the overhead");
+        }
+        catch(IllegalArgumentException expected) {}
+        try {
+            BloomSeenSet.withBudget(1024, 0);
+            Assert.fail("accepted 0 expected insertions");
+        }
+        catch(IllegalArgumentException expected) {}
+    }
+}
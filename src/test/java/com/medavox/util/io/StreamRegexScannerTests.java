@@ -0,0 +1,211 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**Checks that {@link StreamRegexScanner} finds what {@link Matcher#find()} finds over the whole text,
+ * with chunks small enough that most matches span a refill of the buffer.*/
+public class StreamRegexScannerTests {
+    private static final long SEED = 0x5EEDL;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**Patterns whose matches are never longer than 16 chars.*/
+    private static final Pattern[] PATTERNS = {
+            Pattern.compile("ab{1,8}c"),
+            Pattern.compile("\\d{1,6}"),
+            //greedy, so a match running into the end of a chunk grows into the next
+            Pattern.compile("b{1,16}"),
+            Pattern.compile("\\bab\\b"),
+            Pattern.compile("(?<=a)b{1,4}"),
+            Pattern.compile("c(?=a)"),
+            Pattern.compile("^a[^\\n]{0,9}$", Pattern.MULTILINE),
+            Pattern.compile("a\\n?b"),
+            //empty matches
+            Pattern.compile("b?"),
+    };
+
+    private static List<String> expected(Pattern p, String text) {
+        List<String> out = new ArrayList<String>();
+        Matcher m = p.matcher(text);
+        while(m.find()) {
+            out.add(m.start()+":"+m.group());
+        }
+        return out;
+    }
+
+    private static class Collector implements MatchCallback {
+        final List<String> found = new ArrayList<String>();
+
+        @Override public void onMatch(String match, long start) {
+            found.add(start+":"+match);
+        }
+    }
+
+    /**Hands over at most a few chars per read, as slow streams do.*/
+    private static class TrickleReader extends Reader {
+        private final Reader in;
+        private final Random r;
+
+        TrickleReader(String text, Random r) {
+            this.in = new StringReader(text);
+            this.r = r;
+        }
+
+        @Override public int read(char[] cbuf, int off, int len) throws IOException {
+            return in.read(cbuf, off, Math.min(len, 1 + r.nextInt(3)));
+        }
+
+        @Override public void close() {}
+    }
+
+    private static String randomText(Random r, int length) {
+        char[] text = new char[length];
+        for(int i = 0; i < length; i++) {
+            text[i] = "aabbbc1 \n".charAt(r.nextInt(9));
+        }
+        return new String(text);
+    }
+
+    private static void check(Pattern p, String text, StreamRegexScanner scanner, Reader in, String what)
+            throws IOException {
+        Collector c = new Collector();
+        long count = scanner.scan(in, c);
+        List<String> expected = expected(p, text);
+        Assert.assertEquals(what+" /"+p+"/ in \""+text.replace("\n", "\\n")+"\"", expected, c.found);
+        Assert.assertEquals(expected.size(), count);
+    }
+
+    @Test
+    public void agreesWithMatcherAcrossChunkBoundaries() throws IOException {
+        Random r = new Random(SEED);
+        for(Pattern p : PATTERNS) {
+            for(int chunkSize : new int[] {1, 2, 3, 7, 64}) {
+                StreamRegexScanner scanner = new StreamRegexScanner(p, chunkSize, 16, 4);
+                for(int trial = 0; trial < 60; trial++) {
+                    //with and without a trailing newline
+                    String text = randomText(r, r.nextInt(120));
+                    check(p, text, scanner, new StringReader(text), "chunk "+chunkSize);
+                    check(p, text, scanner, new TrickleReader(text, r), "trickled, chunk "+chunkSize);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void aMatchSpanningARefillIsFoundWhole() throws IOException {
+        Pattern p = Pattern.compile("needle\\d+");
+        String text = "....needle12345.......needle6";
+        for(int chunkSize = 1; chunkSize <= 8; chunkSize++) {
+            StreamRegexScanner scanner = new StreamRegexScanner(p, chunkSize, 16, 0);
+            check(p, text, scanner, new StringReader(text), "chunk "+chunkSize);
+        }
+    }
+
+    @Test
+    public void aMatchRunningIntoTheEndOfTheInputIsReported() throws IOException {
+        //no trailing newline: the last match ends at end of input, and $ matches there
+        Pattern p = Pattern.compile("\\w+$", Pattern.MULTILINE);
+        String text = "one two\nthree four\nfive";
+        StreamRegexScanner scanner = new StreamRegexScanner(p, 3, 8, 2);
+        Collector c = new Collector();
+        Assert.assertEquals(3, scanner.scan(new StringReader(text), c));
+        Assert.assertEquals("[4:two, 14:four, 19:five]", c.found.toString());
+        check(p, "", scanner, new StringReader(""), "empty input");
+    }
+
+    @Test
+    public void lookbehindContextSurvivesTheRefill() throws IOException {
+        Pattern p = Pattern.compile("(?<=key=)\\w+|\\bword\\b");
+        String text = "key=value notkey=v2 aword word wordy key=x";
+        for(int chunkSize = 1; chunkSize <= 6; chunkSize++) {
+            check(p, text, new StreamRegexScanner(p, chunkSize, 8, 4), new StringReader(text), "chunk "+chunkSize);
+        }
+    }
+
+    @Test
+    public void channelsDecodeAcrossChunks() throws IOException {
+        Random r = new Random(SEED + 1);
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 3000; i++) {
+            //one, two, three and four byte chars, so reads split encoded chars and surrogate pairs
+            sb.append("a\u00E9\u20AC\uD83D\uDE00 \n".charAt(r.nextInt(7)));
+        }
+        String text = sb.toString().replaceAll("\uD83D(?!\uDE00)", "").replaceAll("(?<!\uD83D)\uDE00", "");
+        Pattern p = Pattern.compile("a[\u00E9\u20AC]{1,5}|\uD83D\uDE00+");
+        byte[] header = "skipped header\n".getBytes(UTF_8);
+        byte[] body = text.getBytes(UTF_8);
+        File f = File.createTempFile("StreamRegexScannerTests", ".txt");
+        f.deleteOnExit();
+        try {
+            FileOutputStream out = new FileOutputStream(f);
+            try {
+                out.write(header);
+                out.write(body);
+            }
+            finally {
+                out.close();
+            }
+            for(int chunkSize : new int[] {1, 5, 100}) {
+                StreamRegexScanner scanner = new StreamRegexScanner(p, chunkSize, 16, 2);
+                List<String> expected = expected(p, text);
+
+                FileInputStream in = new FileInputStream(f);
+                try {
+                    //mapped from the channel's position, not the start of the file
+                    FileChannel channel = in.getChannel().position(header.length);
+                    Collector c = new Collector();
+                    scanner.scan(channel, UTF_8, c);
+                    Assert.assertEquals("mapped, chunk "+chunkSize, expected, c.found);
+                }
+                finally {
+                    in.close();
+                }
+
+                Collector c = new Collector();
+                scanner.scan(Channels.newChannel(new ByteArrayInputStream(body)), UTF_8, c);
+                Assert.assertEquals("streamed, chunk "+chunkSize, expected, c.found);
+            }
+        }
+        finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void malformedBytesAreReplacedNotFatal() throws IOException {
+        byte[] bytes = {'a', 'b', (byte)0xFF, 'a', 'b', (byte)0xE2, (byte)0x82, 'a', 'b'};
+        Collector c = new Collector();
+        long count = new StreamRegexScanner(Pattern.compile("ab|\uFFFD"), 1, 4, 0)
+                .scan(Channels.newChannel(new ByteArrayInputStream(bytes)), UTF_8, c);
+        Assert.assertEquals(5, count);
+        Assert.assertEquals("[0:ab, 2:\uFFFD, 3:ab, 5:\uFFFD, 6:ab]", c.found.toString());
+    }
+
+    @Test
+    public void rejectsBadSizes() {
+        Pattern p = Pattern.compile("a");
+        for(int[] bad : new int[][] {{0, 1, 0}, {1, 0, 0}, {1, 1, -1}}) {
+            try {
+                new StreamRegexScanner(p, bad[0], bad[1], bad[2]);
+                Assert.fail("accepted chunkSize "+bad[0]+", maxMatchLength "+bad[1]+", lookbehind "+bad[2]);
+            }
+            catch(IllegalArgumentException expected) {}
+        }
+    }
+}
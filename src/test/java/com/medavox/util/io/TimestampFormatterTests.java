@@ -0,0 +1,186 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import com.medavox.util.io.DateTime.DateFormat;
+import com.medavox.util.io.DateTime.TimeFormat;
+
+/**Checks every TimeFormat and DateFormat layout of {@link TimestampFormatter} and {@link DateTime}
+ * against SimpleDateFormat in {@link Locale#UK}, which is what the Calendar-based DateTime printed,
+ * over zones with odd offsets, instants either side of their DST changes, and instants before 1970.
+ *
+ * Two layouts differ from the old output on purpose: NUMBERS now gives a 1-based month ("31/12", not "31/11"),
+ * and LONG_WITH_DAY now gives the full weekday name, as its doc comment always said.*/
+public class TimestampFormatterTests {
+    private static final long SEED = 0x5EEDL;
+    private static final long HOUR = 60L * 60 * 1000;
+    /**SimpleDateFormat switches to the Julian calendar before 1582, so stay after 1900.*/
+    private static final long FROM = -2208988800000L;//1900-01-01
+    private static final long TO = 4102444800000L;//2100-01-01
+
+    private static final String[] ZONES = {"UTC", "Europe/London", "America/New_York", "Australia/Lord_Howe",
+            "Asia/Kolkata", "Pacific/Chatham", "America/St_Johns", "Pacific/Kiritimati", "Europe/Amsterdam",
+            "America/Sao_Paulo"};
+
+    private static String timePattern(TimeFormat format) {
+        switch(format) {
+            case MINUTES: return "HH:mm";
+            case SECONDS: return "HH:mm:ss";
+            default: return "HH:mm:ss.SSS";
+        }
+    }
+
+    private static String datePattern(DateFormat format) {
+        switch(format) {
+            case NUMBERS: return "d/M";
+            case BRIEF: return "d MMM";
+            case BRIEF_WITH_DAY: return "EEE d MMM";
+            case LONG: return "d MMMM";
+            default: return "EEEE d MMMM";
+        }
+    }
+
+    private static SimpleDateFormat simple(String pattern, TimeZone zone) {
+        SimpleDateFormat out = new SimpleDateFormat(pattern, Locale.UK);
+        GregorianCalendar calendar = new GregorianCalendar(zone, Locale.UK);
+        out.setCalendar(calendar);
+        return out;
+    }
+
+    /**Random instants with millis, instants either side of each offset change, and midnights.*/
+    private static List<Long> instants(TimeZone zone, Random r) {
+        List<Long> out = new ArrayList<Long>();
+        for(int i = 0; i < 300; i++) {
+            out.add(FROM + (long)(r.nextDouble() * (TO - FROM)));
+        }
+        for(long t : new long[] {0, -1, 1, -HOUR * 24, FROM, -1000000000001L}) {
+            out.add(t);
+        }
+        //offset changes in a few years, found by stepping an hour at a time and then closing in
+        for(int year : new int[] {1916, 1941, 1968, 1999, 2021, 2038}) {
+            long start = (year - 1970) * 31556952000L;
+            for(long t = start; t < start + 31556952000L; t += HOUR) {
+                if(zone.getOffset(t) != zone.getOffset(t + HOUR)) {
+                    long lo = t;
+                    long hi = t + HOUR;
+                    while(hi - lo > 1) {
+                        long mid = (lo + hi) >>> 1;
+                        if(zone.getOffset(mid) == zone.getOffset(lo)) {
+                            lo = mid;
+                        }
+                        else {
+                            hi = mid;
+                        }
+                    }
+                    for(long d : new long[] {-HOUR, -1, 0, 1, HOUR - 1, HOUR}) {
+                        out.add(hi + d);
+                    }
+                }
+            }
+        }
+        //local midnight and the millisecond before it
+        for(int i = 0; i < 20; i++) {
+            long t = FROM + (long)(r.nextDouble() * (TO - FROM));
+            long local = t + zone.getOffset(t);
+            long midnight = TimestampFormatter.floorDiv(local, TimestampFormatter.MILLIS_PER_DAY)
+                    * TimestampFormatter.MILLIS_PER_DAY - zone.getOffset(t);
+            out.add(midnight);
+            out.add(midnight - 1);
+        }
+        return out;
+    }
+
+    @Test
+    public void everyLayoutAgreesWithSimpleDateFormat() {
+        Random r = new Random(SEED);
+        for(String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            Assert.assertEquals(id, zone.getID());
+            TimestampFormatter formatter = new TimestampFormatter(zone);
+            List<Long> instants = instants(zone, r);
+            char[] dst = new char[TimestampFormatter.MAX_LENGTH + 5];
+            for(TimeFormat time : TimeFormat.values()) {
+                SimpleDateFormat timeOnly = simple(timePattern(time), zone);
+                for(DateFormat date : DateFormat.values()) {
+                    SimpleDateFormat dateOnly = simple(datePattern(date), zone);
+                    SimpleDateFormat dateThenTime = simple(datePattern(date)+" "+timePattern(time), zone);
+                    SimpleDateFormat timeOnDate = simple(timePattern(time)+" 'on' "+datePattern(date), zone);
+                    for(long t : instants) {
+                        Date d = new Date(t);
+                        String what = id+" at "+t+" ("+time+", "+date+")";
+                        String expected = dateThenTime.format(d);
+                        Assert.assertEquals(what, expected, formatter.format(t, time, date, new StringBuilder()).toString());
+                        int end = formatter.format(t, time, date, dst, 5);
+                        Assert.assertEquals(what+" into char[]", expected, new String(dst, 5, end - 5));
+                        Assert.assertEquals(what, timeOnDate.format(d),
+                                formatter.formatTimeOnDate(t, time, date, new StringBuilder("x")).substring(1));
+                        Assert.assertEquals(what, timeOnly.format(d),
+                                formatter.formatTime(t, time, new StringBuilder()).toString());
+                        Assert.assertEquals(what, dateOnly.format(d),
+                                formatter.formatDate(t, date, new StringBuilder()).toString());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void theDayCacheIsRightInEitherDirection() {
+        //walk forwards then backwards a quarter-hour at a time over a spring and an autumn change,
+        //so each lookup either hits the cached day or has to replace it
+        TimeZone zone = TimeZone.getTimeZone("Europe/London");
+        TimestampFormatter formatter = new TimestampFormatter(zone);
+        SimpleDateFormat expected = simple("d MMM HH:mm:ss.SSS", zone);
+        long[][] spans = {{1616803200000L, 1616976000000L}, {1635559200000L, 1635732000000L}};
+        for(long[] span : spans) {
+            for(long t = span[0]; t < span[1]; t += 15 * 60 * 1000 + 1) {
+                Assert.assertEquals(expected.format(new Date(t)),
+                        formatter.format(t, TimeFormat.MILLISECONDS, DateFormat.BRIEF, new StringBuilder()).toString());
+            }
+            for(long t = span[1]; t > span[0]; t -= 15 * 60 * 1000 + 1) {
+                Assert.assertEquals(expected.format(new Date(t)),
+                        formatter.format(t, TimeFormat.MILLISECONDS, DateFormat.BRIEF, new StringBuilder()).toString());
+            }
+        }
+    }
+
+    @Test
+    public void dateTimeUsesTheDefaultZone() {
+        TimeZone zone = TimeZone.getDefault();
+        Random r = new Random(SEED + 1);
+        for(int i = 0; i < 500; i++) {
+            long t = FROM + (long)(r.nextDouble() * (TO - FROM));
+            Date d = new Date(t);
+            Assert.assertEquals(simple("d MMM HH:mm", zone).format(d), DateTime.get(t, TimeFormat.MINUTES));
+            Assert.assertEquals(simple("EEE d MMM HH:mm:ss", zone).format(d),
+                    DateTime.get(t, TimeFormat.SECONDS, DateFormat.BRIEF_WITH_DAY));
+            Assert.assertEquals(simple("HH:mm:ss.SSS 'on' d/M", zone).format(d),
+                    DateTime.get2(t, TimeFormat.MILLISECONDS, DateFormat.NUMBERS));
+            Assert.assertEquals(simple("HH:mm", zone).format(d), DateTime.getTime(t, TimeFormat.MINUTES));
+            Assert.assertEquals(simple("EEEE d MMMM", zone).format(d), DateTime.getDate(t, DateFormat.LONG_WITH_DAY));
+        }
+    }
+
+    @Test
+    public void maxLengthFitsTheLongestLayout() {
+        TimestampFormatter formatter = new TimestampFormatter(TimeZone.getTimeZone("UTC"));
+        int longest = 0;
+        //every weekday of every month, on 2-digit days
+        for(long day = 0; day < 7 * 366; day++) {
+            long t = day * TimestampFormatter.MILLIS_PER_DAY + TimestampFormatter.MILLIS_PER_DAY - 1;
+            longest = Math.max(longest, formatter.formatTimeOnDate(t, TimeFormat.MILLISECONDS, DateFormat.LONG_WITH_DAY,
+                    new StringBuilder()).length());
+        }
+        Assert.assertTrue(longest+" > "+TimestampFormatter.MAX_LENGTH, longest <= TimestampFormatter.MAX_LENGTH);
+    }
+}
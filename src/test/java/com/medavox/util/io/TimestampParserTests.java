@@ -0,0 +1,239 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import com.medavox.util.io.DateTime.DateFormat;
+import com.medavox.util.io.DateTime.TimeFormat;
+
+/**Round-trips {@link TimestampParser} against {@link TimestampFormatter} for every layout,
+ * and checks the cases a round trip can't reach: skipped and repeated local times, 29th February, and bad text.*/
+public class TimestampParserTests {
+    private static final long SEED = 0x5EEDL;
+    private static final long DAY = TimestampFormatter.MILLIS_PER_DAY;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final TimeZone LONDON = TimeZone.getTimeZone("Europe/London");
+
+    private static final String[] ZONES = {"UTC", "Europe/London", "America/New_York", "Australia/Lord_Howe",
+            "Asia/Kolkata", "Pacific/Chatham", "America/Sao_Paulo"};
+
+    private static long unit(TimeFormat time) {
+        switch(time) {
+            case MINUTES: return 60 * 1000;
+            case SECONDS: return 1000;
+            default: return 1;
+        }
+    }
+
+    /**t, cut down to the precision of the layout in local time.*/
+    private static long truncated(long t, TimeFormat time, TimeZone zone) {
+        long local = t + zone.getOffset(t);
+        return t - (local - TimestampFormatter.floorDiv(local, unit(time)) * unit(time));
+    }
+
+    /**Whether the local time at t also occurs at some other instant, as when the clocks go back.*/
+    private static boolean repeated(long t, TimeZone zone) {
+        long local = t + zone.getOffset(t);
+        for(long other : new long[] {t - 3 * 60 * 60 * 1000, t + 3 * 60 * 60 * 1000}) {
+            int offset = zone.getOffset(other);
+            if(offset != zone.getOffset(t) && zone.getOffset(local - offset) == offset) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void everyLayoutRoundTrips() {
+        Random r = new Random(SEED);
+        for(String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            TimestampFormatter formatter = new TimestampFormatter(zone);
+            TimestampParser parser = new TimestampParser(formatter);
+            for(int i = 0; i < 3000; i++) {
+                long t = -2208988800000L + (long)(r.nextDouble() * 6311433600000L);//1900 to 2100
+                //the layouts have no year, so the reference must be within half a year
+                long reference = t + (long)((r.nextDouble() - 0.5) * 300 * DAY);
+                TimeFormat time = TimeFormat.values()[r.nextInt(TimeFormat.values().length)];
+                DateFormat date = DateFormat.values()[r.nextInt(DateFormat.values().length)];
+                if(repeated(t, zone)) {
+                    continue;
+                }
+                long expected = truncated(t, time, zone);
+                String what = id+" at "+t+" ("+time+", "+date+")";
+
+                String text = formatter.format(t, time, date, new StringBuilder()).toString();
+                Assert.assertEquals(what+": "+text, expected, parser.parse(text, time, date, reference));
+                byte[] padded = ("<<" + text + ">>").getBytes(ASCII);
+                Assert.assertEquals(what+": "+text, expected,
+                        parser.parse(padded, 2, padded.length - 4, time, date, reference));
+
+                text = formatter.formatTimeOnDate(t, time, date, new StringBuilder()).toString();
+                Assert.assertEquals(what+": "+text, expected, parser.parseTimeOnDate(text, time, date, reference));
+                byte[] bytes = text.getBytes(ASCII);
+                Assert.assertEquals(what+": "+text, expected,
+                        parser.parseTimeOnDate(bytes, 0, bytes.length, time, date, reference));
+
+                //a time alone is put on the reference's day
+                text = formatter.formatTime(t, time, new StringBuilder()).toString();
+                Assert.assertEquals(what+": "+text, expected, parser.parseTime(text, time, t + r.nextInt(60)));
+                bytes = text.getBytes(ASCII);
+                Assert.assertEquals(what+": "+text, expected, parser.parseTime(bytes, 0, bytes.length, time, t));
+
+                //a date alone is its local midnight, which formats back to the same date at 00:00
+                text = formatter.formatDate(t, date, new StringBuilder()).toString();
+                long midnight = parser.parseDate(text, date, reference);
+                bytes = text.getBytes(ASCII);
+                Assert.assertEquals(what, midnight, parser.parseDate(bytes, 0, bytes.length, date, reference));
+                Assert.assertTrue(what, midnight <= t && t - midnight < DAY + 60 * 60 * 1000);
+                Assert.assertEquals(what, text, formatter.formatDate(midnight, date, new StringBuilder()).toString());
+                if(!repeated(midnight, zone) && zone.getOffset(midnight) == zone.getOffset(midnight - 1)) {
+                    Assert.assertEquals(what, "00:00", formatter.formatTime(midnight, TimeFormat.MINUTES,
+                            new StringBuilder()).toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void dateTimeParsesWhatItPrints() {
+        Random r = new Random(SEED + 1);
+        for(int i = 0; i < 500; i++) {
+            long t = 1500000000000L + (long)(r.nextDouble() * 100 * 365 * DAY);
+            if(repeated(t, TimeZone.getDefault())) {
+                continue;
+            }
+            Assert.assertEquals(t, DateTime.parse(DateTime.get(t, TimeFormat.MILLISECONDS, DateFormat.LONG_WITH_DAY),
+                    TimeFormat.MILLISECONDS, DateFormat.LONG_WITH_DAY, t + 7 * DAY));
+        }
+    }
+
+    @Test
+    public void skippedLocalTimesMoveForwardByTheGap() {
+        TimestampParser parser = new TimestampParser(LONDON);
+        TimestampFormatter formatter = new TimestampFormatter(LONDON);
+        //on 28 March 2021 the clocks went from 01:00 GMT to 02:00 BST, so 01:30 never happened
+        long reference = 1616889600000L;//2021-03-28 00:00 UTC
+        long t = parser.parse("28 Mar 01:30", TimeFormat.MINUTES, DateFormat.BRIEF, reference);
+        Assert.assertEquals(1616895000000L, t);//01:30 UTC
+        Assert.assertEquals("28 Mar 02:30", formatter.format(t, TimeFormat.MINUTES, DateFormat.BRIEF,
+                new StringBuilder()).toString());
+        Assert.assertEquals(t, parser.parseTime("01:30", TimeFormat.MINUTES, reference));
+        //either side of the gap is as written
+        Assert.assertEquals(1616893140000L, parser.parse("28 Mar 00:59", TimeFormat.MINUTES, DateFormat.BRIEF, reference));
+        Assert.assertEquals(1616893200000L, parser.parse("28 Mar 02:00", TimeFormat.MINUTES, DateFormat.BRIEF, reference));
+    }
+
+    @Test
+    public void repeatedLocalTimesGiveOneOfTheirInstants() {
+        TimestampParser parser = new TimestampParser(LONDON);
+        TimestampFormatter formatter = new TimestampFormatter(LONDON);
+        //on 31 October 2021 the clocks went from 02:00 BST back to 01:00 GMT, so 01:30 happened twice
+        long reference = 1635638400000L;//2021-10-31 00:00 UTC
+        long t = parser.parse("31 Oct 01:30:00", TimeFormat.SECONDS, DateFormat.BRIEF, reference);
+        Assert.assertTrue(t == 1635640200000L || t == 1635643800000L);
+        Assert.assertEquals("31 Oct 01:30:00", formatter.format(t, TimeFormat.SECONDS, DateFormat.BRIEF,
+                new StringBuilder()).toString());
+    }
+
+    @Test
+    public void leapDaysGoToTheNearestLeapYear() {
+        TimestampParser parser = new TimestampParser(UTC);
+        Calendar calendar = new GregorianCalendar(UTC);
+        //{reference year, month (January = 0), day} -> the year 29 Feb should land in
+        int[][] cases = {{2021, 5, 1, 2020}, {2023, 0, 1, 2024}, {2024, 1, 29, 2024}, {2100, 0, 1, 2096},
+                {2100, 11, 1, 2104}, {1900, 0, 1, 1896}, {1900, 5, 1, 1904}};
+        for(int[] c : cases) {
+            calendar.clear();
+            calendar.set(c[0], c[1], c[2]);
+            long reference = calendar.getTimeInMillis();
+            calendar.clear();
+            calendar.set(c[3], Calendar.FEBRUARY, 29, 12, 0);
+            Assert.assertEquals("29 Feb near "+c[0]+"-"+(c[1]+1)+"-"+c[2], calendar.getTimeInMillis(),
+                    parser.parse("29/2 12:00", TimeFormat.MINUTES, DateFormat.NUMBERS, reference));
+        }
+        //29th February in the reference year, when that's a leap year, is never put off to another
+        calendar.clear();
+        calendar.set(2024, Calendar.DECEMBER, 31);
+        long reference = calendar.getTimeInMillis();
+        calendar.clear();
+        calendar.set(2024, Calendar.FEBRUARY, 29);
+        Assert.assertEquals(calendar.getTimeInMillis(), parser.parseDate("29 February", DateFormat.LONG, reference));
+    }
+
+    @Test
+    public void malformedTextIsRejected() {
+        TimestampParser parser = new TimestampParser(UTC);
+        long reference = 1600000000000L;
+        String[] briefSeconds = {"", "31 Dec", "31 Dec 23:59", "31 Dec 23:59:59 ", " 31 Dec 23:59:59",
+                "31  Dec 23:59:59", "32 Dec 10:00:00", "0 Dec 10:00:00", "31 Dex 10:00:00", "31 Decem 10:00:00",
+                "31 dec 10:00:00", "31 Dec 24:00:00", "31 Dec 23:60:00", "31 Dec 23:59:60", "31 Dec 2359:59",
+                "31 Dec 23:59:5", "31 Dec 23:5a:59", "123 Dec 10:00:00", "30 Feb 10:00:00", "31 Apr 10:00:00",
+                "31 D\u00E9c 10:00:00", "31 Dec\u20AC10:00:00"};
+        for(String bad : briefSeconds) {
+            try {
+                parser.parse(bad, TimeFormat.SECONDS, DateFormat.BRIEF, reference);
+                Assert.fail("parsed \""+bad+"\"");
+            }
+            catch(IllegalArgumentException expected) {}
+        }
+        for(String bad : new String[] {"1/13 10:00", "31/0 10:00", "31/12", "31-12 10:00", "/12 10:00", "31/ 10:00"}) {
+            try {
+                parser.parse(bad, TimeFormat.MINUTES, DateFormat.NUMBERS, reference);
+                Assert.fail("parsed \""+bad+"\"");
+            }
+            catch(IllegalArgumentException expected) {}
+        }
+        for(String bad : new String[] {"Tue31 Dec", "Foo 31 Dec", "Tues 31 Dec", "Tuesday 31 Dec", "31 Dec"}) {
+            try {
+                parser.parseDate(bad, DateFormat.BRIEF_WITH_DAY, reference);
+                Assert.fail("parsed \""+bad+"\"");
+            }
+            catch(IllegalArgumentException expected) {}
+        }
+        for(String bad : new String[] {"10:00 31 Dec", "10:00 on31 Dec", "10:00 at 31 Dec", "10:00 on 31 Dec "}) {
+            try {
+                parser.parseTimeOnDate(bad, TimeFormat.MINUTES, DateFormat.BRIEF, reference);
+                Assert.fail("parsed \""+bad+"\"");
+            }
+            catch(IllegalArgumentException expected) {}
+        }
+        for(String bad : new String[] {"10:00:00", "10:00.000", "10:00:00.00", "10:00:00,000"}) {
+            try {
+                parser.parseTime(bad, TimeFormat.MILLISECONDS, reference);
+                Assert.fail("parsed \""+bad+"\"");
+            }
+            catch(IllegalArgumentException expected) {}
+        }
+        //a weekday is only checked to be a name, not that it agrees with the date
+        Assert.assertEquals(parser.parseDate("Mon 31 Dec", DateFormat.BRIEF_WITH_DAY, reference),
+                parser.parseDate("Fri 31 Dec", DateFormat.BRIEF_WITH_DAY, reference));
+    }
+
+    @Test
+    public void byteRangesAreChecked() {
+        TimestampParser parser = new TimestampParser(UTC);
+        byte[] text = "10:00".getBytes(ASCII);
+        Assert.assertEquals(10 * 60 * 60 * 1000, parser.parseTime(text, 0, 5, TimeFormat.MINUTES, 0));
+        for(int[] bad : new int[][] {{-1, 5}, {0, 6}, {1, 5}, {0, -1}, {6, 0}}) {
+            try {
+                parser.parseTime(text, bad[0], bad[1], TimeFormat.MINUTES, 0);
+                Assert.fail("read "+bad[0]+"+"+bad[1]+" of "+text.length);
+            }
+            catch(IndexOutOfBoundsException expected) {}
+        }
+        //a range which stops short of the text only sees what's in it
+        try {
+            parser.parseTime(text, 0, 4, TimeFormat.MINUTES, 0);
+            Assert.fail("read past the end of the range");
+        }
+        catch(IllegalArgumentException expected) {}
+    }
+}
@@ -0,0 +1,268 @@
+package com.medavox.util.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**Checks every bulk operation of {@link UIntColumn} against BigInteger, element by element,
+ * on columns small enough to run on the calling thread and big enough to be split into parallel slices
+ * (over 64KB, with a part-filled last slice), on the shared pool and on a given one.*/
+public class UIntColumnTests {
+    private static final long SEED = 0x5EEDL;
+    private static final int[] WIDTHS = {1, 3, 8, 13};
+
+    private static BigInteger big(byte[] a) {
+        byte[] bigEndian = new byte[a.length];
+        for(int i = 0; i < a.length; i++) {
+            bigEndian[a.length - 1 - i] = a[i];
+        }
+        return new BigInteger(1, bigEndian);
+    }
+
+    private static BigInteger[] values(UIntColumn c) {
+        BigInteger[] out = new BigInteger[c.size()];
+        for(int i = 0; i < out.length; i++) {
+            out[i] = big(c.get(i));
+        }
+        return out;
+    }
+
+    /**Random values, with runs of zeroes and of all-ones so carries go the whole width.*/
+    private static UIntColumn random(int size, int width, Random r, ForkJoinPool pool) {
+        UIntColumn c = pool == null ? new UIntColumn(size, width) : new UIntColumn(size, width, pool);
+        byte[] data = c.array();
+        r.nextBytes(data);
+        for(int i = 0; i < size; i++) {
+            int kind = r.nextInt(8);
+            if(kind < 2) {
+                for(int j = 0; j < width; j++) {
+                    data[i * width + j] = kind == 0 ? 0 : (byte)0xFF;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**Sizes either side of the parallel threshold for the width.*/
+    private static int[] sizes(int width) {
+        int slice = Math.max(1, (1 << 16) / width);
+        return new int[] {0, 1, 7, slice, slice + 1, 3 * slice + slice / 3};
+    }
+
+    @Test
+    public void elementWiseOperationsAgreeWithBigInteger() {
+        Random r = new Random(SEED);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for(int width : WIDTHS) {
+                BigInteger modulus = BigInteger.ONE.shiftLeft(8 * width);
+                for(int size : sizes(width)) {
+                    ForkJoinPool p = r.nextBoolean() ? pool : null;
+                    UIntColumn a = random(size, width, r, p);
+                    UIntColumn b = random(size, width, r, p);
+                    byte[] scalar = new byte[1 + r.nextInt(width)];
+                    r.nextBytes(scalar);
+                    BigInteger s = big(scalar);
+                    BigInteger[] x = values(a);
+                    BigInteger[] y = values(b);
+                    String what = size+"x"+width;
+
+                    int[] columnResult = a.compare(b, new int[size + 2]);
+                    int[] scalarResult = a.compare(scalar, new int[size]);
+                    for(int i = 0; i < size; i++) {
+                        Assert.assertEquals(what+" compare at "+i, x[i].compareTo(y[i]), columnResult[i]);
+                        Assert.assertEquals(what+" compare scalar at "+i, x[i].compareTo(s), scalarResult[i]);
+                    }
+
+                    int expectedWraps = 0;
+                    for(int i = 0; i < size; i++) {
+                        if(x[i].add(y[i]).compareTo(modulus) >= 0) {
+                            expectedWraps++;
+                        }
+                        x[i] = x[i].add(y[i]).mod(modulus);
+                    }
+                    Assert.assertEquals(what+" add wraps", expectedWraps, a.add(b));
+                    Assert.assertArrayEquals(what+" add", x, values(a));
+
+                    expectedWraps = 0;
+                    for(int i = 0; i < size; i++) {
+                        if(x[i].add(s).compareTo(modulus) >= 0) {
+                            expectedWraps++;
+                        }
+                        x[i] = x[i].add(s).mod(modulus);
+                    }
+                    Assert.assertEquals(what+" add scalar wraps", expectedWraps, a.add(scalar));
+                    Assert.assertArrayEquals(what+" add scalar", x, values(a));
+
+                    expectedWraps = 0;
+                    for(int i = 0; i < size; i++) {
+                        if(x[i].compareTo(y[i]) < 0) {
+                            expectedWraps++;
+                        }
+                        x[i] = x[i].subtract(y[i]).mod(modulus);
+                    }
+                    Assert.assertEquals(what+" subtract wraps", expectedWraps, a.subtract(b));
+                    Assert.assertArrayEquals(what+" subtract", x, values(a));
+
+                    expectedWraps = 0;
+                    for(int i = 0; i < size; i++) {
+                        if(x[i].compareTo(s) < 0) {
+                            expectedWraps++;
+                        }
+                        x[i] = x[i].subtract(s).mod(modulus);
+                    }
+                    Assert.assertEquals(what+" subtract scalar wraps", expectedWraps, a.subtract(scalar));
+                    Assert.assertArrayEquals(what+" subtract scalar", x, values(a));
+                    //the other operand is left alone
+                    Assert.assertArrayEquals(what, y, values(b));
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void reductionsAgreeWithBigInteger() {
+        Random r = new Random(SEED + 1);
+        for(int width : WIDTHS) {
+            for(int size : sizes(width)) {
+                UIntColumn c = random(size, width, r, null);
+                BigInteger[] x = values(c);
+                BigInteger sum = BigInteger.ZERO;
+                for(BigInteger v : x) {
+                    sum = sum.add(v);
+                }
+                byte[] total = c.sum();
+                Assert.assertEquals(width + 4, total.length);
+                Assert.assertEquals(size+"x"+width+" sum", sum, big(total));
+                if(size == 0) {
+                    Assert.assertEquals(-1, c.minIndex());
+                    Assert.assertEquals(-1, c.maxIndex());
+                    continue;
+                }
+                //plant ties for the extremes, in different slices, so the first must win across a join
+                byte[] zero = new byte[width];
+                byte[] ones = new byte[width];
+                Arrays.fill(ones, (byte)0xFF);
+                for(int i = 0; i < size; i++) {
+                    if(Limbs.compare(c.array(), i * width, width, zero, 0, width) == 0
+                            || Limbs.compare(c.array(), i * width, width, ones, 0, width) == 0) {
+                        c.set(i, new byte[] {1});
+                    }
+                }
+                int firstMin = r.nextInt(size);
+                int firstMax = r.nextInt(size);
+                while(size > 1 && firstMax == firstMin) {
+                    firstMax = r.nextInt(size);
+                }
+                for(int k = 0; k < 5; k++) {
+                    int later = firstMin + r.nextInt(size - firstMin);
+                    if(later != firstMax) {
+                        c.set(later, zero);
+                    }
+                }
+                c.set(firstMin, zero);
+                for(int k = 0; k < 5; k++) {
+                    int later = firstMax + r.nextInt(size - firstMax);
+                    if(later != firstMin && later != firstMax) {
+                        c.set(later, ones);
+                    }
+                }
+                c.set(firstMax, ones);
+                if(size > 1) {
+                    Assert.assertEquals(size+"x"+width+" minIndex", firstMin, c.minIndex());
+                    Assert.assertEquals(size+"x"+width+" maxIndex", firstMax, c.maxIndex());
+                    Assert.assertArrayEquals(zero, c.min());
+                    Assert.assertArrayEquals(ones, c.max());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void prefixSumAgreesWithBigInteger() {
+        Random r = new Random(SEED + 2);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for(int width : WIDTHS) {
+                BigInteger modulus = BigInteger.ONE.shiftLeft(8 * width);
+                for(int size : sizes(width)) {
+                    UIntColumn c = random(size, width, r, r.nextBoolean() ? pool : null);
+                    BigInteger[] x = values(c);
+                    for(int i = 1; i < size; i++) {
+                        x[i] = x[i].add(x[i - 1]).mod(modulus);
+                    }
+                    c.prefixSum();
+                    Assert.assertArrayEquals(size+"x"+width+" prefixSum", x, values(c));
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void elementAccessAndShapesAreChecked() {
+        UIntColumn c = UIntColumn.wrap(new byte[] {1, 2, 3, 4, 5, 6}, 3);
+        Assert.assertEquals(2, c.size());
+        Assert.assertEquals(3, c.width());
+        Assert.assertArrayEquals(new byte[] {4, 5, 6}, c.get(1));
+        c.set(0, new byte[] {9, 9, 9, 9});
+        Assert.assertArrayEquals(new byte[] {9, 9, 9}, c.get(0));
+        c.set(1, new byte[] {7});
+        Assert.assertArrayEquals(new byte[] {9, 9, 9, 7, 0, 0}, c.array());
+        byte[] dst = new byte[5];
+        c.get(1, dst, 2);
+        Assert.assertArrayEquals(new byte[] {0, 0, 7, 0, 0}, dst);
+
+        for(int bad : new int[] {-1, 2}) {
+            try {
+                c.get(bad);
+                Assert.fail("read element "+bad+" of 2");
+            }
+            catch(IndexOutOfBoundsException expected) {}
+        }
+        try {
+            c.add(new UIntColumn(2, 4));
+            Assert.fail("added columns of different widths");
+        }
+        catch(IllegalArgumentException expected) {}
+        try {
+            c.subtract(new UIntColumn(3, 3));
+            Assert.fail("subtracted columns of different sizes");
+        }
+        catch(IllegalArgumentException expected) {}
+        try {
+            c.compare(new byte[] {1}, new int[1]);
+            Assert.fail("compared into too short a result");
+        }
+        catch(IllegalArgumentException expected) {}
+        try {
+            UIntColumn.wrap(new byte[7], 3);
+            Assert.fail("wrapped an array which isn't a whole number of elements");
+        }
+        catch(IllegalArgumentException expected) {}
+        try {
+            new UIntColumn(1 << 20, 1 << 12);
+            Assert.fail("made a column of over 2GB");
+        }
+        catch(IllegalArgumentException expected) {}
+        try {
+            new UIntColumn(0, 0).min();
+            Assert.fail("accepted a width of 0");
+        }
+        catch(IllegalArgumentException expected) {}
+        try {
+            new UIntColumn(0, 2).max();
+            Assert.fail("found the max of an empty column");
+        }
+        catch(IllegalStateException expected) {}
+    }
+}